@@ -23,7 +23,11 @@
  */
 package io.xdag.p2p;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.xdag.p2p.channel.Channel;
+import io.xdag.p2p.channel.MessagePriority;
+import java.util.List;
 import java.util.Set;
 import lombok.Getter;
 import org.apache.tuweni.bytes.Bytes;
@@ -32,9 +36,95 @@ public abstract class P2pEventHandler {
 
   @Getter protected Set<Byte> messageTypes;
 
+  /**
+   * Set by handlers that want the messages decoded in one read from a peer delivered together
+   * through {@link #onMessages(Channel, List)} instead of one {@code onMessage} call each.
+   */
+  @Getter protected boolean batchDelivery;
+
   public void onConnect(Channel channel) {}
 
+  /**
+   * Called instead of {@link #onConnect(Channel)} when a peer resumes its session after a brief
+   * disconnect, see {@code sessionTicketTtl}. The state synced with the peer before the disconnect
+   * can be kept instead of syncing again. The default implementation calls {@link
+   * #onConnect(Channel)}.
+   *
+   * @param channel the channel of the resumed session
+   */
+  public void onResume(Channel channel) {
+    onConnect(channel);
+  }
+
+  /**
+   * Called on the dialing side right after its HELLO is written, when {@code pipelinedHandshake}
+   * is enabled. Messages sent from this callback travel with the HELLO instead of a round trip
+   * later; the peer handles them in order once it accepts the channel and drops them if it rejects
+   * it. {@link #onConnect(Channel)} still follows once the handshake completes. The peer must run
+   * a version that supports compression.
+   *
+   * @param channel the channel whose handshake started
+   */
+  public void onHandshakeStarted(Channel channel) {}
+
   public void onDisconnect(Channel channel) {}
 
   public void onMessage(Channel channel, Bytes data) {}
+
+  /**
+   * Zero-copy variant of {@link #onMessage(Channel, Bytes)}, called for every received message of
+   * the registered types. {@code data[0]} is the message type. The default implementation copies
+   * the buffer and calls {@link #onMessage(Channel, Bytes)}; handlers that parse straight from the
+   * buffer override this method instead.
+   *
+   * <p>Ownership: {@code data} is a read-only retained slice of the decoded frame that is released
+   * by the caller once this method returns. Do not release it here. To keep the data after
+   * returning, call {@code data.retain()} (or {@code data.retainedSlice()}) and release it when
+   * done, otherwise the buffer is recycled and its content becomes undefined.
+   *
+   * @param channel the channel the message was received on
+   * @param data the message, valid until this method returns
+   */
+  public void onMessage(Channel channel, ByteBuf data) {
+    onMessage(channel, Bytes.wrap(ByteBufUtil.getBytes(data)));
+  }
+
+  /**
+   * Called once per read from a peer with the messages of the registered types decoded in that
+   * read, in the order they were received, when {@link #isBatchDelivery()} is set. A burst can
+   * then share one lock, database transaction or validation pass. A batch is delivered early, before
+   * a node message of the same read is handled and before {@link #onDisconnect(Channel)}. The
+   * default implementation calls {@link #onMessage(Channel, Bytes)} for each message.
+   *
+   * @param channel the channel the messages were received on
+   * @param messages the messages, each starting with its type
+   */
+  public void onMessages(Channel channel, List<Bytes> messages) {
+    for (Bytes message : messages) {
+      onMessage(channel, message);
+    }
+  }
+
+  /**
+   * Called when the outbound buffer of a connected channel crosses the write buffer watermarks.
+   * Producers should stop sending to the channel when it becomes unwritable and resume once it is
+   * writable again.
+   *
+   * @param channel the channel
+   * @param writable whether the channel accepts writes without queueing past the high watermark
+   */
+  public void onWritabilityChanged(Channel channel, boolean writable) {}
+
+  /**
+   * Outbound priority lane of one of the registered message types, queried once at registration.
+   * Queued frames of a higher priority are sent before queued frames of a lower priority. {@link
+   * MessagePriority#CONTROL} is reserved for node messages and is treated as {@link
+   * MessagePriority#HIGH}.
+   *
+   * @param type one of {@link #getMessageTypes()}
+   * @return the priority of the type
+   */
+  public MessagePriority getMessagePriority(byte type) {
+    return MessagePriority.NORMAL;
+  }
 }
@@ -27,6 +27,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.xdag.p2p.channel.Channel;
 import io.xdag.p2p.channel.ChannelManager;
+import io.xdag.p2p.channel.IoResourceManager;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.config.P2pConstant;
 import io.xdag.p2p.discover.Node;
@@ -39,8 +40,10 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
 
 @Getter
 @Slf4j(topic = "net")
@@ -48,6 +51,7 @@ public class P2pService {
 
   private final P2pConfig p2pConfig;
 
+  private final IoResourceManager ioResourceManager;
   private final NodeManager nodeManager;
   private final DnsManager dnsManager;
   private final ChannelManager channelManager;
@@ -58,10 +62,12 @@ public class P2pService {
   public P2pService(final P2pConfig p2pConfig) {
     this.p2pConfig = p2pConfig;
 
-    nodeManager = new NodeManager(this.p2pConfig);
+    ioResourceManager = new IoResourceManager(this.p2pConfig);
+    nodeManager = new NodeManager(this.p2pConfig, ioResourceManager);
     dnsManager = new DnsManager(this.p2pConfig, this.nodeManager);
 
-    channelManager = new ChannelManager(this.p2pConfig, nodeManager, dnsManager);
+    channelManager =
+        new ChannelManager(this.p2pConfig, nodeManager, dnsManager, ioResourceManager);
     p2pStatsManager = new P2pStatsManager();
   }
 
@@ -82,6 +88,7 @@ public class P2pService {
     dnsManager.close();
     nodeManager.close();
     channelManager.close();
+    ioResourceManager.close();
     log.info("P2p service closed");
   }
 
@@ -98,8 +105,19 @@ public class P2pService {
     return channelManager.connect(node, future);
   }
 
+  /**
+   * Send a message to all connected channels accepted by the filter, encoding it only once.
+   *
+   * @param data the message, starting with its type
+   * @param filter selects the target channels
+   * @return the number of channels the message was written to
+   */
+  public int broadcast(Bytes data, Predicate<Channel> filter) {
+    return channelManager.broadcast(data, filter);
+  }
+
   public P2pStats getP2pStats() {
-    return p2pStatsManager.getP2pStats();
+    return p2pStatsManager.getP2pStats(channelManager.getChannels().values());
   }
 
   public List<Node> getTableNodes() {
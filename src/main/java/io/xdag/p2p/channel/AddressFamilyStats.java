@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connect outcomes per address family. Dual stack dials start with the family that succeeds more
+ * often, so once one family of this host has proven broken its attempts stop costing the
+ * connection attempt delay on every dial.
+ */
+public class AddressFamilyStats {
+
+  /** Attempts a family needs before its success rate is trusted */
+  static final int MIN_ATTEMPTS = 4;
+
+  public enum AddressFamily {
+    IPV4,
+    IPV6;
+
+    public static AddressFamily of(InetSocketAddress address) {
+      return address.getAddress() instanceof Inet6Address ? IPV6 : IPV4;
+    }
+  }
+
+  private final Counters ipv4 = new Counters();
+  private final Counters ipv6 = new Counters();
+
+  public void recordAttempt(InetSocketAddress address) {
+    counters(AddressFamily.of(address)).attempts.incrementAndGet();
+  }
+
+  public void recordSuccess(InetSocketAddress address) {
+    counters(AddressFamily.of(address)).successes.incrementAndGet();
+  }
+
+  public void recordFailure(InetSocketAddress address) {
+    counters(AddressFamily.of(address)).failures.incrementAndGet();
+  }
+
+  public long getAttempts(AddressFamily family) {
+    return counters(family).attempts.get();
+  }
+
+  public long getSuccesses(AddressFamily family) {
+    return counters(family).successes.get();
+  }
+
+  public long getFailures(AddressFamily family) {
+    return counters(family).failures.get();
+  }
+
+  /**
+   * Share of the attempts of a family that connected. Attempts cancelled because the other family
+   * connected first count as unsuccessful.
+   *
+   * @param family the address family
+   * @return the success rate, 0 before the first attempt
+   */
+  public double getSuccessRate(AddressFamily family) {
+    Counters counters = counters(family);
+    long attempts = counters.attempts.get();
+    return attempts == 0 ? 0 : (double) counters.successes.get() / attempts;
+  }
+
+  /**
+   * Order the two addresses of a dual stack node for dialing. The preferred address stays first
+   * unless both families have enough attempts and the other one has the better success rate.
+   *
+   * @param preferred the address the node prefers
+   * @param other the address of the other family
+   * @return the addresses in dial order
+   */
+  public InetSocketAddress[] dialOrder(InetSocketAddress preferred, InetSocketAddress other) {
+    AddressFamily preferredFamily = AddressFamily.of(preferred);
+    AddressFamily otherFamily = AddressFamily.of(other);
+    if (preferredFamily != otherFamily
+        && getAttempts(preferredFamily) >= MIN_ATTEMPTS
+        && getAttempts(otherFamily) >= MIN_ATTEMPTS
+        && getSuccessRate(otherFamily) > getSuccessRate(preferredFamily)) {
+      return new InetSocketAddress[] {other, preferred};
+    }
+    return new InetSocketAddress[] {preferred, other};
+  }
+
+  private Counters counters(AddressFamily family) {
+    return family == AddressFamily.IPV6 ? ipv6 : ipv4;
+  }
+
+  private static class Counters {
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+  }
+}
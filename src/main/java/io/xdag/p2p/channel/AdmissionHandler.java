@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.SocketChannel;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.config.P2pConstant;
+import io.xdag.p2p.utils.TokenBucket;
+import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * First handler of every accepted connection. It checks the remote address before anything is
+ * allocated for the peer and only hands the socket to the full channel initializer when it is
+ * admitted; rejected sockets are reset without building a pipeline.
+ *
+ * <p>A connection is rejected when its address is banned, when the node already holds {@code
+ * maxConnections} peers, when accepts exceed {@code acceptRate} per second, or when the address
+ * already has {@code maxConnectionsWithSameIp} inbound sockets open. Trusted nodes skip all
+ * checks, as they do in the handshake. A banned address that may resume a session is left to
+ * the handshake, which lifts the ban only for a valid ticket.
+ */
+@Slf4j(topic = "net")
+@ChannelHandler.Sharable
+public class AdmissionHandler extends ChannelInitializer<SocketChannel> {
+
+  public enum Rejection {
+    BANNED,
+    TOO_MANY_PEERS,
+    RATE,
+    SAME_IP
+  }
+
+  private final P2pConfig p2pConfig;
+  private final ChannelManager channelManager;
+  private final P2pChannelInitializer initializer;
+  private final TokenBucket acceptBucket;
+  private final Map<InetAddress, Integer> inboundPerIp = new ConcurrentHashMap<>();
+  private final Map<Rejection, AtomicLong> rejected = new EnumMap<>(Rejection.class);
+
+  public AdmissionHandler(
+      P2pConfig p2pConfig,
+      ChannelManager channelManager,
+      P2pChannelInitializer initializer) {
+    this.p2pConfig = p2pConfig;
+    this.channelManager = channelManager;
+    this.initializer = initializer;
+    this.acceptBucket = new TokenBucket(p2pConfig.getAcceptRate(), p2pConfig.getAcceptBurst());
+    for (Rejection rejection : Rejection.values()) {
+      rejected.put(rejection, new AtomicLong());
+    }
+  }
+
+  @Override
+  public void initChannel(SocketChannel ch) throws Exception {
+    InetAddress address = ch.remoteAddress().getAddress();
+    Rejection rejection = admit(address);
+    if (rejection != null) {
+      rejected.get(rejection).incrementAndGet();
+      log.debug("Reject inbound connection from {}, reason {}", address, rejection);
+      // reset instead of a graceful close, no TIME_WAIT is left behind for refused peers
+      ch.config().setOption(ChannelOption.SO_LINGER, 0);
+      ch.close();
+      return;
+    }
+    if (!isTrusted(address)) {
+      ch.closeFuture().addListener((ChannelFutureListener) future -> release(address));
+    }
+    initializer.initChannel(ch);
+  }
+
+  /**
+   * Decide on a connection from {@code address}. An admitted address counts against its quota
+   * until {@link #release(InetAddress)} is called.
+   *
+   * @return the reason of the rejection, null when the connection is admitted
+   */
+  Rejection admit(InetAddress address) {
+    if (isTrusted(address)) {
+      return null;
+    }
+    Long bannedUntil = channelManager.getBannedNodes().getIfPresent(address);
+    long now = System.currentTimeMillis();
+    // a session ticket only outlasts the ban of an ordinary disconnect
+    if (bannedUntil != null
+        && bannedUntil > now
+        && (bannedUntil - now > P2pConstant.DEFAULT_BAN_TIME || !isResumable(address))) {
+      return Rejection.BANNED;
+    }
+    if (channelManager.getChannels().size() >= p2pConfig.getMaxConnections()) {
+      return Rejection.TOO_MANY_PEERS;
+    }
+    if (!acceptBucket.tryAcquire(1)) {
+      return Rejection.RATE;
+    }
+    int limit = p2pConfig.getMaxConnectionsWithSameIp();
+    boolean[] admitted = new boolean[1];
+    inboundPerIp.compute(
+        address,
+        (key, count) -> {
+          int current = count == null ? 0 : count;
+          if (current >= limit) {
+            return count;
+          }
+          admitted[0] = true;
+          return current + 1;
+        });
+    return admitted[0] ? null : Rejection.SAME_IP;
+  }
+
+  void release(InetAddress address) {
+    inboundPerIp.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null);
+  }
+
+  /** A banned address may hold a session ticket, its handshake decides on the ban. */
+  private boolean isResumable(InetAddress address) {
+    return channelManager.getSessionTickets() != null
+        && channelManager.getSessionTickets().isResumable(address);
+  }
+
+  private boolean isTrusted(InetAddress address) {
+    return p2pConfig.getTrustNodes().contains(address);
+  }
+
+  public long getRejectedCount(Rejection rejection) {
+    return rejected.get(rejection).get();
+  }
+
+  public int getInboundCount(InetAddress address) {
+    return inboundPerIp.getOrDefault(address, 0);
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.xdag.p2p.config.UpgradeController;
+import io.xdag.p2p.message.node.BatchMessage;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Packs small application messages written as {@link Entry} into {@link BatchMessage} frames, so a
+ * burst of messages pays for one frame header, compress envelope and compressor call. A batch is
+ * closed once it holds {@code maxMessages} messages or {@code maxBytes} bytes, before any other
+ * frame is written, and at the end of the event loop tick in which it was flushed.
+ */
+public class BatchEncoder extends ChannelOutboundHandlerAdapter {
+
+  /**
+   * An unencoded application message that may be batched.
+   *
+   * @param data the message, starting with its type
+   * @param priority the priority lane of the message
+   */
+  public record Entry(Bytes data, MessagePriority priority) {}
+
+  private final Channel channel;
+  private final int maxMessages;
+  private final int maxBytes;
+
+  private final List<Bytes> messages = new ArrayList<>();
+  private final List<ChannelPromise> promises = new ArrayList<>();
+  private int pendingBytes;
+  private MessagePriority priority;
+  private boolean flushScheduled;
+
+  public BatchEncoder(Channel channel, int maxMessages, int maxBytes) {
+    this.channel = channel;
+    this.maxMessages = Math.max(1, maxMessages);
+    this.maxBytes = Math.max(1, maxBytes);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+    if (!(msg instanceof Entry entry)) {
+      // keep the order of batched and unbatched frames
+      encode(ctx);
+      ctx.write(msg, promise);
+      return;
+    }
+    messages.add(entry.data());
+    promises.add(promise);
+    pendingBytes += entry.data().size();
+    MessagePriority entryPriority =
+        entry.priority() == null ? MessagePriority.NORMAL : entry.priority();
+    if (priority == null || entryPriority.ordinal() < priority.ordinal()) {
+      priority = entryPriority;
+    }
+    if (messages.size() >= maxMessages || pendingBytes >= maxBytes) {
+      encode(ctx);
+    }
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) {
+    if (flushScheduled) {
+      return;
+    }
+    if (messages.isEmpty()) {
+      ctx.flush();
+      return;
+    }
+    // let writes already queued on the event loop join the batch
+    flushScheduled = true;
+    ctx.executor()
+        .execute(
+            () -> {
+              flushScheduled = false;
+              encode(ctx);
+              ctx.flush();
+            });
+  }
+
+  @Override
+  public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    encode(ctx);
+    super.close(ctx, promise);
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) {
+    failAll(new ClosedChannelException());
+  }
+
+  /** Number of messages waiting for the current batch to be closed. */
+  public int getPendingMessages() {
+    return messages.size();
+  }
+
+  private void encode(ChannelHandlerContext ctx) {
+    if (messages.isEmpty()) {
+      return;
+    }
+    List<ChannelPromise> batchPromises = new ArrayList<>(promises);
+    Bytes data =
+        messages.size() == 1
+            ? messages.get(0)
+            : new BatchMessage(channel.getP2pConfig(), messages).getSendData();
+    MessagePriority batchPriority = priority;
+    messages.clear();
+    promises.clear();
+    pendingBytes = 0;
+    priority = null;
+
+    ByteBuf byteBuf;
+    try {
+      // with a compression stage below, the batch is compressed there like any other frame
+      byteBuf =
+          channel.getCompressionHandler() != null
+              ? Unpooled.wrappedBuffer(data.toArrayUnsafe())
+              : UpgradeController.encodeSendData(
+                  ctx.alloc(),
+                  channel.getVersion(),
+                  data,
+                  channel.getP2pConfig().getCompressionPolicy(),
+                  channel.getCodec());
+    } catch (Exception e) {
+      batchPromises.forEach(p -> p.tryFailure(e));
+      return;
+    }
+    Object frame =
+        channel.getOutboundScheduler() == null
+            ? byteBuf
+            : new PriorityFrame(byteBuf, batchPriority);
+    ctx.write(frame)
+        .addListener(
+            (ChannelFutureListener)
+                future -> {
+                  for (ChannelPromise p : batchPromises) {
+                    if (future.isSuccess()) {
+                      p.trySuccess();
+                    } else {
+                      p.tryFailure(future.cause());
+                    }
+                  }
+                });
+  }
+
+  private void failAll(Throwable cause) {
+    promises.forEach(p -> p.tryFailure(cause));
+    messages.clear();
+    promises.clear();
+    pendingBytes = 0;
+    priority = null;
+  }
+}
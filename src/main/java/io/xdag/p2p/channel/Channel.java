@@ -26,28 +26,41 @@ package io.xdag.p2p.channel;
 import com.google.common.base.Throwables;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.CorruptedFrameException;
-import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.timeout.ReadTimeoutException;
 import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.xdag.p2p.P2pEventHandler;
 import io.xdag.p2p.P2pException;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.config.P2pConstant;
 import io.xdag.p2p.config.UpgradeController;
 import io.xdag.p2p.discover.Node;
+import io.xdag.p2p.handler.node.SessionTickets;
 import io.xdag.p2p.message.node.HelloMessage;
 import io.xdag.p2p.message.node.Message;
 import io.xdag.p2p.stats.TrafficStats;
 import io.xdag.p2p.utils.BytesUtils;
+import io.xdag.p2p.utils.ProtoUtils;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -82,6 +95,9 @@ public class Channel {
   /** Protocol version used by this channel */
   private int version;
 
+  /** Compression codec negotiated in the handshake, null until the handshake finishes */
+  private CompressionCodec codec;
+
   /** Netty channel handler context */
   private ChannelHandlerContext ctx;
 
@@ -124,6 +140,50 @@ public class Channel {
   /** Count of ping messages for latency calculation */
   private long count;
 
+  /** Outbound priority scheduler, null when priority scheduling is disabled */
+  private OutboundScheduler outboundScheduler;
+
+  /** Batch encoder for small application messages, null when batching is disabled */
+  private BatchEncoder batchEncoder;
+
+  /** Bandwidth shaping of application messages, null when the config has no bandwidth policy */
+  private ShapingHandler shapingHandler;
+
+  /** Session ticket to keep once the peer disconnects, null if there is none */
+  private Bytes sessionTicket;
+
+  /** Flag indicating if the channel was closed because the peer misbehaved */
+  private boolean penalized;
+
+  /** Session presented or redeemed in the handshake, null if there is none */
+  private SessionTickets.Session session;
+
+  /** Flag set while the dialing side writes application messages right behind its HELLO */
+  private boolean pipelining;
+
+  /** Flag indicating if the handshake resumed an earlier session of the peer */
+  private boolean resumed;
+
+  /** Inbound message rate limits of this peer, null when the config has no rate limit policy */
+  private InboundRateLimiter inboundRateLimiter;
+
+  /** Flag indicating if reading is paused until a limit of this peer is paid for */
+  private boolean readPaused;
+
+  /** Number of holds that keep reading paused until they are released, event loop only */
+  private int readHolds;
+
+  /** Inbound bytes buffered by the frame decoder, null until the budget tracks this channel */
+  private InboundMemoryBudget.Usage memoryUsage;
+
+  /** Compression stage added after the handshake, null while frames are encoded in place */
+  private CompressionHandler compressionHandler;
+
+  /** Messages of batch delivery handlers received in the current read, in order per handler */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private final Map<P2pEventHandler, List<Bytes>> readBatch = new LinkedHashMap<>();
+
   /**
    * Default constructor for Channel. Initializes a new P2P communication channel with default
    * values.
@@ -144,11 +204,36 @@ public class Channel {
     this.discoveryMode = discoveryMode;
     this.nodeId = nodeId;
     this.isActive = StringUtils.isNotEmpty(nodeId);
+    if (p2pConfig.getRateLimitPolicy() != null) {
+      inboundRateLimiter = new InboundRateLimiter(this, p2pConfig.getRateLimitPolicy());
+    }
     MessageHandler messageHandler = new MessageHandler(p2pConfig, channelManager, this);
+    if (p2pConfig.isFlushConsolidation()) {
+      // flush once per event loop tick, or after the configured number of pending flushes
+      pipeline.addLast(
+          "flushConsolidation",
+          new FlushConsolidationHandler(
+              Math.max(1, p2pConfig.getFlushConsolidationLimit()), true));
+    }
     pipeline.addLast("readTimeoutHandler", new ReadTimeoutHandler(60, TimeUnit.SECONDS));
     pipeline.addLast(TrafficStats.getTcp());
-    pipeline.addLast("protoPrepend", new ProtobufVarint32LengthFieldPrepender());
+    pipeline.addLast("protoPrepend", new P2pProtobufVarint32LengthFieldPrepender());
+    if (p2pConfig.isPriorityScheduling()) {
+      outboundScheduler = new OutboundScheduler(p2pConfig.getMaxInFlightAppBytes());
+      pipeline.addLast("outboundScheduler", outboundScheduler);
+    }
     pipeline.addLast("protoDecode", new P2pProtobufVarint32FrameDecoder(p2pConfig, this));
+    // the compression stage goes here, after the frame decoder and before batching
+    if (p2pConfig.isBatchEnable()) {
+      batchEncoder =
+          new BatchEncoder(this, p2pConfig.getBatchMaxMessages(), p2pConfig.getBatchMaxBytes());
+      pipeline.addLast("batchEncoder", batchEncoder);
+    }
+    if (p2pConfig.getBandwidthPolicy() != null) {
+      // first on the outbound path, where the type and size of each message are still known
+      shapingHandler = new ShapingHandler(this, p2pConfig.getBandwidthPolicy());
+      pipeline.addLast("shaping", shapingHandler);
+    }
     pipeline.addLast("messageHandler", messageHandler);
   }
 
@@ -166,9 +251,13 @@ public class Channel {
       log.warn("Loop in causal chain detected");
     }
     SocketAddress address = ctx.channel().remoteAddress();
-    if (throwable instanceof ReadTimeoutException
-        || throwable instanceof IOException
-        || throwable instanceof CorruptedFrameException) {
+    if (throwable instanceof ReadTimeoutException || throwable instanceof IOException) {
+      // the connection was lost, the peer may resume its session
+      log.warn("Close peer {}, reason: {}", address, throwable.getMessage());
+      close();
+      return;
+    }
+    if (throwable instanceof CorruptedFrameException) {
       log.warn("Close peer {}, reason: {}", address, throwable.getMessage());
     } else if (baseThrowable instanceof P2pException) {
       log.warn(
@@ -179,7 +268,7 @@ public class Channel {
     } else {
       log.error("Close peer {}, exception caught", address, throwable);
     }
-    close();
+    penalize(P2pConstant.DEFAULT_BAN_TIME);
   }
 
   /**
@@ -192,6 +281,42 @@ public class Channel {
     this.node = handshakeMessage.getFrom();
     this.nodeId = node.getHexId(); // update node id from handshake
     this.version = handshakeMessage.getVersion();
+    // a resumed session keeps the codec it negotiated before
+    this.codec =
+        resumed && session != null
+            ? session.codec()
+            : CompressionCodecs.negotiate(
+                p2pConfig.getCompressionCodecs(), handshakeMessage.getCodecs());
+  }
+
+  /**
+   * Mark the handshake as finished. The first time, a compression stage for the negotiated version
+   * and codec is added to the pipeline, if the peer supports compression.
+   *
+   * @param finishHandshake true once the handshake completed
+   */
+  public void setFinishHandshake(boolean finishHandshake) {
+    if (finishHandshake && !this.finishHandshake) {
+      addCompressionHandler();
+    }
+    this.finishHandshake = finishHandshake;
+  }
+
+  private void addCompressionHandler() {
+    if (compressionHandler != null
+        || ctx == null
+        || ctx.pipeline() == null
+        || ctx.pipeline().get("protoDecode") == null
+        || !UpgradeController.supportCompress(version)) {
+      return;
+    }
+    CompressionHandler handler = new CompressionHandler(codec, p2pConfig.getCompressionPolicy());
+    EventExecutorGroup group =
+        channelManager == null || channelManager.getIoResourceManager() == null
+            ? null
+            : channelManager.getIoResourceManager().getCompressionGroup();
+    ctx.pipeline().addAfter(group, "protoDecode", "compression", handler);
+    compressionHandler = handler;
   }
 
   /**
@@ -223,17 +348,24 @@ public class Channel {
     close(P2pConstant.DEFAULT_BAN_TIME);
   }
 
+  /**
+   * Close the channel because the peer misbehaved and ban it for specified time. The peer loses
+   * its session tickets, so the ban also holds when it reconnects.
+   *
+   * @param banTime time in milliseconds to ban the peer
+   */
+  public void penalize(long banTime) {
+    this.penalized = true;
+    close(banTime);
+  }
+
   /**
    * Send a P2P message through this channel.
    *
    * @param message the P2P message to send
    */
   public void send(Message message) {
-    if (message.needToLog()) {
-      log.info("Send message to channel {}, {}", inetSocketAddress, message);
-    } else {
-      log.debug("Send message to channel {}, {}", inetSocketAddress, message);
-    }
+    logSend(message);
     send(message.getSendData());
   }
 
@@ -243,6 +375,97 @@ public class Channel {
    * @param data the data to send as Tuweni Bytes
    */
   public void send(Bytes data) {
+    write(data, true);
+  }
+
+  /**
+   * Send a P2P message only if the outbound queue of this channel is below its high watermark.
+   *
+   * @param message the P2P message to send
+   * @return false if the channel is closed or not writable, the message is dropped in that case
+   */
+  public boolean trySend(Message message) {
+    if (!isWritable()) {
+      return false;
+    }
+    send(message);
+    return true;
+  }
+
+  /**
+   * Send Bytes data only if the outbound queue of this channel is below its high watermark.
+   *
+   * @param data the data to send as Tuweni Bytes
+   * @return false if the channel is closed or not writable, the data is dropped in that case
+   */
+  public boolean trySend(Bytes data) {
+    if (!isWritable()) {
+      return false;
+    }
+    send(data);
+    return true;
+  }
+
+  /**
+   * Check whether the channel is open and its outbound queue is below the high watermark.
+   *
+   * @return true if a message can be sent without growing the queue past the watermark
+   */
+  public boolean isWritable() {
+    return ctx != null && !isDisconnect && ctx.channel().isWritable();
+  }
+
+  /**
+   * Get the number of bytes written to this channel but not yet sent to the socket, as counted
+   * against the write buffer watermarks, i.e. including netty's small per-message overhead.
+   *
+   * @return queued outbound bytes, 0 if the channel is closed
+   */
+  public long getQueuedBytes() {
+    if (ctx == null) {
+      return 0;
+    }
+    ChannelOutboundBuffer buffer = ctx.channel().unsafe().outboundBuffer();
+    return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+  }
+
+  /**
+   * Queue a P2P message without flushing it to the socket. Call {@link #flush()} once a batch of
+   * messages has been written.
+   *
+   * @param message the P2P message to write
+   */
+  public void write(Message message) {
+    logSend(message);
+    write(message.getSendData());
+  }
+
+  /**
+   * Queue Bytes data without flushing it to the socket. Call {@link #flush()} once a batch of
+   * messages has been written.
+   *
+   * @param data the data to write as Tuweni Bytes
+   */
+  public void write(Bytes data) {
+    write(data, false);
+  }
+
+  /** Flush all messages queued by {@link #write(Bytes)} to the socket. */
+  public void flush() {
+    if (ctx != null && !isDisconnect) {
+      ctx.flush();
+    }
+  }
+
+  private void logSend(Message message) {
+    if (message.needToLog()) {
+      log.info("Send message to channel {}, {}", inetSocketAddress, message);
+    } else {
+      log.debug("Send message to channel {}, {}", inetSocketAddress, message);
+    }
+  }
+
+  private void write(Bytes data, boolean flush) {
     try {
       byte type = data.get(0);
       if (isDisconnect) {
@@ -253,31 +476,184 @@ public class Channel {
         return;
       }
 
-      // Apply version-specific encoding if handshake is complete
-      if (finishHandshake) {
-        data = UpgradeController.codeSendData(version, data);
+      Object frame;
+      if (isBatchable(data)) {
+        // encoded together with other small messages by the batch encoder
+        frame = new BatchEncoder.Entry(data, p2pConfig.getMessagePriority(type));
+      } else {
+        // Apply version-specific encoding if handshake is complete, in the compression stage
+        // when the pipeline has one
+        ByteBuf byteBuf;
+        if (finishHandshake && compressionHandler == null) {
+          byteBuf =
+              UpgradeController.encodeSendData(
+                  ctx.alloc(), version, data, p2pConfig.getCompressionPolicy(), codec);
+        } else if (pipelining && type >= 0) {
+          // sent behind the HELLO, in the uncompress envelope every compressing peer accepts
+          byteBuf = ProtoUtils.wrapMessage(ctx.alloc(), data);
+        } else {
+          byteBuf = Unpooled.wrappedBuffer(data.toArrayUnsafe());
+        }
+        frame =
+            outboundScheduler == null
+                ? byteBuf
+                : new PriorityFrame(byteBuf, p2pConfig.getMessagePriority(type));
       }
-
-      ByteBuf byteBuf = Unpooled.wrappedBuffer(data.toArray());
-      ctx.writeAndFlush(byteBuf)
-          .addListener(
-              (ChannelFutureListener)
-                  future -> {
-                    if (!future.isSuccess() && !isDisconnect) {
-                      log.warn(
-                          "Send to {} failed, message-type:{}, cause:{}",
-                          ctx.channel().remoteAddress(),
-                          BytesUtils.byte2int(type),
-                          future.cause().getMessage());
-                    }
-                  });
-      setLastSendTime(System.currentTimeMillis());
+      writeFrame(frame, type, data.size(), flush);
     } catch (Exception e) {
       log.warn("Send message to {} failed, {}", inetSocketAddress, e.getMessage());
       ctx.channel().close();
     }
   }
 
+  /**
+   * Send a frame already encoded for the version of this channel, used to share one encoded frame
+   * between many channels.
+   *
+   * @param encoded the encoded frame, released by this channel
+   * @param type the message type
+   * @param size the message size before compression, charged against the bandwidth limits
+   */
+  void sendEncoded(ByteBuf encoded, byte type, int size) {
+    if (ctx == null || isDisconnect) {
+      encoded.release();
+      return;
+    }
+    MessagePriority priority =
+        outboundScheduler == null ? null : p2pConfig.getMessagePriority(type);
+    Object frame;
+    if (compressionHandler != null) {
+      // passes the compression stage unchanged, in order with the frames it compresses
+      frame = new EncodedFrame(encoded, priority);
+    } else {
+      frame = priority == null ? encoded : new PriorityFrame(encoded, priority);
+    }
+    writeFrame(frame, type, size, true);
+  }
+
+  private void writeFrame(Object frame, byte type, int size, boolean flush) {
+    // always tagged, whether a frame must wait is only known on the event loop
+    if (shapingHandler != null) {
+      frame = new ShapingHandler.Frame(frame, type, size);
+    }
+    ChannelFuture future = flush ? ctx.writeAndFlush(frame) : ctx.write(frame);
+    future.addListener(
+        (ChannelFutureListener)
+            f -> {
+              if (!f.isSuccess() && !isDisconnect) {
+                log.warn(
+                    "Send to {} failed, message-type:{}, cause:{}",
+                    ctx.channel().remoteAddress(),
+                    BytesUtils.byte2int(type),
+                    f.cause().getMessage());
+              }
+            });
+    setLastSendTime(System.currentTimeMillis());
+  }
+
+  private boolean isBatchable(Bytes data) {
+    return batchEncoder != null
+        && finishHandshake
+        && data.get(0) >= 0
+        && data.size() <= p2pConfig.getBatchMaxMessageSize()
+        && UpgradeController.supportBatch(version);
+  }
+
+  /**
+   * Hold a received message until the current read completes, for a handler with batch delivery.
+   *
+   * @param handler the handler of the message
+   * @param data the message, starting with its type
+   */
+  public void addToReadBatch(P2pEventHandler handler, Bytes data) {
+    readBatch.computeIfAbsent(handler, h -> new ArrayList<>()).add(data);
+  }
+
+  /**
+   * Deliver the messages held during the current read, one {@link
+   * P2pEventHandler#onMessages(Channel, List)} call per handler.
+   */
+  public void flushReadBatch() {
+    if (readBatch.isEmpty()) {
+      return;
+    }
+    List<Map.Entry<P2pEventHandler, List<Bytes>>> batches = new ArrayList<>(readBatch.entrySet());
+    readBatch.clear();
+    for (Map.Entry<P2pEventHandler, List<Bytes>> batch : batches) {
+      batch.getKey().onMessages(this, batch.getValue());
+    }
+  }
+
+  /**
+   * Stop reading from the peer for a while, used to slow down a peer that is over a limit. Calls
+   * while reading is paused are ignored.
+   *
+   * @param nanos how long to pause, in nanoseconds
+   */
+  public void pauseReading(long nanos) {
+    if (ctx == null || readPaused) {
+      return;
+    }
+    readPaused = true;
+    ctx.channel().config().setAutoRead(false);
+    log.debug("Pause reading from {} for {} ms", inetSocketAddress, nanos / 1_000_000);
+    ctx.executor().schedule(this::resumeReading, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void resumeReading() {
+    readPaused = false;
+    restoreReading();
+  }
+
+  /**
+   * Keep reading from the peer paused until {@link #releaseReading()} is called, used while the
+   * messages of the peer cannot be processed fast enough. Holds may be taken by several owners and
+   * reading resumes once all of them are released.
+   */
+  public void holdReading() {
+    if (ctx == null) {
+      return;
+    }
+    if (!ctx.executor().inEventLoop()) {
+      ctx.executor().execute(this::holdReading);
+      return;
+    }
+    if (readHolds++ == 0) {
+      ctx.channel().config().setAutoRead(false);
+      log.debug("Hold reading from {}", inetSocketAddress);
+    }
+  }
+
+  /** Release a hold taken by {@link #holdReading()}, may be called from any thread. */
+  public void releaseReading() {
+    if (ctx == null) {
+      return;
+    }
+    if (!ctx.executor().inEventLoop()) {
+      ctx.executor().execute(this::releaseReading);
+      return;
+    }
+    if (readHolds > 0 && --readHolds == 0) {
+      log.debug("Release reading from {}", inetSocketAddress);
+      restoreReading();
+    }
+  }
+
+  /** Whether reading is paused or held by this channel, only meaningful on the event loop. */
+  public boolean isReadingHeld() {
+    return readPaused || readHolds > 0;
+  }
+
+  private void restoreReading() {
+    if (isReadingHeld()) {
+      return;
+    }
+    // the inbound memory budget resumes the channels it paused itself
+    if (memoryUsage == null || !memoryUsage.isPaused()) {
+      ctx.channel().config().setAutoRead(true);
+    }
+  }
+
   /**
    * Update the average latency for this channel.
    *
@@ -25,13 +25,20 @@ package io.xdag.p2p.channel;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.xdag.p2p.P2pEventHandler;
 import io.xdag.p2p.P2pException;
 import io.xdag.p2p.P2pException.TypeEnum;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.config.P2pConstant;
+import io.xdag.p2p.config.UpgradeController;
 import io.xdag.p2p.discover.Node;
 import io.xdag.p2p.discover.NodeManager;
 import io.xdag.p2p.discover.dns.DnsManager;
@@ -39,18 +46,25 @@ import io.xdag.p2p.handler.node.ConnPoolHandler;
 import io.xdag.p2p.handler.node.HandshakeHandler;
 import io.xdag.p2p.handler.node.KeepAliveHandler;
 import io.xdag.p2p.handler.node.NodeDetectHandler;
+import io.xdag.p2p.handler.node.SessionTickets;
+import io.xdag.p2p.message.node.BatchMessage;
 import io.xdag.p2p.message.node.DisconnectCode;
 import io.xdag.p2p.message.node.Message;
+import io.xdag.p2p.message.node.MessageType;
 import io.xdag.p2p.message.node.P2pDisconnectMessage;
 import io.xdag.p2p.proto.Connect.DisconnectReason;
 import io.xdag.p2p.utils.BytesUtils;
 import io.xdag.p2p.utils.NetUtils;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -90,9 +104,21 @@ public class ChannelManager {
   /** Handshake handler for connection establishment */
   private HandshakeHandler handshakeHandler;
 
+  /** Event loops shared by the peer server and the peer client */
+  private final IoResourceManager ioResourceManager;
+
+  /** Whether the event loops were created by this manager and must be closed by it */
+  private final boolean ownsIoResources;
+
   /** Map of active channels indexed by socket address */
   private final Map<InetSocketAddress, Channel> channels = new ConcurrentHashMap<>();
 
+  /** Budget for inbound bytes buffered across all channels */
+  private final InboundMemoryBudget inboundMemoryBudget;
+
+  /** Tickets of sessions that reconnecting peers may resume */
+  private final SessionTickets sessionTickets;
+
   /** Cache of banned nodes with ban timestamps */
   private final Cache<InetAddress, Long> bannedNodes;
 
@@ -104,17 +130,38 @@ public class ChannelManager {
 
   /** Private constructor to prevent instantiation of utility class. */
   public ChannelManager(P2pConfig p2pConfig, NodeManager nodeManager, DnsManager dnsManager) {
+    this(p2pConfig, nodeManager, dnsManager, null);
+  }
+
+  /**
+   * Create a channel manager running its peers on the given event loops.
+   *
+   * @param p2pConfig the p2p config
+   * @param nodeManager the node manager
+   * @param dnsManager the dns manager
+   * @param ioResourceManager shared event loops, null to create and own a private set
+   */
+  public ChannelManager(
+      P2pConfig p2pConfig,
+      NodeManager nodeManager,
+      DnsManager dnsManager,
+      IoResourceManager ioResourceManager) {
     this.p2pConfig = p2pConfig;
     this.nodeManager = nodeManager;
     this.dnsManager = dnsManager;
+    this.ownsIoResources = ioResourceManager == null;
+    this.ioResourceManager =
+        ioResourceManager == null ? new IoResourceManager(p2pConfig) : ioResourceManager;
     this.bannedNodes = CacheBuilder.newBuilder().maximumSize(2000).build(); // ban timestamp
+    this.inboundMemoryBudget = new InboundMemoryBudget(p2pConfig.getInboundMemoryBudget());
+    this.sessionTickets = new SessionTickets(p2pConfig);
   }
 
   /** Initialize the channel manager and all its components. */
   public void init() {
     isInit = true;
-    peerServer = new PeerServer(p2pConfig, this);
-    peerClient = new PeerClient(p2pConfig, this);
+    peerServer = new PeerServer(p2pConfig, this, ioResourceManager);
+    peerClient = new PeerClient(p2pConfig, this, ioResourceManager);
 
     keepAliveHandler = new KeepAliveHandler(p2pConfig, this);
     connPoolHandler = new ConnPoolHandler(p2pConfig, this, nodeManager, dnsManager);
@@ -152,6 +199,21 @@ public class ChannelManager {
     return peerClient.connect(node, future);
   }
 
+  /**
+   * Notify the registered handlers that a connected channel crossed its write buffer watermarks.
+   *
+   * @param channel the channel
+   * @param writable whether the channel is writable now
+   */
+  public void notifyWritabilityChanged(Channel channel, boolean writable) {
+    if (channel.getInetSocketAddress() == null
+        || channels.get(channel.getInetSocketAddress()) != channel) {
+      return;
+    }
+    log.debug("Channel {} writable: {}", channel.getInetSocketAddress(), writable);
+    p2pConfig.handlerList.forEach(h -> h.onWritabilityChanged(channel, writable));
+  }
+
   /**
    * Notify that a channel has been disconnected and clean up resources.
    *
@@ -163,6 +225,13 @@ public class ChannelManager {
       return;
     }
     channels.remove(channel.getInetSocketAddress());
+    sessionTickets.onDisconnect(channel);
+    try {
+      // deliver the messages received before the channel closed ahead of onDisconnect
+      channel.flushReadBatch();
+    } catch (Exception e) {
+      log.warn("Deliver messages of {} failed", channel.getInetSocketAddress(), e);
+    }
     p2pConfig.handlerList.forEach(h -> h.onDisconnect(channel));
     InetAddress inetAddress = channel.getInetAddress();
     if (inetAddress != null) {
@@ -199,6 +268,10 @@ public class ChannelManager {
         channel.isActive(),
         channel.isTrustPeer());
 
+    if (channel.isResumed()) {
+      return resumePeer(channel);
+    }
+
     if (!channel.isActive() && !channel.isTrustPeer()) {
       InetAddress inetAddress = channel.getInetAddress();
       if (bannedNodes.getIfPresent(inetAddress) != null
@@ -239,12 +312,48 @@ public class ChannelManager {
       }
     }
 
+    if (channel.isActive() && connPoolHandler != null && !connPoolHandler.keepDialedPeer(channel)) {
+      log.info("Enough peers, disconnect over-dialed peer {}", channel);
+      return DisconnectCode.TOO_MANY_PEERS;
+    }
+
     channels.put(channel.getInetSocketAddress(), channel);
 
     log.info("Add peer {}, total channels: {}", channel.getInetSocketAddress(), channels.size());
     return DisconnectCode.NORMAL;
   }
 
+  /**
+   * Add a peer resuming its session. It passed the connection limits and duplicate checks when the
+   * session started, so only a ban longer than the one of an ordinary disconnect refuses it, and
+   * the channel of the session is replaced if this side still sees it open.
+   *
+   * @param channel the resumed channel
+   * @return disconnect code indicating the result
+   */
+  private DisconnectCode resumePeer(Channel channel) {
+    if (!channel.isActive() && !channel.isTrustPeer()) {
+      Long bannedUntil = bannedNodes.getIfPresent(channel.getInetAddress());
+      if (bannedUntil != null
+          && bannedUntil - System.currentTimeMillis() > P2pConstant.DEFAULT_BAN_TIME) {
+        log.info("Peer {} is banned, refuse to resume its session", channel);
+        return DisconnectCode.TIME_BANNED;
+      }
+    }
+
+    Channel stale = channel.getSession() == null ? null : channel.getSession().channel();
+    if (stale != null) {
+      log.info("Peer {} resumed its session, closing stale channel {}", channel, stale);
+      // removed right away, the close completes on the event loop of the stale channel
+      channels.remove(stale.getInetSocketAddress(), stale);
+      stale.close();
+    }
+    channels.put(channel.getInetSocketAddress(), channel);
+
+    log.info("Resume peer {}, total channels: {}", channel.getInetSocketAddress(), channels.size());
+    return DisconnectCode.NORMAL;
+  }
+
   /**
    * Convert a disconnect code to a disconnect reason.
    *
@@ -312,6 +421,9 @@ public class ChannelManager {
     peerServer.close();
     peerClient.close();
     nodeDetectHandler.close();
+    if (ownsIoResources) {
+      ioResourceManager.close();
+    }
   }
 
   /**
@@ -332,6 +444,11 @@ public class ChannelManager {
       return;
     }
 
+    if (firstByte == MessageType.BATCH.getType()) {
+      processMessage(channel, Unpooled.wrappedBuffer(data.toArrayUnsafe()));
+      return;
+    }
+
     Message message = Message.parse(p2pConfig, data);
 
     if (message.needToLog()) {
@@ -359,6 +476,58 @@ public class ChannelManager {
     }
   }
 
+  /**
+   * Process a received message without copying application messages. Node messages are parsed
+   * from a copy, application messages are handed to {@link P2pEventHandler#onMessage(Channel,
+   * ByteBuf)} as a read-only retained slice that is released once the handler returns.
+   *
+   * @param channel the channel that received the message
+   * @param data the message data, still owned by the caller
+   * @throws P2pException if message processing fails
+   */
+  public void processMessage(Channel channel, ByteBuf data) throws P2pException {
+    if (data == null || !data.isReadable()) {
+      throw new P2pException(TypeEnum.EMPTY_MESSAGE, "");
+    }
+
+    byte firstByte = data.getByte(data.readerIndex());
+    if (firstByte == MessageType.BATCH.getType()) {
+      for (ByteBuf message : BatchMessage.unpack(data)) {
+        processMessage(channel, message);
+      }
+      return;
+    }
+    if (firstByte < 0) {
+      // messages held for batch delivery were received first, a node message may close the channel
+      channel.flushReadBatch();
+      processMessage(channel, Bytes.wrap(ByteBufUtil.getBytes(data)));
+      return;
+    }
+
+    if (channel.getInboundRateLimiter() != null
+        && !channel.getInboundRateLimiter().admit(firstByte)) {
+      return;
+    }
+    if (channel.getShapingHandler() != null) {
+      channel.getShapingHandler().onRead(firstByte, data.readableBytes());
+    }
+    P2pEventHandler handler = prepareHandler(channel, firstByte);
+    if (handler == null) {
+      return;
+    }
+    if (handler.isBatchDelivery()) {
+      // delivered when the read completes, see MessageHandler#channelReadComplete
+      channel.addToReadBatch(handler, Bytes.wrap(ByteBufUtil.getBytes(data)));
+      return;
+    }
+    ByteBuf view = data.retainedSlice().asReadOnly();
+    try {
+      handler.onMessage(channel, view);
+    } finally {
+      view.release();
+    }
+  }
+
   /**
    * Handle message processing and channel handshake completion.
    *
@@ -367,14 +536,35 @@ public class ChannelManager {
    * @throws P2pException if message processing fails
    */
   private void handMessage(Channel channel, Bytes data) throws P2pException {
-    P2pEventHandler handler = p2pConfig.handlerMap.get(data.get(0));
+    P2pEventHandler handler = prepareHandler(channel, data.get(0));
+    if (handler != null) {
+      handler.onMessage(channel, data);
+    }
+  }
+
+  /**
+   * Look up the handler of an application message and complete the channel handshake on the first
+   * one.
+   *
+   * @param channel the channel that received the message
+   * @param type the message type
+   * @return the handler, or null if the channel was closed instead
+   * @throws P2pException if no handler is registered for the type
+   */
+  private P2pEventHandler prepareHandler(Channel channel, byte type) throws P2pException {
+    P2pEventHandler handler = p2pConfig.getHandler(type);
     if (handler == null) {
-      throw new P2pException(P2pException.TypeEnum.NO_SUCH_MESSAGE, "type:" + data.get(0));
+      throw new P2pException(P2pException.TypeEnum.NO_SUCH_MESSAGE, "type:" + type);
+    }
+    if (channel.isDisconnect()) {
+      // pipelined behind a HELLO that was rejected, or read after the channel was closed
+      log.debug("Drop message type {} from closed channel {}", type, channel);
+      return null;
     }
     if (channel.isDiscoveryMode()) {
       channel.send(new P2pDisconnectMessage(p2pConfig, DisconnectReason.DISCOVER_MODE));
       channel.getCtx().close();
-      return;
+      return null;
     }
 
     if (!channel.isFinishHandshake()) {
@@ -384,12 +574,81 @@ public class ChannelManager {
         DisconnectReason disconnectReason = getDisconnectReason(code);
         channel.send(new P2pDisconnectMessage(p2pConfig, disconnectReason));
         channel.getCtx().close();
-        return;
+        return null;
       }
       p2pConfig.handlerList.forEach(h -> h.onConnect(channel));
     }
+    return handler;
+  }
 
-    handler.onMessage(channel, data);
+  /**
+   * Send a message to all channels accepted by the filter, see {@link #broadcast(Bytes,
+   * Collection)}.
+   *
+   * @param data the message, starting with its type
+   * @param filter selects the target channels
+   * @return the number of channels the message was written to
+   */
+  public int broadcast(Bytes data, Predicate<Channel> filter) {
+    return broadcast(data, channels.values().stream().filter(filter).toList());
+  }
+
+  /**
+   * Send a message to a group of channels, compressing and encoding it once per negotiated codec.
+   * Every target gets a retained duplicate of the encoded frame for its codec, so broadcasting
+   * costs one compression per codec however many peers there are. Channels that have not finished
+   * the handshake or are closed are skipped.
+   *
+   * @param data the message, starting with its type
+   * @param targets the target channels
+   * @return the number of channels the message was written to
+   */
+  public int broadcast(Bytes data, Collection<Channel> targets) {
+    if (data == null || data.isEmpty()) {
+      return 0;
+    }
+    byte type = data.get(0);
+    Map<CompressionCodec, ByteBuf> compressed = new IdentityHashMap<>();
+    ByteBuf plain = null;
+    int sent = 0;
+    try {
+      for (Channel channel : targets) {
+        if (!channel.isFinishHandshake() || channel.isDisconnect()) {
+          continue;
+        }
+        ByteBuf frame;
+        if (UpgradeController.supportCompress(channel.getVersion())) {
+          CompressionCodec codec =
+              channel.getCodec() == null ? CompressionCodecs.SNAPPY : channel.getCodec();
+          frame = compressed.get(codec);
+          if (frame == null) {
+            frame =
+                UpgradeController.encodeSendData(
+                    ByteBufAllocator.DEFAULT,
+                    channel.getVersion(),
+                    data,
+                    p2pConfig.getCompressionPolicy(),
+                    codec);
+            compressed.put(codec, frame);
+          }
+        } else {
+          if (plain == null) {
+            plain = Unpooled.wrappedBuffer(data.toArrayUnsafe());
+          }
+          frame = plain;
+        }
+        channel.sendEncoded(frame.retainedDuplicate(), type, data.size());
+        sent++;
+      }
+    } catch (IOException e) {
+      log.warn("Broadcast message type {} failed, {}", type, e.getMessage());
+    } finally {
+      compressed.values().forEach(ByteBuf::release);
+      if (plain != null) {
+        plain.release();
+      }
+    }
+    return sent;
   }
 
   /**
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.config.CompressionPolicy;
+import io.xdag.p2p.config.UpgradeController;
+import io.xdag.p2p.utils.ProtoUtils;
+import lombok.Getter;
+
+/**
+ * Pipeline stage compressing outbound frames and uncompressing inbound frames of a peer whose
+ * negotiated version supports compression. It is added between the frame decoder and the message
+ * handler once the handshake completes, so the version and codec are fixed for its lifetime and
+ * frames are never copied into byte arrays.
+ *
+ * <p>Outbound it accepts raw messages as a {@link ByteBuf} or a {@link PriorityFrame}, which keep
+ * their shape, and {@link EncodedFrame}s, which are forwarded unchanged. The stage may be bound to
+ * its own EventExecutorGroup so compressing large messages does not stall the event loop shared
+ * with other peers; netty keeps the events of one channel in order across the executors.
+ */
+public class CompressionHandler extends ChannelDuplexHandler {
+
+  @Getter private final CompressionCodec codec;
+
+  private final CompressionPolicy policy;
+
+  public CompressionHandler(CompressionCodec codec, CompressionPolicy policy) {
+    this.codec = codec;
+    this.policy = policy;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    if (!(msg instanceof ByteBuf frame)) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+    ByteBuf data;
+    try {
+      data = ProtoUtils.uncompressMessage(ctx.alloc(), frame);
+    } catch (Exception e) {
+      ctx.fireExceptionCaught(e);
+      return;
+    } finally {
+      frame.release();
+    }
+    ctx.fireChannelRead(data);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+    Object out;
+    try {
+      if (msg instanceof EncodedFrame frame) {
+        out =
+            frame.getPriority() == null
+                ? frame.content()
+                : new PriorityFrame(frame.content(), frame.getPriority());
+      } else if (msg instanceof PriorityFrame frame) {
+        out = new PriorityFrame(compress(ctx, frame.content()), frame.getPriority());
+        frame.release();
+      } else if (msg instanceof ByteBuf raw) {
+        out = compress(ctx, raw);
+        raw.release();
+      } else {
+        out = msg;
+      }
+    } catch (Exception e) {
+      ReferenceCountUtil.release(msg);
+      promise.setFailure(e);
+      return;
+    }
+    ctx.write(out, promise);
+  }
+
+  private ByteBuf compress(ChannelHandlerContext ctx, ByteBuf raw) throws Exception {
+    return UpgradeController.compressSendData(ctx.alloc(), raw, policy, codec);
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Races the addresses of a dual stack node in the manner of RFC 8305. The first address is dialed
+ * at once, the next one after the connection attempt delay or as soon as the previous attempt
+ * fails. The first socket to connect wins; pending attempts are cancelled and sockets that connect
+ * later are closed.
+ *
+ * <p>Every attempt carries a gate as its first handler. The gate holds back {@code channelActive}
+ * until the attempt has won, so a losing socket never starts a handshake and closing it does not
+ * count as a peer disconnect.
+ */
+@Slf4j(topic = "net")
+final class ConnectRace {
+
+  private final InetSocketAddress[] addresses;
+  private final BiFunction<InetSocketAddress, ChannelHandler, ChannelFuture> dialer;
+  private final AddressFamilyStats stats;
+  private final EventExecutor executor;
+  private final long delayMillis;
+
+  private final ChannelFuture[] attempts;
+  private int started;
+  private int failed;
+  private Throwable lastCause;
+  private Channel winner;
+  private ScheduledFuture<?> fallbackTimer;
+  private RacePromise promise;
+
+  /**
+   * @param addresses the addresses in dial order
+   * @param dialer connects to an address with the given gate as first handler, may return null
+   * @param stats per family outcomes, updated for every attempt
+   * @param executor schedules the next attempt and notifies listeners of the race
+   * @param delayMillis the connection attempt delay
+   */
+  ConnectRace(
+      InetSocketAddress[] addresses,
+      BiFunction<InetSocketAddress, ChannelHandler, ChannelFuture> dialer,
+      AddressFamilyStats stats,
+      EventExecutor executor,
+      long delayMillis) {
+    this.addresses = addresses;
+    this.dialer = dialer;
+    this.stats = stats;
+    this.executor = executor;
+    this.delayMillis = delayMillis;
+    this.attempts = new ChannelFuture[addresses.length];
+  }
+
+  /**
+   * Start the race.
+   *
+   * @return a future completed with the winning channel, or null if no attempt could be started
+   */
+  synchronized ChannelFuture start() {
+    dialNext();
+    return promise;
+  }
+
+  private void dialNext() {
+    while (winner == null && started < addresses.length) {
+      InetSocketAddress address = addresses[started];
+      int index = started++;
+      stats.recordAttempt(address);
+      ChannelFuture attempt = dialer.apply(address, new Gate());
+      if (attempt == null) {
+        stats.recordFailure(address);
+        failed++;
+        continue;
+      }
+      attempts[index] = attempt;
+      if (promise == null) {
+        promise = new RacePromise(attempt.channel(), executor);
+      }
+      if (started < addresses.length) {
+        fallbackTimer = executor.schedule(this::onFallbackTimer, delayMillis, TimeUnit.MILLISECONDS);
+      }
+      attempt.addListener(f -> onAttemptComplete(address, (ChannelFuture) f));
+      return;
+    }
+    failIfExhausted();
+  }
+
+  private synchronized void onFallbackTimer() {
+    fallbackTimer = null;
+    if (winner == null && started < addresses.length) {
+      log.debug("No connection after {} ms, dial {}", delayMillis, addresses[started]);
+      dialNext();
+    }
+  }
+
+  private synchronized void onAttemptComplete(InetSocketAddress address, ChannelFuture future) {
+    if (future.isSuccess()) {
+      stats.recordSuccess(address);
+      if (!claim(future.channel())) {
+        future.channel().close();
+      }
+      return;
+    }
+    if (future.isCancelled()) {
+      return;
+    }
+    stats.recordFailure(address);
+    failed++;
+    lastCause = future.cause();
+    if (winner == null) {
+      // a failed attempt does not wait for the delay, the next address is dialed at once
+      cancelFallbackTimer();
+      dialNext();
+    }
+  }
+
+  private void failIfExhausted() {
+    if (winner == null && promise != null && started == addresses.length && failed == started) {
+      promise.tryFailure(lastCause);
+    }
+  }
+
+  /**
+   * Make a connected channel the winner if there is none yet.
+   *
+   * @param channel a channel whose connect succeeded
+   * @return true if the channel is the winner
+   */
+  synchronized boolean claim(Channel channel) {
+    if (winner != null) {
+      return winner == channel;
+    }
+    winner = channel;
+    promise.winner = channel;
+    cancelFallbackTimer();
+    for (ChannelFuture attempt : attempts) {
+      if (attempt != null && attempt.channel() != channel && !attempt.cancel(false)) {
+        attempt.channel().close();
+      }
+    }
+    promise.trySuccess();
+    return true;
+  }
+
+  private void cancelFallbackTimer() {
+    if (fallbackTimer != null) {
+      fallbackTimer.cancel(false);
+      fallbackTimer = null;
+    }
+  }
+
+  /** Passes {@code channelActive} on for the winner and closes every other attempt */
+  private final class Gate extends ChannelInboundHandlerAdapter {
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+      if (claim(ctx.channel())) {
+        ctx.fireChannelActive();
+        ctx.pipeline().remove(this);
+      } else {
+        ctx.close();
+      }
+    }
+  }
+
+  /** Reports the winner as its channel once the race is decided */
+  private static final class RacePromise extends DefaultChannelPromise {
+
+    private volatile Channel winner;
+
+    private RacePromise(Channel first, EventExecutor executor) {
+      super(first, executor);
+    }
+
+    @Override
+    public Channel channel() {
+      Channel channel = winner;
+      return channel != null ? channel : super.channel();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Process-wide budget for inbound bytes buffered by the frame decoders of all TCP channels.
+ *
+ * <p>When the total passes the cap, reading is paused on the heaviest channel while other running
+ * channels still hold bytes that will drain. Once the total falls to three quarters of the cap all
+ * paused channels resume. If only paused channels hold bytes, the heaviest one is resumed so its
+ * pending frame can complete, which makes the cap a soft limit of at most one extra frame.
+ *
+ * <p>Each channel keeps its own {@link Usage} and adds its changes to an atomic total, so reads
+ * under the cap take no lock. Only reads over the cap or while channels are paused rebalance under
+ * the lock of the budget.
+ */
+@Slf4j(topic = "net")
+public class InboundMemoryBudget {
+
+  private final long capacity;
+  private final long lowWaterMark;
+
+  private final Set<Usage> usages = ConcurrentHashMap.newKeySet();
+  private final AtomicLong totalBytes = new AtomicLong();
+  private final AtomicInteger pausedCount = new AtomicInteger();
+
+  /**
+   * @param capacity the maximum number of buffered inbound bytes, 0 or negative disables the budget
+   */
+  public InboundMemoryBudget(long capacity) {
+    this.capacity = capacity;
+    this.lowWaterMark = capacity / 4 * 3;
+  }
+
+  public boolean isEnabled() {
+    return capacity > 0;
+  }
+
+  /**
+   * Start tracking the bytes buffered by a channel.
+   *
+   * @param channel the netty channel
+   * @return the usage of the channel, updated by the event loop of the channel
+   */
+  public Usage register(io.netty.channel.Channel channel) {
+    return register(channel, () -> false);
+  }
+
+  /**
+   * Start tracking the bytes buffered by a channel whose reading may also be held by its owner.
+   *
+   * @param channel the netty channel
+   * @param readingHeld whether the owner keeps reading paused, called on the event loop of the
+   *     channel before the budget resumes it
+   * @return the usage of the channel, updated by the event loop of the channel
+   */
+  public Usage register(io.netty.channel.Channel channel, BooleanSupplier readingHeld) {
+    Usage usage = new Usage(channel, readingHeld);
+    if (isEnabled()) {
+      usages.add(usage);
+    }
+    return usage;
+  }
+
+  public long getTotalBytes() {
+    return totalBytes.get();
+  }
+
+  public int getPausedCount() {
+    return pausedCount.get();
+  }
+
+  private void onUpdate(long total) {
+    // pausing and resuming are the only transitions that need the lock
+    if (total > capacity || pausedCount.get() > 0) {
+      synchronized (this) {
+        while (rebalance()) {
+          // a pause races with updates that skipped the lock, look again until nothing pauses
+        }
+      }
+    }
+  }
+
+  /** Pause or resume channels for the current total, true when a channel was paused. */
+  private boolean rebalance() {
+    long total = totalBytes.get();
+    if (total <= lowWaterMark) {
+      for (Usage usage : usages) {
+        if (usage.paused) {
+          resume(usage, total);
+        }
+      }
+      return false;
+    }
+
+    Usage heaviestRunning = null;
+    Usage heaviestPaused = null;
+    long runningBytes = 0;
+    for (Usage usage : usages) {
+      long bytes = usage.bytes;
+      if (usage.paused) {
+        if (heaviestPaused == null || bytes > heaviestPaused.bytes) {
+          heaviestPaused = usage;
+        }
+      } else {
+        runningBytes += bytes;
+        if (heaviestRunning == null || bytes > heaviestRunning.bytes) {
+          heaviestRunning = usage;
+        }
+      }
+    }
+
+    if (total > capacity
+        && heaviestRunning != null
+        && heaviestRunning.bytes > 0
+        && runningBytes > heaviestRunning.bytes) {
+      pause(heaviestRunning, total);
+      return true;
+    } else if (runningBytes == 0 && heaviestPaused != null) {
+      // nothing left that can drain, let the heaviest channel finish its frame
+      resume(heaviestPaused, total);
+    }
+    return false;
+  }
+
+  private void pause(Usage usage, long total) {
+    usage.paused = true;
+    pausedCount.incrementAndGet();
+    usage.channel.config().setAutoRead(false);
+    log.debug(
+        "Pause reading from {}, buffered {} bytes, total {} bytes",
+        usage.channel.remoteAddress(),
+        usage.bytes,
+        total);
+  }
+
+  private void resume(Usage usage, long total) {
+    usage.paused = false;
+    pausedCount.decrementAndGet();
+    log.debug("Resume reading from {}, total {} bytes", usage.channel.remoteAddress(), total);
+    io.netty.channel.EventLoop eventLoop = usage.channel.eventLoop();
+    if (eventLoop.inEventLoop()) {
+      usage.resumeReading();
+    } else {
+      eventLoop.execute(usage::resumeReading);
+    }
+  }
+
+  /** Bytes buffered by one channel, kept by the channel itself. */
+  public final class Usage {
+    private final io.netty.channel.Channel channel;
+    private final BooleanSupplier readingHeld;
+    private volatile long bytes;
+    private volatile boolean paused;
+    private boolean released;
+
+    private Usage(io.netty.channel.Channel channel, BooleanSupplier readingHeld) {
+      this.channel = channel;
+      this.readingHeld = readingHeld;
+    }
+
+    /**
+     * Record the number of bytes currently buffered by the channel and pause or resume reads to
+     * keep the total under the cap. Called on the event loop of the channel.
+     *
+     * @param bufferedBytes bytes held by the channel after its last read
+     */
+    public void update(long bufferedBytes) {
+      if (!isEnabled() || released) {
+        return;
+      }
+      long delta = bufferedBytes - bytes;
+      bytes = bufferedBytes;
+      onUpdate(totalBytes.addAndGet(delta));
+    }
+
+    /** Forget the closed channel and give its bytes back to the budget. */
+    public void release() {
+      if (!isEnabled() || released) {
+        return;
+      }
+      released = true;
+      usages.remove(this);
+      long delta = -bytes;
+      bytes = 0;
+      synchronized (InboundMemoryBudget.this) {
+        if (paused) {
+          paused = false;
+          pausedCount.decrementAndGet();
+        }
+      }
+      onUpdate(totalBytes.addAndGet(delta));
+    }
+
+    /** Whether reading from the channel is paused by the budget. */
+    public boolean isPaused() {
+      return paused;
+    }
+
+    private void resumeReading() {
+      // paused again or held by the channel since the budget let it go
+      if (!paused && !readingHeld.getAsBoolean()) {
+        channel.config().setAutoRead(true);
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.xdag.p2p.config.RateLimitPolicy;
+import io.xdag.p2p.config.RateLimitPolicy.Limit;
+import io.xdag.p2p.utils.BytesUtils;
+import io.xdag.p2p.utils.TokenBucket;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies the {@link RateLimitPolicy} to the messages received from one peer. Buckets are created
+ * on the first message of a limited type and rebuilt when the limit of the type changes. Only
+ * called from the event loop of the channel.
+ */
+@Slf4j(topic = "net")
+public class InboundRateLimiter {
+
+  private final Channel channel;
+  private final RateLimitPolicy policy;
+  private final TokenBucket[] buckets = new TokenBucket[256];
+  private final Limit[] applied = new Limit[256];
+
+  public InboundRateLimiter(Channel channel, RateLimitPolicy policy) {
+    this.channel = channel;
+    this.policy = policy;
+  }
+
+  /**
+   * Check a received message against the limit of its type and take the action of the limit if it
+   * is exceeded.
+   *
+   * @param type the message type
+   * @return true if the message should be dispatched
+   */
+  public boolean admit(byte type) {
+    Limit limit = policy.getLimit(type);
+    if (limit == null) {
+      return true;
+    }
+    TokenBucket bucket = bucket(type, limit);
+    if (limit.action() == RateLimitPolicy.Action.DELAY) {
+      long wait = bucket.reserve(1);
+      if (wait > 0) {
+        policy.record(type, limit.action());
+        channel.pauseReading(wait);
+      }
+      return true;
+    }
+    if (bucket.tryAcquire(1)) {
+      return true;
+    }
+    policy.record(type, limit.action());
+    if (limit.action() == RateLimitPolicy.Action.DISCONNECT) {
+      if (!channel.isDisconnect()) {
+        log.warn(
+            "Disconnect {}, message type {} over its rate limit",
+            channel.getInetSocketAddress(),
+            BytesUtils.byte2int(type));
+        channel.penalize(policy.getBanTime());
+      }
+    } else {
+      log.debug(
+          "Drop message type {} from {} over its rate limit",
+          BytesUtils.byte2int(type),
+          channel.getInetSocketAddress());
+    }
+    return false;
+  }
+
+  private TokenBucket bucket(byte type, Limit limit) {
+    int index = type & 0xFF;
+    if (applied[index] != limit) {
+      buckets[index] = new TokenBucket(limit.rate(), limit.burst());
+      applied[index] = limit;
+    }
+    return buckets[index];
+  }
+}
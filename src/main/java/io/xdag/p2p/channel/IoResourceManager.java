@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.xdag.p2p.config.P2pConfig;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * Owner of the Netty event loop groups shared by the TCP server, the TCP client and the UDP
+ * discovery server. Groups are created lazily on first use with the transport and thread counts
+ * from {@link P2pConfig}, and are released together by {@link #close()}.
+ *
+ * <p>In single event loop mode every component runs on the same one-thread group, which suits
+ * small sidecar deployments.
+ */
+@Slf4j(topic = "net")
+public class IoResourceManager {
+
+  private final P2pConfig p2pConfig;
+
+  @Getter private final TransportMode transport;
+
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+  private EventLoopGroup udpGroup;
+  private EventExecutorGroup compressionGroup;
+
+  public IoResourceManager(P2pConfig p2pConfig) {
+    this.p2pConfig = p2pConfig;
+    this.transport = TransportMode.resolve(p2pConfig.getTransportMode());
+  }
+
+  /** Group accepting inbound TCP connections. */
+  public synchronized EventLoopGroup getBossGroup() {
+    if (p2pConfig.isSingleEventLoop()) {
+      return getSharedGroup();
+    }
+    if (bossGroup == null) {
+      bossGroup = newGroup(1, "peerBoss");
+    }
+    return bossGroup;
+  }
+
+  /** Group serving both inbound and outbound TCP channels. */
+  public synchronized EventLoopGroup getWorkerGroup() {
+    if (p2pConfig.isSingleEventLoop()) {
+      return getSharedGroup();
+    }
+    if (workerGroup == null) {
+      // if threads = 0, it is number of core * 2
+      workerGroup = newGroup(Math.max(0, p2pConfig.getTcpIoThreads()), "peerWorker-%d");
+    }
+    return workerGroup;
+  }
+
+  /** Group serving the UDP discovery channel. */
+  public synchronized EventLoopGroup getUdpGroup() {
+    if (p2pConfig.isSingleEventLoop()) {
+      return getSharedGroup();
+    }
+    if (udpGroup == null) {
+      udpGroup = newGroup(Math.max(1, p2pConfig.getUdpIoThreads()), "discoverServer-%d");
+    }
+    return udpGroup;
+  }
+
+  /**
+   * Group running the compression stage of TCP channels off their event loops.
+   *
+   * @return the group, or null to compress on the event loops when no threads are configured
+   */
+  public synchronized EventExecutorGroup getCompressionGroup() {
+    if (p2pConfig.getCompressionThreads() <= 0) {
+      return null;
+    }
+    if (compressionGroup == null) {
+      compressionGroup =
+          new DefaultEventExecutorGroup(
+              p2pConfig.getCompressionThreads(),
+              new BasicThreadFactory.Builder().namingPattern("p2pCompression-%d").build());
+    }
+    return compressionGroup;
+  }
+
+  private EventLoopGroup getSharedGroup() {
+    if (workerGroup == null) {
+      workerGroup = newGroup(1, "p2pIo");
+    }
+    return workerGroup;
+  }
+
+  private EventLoopGroup newGroup(int threads, String namingPattern) {
+    return new MultiThreadIoEventLoopGroup(
+        threads,
+        new BasicThreadFactory.Builder().namingPattern(namingPattern).build(),
+        transport.newIoHandlerFactory());
+  }
+
+  /** Shut down all created groups and wait for their termination. */
+  public void close() {
+    List<EventExecutorGroup> groups = new ArrayList<>();
+    synchronized (this) {
+      for (EventExecutorGroup group :
+          new EventExecutorGroup[] {bossGroup, workerGroup, udpGroup, compressionGroup}) {
+        if (group != null) {
+          groups.add(group);
+        }
+      }
+      bossGroup = null;
+      workerGroup = null;
+      udpGroup = null;
+      compressionGroup = null;
+    }
+    groups.forEach(EventExecutorGroup::shutdownGracefully);
+    groups.forEach(group -> group.terminationFuture().syncUninterruptibly());
+    if (!groups.isEmpty()) {
+      log.info("Closed {} event loop groups, transport {}", groups.size(), transport);
+    }
+  }
+}
@@ -24,21 +24,24 @@
 package io.xdag.p2p.channel;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.xdag.p2p.P2pException;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.config.UpgradeController;
 import io.xdag.p2p.message.node.P2pDisconnectMessage;
 import io.xdag.p2p.message.node.StatusMessage;
 import io.xdag.p2p.proto.Connect.DisconnectReason;
-import io.xdag.p2p.utils.BytesUtils;
-import java.util.List;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tuweni.bytes.Bytes;
 
+/**
+ * Dispatches complete frames to the channel manager. Framing is done by {@link
+ * P2pProtobufVarint32FrameDecoder}, which is the only handler in the pipeline that cumulates
+ * bytes, so every frame arriving here is handled in place and released.
+ */
 @Slf4j(topic = "net")
-public class MessageHandler extends ByteToMessageDecoder {
+public class MessageHandler extends ChannelInboundHandlerAdapter {
 
   private final P2pConfig p2pConfig;
   private final ChannelManager channelManager;
@@ -68,42 +71,74 @@ public class MessageHandler extends ByteToMessageDecoder {
   }
 
   @Override
-  protected void decode(ChannelHandlerContext ctx, ByteBuf buffer, List<Object> out) {
-    Bytes data = BytesUtils.extractBytesFromByteBuf(buffer);
-
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    if (!(msg instanceof ByteBuf buffer)) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+    ByteBuf data = null;
     try {
-      if (channel.isFinishHandshake()) {
-        data = UpgradeController.decodeReceiveData(channel.getVersion(), data);
-      }
+      // frames are already uncompressed when the pipeline has a compression stage
+      data =
+          channel.isFinishHandshake() && channel.getCompressionHandler() == null
+              ? UpgradeController.decodeReceiveData(ctx.alloc(), channel.getVersion(), buffer)
+              : buffer.retainedSlice();
       channelManager.processMessage(channel, data);
     } catch (Exception e) {
-      if (e instanceof P2pException pe) {
-        DisconnectReason disconnectReason =
-            switch (pe.getType()) {
-              case EMPTY_MESSAGE -> DisconnectReason.EMPTY_MESSAGE;
-              case BAD_PROTOCOL -> DisconnectReason.BAD_PROTOCOL;
-              case NO_SUCH_MESSAGE -> DisconnectReason.NO_SUCH_MESSAGE;
-              case BAD_MESSAGE,
-                  PARSE_MESSAGE_FAILED,
-                  MESSAGE_WITH_WRONG_LENGTH,
-                  TYPE_ALREADY_REGISTERED ->
-                  DisconnectReason.BAD_MESSAGE;
-              default -> DisconnectReason.UNKNOWN;
-            };
-        channel.send(new P2pDisconnectMessage(p2pConfig, disconnectReason));
-      }
-      channel.processException(e);
+      handleException(e);
     } catch (Throwable t) {
       log.error(
           "Decode message from {} failed, message:{}",
           channel.getInetSocketAddress(),
-          data.toHexString());
+          ByteBufUtil.hexDump(buffer));
       throw t;
+    } finally {
+      // the frame is consumed whether or not it could be processed
+      buffer.release();
+      if (data != null) {
+        data.release();
+      }
+    }
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) {
+    try {
+      channel.flushReadBatch();
+    } catch (Exception e) {
+      handleException(e);
     }
+    ctx.fireChannelReadComplete();
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    channelManager.notifyWritabilityChanged(channel, ctx.channel().isWritable());
+    super.channelWritabilityChanged(ctx);
   }
 
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-    channel.processException(cause);
+    // the compression stage reports malformed frames here
+    handleException(cause);
+  }
+
+  private void handleException(Throwable e) {
+    if (e instanceof P2pException pe) {
+      DisconnectReason disconnectReason =
+          switch (pe.getType()) {
+            case EMPTY_MESSAGE -> DisconnectReason.EMPTY_MESSAGE;
+            case BAD_PROTOCOL -> DisconnectReason.BAD_PROTOCOL;
+            case NO_SUCH_MESSAGE -> DisconnectReason.NO_SUCH_MESSAGE;
+            case BAD_MESSAGE,
+                PARSE_MESSAGE_FAILED,
+                MESSAGE_WITH_WRONG_LENGTH,
+                TYPE_ALREADY_REGISTERED ->
+                DisconnectReason.BAD_MESSAGE;
+            default -> DisconnectReason.UNKNOWN;
+          };
+      channel.send(new P2pDisconnectMessage(p2pConfig, disconnectReason));
+    }
+    channel.processException(e);
   }
 }
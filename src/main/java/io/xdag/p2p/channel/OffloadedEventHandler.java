@@ -0,0 +1,363 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.xdag.p2p.P2pEventHandler;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Runs the callbacks of a {@link P2pEventHandler} on an executor instead of the event loop of the
+ * channel. Each channel has its own mailbox that is drained by one task at a time, so {@code
+ * onConnect}, the messages and {@code onDisconnect} of a channel reach the handler in the order
+ * they were received while different channels run in parallel.
+ *
+ * <p>A mailbox holds up to {@code mailboxSize} messages, an {@code onMessages} batch counting as
+ * one. Reading from the peer is held once its mailbox is full and released by the drain task when
+ * the mailbox is back at half its size, so messages are only dropped with an explicit {@code
+ * dropLimit}. {@code onHandshakeStarted} and {@code onWritabilityChanged} are called inline since
+ * they are only meaningful at the moment they happen.
+ */
+@Slf4j(topic = "net")
+public class OffloadedEventHandler extends P2pEventHandler {
+
+  /** Tasks run by a mailbox before it yields the executor thread */
+  private static final int DRAIN_BATCH = 64;
+
+  @Getter private final P2pEventHandler delegate;
+  private final Executor executor;
+  @Getter private final int mailboxSize;
+  @Getter private final int dropLimit;
+  private final Map<Channel, Mailbox> mailboxes =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+
+  private final AtomicInteger queuedMessages = new AtomicInteger();
+  private final AtomicInteger maxMailboxDepth = new AtomicInteger();
+  private final AtomicLong droppedMessages = new AtomicLong();
+  private final AtomicLong dispatchedMessages = new AtomicLong();
+  private final AtomicLong totalDispatchLatency = new AtomicLong();
+  private final AtomicLong maxDispatchLatency = new AtomicLong();
+
+  public OffloadedEventHandler(P2pEventHandler delegate, Executor executor, int mailboxSize) {
+    this(delegate, executor, mailboxSize, 0);
+  }
+
+  /**
+   * Create a handler that also drops the messages of a peer whose mailbox is at the drop limit,
+   * for applications that prefer losing messages to waiting for the handler.
+   *
+   * @param delegate the handler to run on the executor
+   * @param executor the executor running the callbacks
+   * @param mailboxSize the messages of a peer at which reading is held
+   * @param dropLimit the messages of a peer at which new ones are dropped, 0 to never drop
+   */
+  public OffloadedEventHandler(
+      P2pEventHandler delegate, Executor executor, int mailboxSize, int dropLimit) {
+    if (mailboxSize <= 0) {
+      throw new IllegalArgumentException("mailboxSize must be positive: " + mailboxSize);
+    }
+    if (dropLimit != 0 && dropLimit < mailboxSize) {
+      throw new IllegalArgumentException(
+          "dropLimit must be 0 or at least mailboxSize: " + dropLimit);
+    }
+    this.delegate = delegate;
+    this.executor = executor;
+    this.mailboxSize = mailboxSize;
+    this.dropLimit = dropLimit;
+    this.messageTypes = delegate.getMessageTypes();
+    this.batchDelivery = delegate.isBatchDelivery();
+  }
+
+  @Override
+  public void onConnect(Channel channel) {
+    post(channel, () -> delegate.onConnect(channel), null, false);
+  }
+
+  @Override
+  public void onResume(Channel channel) {
+    post(channel, () -> delegate.onResume(channel), null, false);
+  }
+
+  @Override
+  public void onHandshakeStarted(Channel channel) {
+    delegate.onHandshakeStarted(channel);
+  }
+
+  @Override
+  public void onDisconnect(Channel channel) {
+    post(channel, () -> delegate.onDisconnect(channel), null, true);
+  }
+
+  @Override
+  public void onMessage(Channel channel, Bytes data) {
+    postMessage(channel, () -> delegate.onMessage(channel, data), null);
+  }
+
+  @Override
+  public void onMessage(Channel channel, ByteBuf data) {
+    // the caller releases its reference once this method returns
+    ByteBuf retained = data.retainedDuplicate();
+    postMessage(channel, () -> delegate.onMessage(channel, retained), retained);
+  }
+
+  @Override
+  public void onMessages(Channel channel, List<Bytes> messages) {
+    postMessage(channel, () -> delegate.onMessages(channel, messages), null);
+  }
+
+  @Override
+  public void onWritabilityChanged(Channel channel, boolean writable) {
+    delegate.onWritabilityChanged(channel, writable);
+  }
+
+  @Override
+  public MessagePriority getMessagePriority(byte type) {
+    return delegate.getMessagePriority(type);
+  }
+
+  private void post(Channel channel, Runnable action, ByteBuf buffer, boolean last) {
+    Mailbox mailbox = mailboxes.computeIfAbsent(channel, Mailbox::new);
+    mailbox.post(new Task(action, false, last, buffer, System.nanoTime()));
+  }
+
+  private void postMessage(Channel channel, Runnable action, ByteBuf buffer) {
+    Mailbox mailbox =
+        channel.isDisconnect() ? null : mailboxes.computeIfAbsent(channel, Mailbox::new);
+    if (mailbox == null
+        || mailbox.closed
+        || (dropLimit > 0 && mailbox.depth.get() >= dropLimit)) {
+      droppedMessages.incrementAndGet();
+      log.debug("Drop message from {}, mailbox is full or closed", channel.getInetSocketAddress());
+      if (buffer != null) {
+        buffer.release();
+      }
+      return;
+    }
+    if (mailbox.depth.incrementAndGet() >= mailboxSize) {
+      mailbox.hold();
+    }
+    maxMailboxDepth.accumulateAndGet(queuedMessages.incrementAndGet(), Math::max);
+    mailbox.post(new Task(action, true, false, buffer, System.nanoTime()));
+  }
+
+  /**
+   * Get the number of messages waiting in the mailboxes of all channels.
+   *
+   * @return the queued messages
+   */
+  public int getQueuedMessages() {
+    return queuedMessages.get();
+  }
+
+  /**
+   * Get the number of messages waiting in the mailbox of one channel.
+   *
+   * @param channel the channel
+   * @return the queued messages, 0 if the channel has no mailbox
+   */
+  public int getMailboxDepth(Channel channel) {
+    Mailbox mailbox = mailboxes.get(channel);
+    return mailbox == null ? 0 : mailbox.depth.get();
+  }
+
+  /**
+   * Get the highest number of messages that waited in the mailboxes at the same time.
+   *
+   * @return the peak queued messages
+   */
+  public int getMaxMailboxDepth() {
+    return maxMailboxDepth.get();
+  }
+
+  /**
+   * Get the number of messages dropped because the mailbox of their channel was closed or at the
+   * drop limit.
+   *
+   * @return the dropped messages
+   */
+  public long getDroppedMessages() {
+    return droppedMessages.get();
+  }
+
+  /**
+   * Get the number of messages handed to the handler.
+   *
+   * @return the dispatched messages
+   */
+  public long getDispatchedMessages() {
+    return dispatchedMessages.get();
+  }
+
+  /**
+   * Get the average time messages waited in their mailbox before the handler was called.
+   *
+   * @return the average latency in nanoseconds
+   */
+  public long getAverageDispatchLatency() {
+    long count = dispatchedMessages.get();
+    return count == 0 ? 0 : totalDispatchLatency.get() / count;
+  }
+
+  /**
+   * Get the longest time a message waited in its mailbox before the handler was called.
+   *
+   * @return the maximum latency in nanoseconds
+   */
+  public long getMaxDispatchLatency() {
+    return maxDispatchLatency.get();
+  }
+
+  /** A callback waiting in a mailbox, messages count against the mailbox size */
+  private record Task(
+      Runnable action, boolean message, boolean last, ByteBuf buffer, long enqueued) {}
+
+  private final class Mailbox implements Runnable {
+
+    private final Channel channel;
+    private final Queue<Task> tasks = new ArrayDeque<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean holding = new AtomicBoolean();
+    private volatile boolean closed;
+    private boolean scheduled;
+
+    private Mailbox(Channel channel) {
+      this.channel = channel;
+    }
+
+    private void post(Task task) {
+      boolean schedule;
+      synchronized (this) {
+        if (task.last()) {
+          closed = true;
+        }
+        tasks.add(task);
+        schedule = !scheduled;
+        scheduled = true;
+      }
+      if (schedule) {
+        execute();
+      }
+    }
+
+    /** Hold reading from the peer until the mailbox drains */
+    private void hold() {
+      if (holding.compareAndSet(false, true)) {
+        channel.holdReading();
+      }
+    }
+
+    /** Release the hold on reading once the mailbox is back at half its size */
+    private void releaseIfDrained() {
+      if (depth.get() <= mailboxSize / 2 && holding.compareAndSet(true, false)) {
+        channel.releaseReading();
+      }
+    }
+
+    private void execute() {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        log.warn("Dispatch executor rejected the mailbox of {}", channel.getInetSocketAddress());
+        mailboxes.remove(channel, this);
+        Task task;
+        while ((task = poll()) != null) {
+          if (task.message()) {
+            depth.decrementAndGet();
+            queuedMessages.decrementAndGet();
+            droppedMessages.incrementAndGet();
+          }
+          if (task.buffer() != null) {
+            task.buffer().release();
+          }
+        }
+        releaseIfDrained();
+      }
+    }
+
+    /** Take the next task, the mailbox is no longer scheduled once it is empty */
+    private synchronized Task poll() {
+      Task task = tasks.poll();
+      if (task == null) {
+        scheduled = false;
+      }
+      return task;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < DRAIN_BATCH; i++) {
+        Task task = poll();
+        if (task == null) {
+          return;
+        }
+        runTask(task);
+        releaseIfDrained();
+      }
+      synchronized (this) {
+        if (tasks.isEmpty()) {
+          scheduled = false;
+          return;
+        }
+      }
+      // yield to the other mailboxes sharing the executor
+      execute();
+    }
+
+    private void runTask(Task task) {
+      if (task.message()) {
+        long latency = System.nanoTime() - task.enqueued();
+        dispatchedMessages.incrementAndGet();
+        totalDispatchLatency.addAndGet(latency);
+        maxDispatchLatency.accumulateAndGet(latency, Math::max);
+        depth.decrementAndGet();
+        queuedMessages.decrementAndGet();
+      }
+      try {
+        task.action().run();
+      } catch (Throwable e) {
+        log.warn("Handler failed on a callback of {}", channel.getInetSocketAddress(), e);
+      } finally {
+        if (task.buffer() != null) {
+          task.buffer().release();
+        }
+      }
+      if (task.last()) {
+        mailboxes.remove(channel, this);
+      }
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.PendingWriteQueue;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * Outbound scheduler with one lane per {@link MessagePriority}.
+ *
+ * <p>Control frames are written straight through. Application frames wait in their lane and are
+ * released in priority order while fewer than {@code maxInFlightBytes} of released application
+ * bytes are still waiting in the channel outbound buffer, so a control frame never queues behind
+ * more than that amount of application data. Waiting frames are counted against the write buffer
+ * watermarks like any other pending write.
+ */
+public class OutboundScheduler extends ChannelDuplexHandler {
+
+  private static final MessagePriority[] APP_LANES = {
+    MessagePriority.HIGH, MessagePriority.NORMAL, MessagePriority.LOW
+  };
+
+  private final int maxInFlightBytes;
+
+  private PendingWriteQueue[] lanes;
+  private long inFlightBytes;
+  private boolean draining;
+
+  /**
+   * @param maxInFlightBytes released but unsent application bytes allowed ahead of control frames
+   */
+  public OutboundScheduler(int maxInFlightBytes) {
+    this.maxInFlightBytes = Math.max(1, maxInFlightBytes);
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    lanes = new PendingWriteQueue[APP_LANES.length];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new PendingWriteQueue(ctx);
+    }
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+    if (!(msg instanceof PriorityFrame frame)) {
+      ctx.write(msg, promise);
+      return;
+    }
+    ByteBuf content = frame.content();
+    if (frame.getPriority() == MessagePriority.CONTROL) {
+      ctx.write(content, promise);
+      return;
+    }
+    lanes[frame.getPriority().ordinal() - MessagePriority.HIGH.ordinal()].add(content, promise);
+    drain(ctx);
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) {
+    drain(ctx);
+    ctx.flush();
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    failAll();
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) {
+    failAll();
+  }
+
+  /** Bytes of application frames waiting in the lanes, as counted against the watermarks. */
+  public long getQueuedBytes() {
+    long bytes = 0;
+    if (lanes != null) {
+      for (PendingWriteQueue lane : lanes) {
+        bytes += lane.bytes();
+      }
+    }
+    return bytes;
+  }
+
+  private boolean drain(ChannelHandlerContext ctx) {
+    if (draining) {
+      return false;
+    }
+    draining = true;
+    boolean released = false;
+    try {
+      PendingWriteQueue lane;
+      while (inFlightBytes < maxInFlightBytes && (lane = nextLane()) != null) {
+        Object msg = lane.current();
+        int size = msg instanceof ByteBuf buf ? buf.readableBytes() : 0;
+        inFlightBytes += size;
+        released = true;
+        lane.removeAndWrite()
+            .addListener(
+                (ChannelFutureListener)
+                    future -> {
+                      inFlightBytes -= size;
+                      if (drain(ctx)) {
+                        ctx.flush();
+                      }
+                    });
+      }
+    } finally {
+      draining = false;
+    }
+    return released;
+  }
+
+  private PendingWriteQueue nextLane() {
+    for (PendingWriteQueue lane : lanes) {
+      if (!lane.isEmpty()) {
+        return lane;
+      }
+    }
+    return null;
+  }
+
+  private void failAll() {
+    if (lanes == null) {
+      return;
+    }
+    for (PendingWriteQueue lane : lanes) {
+      if (!lane.isEmpty()) {
+        lane.removeAndFailAll(new ClosedChannelException());
+      }
+    }
+  }
+}
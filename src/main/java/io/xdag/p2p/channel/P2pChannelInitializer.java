@@ -23,16 +23,17 @@
  */
 package io.xdag.p2p.channel;
 
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.FixedRecvByteBufAllocator;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.socket.SocketChannel;
 import io.xdag.p2p.config.P2pConfig;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j(topic = "net")
-public class P2pChannelInitializer extends ChannelInitializer<NioSocketChannel> {
+public class P2pChannelInitializer extends ChannelInitializer<SocketChannel> {
 
   private final P2pConfig p2pConfig;
   private final ChannelManager channelManager;
@@ -59,16 +60,29 @@ public class P2pChannelInitializer extends ChannelInitializer<NioSocketChannel>
   }
 
   @Override
-  public void initChannel(NioSocketChannel ch) {
+  public void initChannel(SocketChannel ch) {
     try {
       final Channel channel = new Channel(p2pConfig, channelManager);
       channel.init(ch.pipeline(), remoteId, peerDiscoveryMode);
 
-      // Optimize network buffer sizes for better performance
-      ch.config().setRecvByteBufAllocator(new FixedRecvByteBufAllocator(4 * 1024 * 1024)); // 4MB receive buffer
-      ch.config().setOption(ChannelOption.SO_RCVBUF, 4 * 1024 * 1024); // 4MB socket receive buffer
-      ch.config().setOption(ChannelOption.SO_SNDBUF, 4 * 1024 * 1024); // 4MB socket send buffer
-      ch.config().setOption(ChannelOption.SO_BACKLOG, 1024);
+      // Read buffers grow and shrink with the traffic of each peer
+      ch.config().setRecvByteBufAllocator(newRecvByteBufAllocator());
+      // Bound the outbound queue, channels turn unwritable above the high watermark
+      int lowWaterMark = p2pConfig.getWriteBufferLowWaterMark();
+      int highWaterMark = p2pConfig.getWriteBufferHighWaterMark();
+      if (lowWaterMark > 0 && highWaterMark >= lowWaterMark) {
+        ch.config()
+            .setWriteBufferWaterMark(new WriteBufferWaterMark(lowWaterMark, highWaterMark));
+      }
+      // Detection probes only exchange a handshake, keep the os default socket buffers
+      if (!peerDiscoveryMode) {
+        if (p2pConfig.getSocketRecvBufferSize() > 0) {
+          ch.config().setOption(ChannelOption.SO_RCVBUF, p2pConfig.getSocketRecvBufferSize());
+        }
+        if (p2pConfig.getSocketSendBufferSize() > 0) {
+          ch.config().setOption(ChannelOption.SO_SNDBUF, p2pConfig.getSocketSendBufferSize());
+        }
+      }
 
       // be aware of channel closing
       ch.closeFuture()
@@ -76,6 +90,10 @@ public class P2pChannelInitializer extends ChannelInitializer<NioSocketChannel>
               (ChannelFutureListener)
                   future -> {
                     channel.setDisconnect(true);
+                    if (channel.getCtx() == null) {
+                      // never active, such as a socket that lost a connect race
+                      return;
+                    }
                     if (channel.isDiscoveryMode()) {
                       channelManager.getNodeDetectHandler().notifyDisconnect(channel);
                     } else {
@@ -96,4 +114,14 @@ public class P2pChannelInitializer extends ChannelInitializer<NioSocketChannel>
       log.error("Unexpected initChannel error", e);
     }
   }
+
+  private AdaptiveRecvByteBufAllocator newRecvByteBufAllocator() {
+    int min = p2pConfig.getRecvBufMinSize();
+    int max = p2pConfig.getRecvBufMaxSize();
+    int initial = p2pConfig.getRecvBufInitialSize();
+    if (min <= 0 || max < min) {
+      return new AdaptiveRecvByteBufAllocator();
+    }
+    return new AdaptiveRecvByteBufAllocator(min, Math.min(Math.max(initial, min), max), max);
+  }
 }
@@ -34,71 +34,99 @@ import io.xdag.p2p.proto.Connect.DisconnectReason;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Splits the inbound byte stream into varint32 length prefixed frames. This is the only handler in
+ * the pipeline that cumulates bytes: frames are emitted as retained slices of the cumulation and
+ * every handler above it works on whole frames.
+ */
 @Slf4j(topic = "net")
 public class P2pProtobufVarint32FrameDecoder extends ByteToMessageDecoder {
 
+  /** Returned by {@link #peekRawVarint32(ByteBuf)} while the length prefix is incomplete. */
+  static final long INCOMPLETE = -1L;
+
+  /** Returned by {@link #peekRawVarint32(ByteBuf)} for a prefix longer than five bytes. */
+  static final long MALFORMED = -2L;
+
   private final P2pConfig p2pConfig;
   private final Channel channel;
 
+  /** Bytes of this channel counted against the inbound memory budget, null while untracked */
+  private InboundMemoryBudget.Usage memoryUsage;
+
   public P2pProtobufVarint32FrameDecoder(P2pConfig p2pConfig, Channel channel) {
     this.p2pConfig = p2pConfig;
     this.channel = channel;
   }
 
-  private static int readRawVarint32(ByteBuf buffer) {
-    if (!buffer.isReadable()) {
-      return 0;
+  /**
+   * Peek the varint32 length prefix at the reader index without moving it. The reader index is
+   * never marked or reset, so a partially received prefix costs nothing but the bytes looked at.
+   *
+   * @param buffer the cumulated input
+   * @return the prefix size in the upper 32 bits and the frame length in the lower 32 bits, or
+   *     {@link #INCOMPLETE} if the prefix has not been fully received, or {@link #MALFORMED} if it
+   *     runs past five bytes
+   */
+  static long peekRawVarint32(ByteBuf buffer) {
+    int index = buffer.readerIndex();
+    int limit = buffer.writerIndex();
+    int result = 0;
+    for (int i = index, shift = 0; i < limit; shift += 7) {
+      byte tmp = buffer.getByte(i++);
+      if (tmp >= 0) {
+        return ((long) (i - index) << 32) | ((result | tmp << shift) & 0xFFFFFFFFL);
+      }
+      if (shift == 28) {
+        return MALFORMED;
+      }
+      result |= (tmp & 127) << shift;
     }
-    buffer.markReaderIndex();
-    byte tmp = buffer.readByte();
-    if (tmp >= 0) {
-      return tmp;
-    } else {
-      int result = tmp & 127;
-      if (!buffer.isReadable()) {
-        buffer.resetReaderIndex();
-        return 0;
+    return INCOMPLETE;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    super.channelRead(ctx, msg);
+    if (memoryUsage == null) {
+      InboundMemoryBudget budget = getInboundMemoryBudget();
+      if (budget == null || !budget.isEnabled()) {
+        return;
       }
-      if ((tmp = buffer.readByte()) >= 0) {
-        result |= tmp << 7;
-      } else {
-        result |= (tmp & 127) << 7;
-        if (!buffer.isReadable()) {
-          buffer.resetReaderIndex();
-          return 0;
-        }
-        if ((tmp = buffer.readByte()) >= 0) {
-          result |= tmp << 14;
-        } else {
-          result |= (tmp & 127) << 14;
-          if (!buffer.isReadable()) {
-            buffer.resetReaderIndex();
-            return 0;
-          }
-          if ((tmp = buffer.readByte()) >= 0) {
-            result |= tmp << 21;
-          } else {
-            result |= (tmp & 127) << 21;
-            if (!buffer.isReadable()) {
-              buffer.resetReaderIndex();
-              return 0;
-            }
-            result |= (tmp = buffer.readByte()) << 28;
-            if (tmp < 0) {
-              throw new CorruptedFrameException("malformed varint.");
-            }
-          }
-        }
+      memoryUsage = budget.register(ctx.channel(), channel::isReadingHeld);
+      channel.setMemoryUsage(memoryUsage);
+    }
+    memoryUsage.update(actualReadableBytes());
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    try {
+      super.channelInactive(ctx);
+    } finally {
+      if (memoryUsage != null) {
+        memoryUsage.release();
       }
-      return result;
     }
   }
 
+  private InboundMemoryBudget getInboundMemoryBudget() {
+    ChannelManager channelManager = channel.getChannelManager();
+    return channelManager == null ? null : channelManager.getInboundMemoryBudget();
+  }
+
   @Override
   protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
-    in.markReaderIndex();
-    int preIndex = in.readerIndex();
-    int length = readRawVarint32(in);
+    long prefix = peekRawVarint32(in);
+    if (prefix == INCOMPLETE) {
+      return;
+    }
+    if (prefix == MALFORMED) {
+      // the stream cannot be resynchronised, drop it so the error is raised only once
+      in.skipBytes(in.readableBytes());
+      throw new CorruptedFrameException("malformed varint.");
+    }
+    int length = (int) prefix;
     if (length >= P2pConstant.MAX_MESSAGE_LENGTH) {
       log.warn(
           "Receive a big msg or not encoded msg, host : {}, msg length is : {}",
@@ -106,19 +134,17 @@ public class P2pProtobufVarint32FrameDecoder extends ByteToMessageDecoder {
           length);
       in.clear();
       channel.send(new P2pDisconnectMessage(p2pConfig, DisconnectReason.BAD_MESSAGE));
-      channel.close();
-      return;
-    }
-    if (preIndex == in.readerIndex()) {
+      channel.penalize(P2pConstant.DEFAULT_BAN_TIME);
       return;
     }
     if (length < 0) {
+      in.skipBytes(in.readableBytes());
       throw new CorruptedFrameException("negative length: " + length);
     }
 
-    if (in.readableBytes() < length) {
-      in.resetReaderIndex();
-    } else {
+    int prefixSize = (int) (prefix >>> 32);
+    if (in.readableBytes() - prefixSize >= length) {
+      in.skipBytes(prefixSize);
       out.add(in.readRetainedSlice(length));
     }
   }
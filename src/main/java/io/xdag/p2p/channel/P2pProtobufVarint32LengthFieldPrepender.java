@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.xdag.p2p.utils.ProtoUtils;
+import java.util.List;
+
+/**
+ * Prepends the varint32 length of each outbound frame. Unlike {@link
+ * io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender} the payload is not copied,
+ * the small length header and the payload are written as one composite buffer.
+ */
+@Sharable
+public class P2pProtobufVarint32LengthFieldPrepender extends MessageToMessageEncoder<ByteBuf> {
+
+  public P2pProtobufVarint32LengthFieldPrepender() {
+    super(ByteBuf.class);
+  }
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) {
+    int length = msg.readableBytes();
+    ByteBuf header = ctx.alloc().buffer(ProtoUtils.computeVarint32Size(length));
+    while ((length & ~0x7F) != 0) {
+      header.writeByte((length & 0x7F) | 0x80);
+      length >>>= 7;
+    }
+    header.writeByte(length);
+    out.add(ctx.alloc().compositeBuffer(2).addComponents(true, header, msg.retain()));
+  }
+}
@@ -26,42 +26,61 @@ package io.xdag.p2p.channel;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultMessageSizeEstimator;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.MultiThreadIoEventLoopGroup;
-import io.netty.channel.nio.NioIoHandler;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.config.P2pConstant;
 import io.xdag.p2p.discover.Node;
 import io.xdag.p2p.utils.BytesUtils;
 import io.xdag.p2p.utils.NetUtils;
+import java.net.InetSocketAddress;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
 @Slf4j(topic = "net")
 public class PeerClient {
   private final P2pConfig p2pConfig;
   private final ChannelManager channelManager;
+  private final IoResourceManager ioResourceManager;
+  private final boolean ownsIoResources;
   private EventLoopGroup workerGroup;
+  private TransportMode transport;
+  @Getter private final AddressFamilyStats addressFamilyStats = new AddressFamilyStats();
 
   public PeerClient(P2pConfig p2pConfig, ChannelManager channelManager) {
+    this(p2pConfig, channelManager, new IoResourceManager(p2pConfig), true);
+  }
+
+  public PeerClient(
+      P2pConfig p2pConfig, ChannelManager channelManager, IoResourceManager ioResourceManager) {
+    this(p2pConfig, channelManager, ioResourceManager, false);
+  }
+
+  private PeerClient(
+      P2pConfig p2pConfig,
+      ChannelManager channelManager,
+      IoResourceManager ioResourceManager,
+      boolean ownsIoResources) {
     this.p2pConfig = p2pConfig;
     this.channelManager = channelManager;
+    this.ioResourceManager = ioResourceManager;
+    this.ownsIoResources = ownsIoResources;
   }
 
   public void init() {
-    workerGroup =
-        new MultiThreadIoEventLoopGroup(
-            0,
-            new BasicThreadFactory.Builder().namingPattern("peerClient-%d").build(),
-            NioIoHandler.newFactory());
+    transport = ioResourceManager.getTransport();
+    workerGroup = ioResourceManager.getWorkerGroup();
   }
 
   public void close() {
-    workerGroup.shutdownGracefully();
-    workerGroup.terminationFuture().syncUninterruptibly();
+    // shared event loops are released by their owner
+    if (ownsIoResources) {
+      ioResourceManager.close();
+    }
   }
 
   public void connect(String host, int port, String remoteId) {
@@ -76,13 +95,7 @@ public class PeerClient {
   }
 
   public ChannelFuture connect(Node node, ChannelFutureListener future) {
-    ChannelFuture channelFuture =
-        connectAsync(
-            node.getPreferInetSocketAddress().getAddress().getHostAddress(),
-            node.getPort(),
-            node.getId() == null ? BytesUtils.toHexString(NetUtils.getNodeId()) : node.getHexId(),
-            false,
-            false);
+    ChannelFuture channelFuture = connect(node, false, false);
     if (channelManager.isShutdown) {
       return null;
     }
@@ -93,13 +106,7 @@ public class PeerClient {
   }
 
   public ChannelFuture connectAsync(Node node, boolean discoveryMode) {
-    ChannelFuture channelFuture =
-        connectAsync(
-            node.getPreferInetSocketAddress().getAddress().getHostAddress(),
-            node.getPort(),
-            node.getId() == null ? BytesUtils.toHexString(NetUtils.getNodeId()) : node.getHexId(),
-            discoveryMode,
-            true);
+    ChannelFuture channelFuture = connect(node, discoveryMode, true);
     if (channelManager.isShutdown) {
       return null;
     }
@@ -122,20 +129,82 @@ public class PeerClient {
     return channelFuture;
   }
 
+  /**
+   * Dial a node. A node with both an IPv4 and an IPv6 address is raced over both families, the
+   * other family starting after the connection attempt delay; any other node is dialed at its
+   * preferred address.
+   */
+  private ChannelFuture connect(Node node, boolean discoveryMode, boolean trigger) {
+    String remoteId =
+        node.getId() == null ? BytesUtils.toHexString(NetUtils.getNodeId()) : node.getHexId();
+    InetSocketAddress preferred = node.getPreferInetSocketAddress();
+    InetSocketAddress other = getOtherFamilyAddress(node, preferred);
+    if (other == null || p2pConfig.getConnectionAttemptDelay() <= 0) {
+      return connectAsync(
+          preferred.getAddress().getHostAddress(), node.getPort(), remoteId, discoveryMode, trigger);
+    }
+    return new ConnectRace(
+            addressFamilyStats.dialOrder(preferred, other),
+            (address, gate) ->
+                connectAsync(
+                    address.getAddress().getHostAddress(),
+                    address.getPort(),
+                    remoteId,
+                    discoveryMode,
+                    trigger,
+                    gate),
+            addressFamilyStats,
+            workerGroup.next(),
+            p2pConfig.getConnectionAttemptDelay())
+        .start();
+  }
+
+  private static InetSocketAddress getOtherFamilyAddress(Node node, InetSocketAddress preferred) {
+    InetSocketAddress v4 = node.getInetSocketAddressV4();
+    InetSocketAddress v6 = node.getInetSocketAddressV6();
+    if (v4 == null || v6 == null) {
+      return null;
+    }
+    return preferred.equals(v4) ? v6 : v4;
+  }
+
   private ChannelFuture connectAsync(
       String host, int port, String remoteId, boolean discoveryMode, boolean trigger) {
+    return connectAsync(host, port, remoteId, discoveryMode, trigger, null);
+  }
+
+  private ChannelFuture connectAsync(
+      String host,
+      int port,
+      String remoteId,
+      boolean discoveryMode,
+      boolean trigger,
+      ChannelHandler gate) {
     try {
       Bootstrap b = new Bootstrap();
       b.group(workerGroup);
-      b.channel(NioSocketChannel.class);
+      b.channel(transport.socketChannelClass());
 
       b.option(ChannelOption.SO_KEEPALIVE, true);
       b.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR, DefaultMessageSizeEstimator.DEFAULT);
       b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, P2pConstant.NODE_CONNECTION_TIMEOUT);
+      transport.applyClientOptions(b, p2pConfig);
       b.remoteAddress(host, port);
 
-      b.handler(
-          new P2pChannelInitializer(p2pConfig, channelManager, remoteId, discoveryMode, trigger));
+      P2pChannelInitializer initializer =
+          new P2pChannelInitializer(p2pConfig, channelManager, remoteId, discoveryMode, trigger);
+      if (gate == null) {
+        b.handler(initializer);
+      } else {
+        // the gate sits in front of the p2p handlers and holds back channelActive
+        b.handler(
+            new ChannelInitializer<SocketChannel>() {
+              @Override
+              protected void initChannel(SocketChannel ch) {
+                ch.pipeline().addLast(gate, initializer);
+              }
+            });
+      }
 
       return b.connect();
 
@@ -27,27 +27,41 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultMessageSizeEstimator;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.MultiThreadIoEventLoopGroup;
-import io.netty.channel.nio.NioIoHandler;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LoggingHandler;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.config.P2pConstant;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
 @Slf4j(topic = "net")
 public class PeerServer {
 
   private final P2pConfig p2pConfig;
   private final ChannelManager channelManager;
+  private final IoResourceManager ioResourceManager;
+  private final boolean ownsIoResources;
   private ChannelFuture channelFuture;
+  @Getter private AdmissionHandler admissionHandler;
   private boolean listening;
 
   public PeerServer(P2pConfig p2pConfig, ChannelManager channelManager) {
+    this(p2pConfig, channelManager, new IoResourceManager(p2pConfig), true);
+  }
+
+  public PeerServer(
+      P2pConfig p2pConfig, ChannelManager channelManager, IoResourceManager ioResourceManager) {
+    this(p2pConfig, channelManager, ioResourceManager, false);
+  }
+
+  private PeerServer(
+      P2pConfig p2pConfig,
+      ChannelManager channelManager,
+      IoResourceManager ioResourceManager,
+      boolean ownsIoResources) {
     this.p2pConfig = p2pConfig;
     this.channelManager = channelManager;
+    this.ioResourceManager = ioResourceManager;
+    this.ownsIoResources = ownsIoResources;
   }
 
   public void init() {
@@ -69,33 +83,26 @@ public class PeerServer {
   }
 
   public void start(int port) {
-    EventLoopGroup bossGroup =
-        new MultiThreadIoEventLoopGroup(
-            1,
-            new BasicThreadFactory.Builder().namingPattern("peerBoss").build(),
-            NioIoHandler.newFactory());
-    // if threads = 0, it is number of core * 2
-    EventLoopGroup workerGroup =
-        new MultiThreadIoEventLoopGroup(
-            P2pConstant.TCP_NETTY_WORK_THREAD_NUM,
-            new BasicThreadFactory.Builder().namingPattern("peerWorker-%d").build(),
-            NioIoHandler.newFactory());
+    TransportMode transport = ioResourceManager.getTransport();
     P2pChannelInitializer p2pChannelInitializer =
         new P2pChannelInitializer(p2pConfig, channelManager, "", false, true);
+    admissionHandler = new AdmissionHandler(p2pConfig, channelManager, p2pChannelInitializer);
     try {
       ServerBootstrap b = new ServerBootstrap();
 
-      b.group(bossGroup, workerGroup);
-      b.channel(NioServerSocketChannel.class);
+      b.group(ioResourceManager.getBossGroup(), ioResourceManager.getWorkerGroup());
+      b.channel(transport.serverSocketChannelClass());
 
       b.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR, DefaultMessageSizeEstimator.DEFAULT);
+      b.option(ChannelOption.SO_BACKLOG, 1024);
       b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, P2pConstant.NODE_CONNECTION_TIMEOUT);
+      transport.applyServerOptions(b, p2pConfig);
 
       b.handler(new LoggingHandler());
-      b.childHandler(p2pChannelInitializer);
+      b.childHandler(admissionHandler);
 
       // Start the client.
-      log.info("TCP listener started, bind port {}", port);
+      log.info("TCP listener started, bind port {}, transport {}", port, transport);
 
       channelFuture = b.bind(port).sync();
 
@@ -109,8 +116,9 @@ public class PeerServer {
     } catch (Exception e) {
       log.error("Start TCP server failed", e);
     } finally {
-      workerGroup.shutdownGracefully();
-      bossGroup.shutdownGracefully();
+      if (ownsIoResources) {
+        ioResourceManager.close();
+      }
       listening = false;
     }
   }
@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.MessageSizeEstimator;
+import io.netty.channel.PendingWriteQueue;
+import io.xdag.p2p.config.BandwidthPolicy;
+import io.xdag.p2p.utils.TokenBucket;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the {@link BandwidthPolicy} to one channel.
+ *
+ * <p>Application messages are written as {@link Frame}. A message over a limit waits in the lane
+ * of its type until its bytes are paid for, later messages of the same type queue behind it while
+ * other types keep flowing. Waiting frames are counted against the write buffer watermarks, batch
+ * entries with the size of their message.
+ *
+ * <p>Reads cannot be shaped per message, so a read over a limit pauses reading from the whole
+ * peer until its bytes are paid for.
+ */
+public class ShapingHandler extends ChannelOutboundHandlerAdapter {
+
+  /**
+   * An outbound frame tagged with the type and size of its message.
+   *
+   * @param frame the frame written on to the next handler
+   * @param type the message type
+   * @param bytes the message size before compression
+   */
+  public record Frame(Object frame, byte type, int bytes) {}
+
+  private final Channel channel;
+  private final BandwidthPolicy policy;
+  private final TokenBucket peerRead;
+  private final TokenBucket peerWrite;
+  private final Map<Byte, Lane> lanes = new HashMap<>();
+
+  // lanes and queued frames are only used on the event loop
+  private ChannelHandlerContext ctx;
+  private int queuedFrames;
+
+  public ShapingHandler(Channel channel, BandwidthPolicy policy) {
+    this.channel = channel;
+    this.policy = policy;
+    this.peerRead = policy.newPeerBucket();
+    this.peerWrite = policy.newPeerBucket();
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    this.ctx = ctx;
+    // set before the first write, the pipeline keeps the estimator it first uses
+    MessageSizeEstimator estimator = ctx.channel().config().getMessageSizeEstimator();
+    if (!(estimator instanceof EntrySizeEstimator)) {
+      ctx.channel().config().setMessageSizeEstimator(new EntrySizeEstimator(estimator));
+    }
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) {
+    for (Lane lane : lanes.values()) {
+      if (!lane.queue.isEmpty()) {
+        lane.queue.removeAndFailAll(new ClosedChannelException());
+      }
+    }
+    lanes.clear();
+    queuedFrames = 0;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+    if (!(msg instanceof Frame frame)) {
+      ctx.write(msg, promise);
+      return;
+    }
+    Lane lane = lanes.get(frame.type());
+    if (lane != null && !lane.queue.isEmpty()) {
+      lane.add(frame, promise);
+      return;
+    }
+    long wait = reserveWrite(frame);
+    if (wait == 0) {
+      ctx.write(frame.frame(), promise);
+      return;
+    }
+    if (lane == null) {
+      lane = new Lane();
+      lanes.put(frame.type(), lane);
+    }
+    lane.add(frame, promise);
+    schedule(lane, wait);
+  }
+
+  /**
+   * Charge a message read from the peer, reading pauses while the peer is over a read limit.
+   *
+   * @param type the message type
+   * @param bytes the message size after decompression
+   */
+  public void onRead(byte type, int bytes) {
+    if (!policy.isReadLimited()) {
+      return;
+    }
+    long wait = policy.reserveRead(peerRead, channel.isTrustPeer(), type, bytes);
+    if (wait > 0) {
+      channel.pauseReading(wait);
+    }
+  }
+
+  /** Number of frames waiting for bandwidth. */
+  public int getQueuedFrames() {
+    return queuedFrames;
+  }
+
+  private long reserveWrite(Frame frame) {
+    if (frame.type() < 0 || !policy.isWriteLimited()) {
+      return 0;
+    }
+    return policy.reserveWrite(peerWrite, channel.isTrustPeer(), frame.type(), frame.bytes());
+  }
+
+  private void schedule(Lane lane, long wait) {
+    ctx.executor().schedule(() -> release(lane), wait, TimeUnit.NANOSECONDS);
+  }
+
+  /** Write the paid head of a lane and every following frame that fits the limits. */
+  private void release(Lane lane) {
+    if (ctx.isRemoved() || lane.queue.isEmpty()) {
+      return;
+    }
+    lane.removeAndWrite();
+    while (!lane.queue.isEmpty()) {
+      long wait = reserveWrite(lane.frames.peek());
+      if (wait > 0) {
+        schedule(lane, wait);
+        break;
+      }
+      lane.removeAndWrite();
+    }
+    ctx.flush();
+  }
+
+  /**
+   * Measures batch entries with the size of their message, which the default estimator counts as
+   * a few bytes, and other messages with the estimator of the channel.
+   */
+  private record EntrySizeEstimator(MessageSizeEstimator delegate) implements MessageSizeEstimator {
+
+    @Override
+    public Handle newHandle() {
+      Handle handle = delegate.newHandle();
+      return msg ->
+          msg instanceof BatchEncoder.Entry entry ? entry.data().size() : handle.size(msg);
+    }
+  }
+
+  /** Frames of one message type waiting for bandwidth, the head is already paid for. */
+  private class Lane {
+
+    private final PendingWriteQueue queue = new PendingWriteQueue(ctx);
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+
+    private void add(Frame frame, ChannelPromise promise) {
+      queue.add(frame.frame(), promise);
+      frames.add(frame);
+      queuedFrames++;
+    }
+
+    private void removeAndWrite() {
+      frames.poll();
+      queuedFrames--;
+      queue.removeAndWrite();
+    }
+  }
+}
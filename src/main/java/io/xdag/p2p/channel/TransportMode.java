@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.IoHandlerFactory;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollIoHandler;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.UnixChannelOption;
+import io.netty.channel.uring.IoUring;
+import io.netty.channel.uring.IoUringChannelOption;
+import io.netty.channel.uring.IoUringDatagramChannel;
+import io.netty.channel.uring.IoUringIoHandler;
+import io.netty.channel.uring.IoUringServerSocketChannel;
+import io.netty.channel.uring.IoUringSocketChannel;
+import io.xdag.p2p.config.P2pConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Netty transport used by the TCP client, TCP server and UDP discovery server. {@link #AUTO}
+ * picks the best native transport available on the current platform, the other values force a
+ * specific transport and fall back to {@link #NIO} when its native library cannot be loaded.
+ */
+@Slf4j(topic = "net")
+public enum TransportMode {
+  /** Use epoll when available, NIO otherwise */
+  AUTO,
+
+  /** Portable JDK NIO selector based transport */
+  NIO,
+
+  /** Linux edge-triggered epoll transport */
+  EPOLL,
+
+  /** Linux io_uring transport, must be selected explicitly */
+  IO_URING;
+
+  /** Backlog of the TCP_FASTOPEN queue on listening sockets */
+  private static final int TCP_FASTOPEN_QUEUE = 256;
+
+  /**
+   * Resolve a configured mode into a concrete transport that can be used on this platform.
+   *
+   * @param mode the configured mode, null is treated as {@link #AUTO}
+   * @return a concrete, available transport, never {@link #AUTO}
+   */
+  public static TransportMode resolve(TransportMode mode) {
+    if (mode == null || mode == AUTO) {
+      return EPOLL.isAvailable() ? EPOLL : NIO;
+    }
+    if (!mode.isAvailable()) {
+      log.warn("Transport {} is not available, fall back to NIO, cause: {}", mode, mode.cause());
+      return NIO;
+    }
+    return mode;
+  }
+
+  /**
+   * Check whether the native library backing this transport can be used.
+   *
+   * @return true if the transport is usable on this platform
+   */
+  public boolean isAvailable() {
+    return switch (this) {
+      case AUTO, NIO -> true;
+      case EPOLL -> Epoll.isAvailable();
+      case IO_URING -> IoUring.isAvailable();
+    };
+  }
+
+  private String cause() {
+    Throwable cause =
+        switch (this) {
+          case EPOLL -> Epoll.unavailabilityCause();
+          case IO_URING -> IoUring.unavailabilityCause();
+          default -> null;
+        };
+    return cause == null ? "unknown" : cause.getMessage();
+  }
+
+  /** Whether this transport exposes the native unix socket options. */
+  public boolean isNative() {
+    return this == EPOLL || this == IO_URING;
+  }
+
+  public IoHandlerFactory newIoHandlerFactory() {
+    return switch (resolve(this)) {
+      case EPOLL -> EpollIoHandler.newFactory();
+      case IO_URING -> IoUringIoHandler.newFactory();
+      default -> NioIoHandler.newFactory();
+    };
+  }
+
+  public Class<? extends SocketChannel> socketChannelClass() {
+    return switch (resolve(this)) {
+      case EPOLL -> EpollSocketChannel.class;
+      case IO_URING -> IoUringSocketChannel.class;
+      default -> NioSocketChannel.class;
+    };
+  }
+
+  public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+    return switch (resolve(this)) {
+      case EPOLL -> EpollServerSocketChannel.class;
+      case IO_URING -> IoUringServerSocketChannel.class;
+      default -> NioServerSocketChannel.class;
+    };
+  }
+
+  public Class<? extends DatagramChannel> datagramChannelClass() {
+    return switch (resolve(this)) {
+      case EPOLL -> EpollDatagramChannel.class;
+      case IO_URING -> IoUringDatagramChannel.class;
+      default -> NioDatagramChannel.class;
+    };
+  }
+
+  /**
+   * Apply the native options enabled in the config to a listening TCP socket.
+   *
+   * @param b the server bootstrap
+   * @param p2pConfig the p2p config
+   */
+  public void applyServerOptions(ServerBootstrap b, P2pConfig p2pConfig) {
+    TransportMode mode = resolve(this);
+    if (!mode.isNative()) {
+      return;
+    }
+    if (p2pConfig.isTcpFastOpen()) {
+      b.option(
+          mode == EPOLL ? EpollChannelOption.TCP_FASTOPEN : IoUringChannelOption.TCP_FASTOPEN,
+          TCP_FASTOPEN_QUEUE);
+    }
+    if (p2pConfig.isReusePort()) {
+      b.option(UnixChannelOption.SO_REUSEPORT, true);
+    }
+  }
+
+  /**
+   * Apply the native options enabled in the config to an outbound TCP socket.
+   *
+   * @param b the client bootstrap
+   * @param p2pConfig the p2p config
+   */
+  public void applyClientOptions(Bootstrap b, P2pConfig p2pConfig) {
+    // io_uring has no client side fast open switch, the kernel decides on connect
+    if (resolve(this) == EPOLL && p2pConfig.isTcpFastOpen()) {
+      b.option(EpollChannelOption.TCP_FASTOPEN_CONNECT, true);
+    }
+  }
+
+  /**
+   * Apply the native options enabled in the config to the UDP discovery socket.
+   *
+   * @param b the datagram bootstrap
+   * @param p2pConfig the p2p config
+   */
+  public void applyDatagramOptions(Bootstrap b, P2pConfig p2pConfig) {
+    if (resolve(this).isNative() && p2pConfig.isReusePort()) {
+      b.option(UnixChannelOption.SO_REUSEPORT, true);
+    }
+  }
+}
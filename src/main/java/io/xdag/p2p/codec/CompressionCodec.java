@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.codec;
+
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A block compression algorithm usable for the data of a {@link
+ * io.xdag.p2p.proto.Connect.CompressMessage}. Implementations work on the remaining bytes of
+ * direct buffers without moving their positions, and must be thread safe, one instance is shared
+ * by all channels. The compressed form must carry the uncompressed length so the receiver can
+ * size its buffer before uncompressing.
+ */
+public interface CompressionCodec {
+
+  /**
+   * Get the compress type written into the envelope of messages compressed by this codec.
+   *
+   * @return the compress type
+   */
+  CompressType getType();
+
+  /**
+   * Get the largest compressed size of an input of the given length.
+   *
+   * @param length the input length
+   * @return the compressed size bound
+   */
+  int maxCompressedLength(int length);
+
+  /**
+   * Compress the remaining bytes of {@code src} into {@code dst}, starting at its position.
+   *
+   * @param src the direct input buffer
+   * @param dst the direct output buffer, at least {@link #maxCompressedLength} bytes remaining
+   * @return the number of bytes written to {@code dst}
+   * @throws IOException if compression fails
+   */
+  int compress(ByteBuffer src, ByteBuffer dst) throws IOException;
+
+  /**
+   * Read the uncompressed length of the remaining bytes of {@code src}.
+   *
+   * @param src the direct buffer holding compressed data
+   * @return the uncompressed length
+   * @throws IOException if the compressed data is malformed
+   */
+  int uncompressedLength(ByteBuffer src) throws IOException;
+
+  /**
+   * Uncompress the remaining bytes of {@code src} into {@code dst}, starting at its position.
+   *
+   * @param src the direct buffer holding compressed data
+   * @param dst the direct output buffer, at least {@link #uncompressedLength} bytes remaining
+   * @return the number of bytes written to {@code dst}
+   * @throws IOException if the compressed data is malformed
+   */
+  int uncompress(ByteBuffer src, ByteBuffer dst) throws IOException;
+}
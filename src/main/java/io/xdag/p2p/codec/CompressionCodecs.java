@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.codec;
+
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registry of the compression codecs this node can use, indexed by compress type. A codec whose
+ * native library fails to load on this platform is left out, so it is neither advertised in the
+ * handshake nor chosen for sending. Snappy is always available and is the fallback for peers that
+ * advertise no codecs.
+ */
+@Slf4j(topic = "net")
+public final class CompressionCodecs {
+
+  public static final CompressionCodec SNAPPY = new SnappyCodec();
+
+  /** Preference used when the configuration does not name one: best ratio first */
+  public static final List<CompressType> DEFAULT_PREFERENCE =
+      List.of(CompressType.zstd, CompressType.lz4, CompressType.snappy);
+
+  private static final CompressionCodec[] CODECS = new CompressionCodec[8];
+
+  static {
+    CODECS[SNAPPY.getType().getNumber()] = SNAPPY;
+    register(Lz4Codec::new);
+    register(ZstdCodec::new);
+  }
+
+  private CompressionCodecs() {}
+
+  private static void register(Supplier<CompressionCodec> factory) {
+    try {
+      CompressionCodec codec = factory.get();
+      // loads the native library, if any, and checks it round trips
+      ByteBuffer src = ByteBuffer.allocateDirect(16);
+      ByteBuffer dst = ByteBuffer.allocateDirect(codec.maxCompressedLength(16));
+      dst.limit(codec.compress(src, dst));
+      if (codec.uncompressedLength(dst) != 16) {
+        throw new IllegalStateException("round trip failed");
+      }
+      CODECS[codec.getType().getNumber()] = codec;
+    } catch (Exception | LinkageError e) {
+      log.warn("Compression codec unavailable, {}", e.toString());
+    }
+  }
+
+  /**
+   * Get the codec of a compress type.
+   *
+   * @param type the compress type number from the envelope
+   * @return the codec, or null if the type is unknown or unavailable on this node
+   */
+  public static CompressionCodec get(int type) {
+    return type > 0 && type < CODECS.length ? CODECS[type] : null;
+  }
+
+  /**
+   * Check whether a codec is available on this node.
+   *
+   * @param type the compress type
+   * @return true if messages of this type can be compressed and uncompressed
+   */
+  public static boolean isAvailable(CompressType type) {
+    return type != null && type != CompressType.UNRECOGNIZED && get(type.getNumber()) != null;
+  }
+
+  /**
+   * Get the codecs to advertise in the handshake: the available codecs of the preference, in
+   * order.
+   *
+   * @param preference the configured preference, null for {@link #DEFAULT_PREFERENCE}
+   * @return the advertised compress types
+   */
+  public static List<CompressType> supported(List<CompressType> preference) {
+    List<CompressType> supported = new ArrayList<>();
+    for (CompressType type : preference == null ? DEFAULT_PREFERENCE : preference) {
+      if (isAvailable(type) && !supported.contains(type)) {
+        supported.add(type);
+      }
+    }
+    return supported;
+  }
+
+  /**
+   * Pick the codec to send with to a peer: the first codec of the local preference that the peer
+   * advertised. Peers advertising nothing predate codec negotiation and get snappy.
+   *
+   * @param preference the configured preference, null for {@link #DEFAULT_PREFERENCE}
+   * @param peer the codecs advertised by the peer
+   * @return the codec to send with, never null
+   */
+  public static CompressionCodec negotiate(
+      List<CompressType> preference, Collection<CompressType> peer) {
+    if (peer == null || peer.isEmpty()) {
+      return SNAPPY;
+    }
+    for (CompressType type : supported(preference)) {
+      if (peer.contains(type)) {
+        return get(type.getNumber());
+      }
+    }
+    return SNAPPY;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.codec;
+
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * LZ4 block codec, the fastest to uncompress. A raw LZ4 block does not record its uncompressed
+ * length, so the compressed form is a four byte big endian length followed by the block.
+ */
+public class Lz4Codec implements CompressionCodec {
+
+  private static final int LENGTH_SIZE = 4;
+
+  private final LZ4Compressor compressor;
+
+  private final LZ4SafeDecompressor decompressor;
+
+  public Lz4Codec() {
+    LZ4Factory factory = LZ4Factory.fastestInstance();
+    this.compressor = factory.fastCompressor();
+    this.decompressor = factory.safeDecompressor();
+  }
+
+  @Override
+  public CompressType getType() {
+    return CompressType.lz4;
+  }
+
+  @Override
+  public int maxCompressedLength(int length) {
+    return LENGTH_SIZE + compressor.maxCompressedLength(length);
+  }
+
+  @Override
+  public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    int length = src.remaining();
+    dst.putInt(dst.position(), length);
+    try {
+      return LENGTH_SIZE
+          + compressor.compress(
+              src,
+              src.position(),
+              length,
+              dst,
+              dst.position() + LENGTH_SIZE,
+              dst.remaining() - LENGTH_SIZE);
+    } catch (LZ4Exception e) {
+      throw new IOException("lz4 compress failed", e);
+    }
+  }
+
+  @Override
+  public int uncompressedLength(ByteBuffer src) throws IOException {
+    if (src.remaining() < LENGTH_SIZE) {
+      throw new IOException("truncated lz4 block, len=" + src.remaining());
+    }
+    int length = src.getInt(src.position());
+    if (length < 0) {
+      throw new IOException("invalid lz4 length:" + length);
+    }
+    return length;
+  }
+
+  @Override
+  public int uncompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    int length = uncompressedLength(src);
+    if (length > dst.remaining()) {
+      throw new IOException("lz4 output too small, need " + length);
+    }
+    int written;
+    try {
+      written =
+          decompressor.decompress(
+              src,
+              src.position() + LENGTH_SIZE,
+              src.remaining() - LENGTH_SIZE,
+              dst,
+              dst.position(),
+              length);
+    } catch (LZ4Exception e) {
+      throw new IOException("malformed lz4 block", e);
+    }
+    if (written != length) {
+      throw new IOException("lz4 length mismatch, expected " + length + " got " + written);
+    }
+    return written;
+  }
+}
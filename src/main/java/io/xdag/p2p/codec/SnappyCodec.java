@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.codec;
+
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.xerial.snappy.Snappy;
+
+/** Snappy codec, understood by every peer of protocol version 1 or later. */
+public class SnappyCodec implements CompressionCodec {
+
+  @Override
+  public CompressType getType() {
+    return CompressType.snappy;
+  }
+
+  @Override
+  public int maxCompressedLength(int length) {
+    return Snappy.maxCompressedLength(length);
+  }
+
+  @Override
+  public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    return Snappy.compress(src, dst);
+  }
+
+  @Override
+  public int uncompressedLength(ByteBuffer src) throws IOException {
+    return Snappy.uncompressedLength(src);
+  }
+
+  @Override
+  public int uncompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    return Snappy.uncompress(src, dst);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.codec;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import lombok.Getter;
+
+/**
+ * Zstandard codec, the best ratio at low levels. Frames are written with their content size, so
+ * the uncompressed length is read from the frame header. Zstd advances buffer positions, so it is
+ * handed duplicates.
+ */
+public class ZstdCodec implements CompressionCodec {
+
+  /** Level 1 compresses about as fast as snappy with a noticeably better ratio */
+  public static final int DEFAULT_LEVEL = 1;
+
+  @Getter private final int level;
+
+  public ZstdCodec() {
+    this(DEFAULT_LEVEL);
+  }
+
+  public ZstdCodec(int level) {
+    this.level = level;
+  }
+
+  @Override
+  public CompressType getType() {
+    return CompressType.zstd;
+  }
+
+  @Override
+  public int maxCompressedLength(int length) {
+    return (int) Zstd.compressBound(length);
+  }
+
+  @Override
+  public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    try {
+      return Zstd.compress(dst.duplicate(), src.duplicate(), level);
+    } catch (ZstdException e) {
+      throw new IOException("zstd compress failed", e);
+    }
+  }
+
+  @Override
+  public int uncompressedLength(ByteBuffer src) throws IOException {
+    long length;
+    try {
+      length = Zstd.getFrameContentSize(src);
+    } catch (ZstdException e) {
+      throw new IOException("malformed zstd frame", e);
+    }
+    if (length < 0 || length > Integer.MAX_VALUE) {
+      throw new IOException("invalid zstd content size:" + length);
+    }
+    return (int) length;
+  }
+
+  @Override
+  public int uncompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    try {
+      return Zstd.decompress(dst.duplicate(), src.duplicate());
+    } catch (ZstdException e) {
+      throw new IOException("malformed zstd frame", e);
+    }
+  }
+}
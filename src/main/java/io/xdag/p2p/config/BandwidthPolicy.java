@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.config;
+
+import io.xdag.p2p.utils.TokenBucket;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.Getter;
+
+/**
+ * Bandwidth limits for application messages, in bytes per second, 0 for no limit. Limits apply to
+ * the whole node, to each peer and to each message type, separately for reading and writing, and
+ * can be changed while peers are connected.
+ *
+ * <p>Bytes are counted as message bytes before compression and framing, the same way in both
+ * directions. Control messages are never limited.
+ *
+ * <p>{@code trustedShare} percent of the global limits is reserved for trusted nodes: other peers
+ * share the rest, trusted peers use their reserve first and then compete for the rest.
+ */
+public class BandwidthPolicy {
+
+  private final Limits read = new Limits();
+  private final Limits write = new Limits();
+
+  /** Percent of the global limits reserved for trusted nodes */
+  @Getter private volatile int trustedShare = 20;
+
+  public long getGlobalReadLimit() {
+    return read.global;
+  }
+
+  public long getGlobalWriteLimit() {
+    return write.global;
+  }
+
+  public long getPeerReadLimit() {
+    return read.peer;
+  }
+
+  public long getPeerWriteLimit() {
+    return write.peer;
+  }
+
+  public synchronized void setGlobalReadLimit(long limit) {
+    read.setGlobal(limit, trustedShare);
+  }
+
+  public synchronized void setGlobalWriteLimit(long limit) {
+    write.setGlobal(limit, trustedShare);
+  }
+
+  public void setPeerReadLimit(long limit) {
+    read.peer = Math.max(0, limit);
+  }
+
+  public void setPeerWriteLimit(long limit) {
+    write.peer = Math.max(0, limit);
+  }
+
+  /**
+   * Set the share of the global limits reserved for trusted nodes.
+   *
+   * @param percent 0 to 100
+   */
+  public synchronized void setTrustedShare(int percent) {
+    trustedShare = Math.max(0, Math.min(100, percent));
+    read.setGlobal(read.global, trustedShare);
+    write.setGlobal(write.global, trustedShare);
+  }
+
+  /**
+   * Set the read limit of a message type, summed over all peers.
+   *
+   * @param type the message type
+   * @param limit bytes per second, 0 for no limit
+   */
+  public void setTypeReadLimit(byte type, long limit) {
+    read.setType(type, limit);
+  }
+
+  /**
+   * Set the write limit of a message type, summed over all peers.
+   *
+   * @param type the message type
+   * @param limit bytes per second, 0 for no limit
+   */
+  public void setTypeWriteLimit(byte type, long limit) {
+    write.setType(type, limit);
+  }
+
+  public long getTypeReadLimit(byte type) {
+    return read.getType(type);
+  }
+
+  public long getTypeWriteLimit(byte type) {
+    return write.getType(type);
+  }
+
+  /** Whether any read limit is set. */
+  public boolean isReadLimited() {
+    return read.isLimited();
+  }
+
+  /** Whether any write limit is set. */
+  public boolean isWriteLimited() {
+    return write.isLimited();
+  }
+
+  /**
+   * Charge a message read from a peer against the read limits.
+   *
+   * @param peer the read bucket of the peer, created by {@link #newPeerBucket()}
+   * @param trusted whether the peer is a trusted node
+   * @param type the message type
+   * @param bytes the message size
+   * @return nanoseconds to wait before reading more from the peer
+   */
+  public long reserveRead(TokenBucket peer, boolean trusted, byte type, int bytes) {
+    return read.reserve(peer, trusted, type, bytes);
+  }
+
+  /**
+   * Charge a message written to a peer against the write limits.
+   *
+   * @param peer the write bucket of the peer, created by {@link #newPeerBucket()}
+   * @param trusted whether the peer is a trusted node
+   * @param type the message type
+   * @param bytes the message size
+   * @return nanoseconds to wait before the message is written
+   */
+  public long reserveWrite(TokenBucket peer, boolean trusted, byte type, int bytes) {
+    return write.reserve(peer, trusted, type, bytes);
+  }
+
+  /** A per peer bucket, it follows the peer limit of this policy. */
+  public TokenBucket newPeerBucket() {
+    return new TokenBucket(0, 1);
+  }
+
+  private static class Limits {
+
+    private volatile long global;
+    private volatile long peer;
+    private volatile int typeCount;
+    private final TokenBucket untrusted = new TokenBucket(0, 1);
+    private final TokenBucket trusted = new TokenBucket(0, 1);
+    private final AtomicReferenceArray<TokenBucket> types = new AtomicReferenceArray<>(256);
+
+    private boolean isLimited() {
+      return global > 0 || peer > 0 || typeCount > 0;
+    }
+
+    private void setGlobal(long limit, int trustedShare) {
+      limit = Math.max(0, limit);
+      long reserved = limit * trustedShare / 100;
+      // the untrusted bucket never reaches 0, which would mean no limit
+      long shared = limit == 0 ? 0 : Math.max(1, limit - reserved);
+      untrusted.setRate(shared, Math.max(1, shared));
+      trusted.setRate(reserved, Math.max(1, reserved));
+      global = limit;
+    }
+
+    private synchronized void setType(byte type, long limit) {
+      TokenBucket bucket = types.get(type & 0xFF);
+      if (limit <= 0) {
+        if (bucket != null) {
+          types.set(type & 0xFF, null);
+          typeCount--;
+        }
+      } else if (bucket == null) {
+        types.set(type & 0xFF, new TokenBucket(limit, limit));
+        typeCount++;
+      } else {
+        bucket.setRate(limit, limit);
+      }
+    }
+
+    private long getType(byte type) {
+      TokenBucket bucket = types.get(type & 0xFF);
+      return bucket == null ? 0 : (long) bucket.getRate();
+    }
+
+    private long reserve(TokenBucket peerBucket, boolean isTrusted, byte type, int bytes) {
+      long wait = 0;
+      long peerLimit = peer;
+      if (peerBucket.getRate() != peerLimit) {
+        peerBucket.setRate(peerLimit, Math.max(1, peerLimit));
+      }
+      if (peerLimit > 0) {
+        wait = peerBucket.reserve(bytes);
+      }
+      TokenBucket typeBucket = types.get(type & 0xFF);
+      if (typeBucket != null) {
+        wait = Math.max(wait, typeBucket.reserve(bytes));
+      }
+      if (global > 0 && !(isTrusted && trusted.getRate() > 0 && trusted.tryAcquire(bytes))) {
+        wait = Math.max(wait, untrusted.reserve(bytes));
+      }
+      return wait;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Decides per message type and size whether an outbound message is worth compressing. Messages
+ * below the minimum size and types marked incompressible are sent in an uncompress envelope
+ * without calling the compressor. For every other type a running compression ratio is kept, and
+ * once a type has shown it does not shrink it is only probed every {@code probeInterval}
+ * messages. Receivers accept both envelope types, so the policy is local to the sender.
+ */
+public class CompressionPolicy {
+
+  /** Weight of a new sample in the running ratio */
+  private static final double RATIO_WEIGHT = 0.1;
+
+  private final TypeStats[] stats = new TypeStats[256];
+
+  /** Messages smaller than this are never compressed, unless overridden for their type */
+  @Getter @Setter private volatile int minSize = 64;
+
+  /** Compressed to original size ratio above which a type is considered incompressible */
+  @Getter @Setter private volatile double maxRatio = 0.95;
+
+  /** Samples needed before the running ratio of a type is trusted */
+  @Getter @Setter private volatile int minSamples = 16;
+
+  /** Messages of an incompressible type skipped between two compression attempts */
+  @Getter @Setter private volatile int probeInterval = 1024;
+
+  public CompressionPolicy() {
+    for (int i = 0; i < stats.length; i++) {
+      stats[i] = new TypeStats();
+    }
+  }
+
+  /**
+   * Set the minimum size to compress for a message type.
+   *
+   * @param type the message type
+   * @param size the minimum size in bytes, negative to use the global minimum
+   */
+  public void setMinSize(byte type, int size) {
+    stats[type & 0xFF].minSize = size;
+  }
+
+  /**
+   * Mark a message type whose payload is already compressed or random, so it is never compressed.
+   *
+   * @param type the message type
+   * @param incompressible true to always skip compression for the type
+   */
+  public void setIncompressible(byte type, boolean incompressible) {
+    stats[type & 0xFF].incompressible = incompressible;
+  }
+
+  /**
+   * Check whether a message should be compressed.
+   *
+   * @param type the message type
+   * @param size the message size in bytes
+   * @return false if the message should be sent uncompressed
+   */
+  public boolean shouldCompress(byte type, int size) {
+    TypeStats s = stats[type & 0xFF];
+    if (s.incompressible) {
+      return false;
+    }
+    int min = s.minSize >= 0 ? s.minSize : minSize;
+    if (size < min) {
+      return false;
+    }
+    if (s.samples < minSamples || s.ratio <= maxRatio) {
+      return true;
+    }
+    // the type does not compress, probe now and then in case its payload changes
+    return s.skipped.incrementAndGet() % Math.max(1, probeInterval) == 0;
+  }
+
+  /**
+   * Record the outcome of a compression attempt.
+   *
+   * @param type the message type
+   * @param size the message size in bytes
+   * @param compressedSize the size after compression
+   */
+  public void record(byte type, int size, int compressedSize) {
+    if (size <= 0) {
+      return;
+    }
+    TypeStats s = stats[type & 0xFF];
+    double ratio = (double) compressedSize / size;
+    synchronized (s) {
+      s.ratio = s.samples == 0 ? ratio : s.ratio + RATIO_WEIGHT * (ratio - s.ratio);
+      s.samples++;
+    }
+  }
+
+  /**
+   * Get the running compressed to original size ratio of a message type.
+   *
+   * @param type the message type
+   * @return the ratio, 1 if the type was never compressed
+   */
+  public double getRatio(byte type) {
+    TypeStats s = stats[type & 0xFF];
+    return s.samples == 0 ? 1 : s.ratio;
+  }
+
+  private static class TypeStats {
+    private volatile int minSize = -1;
+    private volatile boolean incompressible;
+    private volatile long samples;
+    private volatile double ratio = 1;
+    private final AtomicLong skipped = new AtomicLong();
+  }
+}
@@ -27,17 +27,25 @@ import com.google.protobuf.ByteString;
 import io.xdag.p2p.P2pEventHandler;
 import io.xdag.p2p.P2pException;
 import io.xdag.p2p.P2pException.TypeEnum;
+import io.xdag.p2p.channel.MessagePriority;
+import io.xdag.p2p.channel.OffloadedEventHandler;
+import io.xdag.p2p.channel.TransportMode;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.discover.dns.update.PublishConfig;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
 import io.xdag.p2p.proto.Discover;
 import io.xdag.p2p.utils.NetUtils;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
@@ -47,8 +55,19 @@ import org.apache.tuweni.bytes.Bytes;
 @Setter
 public class P2pConfig {
 
-  public List<P2pEventHandler> handlerList = new ArrayList<>();
-  public Map<Byte, P2pEventHandler> handlerMap = new HashMap<>();
+  // lifecycle listeners, copied on write so handlers can be added and removed while running
+  public final List<P2pEventHandler> handlerList = new CopyOnWriteArrayList<>();
+
+  // handler and priority of each message type indexed by the unsigned type, replaced as a whole on
+  // every change so lookups need neither a lock nor a boxed key
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private volatile P2pEventHandler[] handlers = new P2pEventHandler[256];
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private volatile MessagePriority[] priorities = new MessagePriority[256];
+
   private List<InetSocketAddress> seedNodes = new CopyOnWriteArrayList<>();
   private List<InetSocketAddress> activeNodes = new CopyOnWriteArrayList<>();
   private List<InetAddress> trustNodes = new CopyOnWriteArrayList<>();
@@ -66,6 +85,82 @@ public class P2pConfig {
   private boolean disconnectionPolicyEnable = false;
   private boolean nodeDetectEnable = false;
 
+  // inbound accepts admitted per second and burst, checked before a pipeline is built, 0 disables
+  private int acceptRate = 50;
+  private int acceptBurst = 100;
+
+  // ms a disconnected peer may resume its session with a ticket, 0 disables resumption
+  private long sessionTicketTtl = 30_000;
+
+  // dialing side sends the messages of onHandshakeStarted right behind its HELLO
+  private boolean pipelinedHandshake = false;
+
+  // messages queued per peer for a handler registered with an executor before reading is held
+  private int dispatchMailboxSize = 1024;
+
+  // messages queued per peer at which new ones are dropped instead, 0 never drops
+  private int dispatchDropLimit = 0;
+
+  // outbound dials of the connection pool: pending limit, extra dials per round, backoff in ms
+  private int maxPendingDials = 16;
+  private int overDialCount = 2;
+  private int dialBackoffBase = 5_000;
+  private int dialBackoffMax = 300_000;
+
+  // network transport config
+  private TransportMode transportMode = TransportMode.AUTO;
+  private boolean tcpFastOpen = false;
+  private boolean reusePort = false;
+  // dual stack nodes: ms before the other address family is dialed too, 0 dials one address
+  private int connectionAttemptDelay = 250;
+
+  // event loop config, tcp threads 0 means number of core * 2
+  private int tcpIoThreads = P2pConstant.TCP_NETTY_WORK_THREAD_NUM;
+  private int udpIoThreads = P2pConstant.UDP_NETTY_WORK_THREAD_NUM;
+  private boolean singleEventLoop = false;
+
+  // inbound buffer config, socket buffers 0 means os default
+  private int recvBufMinSize = 64;
+  private int recvBufInitialSize = 16 * 1024;
+  private int recvBufMaxSize = 1024 * 1024;
+  private int socketRecvBufferSize = 4 * 1024 * 1024;
+  private int socketSendBufferSize = 4 * 1024 * 1024;
+  private long inboundMemoryBudget = 64 * 1024 * 1024;
+
+  // outbound flush config
+  private boolean flushConsolidation = true;
+  private int flushConsolidationLimit = 256;
+
+  // per channel outbound queue watermarks
+  private int writeBufferLowWaterMark = 512 * 1024;
+  private int writeBufferHighWaterMark = 2 * 1024 * 1024;
+
+  // outbound priority lanes, app bytes released to the socket ahead of control frames
+  private boolean priorityScheduling = true;
+  private int maxInFlightAppBytes = 64 * 1024;
+
+  // per message type and size compression decisions
+  private CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+  // global, per peer and per message type bandwidth limits, adjustable while running
+  private BandwidthPolicy bandwidthPolicy = new BandwidthPolicy();
+
+  // inbound message rate limits per peer and message type, adjustable while running
+  private RateLimitPolicy rateLimitPolicy = new RateLimitPolicy();
+
+  // codecs advertised in the handshake, the first one the peer also supports is used to send
+  private List<CompressType> compressionCodecs =
+      new ArrayList<>(CompressionCodecs.DEFAULT_PREFERENCE);
+
+  // threads compressing off the event loops, 0 compresses on the event loop of each channel
+  private int compressionThreads = 0;
+
+  // batching of small application messages, used with peers that negotiated it
+  private boolean batchEnable = true;
+  private int batchMaxMessages = 64;
+  private int batchMaxBytes = 16 * 1024;
+  private int batchMaxMessageSize = 1024;
+
   // dns read config
   private List<String> treeUrls = new ArrayList<>();
 
@@ -87,20 +182,123 @@ public class P2pConfig {
     return lanIp != null ? lanIp : "127.0.0.1";
   }
 
-  public void addP2pEventHandle(P2pEventHandler p2PEventHandler) throws P2pException {
+  /**
+   * Register a handler for its message types and as a listener of channel events. Handlers can be
+   * registered before or after the service starts.
+   *
+   * @param p2PEventHandler the handler
+   * @throws P2pException if one of the message types is already registered
+   */
+  public synchronized void addP2pEventHandle(P2pEventHandler p2PEventHandler)
+      throws P2pException {
     if (p2PEventHandler.getMessageTypes() != null) {
       for (Byte type : p2PEventHandler.getMessageTypes()) {
-        if (handlerMap.get(type) != null) {
+        if (handlers[type & 0xFF] != null) {
           throw new P2pException(TypeEnum.TYPE_ALREADY_REGISTERED, "type:" + type);
         }
       }
+      P2pEventHandler[] newHandlers = handlers.clone();
+      MessagePriority[] newPriorities = priorities.clone();
       for (Byte type : p2PEventHandler.getMessageTypes()) {
-        handlerMap.put(type, p2PEventHandler);
+        newHandlers[type & 0xFF] = p2PEventHandler;
+        MessagePriority priority = p2PEventHandler.getMessagePriority(type);
+        if (priority == null) {
+          priority = MessagePriority.NORMAL;
+        } else if (priority == MessagePriority.CONTROL) {
+          // the control lane is reserved for node messages
+          priority = MessagePriority.HIGH;
+        }
+        newPriorities[type & 0xFF] = priority;
       }
+      priorities = newPriorities;
+      handlers = newHandlers;
     }
     handlerList.add(p2PEventHandler);
   }
 
+  /**
+   * Unregister a handler, also while the service is running. Messages of its types received
+   * afterwards are treated as unknown messages. A handler registered with an executor is removed
+   * through the wrapper returned at registration.
+   *
+   * @param p2PEventHandler the registered handler
+   * @return true if the handler was registered
+   */
+  public synchronized boolean removeP2pEventHandle(P2pEventHandler p2PEventHandler) {
+    P2pEventHandler[] newHandlers = handlers.clone();
+    MessagePriority[] newPriorities = priorities.clone();
+    for (int i = 0; i < newHandlers.length; i++) {
+      if (newHandlers[i] == p2PEventHandler) {
+        newHandlers[i] = null;
+        newPriorities[i] = null;
+      }
+    }
+    handlers = newHandlers;
+    priorities = newPriorities;
+    return handlerList.remove(p2PEventHandler);
+  }
+
+  /**
+   * Get the handler of a message type, called for every received application message.
+   *
+   * @param type the message type byte
+   * @return the handler, or null if no handler is registered for the type
+   */
+  public P2pEventHandler getHandler(byte type) {
+    return handlers[type & 0xFF];
+  }
+
+  /**
+   * Get a snapshot of the registered handlers by message type.
+   *
+   * @return the handlers, keyed by message type
+   */
+  public Map<Byte, P2pEventHandler> getHandlerMap() {
+    P2pEventHandler[] snapshot = handlers;
+    Map<Byte, P2pEventHandler> map = new HashMap<>();
+    for (int i = 0; i < snapshot.length; i++) {
+      if (snapshot[i] != null) {
+        map.put((byte) i, snapshot[i]);
+      }
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  /**
+   * Register a handler whose callbacks run on the given executor instead of the event loop, for
+   * handlers that block or do heavy work per message. Callbacks of the same channel still run one
+   * at a time in the order they were received; pass {@code
+   * Executors.newVirtualThreadPerTaskExecutor()} to give each busy peer a virtual thread.
+   *
+   * @param p2PEventHandler the handler
+   * @param executor the executor running the callbacks
+   * @return the registered wrapper, which reports mailbox depth and dispatch latency
+   * @throws P2pException if one of the message types is already registered
+   */
+  public OffloadedEventHandler addP2pEventHandle(
+      P2pEventHandler p2PEventHandler, Executor executor) throws P2pException {
+    OffloadedEventHandler offloaded =
+        new OffloadedEventHandler(
+            p2PEventHandler, executor, dispatchMailboxSize, dispatchDropLimit);
+    addP2pEventHandle(offloaded);
+    return offloaded;
+  }
+
+  /**
+   * Get the outbound priority of a message type. Node messages always use the control lane,
+   * application types use the priority declared by their handler at registration.
+   *
+   * @param type the message type byte
+   * @return the priority lane of the type
+   */
+  public MessagePriority getMessagePriority(byte type) {
+    if (type < 0) {
+      return MessagePriority.CONTROL;
+    }
+    MessagePriority priority = priorities[type & 0xFF];
+    return priority == null ? MessagePriority.NORMAL : priority;
+  }
+
   public Discover.Endpoint getHomeNode() {
     Discover.Endpoint.Builder builder =
         Discover.Endpoint.newBuilder()
@@ -37,7 +37,8 @@ public class P2pConstant {
   public static final String ipV4Hex = "00000000"; // 32 bit
   public static final String ipV6Hex = "00000000000000000000000000000000"; // 128 bit
 
-  public static int version = 1;
+  public static int version = 2;
+  public static final int BATCH_VERSION = 2;
   public static final int TCP_NETTY_WORK_THREAD_NUM = 0;
   public static final int UDP_NETTY_WORK_THREAD_NUM = 1;
   public static final int NODE_CONNECTION_TIMEOUT = 2000;
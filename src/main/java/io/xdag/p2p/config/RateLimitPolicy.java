@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.config;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Rate limits for inbound application messages, per peer and message type. Every peer gets its own
+ * token bucket for each limited type, and the {@link Action} of the limit decides what happens to
+ * a message that arrives while the bucket is empty. Limits can be changed while peers are
+ * connected.
+ */
+public class RateLimitPolicy {
+
+  /** What to do with a message over its limit. */
+  public enum Action {
+    /** Drop the message without dispatching it */
+    DROP,
+    /** Dispatch the message and stop reading from the peer until the bucket refills */
+    DELAY,
+    /** Drop the message, disconnect the peer and ban it for {@code banTime} */
+    DISCONNECT
+  }
+
+  /**
+   * The limit of a message type.
+   *
+   * @param rate messages per second
+   * @param burst messages accepted at once
+   * @param action what to do with a message over the limit
+   */
+  public record Limit(double rate, int burst, Action action) {}
+
+  private final AtomicReferenceArray<Limit> limits = new AtomicReferenceArray<>(256);
+  private final AtomicLongArray dropped = new AtomicLongArray(256);
+  private final AtomicLongArray delayed = new AtomicLongArray(256);
+  private final AtomicLongArray disconnected = new AtomicLongArray(256);
+
+  /** Limit of every type without a limit of its own, null for no limit */
+  @Getter private volatile Limit defaultLimit;
+
+  /** How long a peer disconnected by a limit is banned, in ms */
+  @Getter @Setter private volatile long banTime = P2pConstant.DEFAULT_BAN_TIME;
+
+  /**
+   * Set the limit of a message type.
+   *
+   * @param type the message type
+   * @param rate messages per second, 0 or less to fall back to the default limit
+   * @param burst messages accepted at once
+   * @param action what to do with a message over the limit
+   */
+  public void setLimit(byte type, double rate, int burst, Action action) {
+    limits.set(type & 0xFF, rate > 0 ? new Limit(rate, Math.max(1, burst), action) : null);
+  }
+
+  /**
+   * Set the limit of every message type without a limit of its own.
+   *
+   * @param rate messages per second, 0 or less for no limit
+   * @param burst messages accepted at once
+   * @param action what to do with a message over the limit
+   */
+  public void setDefaultLimit(double rate, int burst, Action action) {
+    defaultLimit = rate > 0 ? new Limit(rate, Math.max(1, burst), action) : null;
+  }
+
+  /** The limit that applies to a message type, null if it is not limited. */
+  public Limit getLimit(byte type) {
+    Limit limit = limits.get(type & 0xFF);
+    return limit != null ? limit : defaultLimit;
+  }
+
+  /**
+   * Count a message over its limit.
+   *
+   * @param type the message type
+   * @param action the action taken
+   */
+  public void record(byte type, Action action) {
+    AtomicLongArray counters =
+        switch (action) {
+          case DROP -> dropped;
+          case DELAY -> delayed;
+          case DISCONNECT -> disconnected;
+        };
+    counters.incrementAndGet(type & 0xFF);
+  }
+
+  /** Messages of a type dropped over their limit, from all peers. */
+  public long getDropped(byte type) {
+    return dropped.get(type & 0xFF);
+  }
+
+  /** Messages of a type over their limit that paused reading from their peer. */
+  public long getDelayed(byte type) {
+    return delayed.get(type & 0xFF);
+  }
+
+  /** Peers disconnected for going over the limit of a type. */
+  public long getDisconnected(byte type) {
+    return disconnected.get(type & 0xFF);
+  }
+}
@@ -24,8 +24,13 @@
 package io.xdag.p2p.config;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.xdag.p2p.P2pException;
 import io.xdag.p2p.P2pException.TypeEnum;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.proto.Connect.CompressMessage;
 import io.xdag.p2p.utils.ProtoUtils;
 import java.io.IOException;
@@ -53,6 +58,107 @@ public class UpgradeController {
     return Bytes.wrap(compressed.toByteArray());
   }
 
+  /**
+   * Encode data for sending based on protocol version into a buffer ready to be written to the
+   * channel. Compressed data is encoded into direct buffers from the allocator, uncompressed data
+   * is wrapped without copying.
+   *
+   * @param alloc the allocator for the encoded buffer
+   * @param version the protocol version
+   * @param data the data to encode as Tuweni Bytes
+   * @return encoded data, owned by the caller
+   * @throws IOException if encoding fails
+   */
+  public static ByteBuf encodeSendData(ByteBufAllocator alloc, int version, Bytes data)
+      throws IOException {
+    return encodeSendData(alloc, version, data, null);
+  }
+
+  /**
+   * Encode data for sending with snappy, see {@link #encodeSendData(ByteBufAllocator, int, Bytes,
+   * CompressionPolicy, CompressionCodec)}.
+   *
+   * @param alloc the allocator for the encoded buffer
+   * @param version the protocol version
+   * @param data the data to encode as Tuweni Bytes
+   * @param policy the compression policy, null to always try to compress
+   * @return encoded data, owned by the caller
+   * @throws IOException if encoding fails
+   */
+  public static ByteBuf encodeSendData(
+      ByteBufAllocator alloc, int version, Bytes data, CompressionPolicy policy)
+      throws IOException {
+    return encodeSendData(alloc, version, data, policy, null);
+  }
+
+  /**
+   * Encode data for sending, compressing it only if the policy expects it to pay off. Messages the
+   * policy skips are sent in an uncompress envelope that every version 1 peer accepts.
+   *
+   * @param alloc the allocator for the encoded buffer
+   * @param version the protocol version
+   * @param data the data to encode as Tuweni Bytes
+   * @param policy the compression policy, null to always try to compress
+   * @param codec the codec negotiated with the peer, null for snappy
+   * @return encoded data, owned by the caller
+   * @throws IOException if encoding fails
+   */
+  public static ByteBuf encodeSendData(
+      ByteBufAllocator alloc,
+      int version,
+      Bytes data,
+      CompressionPolicy policy,
+      CompressionCodec codec)
+      throws IOException {
+    if (!supportCompress(version)) {
+      return Unpooled.wrappedBuffer(data.toArrayUnsafe());
+    }
+    if (codec == null) {
+      codec = CompressionCodecs.SNAPPY;
+    }
+    if (policy == null || data.isEmpty()) {
+      return ProtoUtils.compressMessage(alloc, data, codec);
+    }
+    byte type = data.get(0);
+    if (!policy.shouldCompress(type, data.size())) {
+      return ProtoUtils.wrapMessage(alloc, data);
+    }
+    ByteBuf encoded = ProtoUtils.compressMessage(alloc, data, codec);
+    policy.record(type, data.size(), encoded.readableBytes());
+    return encoded;
+  }
+
+  /**
+   * Compress data held in a buffer for a peer already known to support compression, applying the
+   * same policy as {@link #encodeSendData(ByteBufAllocator, int, Bytes, CompressionPolicy,
+   * CompressionCodec)}. Used by the pipeline compression stage, which checks the version once.
+   *
+   * @param alloc the allocator for the encoded buffer
+   * @param data the readable bytes to encode, not released
+   * @param policy the compression policy, null to always try to compress
+   * @param codec the codec negotiated with the peer, null for snappy
+   * @return encoded data, owned by the caller
+   * @throws IOException if encoding fails
+   */
+  public static ByteBuf compressSendData(
+      ByteBufAllocator alloc, ByteBuf data, CompressionPolicy policy, CompressionCodec codec)
+      throws IOException {
+    if (codec == null) {
+      codec = CompressionCodecs.SNAPPY;
+    }
+    if (policy == null || !data.isReadable()) {
+      return ProtoUtils.compressMessage(alloc, data, codec);
+    }
+    byte type = data.getByte(data.readerIndex());
+    int size = data.readableBytes();
+    if (!policy.shouldCompress(type, size)) {
+      return ProtoUtils.wrapMessage(alloc, data);
+    }
+    ByteBuf encoded = ProtoUtils.compressMessage(alloc, data, codec);
+    policy.record(type, size, encoded.readableBytes());
+    return encoded;
+  }
+
   /**
    * Decode received data based on protocol version.
    *
@@ -75,13 +181,45 @@ public class UpgradeController {
     return ProtoUtils.uncompressMessageBytes(compressMessage);
   }
 
+  /**
+   * Decode a received frame based on protocol version without copying it into byte arrays.
+   * Uncompressed data is returned as a retained slice of {@code data}, compressed data is
+   * uncompressed into a new buffer from the allocator. The reader index of {@code data} is not
+   * modified.
+   *
+   * @param alloc the allocator for uncompressed data
+   * @param version the protocol version
+   * @param data the received frame
+   * @return decoded data, owned by the caller
+   * @throws P2pException if parsing fails
+   * @throws IOException if decoding fails
+   */
+  public static ByteBuf decodeReceiveData(ByteBufAllocator alloc, int version, ByteBuf data)
+      throws P2pException, IOException {
+    if (!supportCompress(version)) {
+      return data.retainedSlice();
+    }
+    return ProtoUtils.uncompressMessage(alloc, data);
+  }
+
+  /**
+   * Check if batch messages can be sent to a peer of the given version.
+   *
+   * @param version the protocol version of the peer
+   * @return true if both sides understand batch messages
+   */
+  public static boolean supportBatch(int version) {
+    return P2pConstant.version >= P2pConstant.BATCH_VERSION
+        && version >= P2pConstant.BATCH_VERSION;
+  }
+
   /**
    * Check if compression is supported for the given version.
    *
    * @param version the protocol version to check
    * @return true if compression is supported
    */
-  private static boolean supportCompress(int version) {
+  public static boolean supportCompress(int version) {
     return P2pConstant.version >= 1 && version >= 1;
   }
 }
@@ -26,25 +26,25 @@ package io.xdag.p2p.discover;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.MultiThreadIoEventLoopGroup;
-import io.netty.channel.nio.NioIoHandler;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.DatagramChannel;
 import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
 import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+import io.xdag.p2p.channel.IoResourceManager;
+import io.xdag.p2p.channel.TransportMode;
 import io.xdag.p2p.config.P2pConfig;
-import io.xdag.p2p.config.P2pConstant;
 import io.xdag.p2p.handler.discover.EventHandler;
 import io.xdag.p2p.handler.discover.MessageHandler;
 import io.xdag.p2p.handler.discover.P2pPacketDecoder;
 import io.xdag.p2p.stats.TrafficStats;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
 @Slf4j(topic = "net")
 public class DiscoverServer {
 
   private final P2pConfig p2pConfig;
+  private final IoResourceManager ioResourceManager;
+  private final boolean ownsIoResources;
   private Channel channel;
   private EventHandler eventHandler;
 
@@ -54,7 +54,18 @@ public class DiscoverServer {
   private volatile boolean shutdown = false;
 
   public DiscoverServer(P2pConfig p2pConfig) {
+    this(p2pConfig, new IoResourceManager(p2pConfig), true);
+  }
+
+  public DiscoverServer(P2pConfig p2pConfig, IoResourceManager ioResourceManager) {
+    this(p2pConfig, ioResourceManager, false);
+  }
+
+  private DiscoverServer(
+      P2pConfig p2pConfig, IoResourceManager ioResourceManager, boolean ownsIoResources) {
     this.p2pConfig = p2pConfig;
+    this.ioResourceManager = ioResourceManager;
+    this.ownsIoResources = ownsIoResources;
     this.port = p2pConfig.getPort();
   }
 
@@ -85,20 +96,16 @@ public class DiscoverServer {
   }
 
   private void start() throws Exception {
-    MultiThreadIoEventLoopGroup group =
-        new MultiThreadIoEventLoopGroup(
-            P2pConstant.UDP_NETTY_WORK_THREAD_NUM,
-            new BasicThreadFactory.Builder().namingPattern("discoverServer").build(),
-            NioIoHandler.newFactory());
+    TransportMode transport = ioResourceManager.getTransport();
     try {
       while (!shutdown) {
         Bootstrap b = new Bootstrap();
-        b.group(group)
-            .channel(NioDatagramChannel.class)
+        b.group(ioResourceManager.getUdpGroup())
+            .channel(transport.datagramChannelClass())
             .handler(
-                new ChannelInitializer<NioDatagramChannel>() {
+                new ChannelInitializer<DatagramChannel>() {
                   @Override
-                  public void initChannel(NioDatagramChannel ch) {
+                  public void initChannel(DatagramChannel ch) {
                     ch.pipeline().addLast(TrafficStats.getUdp());
                     ch.pipeline().addLast(new ProtobufVarint32LengthFieldPrepender());
                     ch.pipeline().addLast(new ProtobufVarint32FrameDecoder());
@@ -108,10 +115,11 @@ public class DiscoverServer {
                     ch.pipeline().addLast(messageHandler);
                   }
                 });
+        transport.applyDatagramOptions(b, p2pConfig);
 
         channel = b.bind(port).sync().channel();
 
-        log.info("Discovery server started, bind port {}", port);
+        log.info("Discovery server started, bind port {}, transport {}", port, transport);
 
         channel.closeFuture().sync();
         if (shutdown) {
@@ -127,7 +135,9 @@ public class DiscoverServer {
     } catch (Exception e) {
       log.error("Start discovery server with port {} failed", port, e);
     } finally {
-      group.shutdownGracefully().sync();
+      if (ownsIoResources) {
+        ioResourceManager.close();
+      }
     }
   }
 }
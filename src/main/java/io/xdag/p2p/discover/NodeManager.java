@@ -23,6 +23,7 @@
  */
 package io.xdag.p2p.discover;
 
+import io.xdag.p2p.channel.IoResourceManager;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.discover.kad.KadService;
 import java.util.List;
@@ -30,18 +31,32 @@ import java.util.List;
 public class NodeManager {
 
   private final P2pConfig p2pConfig;
+  private final IoResourceManager ioResourceManager;
   private DiscoverService discoverService;
   private DiscoverServer discoverServer;
 
   public NodeManager(P2pConfig p2pConfig) {
+    this(p2pConfig, null);
+  }
+
+  /**
+   * @param p2pConfig the p2p config
+   * @param ioResourceManager shared event loops for the discovery server, null to let the server
+   *     own its event loop
+   */
+  public NodeManager(P2pConfig p2pConfig, IoResourceManager ioResourceManager) {
     this.p2pConfig = p2pConfig;
+    this.ioResourceManager = ioResourceManager;
   }
 
   public void init() {
     discoverService = new KadService(p2pConfig);
     discoverService.init();
     if (p2pConfig.isDiscoverEnable()) {
-      discoverServer = new DiscoverServer(p2pConfig);
+      discoverServer =
+          ioResourceManager == null
+              ? new DiscoverServer(p2pConfig)
+              : new DiscoverServer(p2pConfig, ioResourceManager);
       discoverServer.init(discoverService);
     }
   }
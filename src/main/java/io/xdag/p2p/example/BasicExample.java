@@ -81,6 +81,7 @@ public class BasicExample {
             }
           };
 
+      eventHandler.setP2pService(p2pService);
       p2pService.register(eventHandler);
 
       // Start the service
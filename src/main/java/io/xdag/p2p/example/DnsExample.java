@@ -82,6 +82,7 @@ public class DnsExample {
             }
           };
 
+      eventHandler.setP2pService(p2pService);
       p2pService.register(eventHandler);
 
       // Start the service
@@ -64,7 +64,7 @@ public class StartApp {
   public void start(String[] args) throws Exception {
     // Initialize configuration
     P2pConfig config = new P2pConfig();
-    P2pConstant.version = 1;
+    P2pConstant.version = 2;
 
     // Parse command line arguments
     CliConfigParser parser = new CliConfigParser();
@@ -81,6 +81,7 @@ public class StartApp {
     nodeId = "node-" + config.getPort();
     eventHandler = createEventHandler();
 
+    eventHandler.setP2pService(p2pService);
     p2pService.register(eventHandler);
 
     // Start the service
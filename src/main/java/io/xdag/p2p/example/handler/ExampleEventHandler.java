@@ -24,6 +24,7 @@
 package io.xdag.p2p.example.handler;
 
 import io.xdag.p2p.P2pEventHandler;
+import io.xdag.p2p.P2pService;
 import io.xdag.p2p.channel.Channel;
 import io.xdag.p2p.example.message.MessageTypes;
 import io.xdag.p2p.example.message.TestMessage;
@@ -35,6 +36,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tuweni.bytes.Bytes;
 
@@ -55,6 +57,9 @@ public class ExampleEventHandler extends P2pEventHandler {
   protected final AtomicLong totalLatency = new AtomicLong(0);
   protected final String nodeId;
 
+  // service used to broadcast, set by the example before the handler is registered
+  @Setter protected P2pService p2pService;
+
   public ExampleEventHandler() {
     this.nodeId = generateNodeId();
     this.messageTypes = new HashSet<>();
@@ -144,20 +149,15 @@ public class ExampleEventHandler extends P2pEventHandler {
     Bytes messageBytes =
         Bytes.concatenate(Bytes.of(MessageTypes.TEST.getType()), Bytes.wrap(testMessage.getData()));
 
-    channels
-        .values()
-        .forEach(
-            channel -> {
-              try {
-                channel.send(messageBytes);
-                log.info("Sent test message to {}: {}", channel.getInetSocketAddress(), message);
-              } catch (Exception e) {
-                log.error(
-                    "Failed to send message to {}: {}",
-                    channel.getInetSocketAddress(),
-                    e.getMessage());
-              }
-            });
+    if (p2pService == null) {
+      log.warn("No P2P service to broadcast the test message: {}", message);
+      return;
+    }
+    // encode once and share the frame between the peers of this handler
+    int sent =
+        p2pService.broadcast(
+            messageBytes, channel -> channels.get(channel.getInetSocketAddress()) == channel);
+    log.info("Sent test message to {} peers: {}", sent, message);
   }
 
   /**
@@ -28,7 +28,7 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.DatagramChannel;
 import java.net.InetSocketAddress;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
@@ -42,7 +42,7 @@ public class MessageHandler extends SimpleChannelInboundHandler<UdpEvent>
 
   private final EventHandler eventHandler;
 
-  public MessageHandler(NioDatagramChannel channel, EventHandler eventHandler) {
+  public MessageHandler(DatagramChannel channel, EventHandler eventHandler) {
     this.channel = channel;
     this.eventHandler = eventHandler;
   }
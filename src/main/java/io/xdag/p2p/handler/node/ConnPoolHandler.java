@@ -1,8 +1,8 @@
 package io.xdag.p2p.handler.node;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
 import io.xdag.p2p.P2pEventHandler;
 import io.xdag.p2p.P2pException;
 import io.xdag.p2p.channel.Channel;
@@ -46,12 +46,7 @@ public class ConnPoolHandler extends P2pEventHandler {
   private final DnsManager dnsManager;
 
   private final List<Channel> activePeers = Collections.synchronizedList(new ArrayList<>());
-  private final Cache<InetAddress, Long> peerClientCache =
-      CacheBuilder.newBuilder()
-          .maximumSize(1000)
-          .expireAfterWrite(120, TimeUnit.SECONDS)
-          .recordStats()
-          .build();
+  @Getter private final DialScheduler dialScheduler;
   @Getter private final AtomicInteger passivePeersCount = new AtomicInteger(0);
   @Getter private final AtomicInteger activePeersCount = new AtomicInteger(0);
   @Getter private final AtomicInteger connectingPeersCount = new AtomicInteger(0);
@@ -75,6 +70,7 @@ public class ConnPoolHandler extends P2pEventHandler {
     this.nodeManager = nodeManager;
     this.dnsManager = dnsManager;
     this.messageTypes = new HashSet<>(); // no message type registers
+    this.dialScheduler = new DialScheduler(p2pConfig, this::dial);
     try {
       this.p2pConfig.addP2pEventHandle(this);
       configActiveNodes.addAll(p2pConfig.getActiveNodes());
@@ -179,7 +175,8 @@ public class ConnPoolHandler extends P2pEventHandler {
     if (p2pConfig.getMinConnections() <= activePeers.size() && activeLackSize <= 0) {
       size = 0;
     }
-    int lackSize = size;
+    // dial a few more than needed, the first ones to finish the handshake are kept
+    int lackSize = size > 0 ? size + p2pConfig.getOverDialCount() : 0;
     if (lackSize > 0) {
       List<Node> connectableNodes = channelManager.getNodeDetectHandler().getConnectableNodes();
       for (Node node : connectableNodes) {
@@ -231,19 +228,40 @@ public class ConnPoolHandler extends P2pEventHandler {
         size,
         connectNodes.size(),
         isFilterActiveNodes);
-    // establish tcp connection with chose nodes by peerClient
-    {
-      connectNodes.forEach(
-          n -> {
+    // config active nodes are dialed at once, the others go through the dial scheduler
+    List<Node> poolNodes = new ArrayList<>();
+    connectNodes.forEach(
+        n -> {
+          if (configActiveNodes.contains(n.getPreferInetSocketAddress())) {
             log.info("Connect to peer {}", n.getPreferInetSocketAddress());
             peerClient.connectAsync(n, false);
-            peerClientCache.put(
-                n.getPreferInetSocketAddress().getAddress(), System.currentTimeMillis());
-            if (!configActiveNodes.contains(n.getPreferInetSocketAddress())) {
-              connectingPeersCount.incrementAndGet();
-            }
-          });
+          } else {
+            poolNodes.add(n);
+          }
+        });
+    dialScheduler.submit(poolNodes, size);
+  }
+
+  private ChannelFuture dial(Node node) {
+    log.info("Connect to peer {}", node.getPreferInetSocketAddress());
+    connectingPeersCount.incrementAndGet();
+    ChannelFuture future = peerClient.connectAsync(node, false);
+    if (future == null) {
+      connectingPeersCount.decrementAndGet();
     }
+    return future;
+  }
+
+  /**
+   * Check a dialed peer that passed the handshake against the need of the pool round that dialed
+   * it. Rounds dial a few nodes more than they need; the peers beyond the need are surplus.
+   *
+   * @param peer the peer
+   * @return false if the peer is surplus and should be disconnected
+   */
+  public boolean keepDialedPeer(Channel peer) {
+    ChannelHandlerContext ctx = peer.getCtx();
+    return ctx == null || dialScheduler.claim(ctx.channel());
   }
 
   public List<Node> getNodes(
@@ -284,7 +302,7 @@ public class ConnPoolHandler extends P2pEventHandler {
     return (forbiddenTime == null || now > forbiddenTime)
         && (channelManager.getConnectionNum(inetAddress) < p2pConfig.getMaxConnectionsWithSameIp())
         && (node.getId() == null || !nodesInUse.contains(node.getHexId()))
-        && (peerClientCache.getIfPresent(inetAddress) == null)
+        && !dialScheduler.isBlocked(inetAddress)
         && !inetInUse.contains(inetSocketAddress)
         && (dynamicInet == null || !dynamicInet.contains(inetSocketAddress));
   }
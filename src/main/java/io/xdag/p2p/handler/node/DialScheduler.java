@@ -0,0 +1,203 @@
+package io.xdag.p2p.handler.node;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.discover.Node;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Schedules the outbound dials of the connection pool.
+ *
+ * <p>At most {@code maxPendingDials} dials are in flight; a dial is pending from the connect until
+ * the peer passes the handshake or the connection fails. Further candidates wait in a queue, which
+ * every pool round replaces, and are dialed as soon as a pending dial resolves.
+ *
+ * <p>A failed dial backs its address off exponentially, from {@code dialBackoffBase} up to {@code
+ * dialBackoffMax}; a handshake clears the backoff.
+ *
+ * <p>A round may dial more nodes than it needs. The first dials of the round to finish the
+ * handshake fill the need, later ones are reported as surplus so the caller can close them.
+ */
+@Slf4j(topic = "net")
+class DialScheduler {
+
+  private final Function<Node, ChannelFuture> dialer;
+  private final LongSupplier clock;
+  private final int maxPendingDials;
+  private final long backoffBase;
+  private final long backoffMax;
+
+  private final Map<InetAddress, Dial> pending = new HashMap<>();
+  private final Deque<Dial> queue = new ArrayDeque<>();
+  private final Cache<InetAddress, Backoff> backoffs;
+
+  DialScheduler(P2pConfig p2pConfig, Function<Node, ChannelFuture> dialer) {
+    this(p2pConfig, dialer, System::currentTimeMillis);
+  }
+
+  DialScheduler(P2pConfig p2pConfig, Function<Node, ChannelFuture> dialer, LongSupplier clock) {
+    this.dialer = dialer;
+    this.clock = clock;
+    this.maxPendingDials = Math.max(1, p2pConfig.getMaxPendingDials());
+    this.backoffBase = Math.max(1, p2pConfig.getDialBackoffBase());
+    this.backoffMax = Math.max(backoffBase, p2pConfig.getDialBackoffMax());
+    // an address that stayed quiet for twice the longest backoff starts over
+    this.backoffs =
+        CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(2 * backoffMax, TimeUnit.MILLISECONDS)
+            .build();
+  }
+
+  /**
+   * Replace the queued dials with a new round.
+   *
+   * @param nodes the nodes to dial, in order of preference
+   * @param needed how many of them should be kept once they finish the handshake
+   */
+  synchronized void submit(List<Node> nodes, int needed) {
+    queue.clear();
+    Round round = new Round(needed);
+    for (Node node : nodes) {
+      queue.add(new Dial(node, round));
+    }
+    pump();
+  }
+
+  /**
+   * Check whether an address has a dial pending or is backing off after a failed dial.
+   *
+   * @param address the address
+   * @return true if the address must not be dialed now
+   */
+  synchronized boolean isBlocked(InetAddress address) {
+    if (pending.containsKey(address)) {
+      return true;
+    }
+    Backoff backoff = backoffs.getIfPresent(address);
+    return backoff != null && clock.getAsLong() < backoff.retryAt();
+  }
+
+  synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  synchronized int getQueuedCount() {
+    return queue.size();
+  }
+
+  /**
+   * Resolve the dial of a channel that passed the handshake.
+   *
+   * @param channel the connected channel
+   * @return false if the channel was dialed by a round whose need is already filled
+   */
+  synchronized boolean claim(Channel channel) {
+    Dial dial = null;
+    for (Dial d : pending.values()) {
+      if (d.channel == channel) {
+        dial = d;
+        break;
+      }
+    }
+    if (dial == null) {
+      return true;
+    }
+    backoffs.invalidate(dial.address);
+    resolve(dial);
+    if (dial.round.needed > 0) {
+      dial.round.needed--;
+      return true;
+    }
+    return false;
+  }
+
+  private void pump() {
+    while (pending.size() < maxPendingDials && !queue.isEmpty()) {
+      Dial dial = queue.poll();
+      if (!isBlocked(dial.address)) {
+        launch(dial);
+      }
+    }
+  }
+
+  private void launch(Dial dial) {
+    pending.put(dial.address, dial);
+    ChannelFuture future = dialer.apply(dial.node);
+    if (future == null) {
+      fail(dial);
+      return;
+    }
+    future.addListener(
+        (ChannelFutureListener)
+            f -> {
+              if (f.isSuccess()) {
+                connected(dial, f.channel());
+              } else {
+                fail(dial);
+              }
+            });
+  }
+
+  private synchronized void connected(Dial dial, Channel channel) {
+    dial.channel = channel;
+    // a channel closing before the handshake counts as a failed dial
+    channel.closeFuture().addListener(f -> fail(dial));
+  }
+
+  private synchronized void fail(Dial dial) {
+    if (dial.resolved) {
+      return;
+    }
+    Backoff previous = backoffs.getIfPresent(dial.address);
+    int failures = previous == null ? 1 : previous.failures() + 1;
+    long delay = Math.min(backoffMax, backoffBase << Math.min(failures - 1, 30));
+    backoffs.put(dial.address, new Backoff(failures, clock.getAsLong() + delay));
+    log.debug("Dial to {} failed {} times, retry in {} ms", dial.address, failures, delay);
+    resolve(dial);
+  }
+
+  private void resolve(Dial dial) {
+    dial.resolved = true;
+    pending.remove(dial.address, dial);
+    pump();
+  }
+
+  /** Dials of one pool round share how many peers the round still needs */
+  private static class Round {
+    private int needed;
+
+    private Round(int needed) {
+      this.needed = needed;
+    }
+  }
+
+  private static class Dial {
+    private final Node node;
+    private final InetAddress address;
+    private final Round round;
+    private Channel channel;
+    private boolean resolved;
+
+    private Dial(Node node, Round round) {
+      this.node = node;
+      this.address = node.getPreferInetSocketAddress().getAddress();
+      this.round = round;
+    }
+  }
+
+  private record Backoff(int failures, long retryAt) {}
+}
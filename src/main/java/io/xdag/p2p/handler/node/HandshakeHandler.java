@@ -9,6 +9,7 @@ import io.xdag.p2p.message.node.Message;
 import io.xdag.p2p.message.node.P2pDisconnectMessage;
 import io.xdag.p2p.proto.Connect.DisconnectReason;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
 
 @Slf4j(topic = "net")
 public class HandshakeHandler implements MessageHandler {
@@ -25,7 +26,22 @@ public class HandshakeHandler implements MessageHandler {
   }
 
   public void startHandshake(Channel channel) {
-    sendHelloMsg(channel, DisconnectCode.NORMAL, channel.getStartTime());
+    SessionTickets tickets = channelManager.getSessionTickets();
+    SessionTickets.Session session = tickets == null ? null : tickets.take(channel.getNodeId());
+    Bytes ticket = session == null ? null : session.ticket();
+    // remembered to know whether the reply may resume the session
+    channel.setSession(session);
+    channel.setSessionTicket(ticket);
+    sendHelloMsg(channel, DisconnectCode.NORMAL, channel.getStartTime(), ticket, false);
+    if (p2pConfig.isPipelinedHandshake()) {
+      // messages sent from the callback follow the HELLO, the peer handles them once it accepts
+      channel.setPipelining(true);
+      try {
+        p2pConfig.handlerList.forEach(h -> h.onHandshakeStarted(channel));
+      } finally {
+        channel.setPipelining(false);
+      }
+    }
   }
 
   @Override
@@ -39,6 +55,7 @@ public class HandshakeHandler implements MessageHandler {
       return;
     }
 
+    resumeSession(channel, msg);
     channel.setHandshakeMessage(msg);
 
     DisconnectCode code = channelManager.processPeer(channel);
@@ -49,9 +66,12 @@ public class HandshakeHandler implements MessageHandler {
       return;
     }
 
-    channelManager.updateNodeId(channel, msg.getFrom().getHexId());
-    if (channel.isDisconnect()) {
-      return;
+    // a resumed session was checked against this node and its duplicates when it started
+    if (!channel.isResumed()) {
+      channelManager.updateNodeId(channel, msg.getFrom().getHexId());
+      if (channel.isDisconnect()) {
+        return;
+      }
     }
 
     if (channel.isActive()) {
@@ -84,15 +104,57 @@ public class HandshakeHandler implements MessageHandler {
         channel.close();
         return;
       }
-      sendHelloMsg(channel, DisconnectCode.NORMAL, msg.getTimestamp());
+      Bytes ticket =
+          channelManager.getSessionTickets() == null
+              ? null
+              : channelManager.getSessionTickets().issue();
+      sendHelloMsg(channel, DisconnectCode.NORMAL, msg.getTimestamp(), ticket, channel.isResumed());
+      channel.setSessionTicket(ticket);
+      if (channelManager.getSessionTickets() != null) {
+        channelManager.getSessionTickets().onEstablished(channel);
+      }
     }
     channel.setFinishHandshake(true);
     channel.updateAvgLatency(System.currentTimeMillis() - channel.getStartTime());
-    p2pConfig.handlerList.forEach(h -> h.onConnect(channel));
+    if (channel.isResumed()) {
+      p2pConfig.handlerList.forEach(h -> h.onResume(channel));
+    } else {
+      p2pConfig.handlerList.forEach(h -> h.onConnect(channel));
+    }
+  }
+
+  /**
+   * Mark the channel as resumed if the HELLO resumes an earlier session: on the accepting side
+   * when it presents a valid ticket, on the dialing side when the reply accepts the presented one.
+   * The dialing side keeps the ticket issued in the reply for its next connection.
+   */
+  private void resumeSession(Channel channel, HelloMessage msg) {
+    SessionTickets tickets = channelManager.getSessionTickets();
+    Bytes ticket = msg.getTicket();
+    if (tickets == null || ticket == null) {
+      return;
+    }
+    if (channel.isActive()) {
+      channel.setResumed(channel.getSession() != null && msg.isResumed());
+      channel.setSessionTicket(ticket.isEmpty() ? null : ticket);
+      return;
+    }
+    SessionTickets.Session session =
+        tickets.redeem(ticket, msg.getFrom().getHexId(), channel.getInetAddress());
+    if (session != null) {
+      log.debug("Resume session of {}", channel.getInetSocketAddress());
+      channel.setSession(session);
+      channel.setResumed(true);
+    }
   }
 
   private void sendHelloMsg(Channel channel, DisconnectCode code, long time) {
-    HelloMessage handshakeMessage = new HelloMessage(p2pConfig, code, time);
+    sendHelloMsg(channel, code, time, null, false);
+  }
+
+  private void sendHelloMsg(
+      Channel channel, DisconnectCode code, long time, Bytes ticket, boolean resumed) {
+    HelloMessage handshakeMessage = new HelloMessage(p2pConfig, code, time, ticket, resumed);
     channel.send(handshakeMessage);
   }
 
@@ -0,0 +1,211 @@
+package io.xdag.p2p.handler.node;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.xdag.p2p.channel.Channel;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.config.P2pConfig;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Session resumption tickets.
+ *
+ * <p>The accepting side of a handshake issues a random ticket in its HELLO. Once the connection is
+ * lost, the ticket stays valid for {@code sessionTicketTtl} ms on both sides: the dialing side
+ * presents it in the HELLO of its next connection to the same node, and the accepting side resumes
+ * the session if the ticket was issued to that node id at that address. A resumed peer skips the
+ * connection limit and duplicate checks, keeps the compression codec of its session, replaces its
+ * stale channel and is announced to handlers with {@code onResume} instead of {@code onConnect}.
+ * Every ticket is used once, and a peer closed for misbehaving loses its tickets.
+ */
+public class SessionTickets {
+
+  private static final int TICKET_SIZE = 16;
+  private static final int MAX_TICKETS = 2000;
+
+  /**
+   * A session of a peer that may be resumed.
+   *
+   * @param ticket the ticket of the session
+   * @param nodeId the node id of the peer
+   * @param address the address of the peer, null for a ticket held by this node
+   * @param codec the compression codec negotiated in the session, null without compression
+   * @param channel the channel of the session while this side still sees it open, otherwise null
+   */
+  public record Session(
+      Bytes ticket, String nodeId, InetAddress address, CompressionCodec codec, Channel channel) {}
+
+  private final SecureRandom random = new SecureRandom();
+  private final boolean enabled;
+
+  /** Tickets issued by this node, of peers that disconnected */
+  private final Cache<Bytes, Session> issued;
+
+  /** Tickets issued by this node, of inbound channels that are still open */
+  private final Map<Bytes, Channel> open = new ConcurrentHashMap<>();
+
+  /** Addresses holding an issued ticket, checked before a connection is admitted */
+  private final Cache<InetAddress, Boolean> resumableAddresses;
+
+  /** Tickets issued to this node, by node id of the issuer */
+  private final Cache<String, Session> held;
+
+  public SessionTickets(P2pConfig p2pConfig) {
+    long ttl = p2pConfig.getSessionTicketTtl();
+    this.enabled = ttl > 0;
+    long expiry = Math.max(1, ttl);
+    this.issued = newCache(expiry);
+    this.resumableAddresses = newCache(expiry);
+    this.held = newCache(expiry);
+  }
+
+  private static <K, V> Cache<K, V> newCache(long ttl) {
+    return CacheBuilder.newBuilder()
+        .maximumSize(MAX_TICKETS)
+        .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Create a ticket for a peer that passed the handshake, null when resumption is disabled. */
+  public Bytes issue() {
+    if (!enabled) {
+      return null;
+    }
+    byte[] ticket = new byte[TICKET_SIZE];
+    random.nextBytes(ticket);
+    return Bytes.wrap(ticket);
+  }
+
+  /**
+   * Remember the ticket issued to an inbound channel that finished its handshake, so that the peer
+   * can still resume if it loses the connection before this side notices.
+   *
+   * @param channel the inbound channel holding the issued ticket
+   */
+  public void onEstablished(Channel channel) {
+    Bytes ticket = channel.getSessionTicket();
+    if (enabled && ticket != null && !channel.isActive()) {
+      open.put(ticket, channel);
+    }
+  }
+
+  /**
+   * Take the session held for a node, whose ticket is presented when dialing it.
+   *
+   * @param nodeId the id of the node to dial
+   * @return the session, null if there is none
+   */
+  public Session take(String nodeId) {
+    if (!enabled || nodeId == null) {
+      return null;
+    }
+    Session session = held.getIfPresent(nodeId);
+    if (session != null) {
+      held.invalidate(nodeId);
+    }
+    return session;
+  }
+
+  /**
+   * Redeem a ticket presented by a connecting peer. Besides the tickets of disconnected peers, the
+   * ticket of an open inbound channel of the same node id and address is accepted: the peer lost
+   * that connection before this side noticed. The ticket is then taken from the stale channel so
+   * that closing it does not make the ticket valid again; the caller closes the stale channel.
+   *
+   * @param ticket the presented ticket
+   * @param nodeId the node id in the HELLO of the peer
+   * @param address the address of the peer
+   * @return the resumed session, null if the ticket was not issued to this node id at this address
+   *     or has expired
+   */
+  public Session redeem(Bytes ticket, String nodeId, InetAddress address) {
+    if (!enabled || ticket == null || ticket.isEmpty()) {
+      return null;
+    }
+    Session session = issued.getIfPresent(ticket);
+    if (session != null) {
+      issued.invalidate(ticket);
+      return session.nodeId().equals(nodeId) && session.address().equals(address) ? session : null;
+    }
+    Channel stale = open.get(ticket);
+    if (stale == null
+        || stale.isPenalized()
+        || !Objects.equals(nodeId, stale.getNodeId())
+        || !Objects.equals(address, stale.getInetAddress())) {
+      return null;
+    }
+    open.remove(ticket, stale);
+    stale.setSessionTicket(null);
+    return new Session(ticket, nodeId, address, stale.getCodec(), stale);
+  }
+
+  /** Whether a peer at the address may hold a valid ticket. */
+  public boolean isResumable(InetAddress address) {
+    return enabled && address != null && resumableAddresses.getIfPresent(address) != null;
+  }
+
+  /**
+   * Keep the ticket of a channel that passed the handshake, starting its time to live. A peer
+   * closed for misbehaving loses its tickets instead, so that its ban holds when it reconnects.
+   *
+   * @param channel the disconnected channel
+   */
+  public void onDisconnect(Channel channel) {
+    Bytes ticket = channel.getSessionTicket();
+    if (!enabled) {
+      return;
+    }
+    if (ticket != null) {
+      open.remove(ticket, channel);
+    }
+    if (channel.isPenalized()) {
+      revoke(channel.getNodeId(), channel.getInetAddress());
+      return;
+    }
+    if (ticket == null || !channel.isFinishHandshake() || channel.getNodeId() == null) {
+      return;
+    }
+    if (channel.isActive()) {
+      held.put(
+          channel.getNodeId(),
+          new Session(ticket, channel.getNodeId(), null, channel.getCodec(), null));
+    } else if (channel.getInetAddress() != null) {
+      issued.put(
+          ticket,
+          new Session(
+              ticket, channel.getNodeId(), channel.getInetAddress(), channel.getCodec(), null));
+      resumableAddresses.put(channel.getInetAddress(), Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Drop the tickets issued to or held for a peer.
+   *
+   * @param nodeId the node id of the peer, may be null
+   * @param address the address of the peer, may be null
+   */
+  public void revoke(String nodeId, InetAddress address) {
+    issued.asMap().values().removeIf(s -> s.nodeId().equals(nodeId) || s.address().equals(address));
+    open.values()
+        .removeIf(
+            c ->
+                Objects.equals(nodeId, c.getNodeId())
+                    || Objects.equals(address, c.getInetAddress()));
+    if (address != null) {
+      resumableAddresses.invalidate(address);
+    }
+    if (nodeId != null) {
+      held.invalidate(nodeId);
+    }
+  }
+}
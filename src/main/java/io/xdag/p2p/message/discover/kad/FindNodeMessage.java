@@ -38,6 +38,11 @@ public class FindNodeMessage extends KadMessage {
 
   private final Discover.FindNeighbours findNeighbours;
 
+  /** Decoded on first use and shared by all callers */
+  private Node from;
+
+  private Bytes targetId;
+
   public FindNodeMessage(P2pConfig p2pConfig, Bytes data) throws Exception {
     super(p2pConfig, MessageType.KAD_FIND_NODE, data);
     this.findNeighbours = Discover.FindNeighbours.parseFrom(data.toArray());
@@ -57,7 +62,10 @@ public class FindNodeMessage extends KadMessage {
 
   /** Get target ID as Tuweni Bytes */
   public Bytes getTargetId() {
-    return BytesUtils.wrap(this.findNeighbours.getTargetId().toByteArray());
+    if (targetId == null) {
+      targetId = BytesUtils.wrap(this.findNeighbours.getTargetId().toByteArray());
+    }
+    return targetId;
   }
 
   @Override
@@ -67,7 +75,10 @@ public class FindNodeMessage extends KadMessage {
 
   @Override
   public Node getFrom() {
-    return NetUtils.getNode(p2pConfig, findNeighbours.getFrom());
+    if (from == null) {
+      from = NetUtils.getNode(p2pConfig, findNeighbours.getFrom());
+    }
+    return from;
   }
 
   @Override
@@ -77,6 +88,7 @@ public class FindNodeMessage extends KadMessage {
 
   @Override
   public boolean valid() {
-    return NetUtils.validNode(getFrom()) && getTargetId().size() == P2pConstant.NODE_ID_LEN;
+    return findNeighbours.getTargetId().size() == P2pConstant.NODE_ID_LEN
+        && NetUtils.validNode(getFrom());
   }
 }
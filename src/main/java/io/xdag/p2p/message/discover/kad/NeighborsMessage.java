@@ -33,6 +33,7 @@ import io.xdag.p2p.proto.Discover.Neighbours;
 import io.xdag.p2p.proto.Discover.Neighbours.Builder;
 import io.xdag.p2p.utils.NetUtils;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.apache.tuweni.bytes.Bytes;
 
@@ -40,6 +41,11 @@ public class NeighborsMessage extends KadMessage {
 
   private final Discover.Neighbours neighbours;
 
+  /** Decoded on first use and shared by all callers */
+  private Node from;
+
+  private List<Node> nodes;
+
   public NeighborsMessage(P2pConfig p2pConfig, Bytes data) throws Exception {
     super(p2pConfig, MessageType.KAD_NEIGHBORS, data);
     this.neighbours = Discover.Neighbours.parseFrom(data.toArray());
@@ -64,9 +70,17 @@ public class NeighborsMessage extends KadMessage {
     this.data = Bytes.wrap(this.neighbours.toByteArray());
   }
 
+  /**
+   * Get the neighbours carried by the message, decoded once.
+   *
+   * @return the nodes, unmodifiable
+   */
   public List<Node> getNodes() {
-    List<Node> nodes = new ArrayList<>();
-    neighbours.getNeighboursList().forEach(n -> nodes.add(NetUtils.getNode(p2pConfig, n)));
+    if (nodes == null) {
+      List<Node> decoded = new ArrayList<>(neighbours.getNeighboursCount());
+      neighbours.getNeighboursList().forEach(n -> decoded.add(NetUtils.getNode(p2pConfig, n)));
+      nodes = Collections.unmodifiableList(decoded);
+    }
     return nodes;
   }
 
@@ -77,7 +91,10 @@ public class NeighborsMessage extends KadMessage {
 
   @Override
   public Node getFrom() {
-    return NetUtils.getNode(p2pConfig, neighbours.getFrom());
+    if (from == null) {
+      from = NetUtils.getNode(p2pConfig, neighbours.getFrom());
+    }
+    return from;
   }
 
   @Override
@@ -90,15 +107,14 @@ public class NeighborsMessage extends KadMessage {
     if (!NetUtils.validNode(getFrom())) {
       return false;
     }
-    if (!getNodes().isEmpty()) {
-      if (getNodes().size() > KademliaOptions.BUCKET_SIZE) {
+    // the count is checked before any neighbour is decoded
+    if (neighbours.getNeighboursCount() > KademliaOptions.BUCKET_SIZE) {
+      return false;
+    }
+    for (Node node : getNodes()) {
+      if (!NetUtils.validNode(node)) {
         return false;
       }
-      for (Node node : getNodes()) {
-        if (!NetUtils.validNode(node)) {
-          return false;
-        }
-      }
     }
     return true;
   }
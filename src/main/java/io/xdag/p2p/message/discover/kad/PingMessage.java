@@ -32,14 +32,18 @@ import io.xdag.p2p.proto.Discover.Endpoint;
 import io.xdag.p2p.utils.BytesUtils;
 import io.xdag.p2p.utils.NetUtils;
 import java.net.InetSocketAddress;
-import lombok.Setter;
 import org.apache.tuweni.bytes.Bytes;
 
 public class PingMessage extends Message {
 
   private final Discover.PingMessage pingMessage;
 
-  @Setter private InetSocketAddress sourceAddress; // UDP source address for fallback
+  private InetSocketAddress sourceAddress; // UDP source address for fallback
+
+  /** Decoded on first use and shared by all callers */
+  private Node from;
+
+  private Node to;
 
   public PingMessage(P2pConfig p2pConfig, Bytes data) throws Exception {
     super(p2pConfig, MessageType.KAD_PING, data);
@@ -64,8 +68,21 @@ public class PingMessage extends Message {
     return this.pingMessage.getVersion();
   }
 
+  /**
+   * Set the UDP source address used as the host of the sender when its endpoint has none.
+   *
+   * @param sourceAddress the address the message was received from
+   */
+  public void setSourceAddress(InetSocketAddress sourceAddress) {
+    this.sourceAddress = sourceAddress;
+    this.from = null;
+  }
+
   public Node getTo() {
-    return NetUtils.getNode(p2pConfig, this.pingMessage.getTo());
+    if (to == null) {
+      to = NetUtils.getNode(p2pConfig, this.pingMessage.getTo());
+    }
+    return to;
   }
 
   public long getTimestamp() {
@@ -73,11 +90,13 @@ public class PingMessage extends Message {
   }
 
   public Node getFrom() {
-    if (sourceAddress != null) {
-      return NetUtils.getNodeWithFallback(p2pConfig, pingMessage.getFrom(), sourceAddress);
-    } else {
-      return NetUtils.getNode(p2pConfig, pingMessage.getFrom());
+    if (from == null) {
+      from =
+          sourceAddress != null
+              ? NetUtils.getNodeWithFallback(p2pConfig, pingMessage.getFrom(), sourceAddress)
+              : NetUtils.getNode(p2pConfig, pingMessage.getFrom());
     }
+    return from;
   }
 
   private Endpoint getEndpointFromNode(Node node) {
@@ -35,6 +35,9 @@ public class PongMessage extends KadMessage {
 
   private final Discover.PongMessage pongMessage;
 
+  /** Decoded on first use and shared by all callers */
+  private Node from;
+
   public PongMessage(P2pConfig p2pConfig, Bytes data) throws Exception {
     super(p2pConfig, MessageType.KAD_PONG, data);
     this.pongMessage = Discover.PongMessage.parseFrom(data.toArray());
@@ -63,7 +66,10 @@ public class PongMessage extends KadMessage {
 
   @Override
   public Node getFrom() {
-    return NetUtils.getNode(p2pConfig, pongMessage.getFrom());
+    if (from == null) {
+      from = NetUtils.getNode(p2pConfig, pongMessage.getFrom());
+    }
+    return from;
   }
 
   @Override
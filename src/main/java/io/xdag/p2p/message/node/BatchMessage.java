@@ -0,0 +1,89 @@
+package io.xdag.p2p.message.node;
+
+import io.netty.buffer.ByteBuf;
+import io.xdag.p2p.P2pException;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.utils.ProtoUtils;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Batch of application messages packed into one frame. The payload is a sequence of varint32
+ * length prefixed messages, each starting with its application message type.
+ */
+public class BatchMessage extends Message {
+
+  private final int count;
+
+  public BatchMessage(P2pConfig p2pConfig, List<Bytes> messages) {
+    super(p2pConfig, MessageType.BATCH, null);
+    int size = 0;
+    for (Bytes message : messages) {
+      size += ProtoUtils.computeVarint32Size(message.size()) + message.size();
+    }
+    byte[] payload = new byte[size];
+    int index = 0;
+    for (Bytes message : messages) {
+      int length = message.size();
+      while ((length & ~0x7F) != 0) {
+        payload[index++] = (byte) ((length & 0x7F) | 0x80);
+        length >>>= 7;
+      }
+      payload[index++] = (byte) length;
+      System.arraycopy(message.toArrayUnsafe(), 0, payload, index, message.size());
+      index += message.size();
+    }
+    this.data = Bytes.wrap(payload);
+    this.count = messages.size();
+  }
+
+  /**
+   * Split a received batch into its messages without copying.
+   *
+   * @param frame the batch including its type byte, the reader index is not modified
+   * @return slices of {@code frame}, valid as long as {@code frame} is
+   * @throws P2pException if the batch is malformed or contains node messages
+   */
+  public static List<ByteBuf> unpack(ByteBuf frame) throws P2pException {
+    ByteBuf in = frame.duplicate();
+    in.skipBytes(1);
+    List<ByteBuf> messages = new ArrayList<>();
+    while (in.isReadable()) {
+      int length = readVarint32(in);
+      if (length <= 0 || length > in.readableBytes()) {
+        throw new P2pException(P2pException.TypeEnum.BAD_MESSAGE, "batch entry len=" + length);
+      }
+      if (in.getByte(in.readerIndex()) < 0) {
+        throw new P2pException(P2pException.TypeEnum.BAD_MESSAGE, "node message in batch");
+      }
+      messages.add(in.readSlice(length));
+    }
+    if (messages.isEmpty()) {
+      throw new P2pException(P2pException.TypeEnum.BAD_MESSAGE, "empty batch");
+    }
+    return messages;
+  }
+
+  private static int readVarint32(ByteBuf in) throws P2pException {
+    int result = 0;
+    for (int shift = 0; shift < 32 && in.isReadable(); shift += 7) {
+      byte b = in.readByte();
+      result |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw new P2pException(P2pException.TypeEnum.BAD_MESSAGE, "malformed batch varint");
+  }
+
+  @Override
+  public boolean valid() {
+    return count > 0;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + "count: " + count;
+  }
+}
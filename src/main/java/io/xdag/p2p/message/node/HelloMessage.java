@@ -1,34 +1,57 @@
 package io.xdag.p2p.message.node;
 
+import com.google.protobuf.ByteString;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.config.P2pConstant;
 import io.xdag.p2p.discover.Node;
 import io.xdag.p2p.proto.Connect;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
 import io.xdag.p2p.proto.Discover;
 import io.xdag.p2p.utils.BytesUtils;
 import io.xdag.p2p.utils.NetUtils;
+import java.util.List;
 import org.apache.tuweni.bytes.Bytes;
 
 public class HelloMessage extends Message {
 
   private final Connect.HelloMessage helloMessage;
 
+  /** Decoded on first use and shared by all callers */
+  private Node from;
+
   public HelloMessage(P2pConfig p2pConfig, Bytes data) throws Exception {
     super(p2pConfig, MessageType.HANDSHAKE_HELLO, data);
     this.helloMessage = Connect.HelloMessage.parseFrom(data.toArray());
   }
 
   public HelloMessage(P2pConfig p2pConfig, DisconnectCode code, long time) {
+    this(p2pConfig, code, time, null, false);
+  }
+
+  /**
+   * Create a HELLO carrying a session ticket.
+   *
+   * @param ticket the ticket to present or to issue, null for none
+   * @param resumed whether the session of the presented ticket is resumed, set in the reply
+   */
+  public HelloMessage(
+      P2pConfig p2pConfig, DisconnectCode code, long time, Bytes ticket, boolean resumed) {
     super(p2pConfig, MessageType.HANDSHAKE_HELLO, null);
     Discover.Endpoint endpoint = p2pConfig.getHomeNode();
-    this.helloMessage =
+    Connect.HelloMessage.Builder builder =
         Connect.HelloMessage.newBuilder()
             .setFrom(endpoint)
             .setNetworkId(p2pConfig.getNetworkId())
             .setCode(code.getValue())
             .setVersion(P2pConstant.version)
             .setTimestamp(time)
-            .build();
+            .addAllCodecs(CompressionCodecs.supported(p2pConfig.getCompressionCodecs()))
+            .setResumed(resumed);
+    if (ticket != null) {
+      builder.setTicket(ByteString.copyFrom(ticket.toArrayUnsafe()));
+    }
+    this.helloMessage = builder.build();
     this.data = BytesUtils.wrap(helloMessage.toByteArray());
   }
 
@@ -48,8 +71,24 @@ public class HelloMessage extends Message {
     return this.helloMessage.getTimestamp();
   }
 
+  public List<CompressType> getCodecs() {
+    return this.helloMessage.getCodecsList();
+  }
+
+  /** The session ticket of the message, empty if it has none. */
+  public Bytes getTicket() {
+    return Bytes.wrap(this.helloMessage.getTicket().toByteArray());
+  }
+
+  public boolean isResumed() {
+    return this.helloMessage.getResumed();
+  }
+
   public Node getFrom() {
-    return NetUtils.getNode(p2pConfig, helloMessage.getFrom());
+    if (from == null) {
+      from = NetUtils.getNode(p2pConfig, helloMessage.getFrom());
+    }
+    return from;
   }
 
   @Override
@@ -81,6 +120,9 @@ public class HelloMessage extends Message {
     sb.append("  code: ").append(helloMessage.getCode()).append("\n");
     sb.append("  timestamp: ").append(helloMessage.getTimestamp()).append("\n");
     sb.append("  version: ").append(helloMessage.getVersion()).append("\n");
+    sb.append("  codecs: ").append(helloMessage.getCodecsList()).append("\n");
+    sb.append("  ticket: ").append(!helloMessage.getTicket().isEmpty()).append("\n");
+    sb.append("  resumed: ").append(helloMessage.getResumed()).append("\n");
     sb.append("}]");
 
     return sb.toString();
@@ -23,6 +23,8 @@ public enum MessageType {
   STATUS((byte) 0xFC),
   /** Disconnect message for graceful connection termination */
   DISCONNECT((byte) 0xFB),
+  /** Batch of small application messages, sent to peers that negotiated batching */
+  BATCH((byte) 0xFA),
   /** Unknown message type */
   UNKNOWN((byte) 0x80);
 
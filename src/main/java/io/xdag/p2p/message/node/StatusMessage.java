@@ -12,6 +12,9 @@ import org.apache.tuweni.bytes.Bytes;
 public class StatusMessage extends Message {
   private final Connect.StatusMessage statusMessage;
 
+  /** Decoded on first use and shared by all callers */
+  private Node from;
+
   public StatusMessage(P2pConfig p2pConfig, Bytes data) throws Exception {
     super(p2pConfig, MessageType.STATUS, data);
     this.statusMessage = Connect.StatusMessage.parseFrom(data.toArray());
@@ -48,7 +51,10 @@ public class StatusMessage extends Message {
   }
 
   public Node getFrom() {
-    return NetUtils.getNode(p2pConfig, statusMessage.getFrom());
+    if (from == null) {
+      from = NetUtils.getNode(p2pConfig, statusMessage.getFrom());
+    }
+    return from;
   }
 
   @Override
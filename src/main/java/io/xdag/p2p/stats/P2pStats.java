@@ -23,6 +23,9 @@
  */
 package io.xdag.p2p.stats;
 
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -37,4 +40,7 @@ public class P2pStats {
   private long udpInSize;
   private long udpOutPackets;
   private long udpInPackets;
+  private long tcpQueuedBytes;
+  private int unwritableChannels;
+  private Map<InetSocketAddress, Long> queuedBytesPerPeer = new HashMap<>();
 }
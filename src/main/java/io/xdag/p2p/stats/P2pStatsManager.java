@@ -23,6 +23,9 @@
  */
 package io.xdag.p2p.stats;
 
+import io.xdag.p2p.channel.Channel;
+import java.util.Collection;
+
 public class P2pStatsManager {
 
   public P2pStats getP2pStats() {
@@ -37,4 +40,29 @@ public class P2pStatsManager {
     stats.setUdpOutSize(TrafficStats.getUdp().getOutSize().get());
     return stats;
   }
+
+  /**
+   * Get traffic stats together with the outbound queue of each given channel.
+   *
+   * @param channels the connected channels
+   * @return the stats
+   */
+  public P2pStats getP2pStats(Collection<Channel> channels) {
+    P2pStats stats = getP2pStats();
+    long queuedBytes = 0;
+    int unwritable = 0;
+    for (Channel channel : channels) {
+      long queued = channel.getQueuedBytes();
+      queuedBytes += queued;
+      if (!channel.isWritable()) {
+        unwritable++;
+      }
+      if (channel.getInetSocketAddress() != null) {
+        stats.getQueuedBytesPerPeer().put(channel.getInetSocketAddress(), queued);
+      }
+    }
+    stats.setTcpQueuedBytes(queuedBytes);
+    stats.setUnwritableChannels(unwritable);
+    return stats;
+  }
 }
@@ -51,6 +51,7 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
@@ -59,6 +60,12 @@ import org.apache.tuweni.bytes.Bytes;
 @Slf4j(topic = "net")
 public class NetUtils {
 
+  // compiled once, every received discovery message validates the addresses it carries
+  private static final Pattern IPV4_PATTERN =
+      Pattern.compile(
+          "^((25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)$");
+  private static final Pattern IPV6_PATTERN = Pattern.compile("^[0-9a-fA-F:]+$");
+
   /**
    * Validate IPv4 address using regex pattern to avoid DNS resolver dependency. More reliable for
    * local testing with "127.0.0.1" type addresses.
@@ -72,10 +79,7 @@ public class NetUtils {
     }
     try {
       // Use regex pattern for basic IPv4 validation to avoid DNS resolver issues
-      String ipv4Pattern =
-          "^((25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)$";
-
-      if (!ip.matches(ipv4Pattern)) {
+      if (!IPV4_PATTERN.matcher(ip).matches()) {
         return false;
       }
 
@@ -103,8 +107,7 @@ public class NetUtils {
       }
 
       // Simple check for IPv6 format (hex digits and colons)
-      String ipv6Pattern = "^[0-9a-fA-F:]+$";
-      if (!ip.matches(ipv6Pattern)) {
+      if (!IPV6_PATTERN.matcher(ip).matches()) {
         return false;
       }
 
@@ -24,15 +24,25 @@
 package io.xdag.p2p.utils;
 
 import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.xdag.p2p.P2pException;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.config.P2pConstant;
 import io.xdag.p2p.proto.Connect;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.apache.tuweni.bytes.Bytes;
 import org.xerial.snappy.Snappy;
 
 public class ProtoUtils {
 
+  /** Largest envelope: type tag and value, data tag and a five byte length varint */
+  private static final int ENVELOPE_MAX_SIZE = 8;
+
   /**
    * Compress message data using Tuweni Bytes
    *
@@ -56,6 +66,185 @@ public class ProtoUtils {
         .build();
   }
 
+  /**
+   * Compress message data straight into a direct buffer laid out as a serialized {@link
+   * Connect.CompressMessage} with snappy, without intermediate byte arrays. The result is byte for
+   * byte equal to {@code compressMessageBytes(data).toByteArray()} for non-empty data.
+   *
+   * @param alloc the allocator for the direct buffers
+   * @param data the data to compress as Tuweni Bytes
+   * @return a buffer holding the serialized compress message, owned by the caller
+   * @throws IOException if compression fails
+   */
+  public static ByteBuf compressMessage(ByteBufAllocator alloc, Bytes data) throws IOException {
+    return compressMessage(alloc, data, CompressionCodecs.SNAPPY);
+  }
+
+  /**
+   * Compress message data with the given codec straight into a direct buffer laid out as a
+   * serialized {@link Connect.CompressMessage}. Data that does not shrink is sent uncompressed.
+   *
+   * @param alloc the allocator for the direct buffers
+   * @param data the data to compress as Tuweni Bytes
+   * @param codec the codec to compress with
+   * @return a buffer holding the serialized compress message, owned by the caller
+   * @throws IOException if compression fails
+   */
+  public static ByteBuf compressMessage(
+      ByteBufAllocator alloc, Bytes data, CompressionCodec codec) throws IOException {
+    int length = data.size();
+    ByteBuf raw = alloc.directBuffer(ENVELOPE_MAX_SIZE + length);
+    try {
+      raw.writerIndex(ENVELOPE_MAX_SIZE).writeBytes(data.toArrayUnsafe());
+      ByteBuf compressed = compress(alloc, raw.nioBuffer(ENVELOPE_MAX_SIZE, length), codec);
+      if (compressed != null) {
+        return compressed;
+      }
+      writeEnvelope(raw, Connect.CompressMessage.CompressType.uncompress, length);
+      ByteBuf result = raw;
+      raw = null;
+      return result;
+    } finally {
+      if (raw != null) {
+        raw.release();
+      }
+    }
+  }
+
+  /**
+   * Compress message data held in a buffer with the given codec into a direct buffer laid out as a
+   * serialized {@link Connect.CompressMessage}. Direct data is compressed in place, heap data is
+   * copied into a direct buffer first. Data that does not shrink is wrapped without copying.
+   *
+   * @param alloc the allocator for the direct buffers
+   * @param data the readable bytes to compress, not released
+   * @param codec the codec to compress with
+   * @return a buffer holding the serialized compress message, owned by the caller
+   * @throws IOException if compression fails
+   */
+  public static ByteBuf compressMessage(ByteBufAllocator alloc, ByteBuf data, CompressionCodec codec)
+      throws IOException {
+    int length = data.readableBytes();
+    ByteBuf copy = null;
+    try {
+      ByteBuf src = data;
+      if (!data.isDirect() || data.nioBufferCount() != 1) {
+        copy = alloc.directBuffer(length).writeBytes(data, data.readerIndex(), length);
+        src = copy;
+      }
+      ByteBuf compressed = compress(alloc, src.nioBuffer(src.readerIndex(), length), codec);
+      return compressed != null ? compressed : wrapMessage(alloc, data);
+    } finally {
+      if (copy != null) {
+        copy.release();
+      }
+    }
+  }
+
+  /**
+   * Compress the remaining bytes of a direct buffer behind the envelope headroom of a new buffer.
+   *
+   * @return the serialized compress message, or null if the data does not shrink
+   */
+  private static ByteBuf compress(ByteBufAllocator alloc, ByteBuffer src, CompressionCodec codec)
+      throws IOException {
+    int length = src.remaining();
+    ByteBuf compressed =
+        alloc.directBuffer(ENVELOPE_MAX_SIZE + codec.maxCompressedLength(length));
+    try {
+      int compressedLength =
+          codec.compress(
+              src,
+              compressed.nioBuffer(
+                  ENVELOPE_MAX_SIZE, compressed.capacity() - ENVELOPE_MAX_SIZE));
+      if (compressedLength >= length) {
+        return null;
+      }
+      compressed.writerIndex(ENVELOPE_MAX_SIZE + compressedLength);
+      writeEnvelope(compressed, codec.getType(), compressedLength);
+      ByteBuf result = compressed;
+      compressed = null;
+      return result;
+    } finally {
+      if (compressed != null) {
+        compressed.release();
+      }
+    }
+  }
+
+  /**
+   * Lay out data as a serialized uncompressed {@link Connect.CompressMessage} without calling the
+   * compressor or copying the data, for messages the compression policy skips.
+   *
+   * @param alloc the allocator for the envelope header
+   * @param data the data as Tuweni Bytes
+   * @return a buffer holding the serialized compress message, owned by the caller
+   */
+  public static ByteBuf wrapMessage(ByteBufAllocator alloc, Bytes data) {
+    ByteBuf header = alloc.buffer(ENVELOPE_MAX_SIZE);
+    header.writerIndex(ENVELOPE_MAX_SIZE);
+    writeEnvelope(header, Connect.CompressMessage.CompressType.uncompress, data.size());
+    return Unpooled.wrappedBuffer(header, Unpooled.wrappedBuffer(data.toArrayUnsafe()));
+  }
+
+  /**
+   * Lay out data held in a buffer as a serialized uncompressed {@link Connect.CompressMessage}
+   * without copying it.
+   *
+   * @param alloc the allocator for the envelope header
+   * @param data the readable bytes to wrap, not released
+   * @return a buffer holding the serialized compress message, owned by the caller
+   */
+  public static ByteBuf wrapMessage(ByteBufAllocator alloc, ByteBuf data) {
+    ByteBuf header = alloc.buffer(ENVELOPE_MAX_SIZE);
+    header.writerIndex(ENVELOPE_MAX_SIZE);
+    writeEnvelope(header, Connect.CompressMessage.CompressType.uncompress, data.readableBytes());
+    return Unpooled.wrappedBuffer(header, data.retainedSlice());
+  }
+
+  /**
+   * Write the compress message fields preceding the data into the headroom in front of the
+   * reader index. Like protobuf, the default uncompress type is omitted.
+   */
+  private static void writeEnvelope(
+      ByteBuf buf, Connect.CompressMessage.CompressType type, int dataLength) {
+    int typeSize = type.getNumber() == 0 ? 0 : 2;
+    int index = ENVELOPE_MAX_SIZE - typeSize - 1 - computeVarint32Size(dataLength);
+    buf.readerIndex(index);
+    if (typeSize > 0) {
+      buf.setByte(index++, (Connect.CompressMessage.TYPE_FIELD_NUMBER << 3));
+      buf.setByte(index++, type.getNumber());
+    }
+    buf.setByte(index++, (Connect.CompressMessage.DATA_FIELD_NUMBER << 3) | 2);
+    while ((dataLength & ~0x7F) != 0) {
+      buf.setByte(index++, (dataLength & 0x7F) | 0x80);
+      dataLength >>>= 7;
+    }
+    buf.setByte(index, dataLength);
+  }
+
+  /**
+   * Compute the number of bytes of a varint32 encoded value.
+   *
+   * @param value the value
+   * @return encoded size, between 1 and 5
+   */
+  public static int computeVarint32Size(int value) {
+    if ((value & (0xFFFFFFFF << 7)) == 0) {
+      return 1;
+    }
+    if ((value & (0xFFFFFFFF << 14)) == 0) {
+      return 2;
+    }
+    if ((value & (0xFFFFFFFF << 21)) == 0) {
+      return 3;
+    }
+    if ((value & (0xFFFFFFFF << 28)) == 0) {
+      return 4;
+    }
+    return 5;
+  }
+
   /**
    * Uncompress message data returning Tuweni Bytes
    *
@@ -71,19 +260,120 @@ public class ProtoUtils {
       return data;
     }
 
-    int length = Snappy.uncompressedLength(data.toArray());
-    if (length >= P2pConstant.MAX_MESSAGE_LENGTH) {
-      throw new P2pException(
-          P2pException.TypeEnum.BIG_MESSAGE, "message is too big, len=" + length);
+    ByteBuf compressed = Unpooled.wrappedBuffer(data.toArrayUnsafe());
+    ByteBuf uncompressed =
+        uncompress(ByteBufAllocator.DEFAULT, message.getTypeValue(), compressed);
+    try {
+      return Bytes.wrap(ByteBufUtil.getBytes(uncompressed));
+    } finally {
+      uncompressed.release();
     }
+  }
 
-    byte[] uncompressedData = Snappy.uncompress(data.toArray());
-    if (uncompressedData.length >= P2pConstant.MAX_MESSAGE_LENGTH) {
+  /**
+   * Uncompress a serialized {@link Connect.CompressMessage} read straight from a buffer. Reads the
+   * envelope in place, an uncompressed payload is returned as a retained slice of {@code buf}
+   * without copying, a compressed payload is uncompressed once into a new buffer by the codec of
+   * its compress type. The reader index of {@code buf} is not modified.
+   *
+   * @param alloc the allocator for uncompressed payloads
+   * @param buf the serialized compress message
+   * @return the message data, owned by the caller
+   * @throws IOException if decompression fails
+   * @throws P2pException if the envelope is malformed, the compress type is not supported or the
+   *     message is too big
+   */
+  public static ByteBuf uncompressMessage(ByteBufAllocator alloc, ByteBuf buf)
+      throws IOException, P2pException {
+    ByteBuf in = buf.duplicate();
+    int type = 0;
+    int dataIndex = in.readerIndex();
+    int dataLength = 0;
+    while (in.isReadable()) {
+      int tag = (int) readRawVarint64(in);
+      int wireType = tag & 7;
+      int field = tag >>> 3;
+      if (wireType == 0) {
+        long value = readRawVarint64(in);
+        if (field == Connect.CompressMessage.TYPE_FIELD_NUMBER) {
+          type = (int) value;
+        }
+      } else if (wireType == 2) {
+        int length = (int) readRawVarint64(in);
+        if (length < 0 || length > in.readableBytes()) {
+          throw new P2pException(
+              P2pException.TypeEnum.PARSE_MESSAGE_FAILED, "truncated field, len=" + length);
+        }
+        if (field == Connect.CompressMessage.DATA_FIELD_NUMBER) {
+          dataIndex = in.readerIndex();
+          dataLength = length;
+        }
+        in.skipBytes(length);
+      } else {
+        throw new P2pException(
+            P2pException.TypeEnum.PARSE_MESSAGE_FAILED, "unexpected wire type:" + wireType);
+      }
+    }
+
+    if (type == Connect.CompressMessage.CompressType.uncompress.getNumber()) {
+      return buf.retainedSlice(dataIndex, dataLength);
+    }
+
+    return uncompress(alloc, type, buf.slice(dataIndex, dataLength));
+  }
+
+  /**
+   * Uncompress data with the codec of its compress type into a new direct buffer. Heap data is
+   * copied into a direct buffer first, codecs only work on direct memory.
+   */
+  private static ByteBuf uncompress(ByteBufAllocator alloc, int type, ByteBuf compressed)
+      throws IOException, P2pException {
+    CompressionCodec codec = CompressionCodecs.get(type);
+    if (codec == null) {
       throw new P2pException(
-          P2pException.TypeEnum.BIG_MESSAGE,
-          "uncompressed is too big, len=" + uncompressedData.length);
+          P2pException.TypeEnum.PARSE_MESSAGE_FAILED, "unsupported compress type:" + type);
+    }
+    ByteBuf direct = null;
+    if (!compressed.isDirect() || compressed.nioBufferCount() != 1) {
+      direct = alloc.directBuffer(compressed.readableBytes()).writeBytes(compressed.duplicate());
+      compressed = direct;
+    }
+    ByteBuf result = null;
+    try {
+      int length = codec.uncompressedLength(compressed.nioBuffer());
+      if (length >= P2pConstant.MAX_MESSAGE_LENGTH) {
+        throw new P2pException(
+            P2pException.TypeEnum.BIG_MESSAGE, "message is too big, len=" + length);
+      }
+      result = alloc.directBuffer(length);
+      length = codec.uncompress(compressed.nioBuffer(), result.nioBuffer(0, length));
+      result.writerIndex(length);
+      ByteBuf uncompressed = result;
+      result = null;
+      return uncompressed;
+    } finally {
+      if (result != null) {
+        result.release();
+      }
+      if (direct != null) {
+        direct.release();
+      }
+    }
+  }
+
+  private static long readRawVarint64(ByteBuf in) throws P2pException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (!in.isReadable()) {
+        throw new P2pException(P2pException.TypeEnum.PARSE_MESSAGE_FAILED, "truncated varint");
+      }
+      byte b = in.readByte();
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
     }
-    return Bytes.wrap(uncompressedData);
+    throw new P2pException(P2pException.TypeEnum.PARSE_MESSAGE_FAILED, "malformed varint");
   }
 
   /** Helper method to convert ByteString to Tuweni Bytes */
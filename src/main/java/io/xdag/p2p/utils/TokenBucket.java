@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread safe token bucket. Tokens refill continuously at {@code rate} per second up to {@code
+ * capacity}; a bucket with a rate of 0 or less never limits.
+ */
+public class TokenBucket {
+
+  private final LongSupplier nanoClock;
+  private volatile double rate;
+  private double capacity;
+  private double tokens;
+  private long lastRefill;
+
+  public TokenBucket(double rate, double capacity) {
+    this(rate, capacity, System::nanoTime);
+  }
+
+  public TokenBucket(double rate, double capacity, LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+    this.rate = rate;
+    this.capacity = Math.max(capacity, 1);
+    this.tokens = this.capacity;
+    this.lastRefill = nanoClock.getAsLong();
+  }
+
+  /** Take {@code permits} tokens if the bucket holds them. */
+  public boolean tryAcquire(long permits) {
+    if (rate <= 0) {
+      return true;
+    }
+    return acquire(permits);
+  }
+
+  private synchronized boolean acquire(long permits) {
+    refill();
+    if (tokens < permits) {
+      return false;
+    }
+    tokens -= permits;
+    return true;
+  }
+
+  /**
+   * Take {@code permits} tokens even if the bucket runs into debt.
+   *
+   * @return nanoseconds until the debt is repaid, 0 if the bucket held the tokens
+   */
+  public long reserve(long permits) {
+    if (rate <= 0) {
+      return 0;
+    }
+    return borrow(permits);
+  }
+
+  private synchronized long borrow(long permits) {
+    refill();
+    if (rate <= 0) {
+      return 0;
+    }
+    tokens -= permits;
+    return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+  }
+
+  /**
+   * Change the refill rate and capacity, tokens above the new capacity are dropped. A bucket that
+   * did not limit before starts full.
+   */
+  public synchronized void setRate(double rate, double capacity) {
+    refill();
+    boolean wasUnlimited = this.rate <= 0;
+    this.rate = rate;
+    this.capacity = Math.max(capacity, 1);
+    this.tokens = wasUnlimited ? this.capacity : Math.min(tokens, this.capacity);
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  private void refill() {
+    long now = nanoClock.getAsLong();
+    if (rate > 0 && now > lastRefill) {
+      tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+    }
+    lastRefill = now;
+  }
+}
@@ -83,6 +83,15 @@ public class P2pEventHandlerTest {
     assertEquals(1, handler.messageCount);
   }
 
+  @Test
+  public void testResumeDefaultsToConnect() {
+    OverriddenEventHandler handler = new OverriddenEventHandler();
+
+    // a handler that does not tell resumptions apart sees them as connects
+    handler.onResume(null);
+    assertEquals(1, handler.connectCount);
+  }
+
   @Test
   public void testMessageTypesInitialization() {
     TestEventHandler handler = new TestEventHandler();
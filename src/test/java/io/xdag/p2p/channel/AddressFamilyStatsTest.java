@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.xdag.p2p.channel.AddressFamilyStats.AddressFamily;
+import java.net.InetSocketAddress;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for AddressFamilyStats. Tests per family counters and the dial order. */
+class AddressFamilyStatsTest {
+
+  private final InetSocketAddress v4 = new InetSocketAddress("127.0.0.1", 16783);
+  private final InetSocketAddress v6 = new InetSocketAddress("::1", 16783);
+
+  @Test
+  void testCountsPerFamily() {
+    // Given
+    AddressFamilyStats stats = new AddressFamilyStats();
+
+    // When
+    stats.recordAttempt(v4);
+    stats.recordAttempt(v4);
+    stats.recordSuccess(v4);
+    stats.recordAttempt(v6);
+    stats.recordFailure(v6);
+
+    // Then
+    assertEquals(AddressFamily.IPV4, AddressFamily.of(v4));
+    assertEquals(AddressFamily.IPV6, AddressFamily.of(v6));
+    assertEquals(2, stats.getAttempts(AddressFamily.IPV4));
+    assertEquals(0.5, stats.getSuccessRate(AddressFamily.IPV4));
+    assertEquals(1, stats.getFailures(AddressFamily.IPV6));
+    assertEquals(0, stats.getSuccessRate(AddressFamily.IPV6));
+  }
+
+  @Test
+  void testDialOrderKeepsPreferenceUntilBothFamiliesHaveHistory() {
+    // Given - ipv4 never connects, ipv6 has not been tried often enough
+    AddressFamilyStats stats = new AddressFamilyStats();
+    for (int i = 0; i < AddressFamilyStats.MIN_ATTEMPTS; i++) {
+      stats.recordAttempt(v4);
+    }
+    stats.recordAttempt(v6);
+    stats.recordSuccess(v6);
+
+    // When & Then
+    assertArrayEquals(new InetSocketAddress[] {v4, v6}, stats.dialOrder(v4, v6));
+  }
+
+  @Test
+  void testDialOrderStartsWithTheFamilyThatWorks() {
+    // Given
+    AddressFamilyStats stats = new AddressFamilyStats();
+    for (int i = 0; i < AddressFamilyStats.MIN_ATTEMPTS; i++) {
+      stats.recordAttempt(v4);
+      stats.recordAttempt(v6);
+      stats.recordSuccess(v6);
+    }
+
+    // When & Then
+    assertArrayEquals(new InetSocketAddress[] {v6, v4}, stats.dialOrder(v4, v6));
+    assertArrayEquals(new InetSocketAddress[] {v6, v4}, stats.dialOrder(v6, v4));
+  }
+}
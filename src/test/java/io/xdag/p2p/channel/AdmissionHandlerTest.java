@@ -0,0 +1,197 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.SocketChannelConfig;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.xdag.p2p.channel.AdmissionHandler.Rejection;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.handler.node.SessionTickets;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AdmissionHandlerTest {
+
+  @Mock private ChannelManager channelManager;
+  @Mock private P2pChannelInitializer initializer;
+  @Mock private NioSocketChannel socketChannel;
+  @Mock private SocketChannelConfig socketChannelConfig;
+  @Mock private ChannelFuture closeFuture;
+  @Mock private SessionTickets sessionTickets;
+
+  private P2pConfig p2pConfig;
+  private final Cache<InetAddress, Long> bannedNodes = CacheBuilder.newBuilder().build();
+  private final Map<InetSocketAddress, Channel> channels = new ConcurrentHashMap<>();
+  private final List<InetAddress> trustNodes = new CopyOnWriteArrayList<>();
+  private InetAddress address;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    p2pConfig = new P2pConfig();
+    p2pConfig.setMaxConnections(2);
+    p2pConfig.setMaxConnectionsWithSameIp(1);
+    p2pConfig.setAcceptRate(1);
+    p2pConfig.setAcceptBurst(3);
+    p2pConfig.setTrustNodes(trustNodes);
+    address = InetAddress.getByName("10.0.0.1");
+    when(channelManager.getBannedNodes()).thenReturn(bannedNodes);
+    when(channelManager.getChannels()).thenReturn(channels);
+    when(socketChannel.remoteAddress()).thenReturn(new InetSocketAddress(address, 30303));
+    when(socketChannel.config()).thenReturn(socketChannelConfig);
+    when(socketChannel.closeFuture()).thenReturn(closeFuture);
+  }
+
+  @Test
+  void testAdmitAndReleaseSameIpQuota() {
+    // Given an admission handler allowing one socket per address
+    AdmissionHandler handler = new AdmissionHandler(p2pConfig, channelManager, initializer);
+
+    // When the address connects twice
+    assertNull(handler.admit(address));
+    assertEquals(Rejection.SAME_IP, handler.admit(address));
+
+    // Then the quota is freed again once the first socket closes
+    handler.release(address);
+    assertEquals(0, handler.getInboundCount(address));
+    assertNull(handler.admit(address));
+  }
+
+  @Test
+  void testRejectBannedAddress() throws Exception {
+    // Given a banned address
+    bannedNodes.put(address, System.currentTimeMillis() + 60_000);
+    AdmissionHandler handler = new AdmissionHandler(p2pConfig, channelManager, initializer);
+
+    // When it connects
+    handler.initChannel(socketChannel);
+
+    // Then the socket is reset and no pipeline is built
+    verify(socketChannelConfig).setOption(ChannelOption.SO_LINGER, 0);
+    verify(socketChannel).close();
+    verify(initializer, never()).initChannel(any());
+    assertEquals(1, handler.getRejectedCount(Rejection.BANNED));
+  }
+
+  @Test
+  void testExpiredBanIsAdmitted() throws Exception {
+    // Given a ban that has run out
+    bannedNodes.put(address, System.currentTimeMillis() - 1);
+    AdmissionHandler handler = new AdmissionHandler(p2pConfig, channelManager, initializer);
+
+    // When the address connects
+    handler.initChannel(socketChannel);
+
+    // Then the full pipeline is built
+    verify(initializer).initChannel(socketChannel);
+    verify(socketChannel, never()).close();
+  }
+
+  @Test
+  void testRejectWhenFullOrOverRate() throws Exception {
+    // Given a handler whose burst allows 3 accepts
+    AdmissionHandler handler = new AdmissionHandler(p2pConfig, channelManager, initializer);
+    p2pConfig.setMaxConnectionsWithSameIp(10);
+
+    // When 4 accepts arrive at once
+    for (int i = 0; i < 3; i++) {
+      assertNull(handler.admit(address));
+    }
+
+    // Then the next one is over the rate
+    assertEquals(Rejection.RATE, handler.admit(address));
+
+    // And with all peer slots taken connections are refused before the rate is checked
+    channels.put(new InetSocketAddress("10.0.0.2", 1), mock(Channel.class));
+    channels.put(new InetSocketAddress("10.0.0.3", 1), mock(Channel.class));
+    assertEquals(Rejection.TOO_MANY_PEERS, handler.admit(address));
+  }
+
+  @Test
+  void testTrustedAddressSkipsChecks() throws Exception {
+    // Given a banned but trusted address
+    bannedNodes.put(address, System.currentTimeMillis() + 60_000);
+    trustNodes.add(address);
+    AdmissionHandler handler = new AdmissionHandler(p2pConfig, channelManager, initializer);
+
+    // When it connects repeatedly
+    for (int i = 0; i < 5; i++) {
+      handler.initChannel(socketChannel);
+    }
+
+    // Then every connection is admitted and none is counted against the quota
+    verify(initializer, times(5)).initChannel(socketChannel);
+    verify(closeFuture, never()).addListener(any());
+    assertEquals(0, handler.getInboundCount(address));
+  }
+
+  @Test
+  void testBannedAddressWithSessionTicketIsAdmitted() {
+    // Given a banned address that holds a session ticket
+    bannedNodes.put(address, System.currentTimeMillis() + 60_000);
+    when(channelManager.getSessionTickets()).thenReturn(sessionTickets);
+    when(sessionTickets.isResumable(address)).thenReturn(true);
+    AdmissionHandler handler = new AdmissionHandler(p2pConfig, channelManager, initializer);
+
+    // Then the handshake decides on the ban
+    assertNull(handler.admit(address));
+  }
+
+  @Test
+  void testSessionTicketDoesNotLiftLongerBan() {
+    // Given an address banned for longer than an ordinary disconnect that holds a session ticket
+    bannedNodes.put(address, System.currentTimeMillis() + 10 * 60_000);
+    when(channelManager.getSessionTickets()).thenReturn(sessionTickets);
+    when(sessionTickets.isResumable(address)).thenReturn(true);
+    AdmissionHandler handler = new AdmissionHandler(p2pConfig, channelManager, initializer);
+
+    // Then the ban holds
+    assertEquals(Rejection.BANNED, handler.admit(address));
+  }
+}
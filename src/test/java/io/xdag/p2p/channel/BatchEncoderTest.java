@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.config.UpgradeController;
+import io.xdag.p2p.message.node.BatchMessage;
+import io.xdag.p2p.message.node.MessageType;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+/**
+ * Unit tests for BatchEncoder. Tests that small messages written in one flush window are packed
+ * into a single batch frame and that frame order is preserved.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BatchEncoderTest {
+
+  @Mock private Channel channel;
+
+  @BeforeEach
+  void setUp() {
+    when(channel.getVersion()).thenReturn(2);
+    when(channel.getP2pConfig()).thenReturn(new P2pConfig());
+  }
+
+  @Test
+  void testMessagesInOneFlushWindowAreBatched() throws Exception {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new BatchEncoder(channel, 64, 16 * 1024));
+    List<ChannelFuture> futures = new ArrayList<>();
+
+    // When
+    for (int i = 0; i < 3; i++) {
+      futures.add(embedded.write(entry(0x01, i)));
+    }
+    embedded.flush();
+    embedded.runPendingTasks();
+
+    // Then
+    List<Bytes> messages = readBatch(embedded);
+    assertEquals(List.of(Bytes.of(0x01, 0), Bytes.of(0x01, 1), Bytes.of(0x01, 2)), messages);
+    assertNull(embedded.readOutbound());
+    futures.forEach(f -> assertTrue(f.isSuccess()));
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testSingleMessageIsNotWrapped() throws Exception {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new BatchEncoder(channel, 64, 16 * 1024));
+
+    // When
+    embedded.writeAndFlush(entry(0x01, 7));
+    embedded.runPendingTasks();
+
+    // Then
+    assertEquals(Bytes.of(0x01, 7), readFrame(embedded));
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testBatchClosedAtMessageLimit() throws Exception {
+    // Given
+    BatchEncoder encoder = new BatchEncoder(channel, 2, 16 * 1024);
+    EmbeddedChannel embedded = new EmbeddedChannel(encoder);
+
+    // When - no flush, the limit alone closes the batch
+    embedded.write(entry(0x01, 1));
+    embedded.write(entry(0x01, 2));
+    embedded.write(entry(0x01, 3));
+
+    // Then
+    assertEquals(1, encoder.getPendingMessages());
+    embedded.flush();
+    embedded.runPendingTasks();
+    assertEquals(List.of(Bytes.of(0x01, 1), Bytes.of(0x01, 2)), readBatch(embedded));
+    assertEquals(Bytes.of(0x01, 3), readFrame(embedded));
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testOtherFramesCloseTheBatchFirst() throws Exception {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new BatchEncoder(channel, 64, 16 * 1024));
+    embedded.write(entry(0x01, 1));
+
+    // When
+    embedded.write(Unpooled.wrappedBuffer(new byte[] {0x55}));
+    embedded.flush();
+    embedded.runPendingTasks();
+
+    // Then
+    assertEquals(Bytes.of(0x01, 1), readFrame(embedded));
+    ByteBuf other = embedded.readOutbound();
+    assertEquals(0x55, other.readByte());
+    other.release();
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testPendingMessagesFailWhenRemoved() {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new BatchEncoder(channel, 64, 16 * 1024));
+    ChannelFuture future = embedded.write(entry(0x01, 1));
+
+    // When
+    embedded.pipeline().removeFirst();
+
+    // Then
+    assertTrue(future.isDone());
+    assertFalse(future.isSuccess());
+    embedded.finishAndReleaseAll();
+  }
+
+  private static BatchEncoder.Entry entry(int type, int value) {
+    return new BatchEncoder.Entry(Bytes.of(type, value), MessagePriority.NORMAL);
+  }
+
+  private static Bytes readFrame(EmbeddedChannel embedded) throws Exception {
+    ByteBuf frame = embedded.readOutbound();
+    ByteBuf decoded =
+        UpgradeController.decodeReceiveData(PooledByteBufAllocator.DEFAULT, 2, frame);
+    try {
+      return Bytes.wrap(ByteBufUtil.getBytes(decoded));
+    } finally {
+      decoded.release();
+      frame.release();
+    }
+  }
+
+  private static List<Bytes> readBatch(EmbeddedChannel embedded) throws Exception {
+    Bytes batch = readFrame(embedded);
+    assertEquals(MessageType.BATCH.getType(), batch.get(0));
+    List<Bytes> messages = new ArrayList<>();
+    for (ByteBuf message : BatchMessage.unpack(Unpooled.wrappedBuffer(batch.toArrayUnsafe()))) {
+      messages.add(Bytes.wrap(ByteBufUtil.getBytes(message)));
+    }
+    return messages;
+  }
+}
@@ -24,21 +24,54 @@
 package io.xdag.p2p.channel;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xdag.p2p.P2pEventHandler;
+import io.xdag.p2p.P2pException;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.config.RateLimitPolicy;
 import io.xdag.p2p.discover.Node;
 import io.xdag.p2p.discover.NodeManager;
 import io.xdag.p2p.discover.dns.DnsManager;
+import io.xdag.p2p.handler.node.ConnPoolHandler;
+import io.xdag.p2p.handler.node.SessionTickets;
+import io.xdag.p2p.message.node.BatchMessage;
 import io.xdag.p2p.message.node.DisconnectCode;
+import io.xdag.p2p.message.node.P2pDisconnectMessage;
+import io.xdag.p2p.proto.Connect.CompressMessage;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import io.xdag.p2p.proto.Connect.DisconnectReason;
+import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import org.apache.tuweni.bytes.Bytes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -100,6 +133,292 @@ public class ChannelManagerTest {
     assertEquals(0, channelManager.getChannels().size());
   }
 
+  @Test
+  public void testNotifyWritabilityChanged() {
+    P2pEventHandler handler = mock(P2pEventHandler.class);
+    p2pConfig.getHandlerList().add(handler);
+    when(c1.getInetSocketAddress()).thenReturn(a1);
+    when(c2.getInetSocketAddress()).thenReturn(a2);
+    channelManager.getChannels().put(a1, c1);
+
+    channelManager.notifyWritabilityChanged(c1, false);
+    channelManager.notifyWritabilityChanged(c2, false);
+
+    verify(handler).onWritabilityChanged(c1, false);
+    verify(handler, never()).onWritabilityChanged(eq(c2), anyBoolean());
+  }
+
+  @Test
+  public void testProcessMessageHandsReadOnlyRetainedView() throws Exception {
+    RecordingHandler handler = new RecordingHandler((byte) 0x01, false);
+    p2pConfig.addP2pEventHandle(handler);
+    when(c1.isFinishHandshake()).thenReturn(true);
+    ByteBuf data = Unpooled.directBuffer().writeBytes(new byte[] {0x01, 0x02, 0x03});
+
+    channelManager.processMessage(c1, data);
+
+    assertTrue(handler.readOnly);
+    assertEquals(2, handler.refCnt, "the view should retain the frame during the callback");
+    assertEquals(Bytes.of(0x01, 0x02, 0x03), handler.received);
+    assertEquals(1, data.refCnt(), "the view should be released after the callback");
+    assertEquals(0, data.readerIndex());
+    data.release();
+  }
+
+  @Test
+  public void testProcessMessageHoldsMessagesOfBatchDeliveryHandler() throws Exception {
+    RecordingHandler handler = new RecordingHandler((byte) 0x01, false);
+    handler.deliverInBatches();
+    p2pConfig.addP2pEventHandle(handler);
+    when(c1.isFinishHandshake()).thenReturn(true);
+    ByteBuf data = Unpooled.directBuffer().writeBytes(new byte[] {0x01, 0x02});
+
+    channelManager.processMessage(c1, data);
+    data.release();
+
+    assertNull(handler.received, "the message should wait for the end of the read");
+    verify(c1).addToReadBatch(handler, Bytes.of(0x01, 0x02));
+  }
+
+  @Test
+  public void testReadBatchIsDeliveredBeforeDisconnect() throws Exception {
+    List<String> events = new ArrayList<>();
+    P2pEventHandler handler =
+        new P2pEventHandler() {
+          {
+            messageTypes = Set.of((byte) 0x01);
+            batchDelivery = true;
+          }
+
+          @Override
+          public void onMessages(Channel channel, List<Bytes> messages) {
+            events.add("messages " + messages);
+          }
+
+          @Override
+          public void onDisconnect(Channel channel) {
+            events.add("disconnect");
+          }
+        };
+    p2pConfig.addP2pEventHandle(handler);
+    EmbeddedChannel embedded = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    Channel channel = new Channel(p2pConfig, channelManager);
+    channel.setCtx(embedded.pipeline().firstContext());
+    channel.setInetSocketAddress(a1);
+    channel.setInetAddress(a1.getAddress());
+    channel.setFinishHandshake(true);
+    embedded.closeFuture().addListener(f -> channelManager.notifyDisconnect(channel));
+    ByteBuf app = Unpooled.wrappedBuffer(new byte[] {0x01, 0x02});
+    ByteBuf disconnect =
+        Unpooled.wrappedBuffer(
+            new P2pDisconnectMessage(p2pConfig, DisconnectReason.PEER_QUITING)
+                .getSendData()
+                .toArrayUnsafe());
+
+    // one read holding an application message followed by a DISCONNECT
+    channelManager.processMessage(channel, app);
+    channelManager.processMessage(channel, disconnect);
+    channel.flushReadBatch();
+
+    assertEquals(List.of("messages [0x0102]", "disconnect"), events);
+    app.release();
+    disconnect.release();
+  }
+
+  @Test
+  public void testProcessMessageViewRetainedByHandler() throws Exception {
+    RecordingHandler handler = new RecordingHandler((byte) 0x01, true);
+    p2pConfig.addP2pEventHandle(handler);
+    when(c1.isFinishHandshake()).thenReturn(true);
+    ByteBuf data = Unpooled.directBuffer().writeBytes(new byte[] {0x01, 0x02});
+
+    channelManager.processMessage(c1, data);
+    data.release();
+
+    assertEquals(1, handler.kept.refCnt());
+    assertEquals(0x02, handler.kept.getByte(1));
+    handler.kept.release();
+    assertEquals(0, data.refCnt());
+  }
+
+  @Test
+  public void testProcessMessageDefaultCopiesIntoBytes() throws Exception {
+    Bytes[] received = new Bytes[1];
+    P2pEventHandler handler =
+        new P2pEventHandler() {
+          {
+            messageTypes = Set.of((byte) 0x01);
+          }
+
+          @Override
+          public void onMessage(Channel channel, Bytes data) {
+            received[0] = data;
+          }
+        };
+    p2pConfig.addP2pEventHandle(handler);
+    when(c1.isFinishHandshake()).thenReturn(true);
+    ByteBuf data = Unpooled.directBuffer().writeBytes(new byte[] {0x01, 0x02});
+
+    channelManager.processMessage(c1, data);
+    data.setByte(1, 0x7F);
+    data.release();
+
+    assertEquals(Bytes.of(0x01, 0x02), received[0]);
+  }
+
+  @Test
+  public void testProcessMessageUnpacksBatch() throws Exception {
+    List<Bytes> received = new ArrayList<>();
+    P2pEventHandler handler =
+        new P2pEventHandler() {
+          {
+            messageTypes = Set.of((byte) 0x01, (byte) 0x02);
+          }
+
+          @Override
+          public void onMessage(Channel channel, Bytes data) {
+            received.add(data);
+          }
+        };
+    p2pConfig.addP2pEventHandle(handler);
+    when(c1.isFinishHandshake()).thenReturn(true);
+    List<Bytes> messages = List.of(Bytes.of(0x01, 0x0A), Bytes.of(0x02), Bytes.of(0x01, 0x0B));
+    Bytes batch = new BatchMessage(p2pConfig, messages).getSendData();
+    ByteBuf data = Unpooled.directBuffer().writeBytes(batch.toArrayUnsafe());
+
+    channelManager.processMessage(c1, data);
+
+    assertEquals(messages, received);
+    assertEquals(1, data.refCnt());
+    data.release();
+  }
+
+  @Test
+  public void testProcessMessageDropsMessagesOverRateLimit() throws Exception {
+    List<Bytes> received = new ArrayList<>();
+    P2pEventHandler handler =
+        new P2pEventHandler() {
+          {
+            messageTypes = Set.of((byte) 0x01);
+          }
+
+          @Override
+          public void onMessage(Channel channel, Bytes data) {
+            received.add(data);
+          }
+        };
+    p2pConfig.addP2pEventHandle(handler);
+    RateLimitPolicy policy = p2pConfig.getRateLimitPolicy();
+    policy.setLimit((byte) 0x01, 1, 1, RateLimitPolicy.Action.DROP);
+    when(c1.isFinishHandshake()).thenReturn(true);
+    when(c1.getInboundRateLimiter()).thenReturn(new InboundRateLimiter(c1, policy));
+
+    for (int i = 0; i < 3; i++) {
+      ByteBuf data = Unpooled.directBuffer().writeBytes(new byte[] {0x01, (byte) i});
+      channelManager.processMessage(c1, data);
+      data.release();
+    }
+
+    assertEquals(List.of(Bytes.of(0x01, 0x00)), received);
+    assertEquals(2, policy.getDropped((byte) 0x01));
+  }
+
+  @Test
+  public void testProcessMessageDropsMessagesOfRejectedChannel() throws Exception {
+    RecordingHandler handler = new RecordingHandler((byte) 0x01, false);
+    p2pConfig.addP2pEventHandle(handler);
+    when(c1.isDisconnect()).thenReturn(true);
+    when(c1.getInetSocketAddress()).thenReturn(a1);
+    when(c1.getInetAddress()).thenReturn(a1.getAddress());
+    ByteBuf data = Unpooled.directBuffer().writeBytes(new byte[] {0x01, 0x02});
+
+    channelManager.processMessage(c1, data);
+    data.release();
+
+    assertNull(handler.received);
+    verify(c1, never()).setFinishHandshake(true);
+    assertEquals(0, channelManager.getChannels().size());
+  }
+
+  @Test
+  public void testProcessMessageEmptyBuffer() {
+    assertThrows(
+        P2pException.class, () -> channelManager.processMessage(c1, Unpooled.EMPTY_BUFFER));
+  }
+
+  @Test
+  public void testBroadcastEncodesOnce() {
+    when(c1.isFinishHandshake()).thenReturn(true);
+    when(c1.getVersion()).thenReturn(1);
+    when(c2.isFinishHandshake()).thenReturn(true);
+    when(c2.getVersion()).thenReturn(2);
+    when(c3.isFinishHandshake()).thenReturn(false);
+    Bytes data = Bytes.wrap(new byte[64 * 1024]);
+
+    int sent = channelManager.broadcast(data, List.of(c1, c2, c3));
+
+    ArgumentCaptor<ByteBuf> f1 = ArgumentCaptor.forClass(ByteBuf.class);
+    ArgumentCaptor<ByteBuf> f2 = ArgumentCaptor.forClass(ByteBuf.class);
+    verify(c1).sendEncoded(f1.capture(), eq((byte) 0), eq(data.size()));
+    verify(c2).sendEncoded(f2.capture(), eq((byte) 0), eq(data.size()));
+    verify(c3, never()).sendEncoded(any(), anyByte(), anyInt());
+    assertEquals(2, sent);
+    assertSame(f1.getValue().unwrap(), f2.getValue().unwrap(), "frames should share one buffer");
+    assertTrue(f1.getValue().readableBytes() < data.size(), "frame should be compressed");
+    assertEquals(2, f1.getValue().refCnt());
+    f1.getValue().release();
+    f2.getValue().release();
+    assertEquals(0, f1.getValue().refCnt());
+  }
+
+  @Test
+  public void testBroadcastEncodesOncePerCodec() throws Exception {
+    when(c1.isFinishHandshake()).thenReturn(true);
+    when(c1.getVersion()).thenReturn(2);
+    when(c1.getCodec()).thenReturn(CompressionCodecs.get(CompressType.lz4.getNumber()));
+    when(c2.isFinishHandshake()).thenReturn(true);
+    when(c2.getVersion()).thenReturn(2);
+    when(c2.getCodec()).thenReturn(CompressionCodecs.get(CompressType.zstd.getNumber()));
+    Bytes data = Bytes.wrap(new byte[64 * 1024]);
+
+    int sent = channelManager.broadcast(data, List.of(c1, c2));
+
+    ArgumentCaptor<ByteBuf> f1 = ArgumentCaptor.forClass(ByteBuf.class);
+    ArgumentCaptor<ByteBuf> f2 = ArgumentCaptor.forClass(ByteBuf.class);
+    verify(c1).sendEncoded(f1.capture(), eq((byte) 0), eq(data.size()));
+    verify(c2).sendEncoded(f2.capture(), eq((byte) 0), eq(data.size()));
+    assertEquals(2, sent);
+    assertEquals(
+        CompressType.lz4,
+        CompressMessage.parseFrom(ByteBufUtil.getBytes(f1.getValue())).getType());
+    assertEquals(
+        CompressType.zstd,
+        CompressMessage.parseFrom(ByteBufUtil.getBytes(f2.getValue())).getType());
+    f1.getValue().release();
+    f2.getValue().release();
+    assertEquals(0, f1.getValue().refCnt());
+    assertEquals(0, f2.getValue().refCnt());
+  }
+
+  @Test
+  public void testBroadcastWithFilter() {
+    when(c1.isFinishHandshake()).thenReturn(true);
+    when(c1.getVersion()).thenReturn(0);
+    when(c2.isFinishHandshake()).thenReturn(true);
+    when(c2.getVersion()).thenReturn(0);
+    channelManager.getChannels().put(a1, c1);
+    channelManager.getChannels().put(a2, c2);
+
+    int sent = channelManager.broadcast(Bytes.of(0x01, 0x02), c -> c == c2);
+
+    ArgumentCaptor<ByteBuf> frame = ArgumentCaptor.forClass(ByteBuf.class);
+    verify(c2).sendEncoded(frame.capture(), eq((byte) 0x01), eq(2));
+    verify(c1, never()).sendEncoded(any(), anyByte(), anyInt());
+    assertEquals(1, sent);
+    assertEquals(Bytes.of(0x01, 0x02), Bytes.wrap(ByteBufUtil.getBytes(frame.getValue())));
+    frame.getValue().release();
+  }
+
   @Test
   public void testProcessPeerNormal() {
     when(c1.getInetSocketAddress()).thenReturn(a1);
@@ -156,6 +475,21 @@ public class ChannelManagerTest {
     assertEquals(DisconnectCode.DUPLICATE_PEER, channelManager.processPeer(c2));
   }
 
+  @Test
+  public void testProcessPeerOverDialedPeer() throws Exception {
+    ConnPoolHandler connPoolHandler = mock(ConnPoolHandler.class);
+    Field field = ChannelManager.class.getDeclaredField("connPoolHandler");
+    field.setAccessible(true);
+    field.set(channelManager, connPoolHandler);
+    when(c1.isActive()).thenReturn(true);
+    when(c1.getInetSocketAddress()).thenReturn(a1);
+    when(c1.getInetAddress()).thenReturn(a1.getAddress());
+    when(connPoolHandler.keepDialedPeer(c1)).thenReturn(false);
+
+    assertEquals(DisconnectCode.TOO_MANY_PEERS, channelManager.processPeer(c1));
+    assertEquals(0, channelManager.getChannels().size());
+  }
+
   @Test
   public void testProcessPeerTimeBanned() {
     channelManager.getBannedNodes().put(a1.getAddress(), System.currentTimeMillis() + 10000);
@@ -167,6 +501,78 @@ public class ChannelManagerTest {
     assertEquals(DisconnectCode.TIME_BANNED, channelManager.processPeer(c1));
   }
 
+  @Test
+  public void testProcessPeerResumedSession() {
+    // a peer resuming its session is not banned by its last disconnect
+    channelManager.getBannedNodes().put(a2.getAddress(), System.currentTimeMillis() + 10000);
+    p2pConfig.setMaxConnections(1);
+    when(c1.getInetSocketAddress()).thenReturn(a3);
+    when(c1.getInetAddress()).thenReturn(a3.getAddress());
+    when(c1.getNodeId()).thenReturn("node");
+    when(c1.getStartTime()).thenReturn(1L);
+    channelManager.getChannels().put(a3, c1);
+    when(c2.getInetSocketAddress()).thenReturn(a2);
+    when(c2.getInetAddress()).thenReturn(a2.getAddress());
+    when(c2.getNodeId()).thenReturn("node");
+    when(c2.getStartTime()).thenReturn(2L);
+    when(c2.isResumed()).thenReturn(true);
+    when(c2.getSession())
+        .thenReturn(new SessionTickets.Session(Bytes.of(1), "node", a2.getAddress(), null, c1));
+
+    // skips the connection limits and replaces the channel of its session
+    assertEquals(DisconnectCode.NORMAL, channelManager.processPeer(c2));
+    verify(c1).close();
+    assertSame(c2, channelManager.getChannels().get(a2));
+    assertNull(channelManager.getChannels().get(a3));
+  }
+
+  @Test
+  public void testProcessPeerResumedSessionKeepsLongerBan() {
+    // a session ticket does not lift a ban longer than the one of an ordinary disconnect
+    channelManager.getBannedNodes().put(a2.getAddress(), System.currentTimeMillis() + 600_000);
+    when(c2.getInetSocketAddress()).thenReturn(a2);
+    when(c2.getInetAddress()).thenReturn(a2.getAddress());
+    when(c2.isResumed()).thenReturn(true);
+
+    assertEquals(DisconnectCode.TIME_BANNED, channelManager.processPeer(c2));
+  }
+
+  @Test
+  public void testRateLimitDisconnectDropsSessionTicket() throws Exception {
+    RateLimitPolicy policy = new RateLimitPolicy();
+    policy.setLimit((byte) 0x01, 1, 1, RateLimitPolicy.Action.DISCONNECT);
+    p2pConfig.addP2pEventHandle(
+        new P2pEventHandler() {
+          {
+            messageTypes = Set.of((byte) 0x01);
+          }
+        });
+    EmbeddedChannel embedded = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    Channel channel = new Channel(p2pConfig, channelManager);
+    channel.setCtx(embedded.pipeline().firstContext());
+    channel.setInetSocketAddress(a1);
+    channel.setInetAddress(a1.getAddress());
+    channel.setNodeId("node");
+    channel.setFinishHandshake(true);
+    channel.setInboundRateLimiter(new InboundRateLimiter(channel, policy));
+    Bytes ticket = channelManager.getSessionTickets().issue();
+    channel.setSessionTicket(ticket);
+    embedded.closeFuture().addListener(f -> channelManager.notifyDisconnect(channel));
+
+    // an inbound peer floods a type limited with the disconnect action
+    channelManager.processMessage(channel, Unpooled.wrappedBuffer(new byte[] {0x01, 0x02}));
+    channelManager.processMessage(channel, Unpooled.wrappedBuffer(new byte[] {0x01, 0x03}));
+    assertTrue(channel.isPenalized());
+    assertFalse(embedded.isOpen());
+
+    // its ticket is gone, so the reconnect neither passes admission nor the ban
+    assertFalse(channelManager.getSessionTickets().isResumable(a1.getAddress()));
+    assertNull(channelManager.getSessionTickets().redeem(ticket, "node", a1.getAddress()));
+    when(c1.getInetSocketAddress()).thenReturn(new InetSocketAddress(a1.getAddress(), 101));
+    when(c1.getInetAddress()).thenReturn(a1.getAddress());
+    assertEquals(DisconnectCode.TIME_BANNED, channelManager.processPeer(c1));
+  }
+
   @Test
   public void testConnectToAddress() {
     // Given
@@ -273,4 +679,31 @@ public class ChannelManagerTest {
     channelManager.getChannels().clear();
     channelManager.getBannedNodes().invalidateAll();
   }
+
+  private static class RecordingHandler extends P2pEventHandler {
+    private final boolean keep;
+    private boolean readOnly;
+    private int refCnt;
+    private Bytes received;
+    private ByteBuf kept;
+
+    RecordingHandler(byte type, boolean keep) {
+      this.messageTypes = Set.of(type);
+      this.keep = keep;
+    }
+
+    void deliverInBatches() {
+      this.batchDelivery = true;
+    }
+
+    @Override
+    public void onMessage(Channel channel, ByteBuf data) {
+      readOnly = data.isReadOnly();
+      refCnt = data.refCnt();
+      received = Bytes.wrap(ByteBufUtil.getBytes(data));
+      if (keep) {
+        kept = data.retain();
+      }
+    }
+  }
 }
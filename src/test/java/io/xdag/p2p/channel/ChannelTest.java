@@ -25,22 +25,42 @@ package io.xdag.p2p.channel;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.xdag.p2p.P2pEventHandler;
 import io.xdag.p2p.P2pException;
+import io.xdag.p2p.codec.CompressionCodecs;
+import io.xdag.p2p.config.BandwidthPolicy;
 import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.config.P2pConstant;
+import io.xdag.p2p.config.UpgradeController;
 import io.xdag.p2p.discover.Node;
 import io.xdag.p2p.message.node.HelloMessage;
 import io.xdag.p2p.message.node.Message;
+import io.xdag.p2p.proto.Connect.CompressMessage;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -50,6 +70,7 @@ import org.apache.tuweni.bytes.Bytes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -95,6 +116,8 @@ class ChannelTest {
     when(nettyChannel.writeAndFlush(any())).thenReturn(channelFuture);
     when(nettyChannel.close()).thenReturn(channelFuture);
     when(ctx.writeAndFlush(any())).thenReturn(channelFuture);
+    when(ctx.write(any())).thenReturn(channelFuture);
+    when(ctx.alloc()).thenReturn(PooledByteBufAllocator.DEFAULT);
     when(channelFuture.addListener(any())).thenReturn(channelFuture);
 
     // Mock P2pConfig
@@ -159,6 +182,24 @@ class ChannelTest {
     assertEquals(node, channel.getNode());
     assertEquals("test-node-id", channel.getNodeId());
     assertEquals(1, channel.getVersion());
+    assertSame(CompressionCodecs.SNAPPY, channel.getCodec(), "peer advertised no codecs");
+  }
+
+  @Test
+  void testSetHandshakeMessageNegotiatesCodec() {
+    // Given
+    when(handshakeMessage.getFrom()).thenReturn(node);
+    when(handshakeMessage.getVersion()).thenReturn(2);
+    when(handshakeMessage.getCodecs()).thenReturn(List.of(CompressType.snappy, CompressType.lz4));
+    when(p2pConfig.getCompressionCodecs())
+        .thenReturn(List.of(CompressType.zstd, CompressType.lz4, CompressType.snappy));
+    when(node.getHexId()).thenReturn("test-node-id");
+
+    // When
+    channel.setHandshakeMessage(handshakeMessage);
+
+    // Then
+    assertEquals(CompressType.lz4, channel.getCodec().getType());
   }
 
   @Test
@@ -243,6 +284,7 @@ class ChannelTest {
 
     // Then
     assertTrue(channel.isDisconnect());
+    assertFalse(channel.isPenalized());
     verify(ctx).close();
   }
 
@@ -257,6 +299,7 @@ class ChannelTest {
 
     // Then
     assertTrue(channel.isDisconnect());
+    assertTrue(channel.isPenalized());
     verify(ctx).close();
   }
 
@@ -455,6 +498,363 @@ class ChannelTest {
     assertTrue(channel.getLastSendTime() > 0);
   }
 
+  @Test
+  void testPipelinedMessageIsSentInUncompressEnvelope() throws Exception {
+    // Given a dialing channel writing behind its HELLO
+    channel.setChannelHandlerContext(ctx);
+    channel.setPipelining(true);
+    Bytes testData = Bytes.wrap(new byte[] {1, 2, 3, 4});
+    ArgumentCaptor<ByteBuf> captor = ArgumentCaptor.forClass(ByteBuf.class);
+
+    // When
+    channel.send(testData);
+
+    // Then the peer decodes it like any frame after the handshake
+    verify(ctx).writeAndFlush(captor.capture());
+    ByteBuf sent = captor.getValue();
+    byte[] encoded = new byte[sent.readableBytes()];
+    sent.readBytes(encoded);
+    sent.release();
+    assertEquals(testData, UpgradeController.decodeReceiveData(2, Bytes.wrap(encoded)));
+  }
+
+  @Test
+  void testSendEncodesCompressedFrameAfterHandshake() throws Exception {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+    channel.setFinishHandshake(true);
+    channel.setVersion(1);
+    Bytes testData = Bytes.wrap(new byte[1024]);
+    ArgumentCaptor<ByteBuf> captor = ArgumentCaptor.forClass(ByteBuf.class);
+
+    // When
+    channel.send(testData);
+
+    // Then
+    verify(ctx).writeAndFlush(captor.capture());
+    ByteBuf sent = captor.getValue();
+    assertTrue(sent.isDirect());
+    assertTrue(sent.readableBytes() < testData.size());
+    byte[] encoded = new byte[sent.readableBytes()];
+    sent.readBytes(encoded);
+    sent.release();
+    assertEquals(testData, UpgradeController.decodeReceiveData(1, Bytes.wrap(encoded)));
+  }
+
+  @Test
+  void testWriteDoesNotFlush() {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+
+    // When
+    channel.write(Bytes.wrap(new byte[] {1, 2, 3}));
+    channel.write(message);
+
+    // Then
+    verify(ctx, times(2)).write(any());
+    verify(ctx, never()).writeAndFlush(any());
+    verify(ctx, never()).flush();
+
+    // When
+    channel.flush();
+
+    // Then
+    verify(ctx).flush();
+  }
+
+  @Test
+  void testTrySendWhenWritable() {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+    when(nettyChannel.isWritable()).thenReturn(true);
+
+    // When & Then
+    assertTrue(channel.trySend(Bytes.wrap(new byte[] {1, 2, 3})));
+    assertTrue(channel.trySend(message));
+    verify(ctx, times(2)).writeAndFlush(any());
+  }
+
+  @Test
+  void testTrySendWhenNotWritable() {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+    when(nettyChannel.isWritable()).thenReturn(false);
+
+    // When & Then
+    assertFalse(channel.isWritable());
+    assertFalse(channel.trySend(Bytes.wrap(new byte[] {1, 2, 3})));
+    assertFalse(channel.trySend(message));
+    verify(ctx, never()).writeAndFlush(any());
+  }
+
+  @Test
+  void testQueuedBytesAndWritabilityWithWatermarks() {
+    // Given - a real channel whose outbound queue is never flushed
+    EmbeddedChannel embedded = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    embedded.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1024, 4096));
+    Channel queued = new Channel(p2pConfig, channelManager);
+    queued.setCtx(embedded.pipeline().firstContext());
+
+    // When
+    queued.write(Bytes.wrap(new byte[1000]));
+
+    // Then
+    assertTrue(queued.getQueuedBytes() >= 1000);
+    assertTrue(queued.isWritable());
+
+    // When - the queue passes the high watermark
+    queued.write(Bytes.wrap(new byte[4000]));
+
+    // Then
+    assertTrue(queued.getQueuedBytes() >= 5000);
+    assertFalse(queued.isWritable());
+    assertFalse(queued.trySend(Bytes.wrap(new byte[10])));
+
+    // When - flushing an embedded channel drains the queue
+    queued.flush();
+
+    // Then
+    assertEquals(0, queued.getQueuedBytes());
+    assertTrue(queued.isWritable());
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testFlushWhenDisconnected() {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+    channel.setDisconnect(true);
+
+    // When
+    channel.write(Bytes.wrap(new byte[] {1}));
+    channel.flush();
+
+    // Then
+    verify(ctx, never()).write(any());
+    verify(ctx, never()).flush();
+  }
+
+  @Test
+  void testInitAddsFlushConsolidation() {
+    // Given
+    when(p2pConfig.isFlushConsolidation()).thenReturn(true);
+    when(p2pConfig.getFlushConsolidationLimit()).thenReturn(64);
+
+    // When
+    channel.init(pipeline, "node", false);
+
+    // Then
+    verify(pipeline).addLast(eq("flushConsolidation"), any(FlushConsolidationHandler.class));
+  }
+
+  @Test
+  void testSendTagsFramesWithPriorityWhenSchedulingEnabled() {
+    // Given
+    when(p2pConfig.isPriorityScheduling()).thenReturn(true);
+    when(p2pConfig.getMaxInFlightAppBytes()).thenReturn(1024);
+    when(p2pConfig.getMessagePriority((byte) 1)).thenReturn(MessagePriority.LOW);
+    channel.init(pipeline, "node", false);
+    channel.setChannelHandlerContext(ctx);
+    ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+
+    // When
+    channel.send(Bytes.wrap(new byte[] {1, 2, 3}));
+
+    // Then
+    verify(pipeline).addLast(eq("outboundScheduler"), any(OutboundScheduler.class));
+    verify(ctx).writeAndFlush(captor.capture());
+    PriorityFrame frame = assertInstanceOf(PriorityFrame.class, captor.getValue());
+    assertEquals(MessagePriority.LOW, frame.getPriority());
+    assertEquals(3, frame.content().readableBytes());
+    frame.release();
+  }
+
+  @Test
+  void testSendBatchesSmallMessagesAfterHandshake() {
+    // Given
+    when(p2pConfig.isBatchEnable()).thenReturn(true);
+    when(p2pConfig.getBatchMaxMessageSize()).thenReturn(16);
+    channel.init(pipeline, "node", false);
+    channel.setChannelHandlerContext(ctx);
+    channel.setFinishHandshake(true);
+    channel.setVersion(P2pConstant.BATCH_VERSION);
+    ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+
+    // When
+    channel.send(Bytes.wrap(new byte[] {1, 2, 3}));
+    channel.send(Bytes.wrap(new byte[32]));
+
+    // Then
+    verify(pipeline).addLast(eq("batchEncoder"), any(BatchEncoder.class));
+    verify(ctx, times(2)).writeAndFlush(captor.capture());
+    assertInstanceOf(BatchEncoder.Entry.class, captor.getAllValues().get(0));
+    ByteBuf large = assertInstanceOf(ByteBuf.class, captor.getAllValues().get(1));
+    large.release();
+  }
+
+  @Test
+  void testSendDoesNotBatchForOldPeers() {
+    // Given
+    when(p2pConfig.isBatchEnable()).thenReturn(true);
+    when(p2pConfig.getBatchMaxMessageSize()).thenReturn(16);
+    channel.init(pipeline, "node", false);
+    channel.setChannelHandlerContext(ctx);
+    channel.setFinishHandshake(true);
+    channel.setVersion(1);
+    ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+
+    // When
+    channel.send(Bytes.wrap(new byte[] {1, 2, 3}));
+
+    // Then
+    verify(ctx).writeAndFlush(captor.capture());
+    ByteBuf frame = assertInstanceOf(ByteBuf.class, captor.getValue());
+    frame.release();
+  }
+
+  @Test
+  void testFinishHandshakeAddsCompressionStage() throws Exception {
+    // Given - a real pipeline
+    EmbeddedChannel embedded = new EmbeddedChannel();
+    Channel peer = new Channel(p2pConfig, channelManager);
+    peer.init(embedded.pipeline(), "node", false);
+    peer.setCtx(embedded.pipeline().context("messageHandler"));
+    peer.setVersion(1);
+
+    // When
+    peer.setFinishHandshake(true);
+    peer.send(Bytes.wrap(new byte[4096]));
+
+    // Then
+    List<String> names = embedded.pipeline().names();
+    assertEquals(names.indexOf("protoDecode") + 1, names.indexOf("compression"));
+    assertSame(peer.getCompressionHandler(), embedded.pipeline().get("compression"));
+    ByteBuf frame = embedded.readOutbound();
+    while (frame.readByte() < 0) {
+      // skip the varint length prefix
+    }
+    CompressMessage message = CompressMessage.parseFrom(ByteBufUtil.getBytes(frame));
+    assertEquals(CompressType.snappy, message.getType());
+    frame.release();
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testCompressionStagesOfTwoPeersRoundTrip() throws Exception {
+    // Given - two peers whose handshake negotiated compression
+    EmbeddedChannel out = new EmbeddedChannel();
+    EmbeddedChannel in = new EmbeddedChannel();
+    Channel sender = new Channel(p2pConfig, channelManager);
+    Channel receiver = new Channel(p2pConfig, channelManager);
+    sender.init(out.pipeline(), "node", false);
+    receiver.init(in.pipeline(), "node", false);
+    sender.setCtx(out.pipeline().context("messageHandler"));
+    receiver.setCtx(in.pipeline().context("messageHandler"));
+    for (Channel peer : new Channel[] {sender, receiver}) {
+      peer.setVersion(2);
+      peer.setCodec(CompressionCodecs.get(CompressType.zstd.getNumber()));
+      peer.setFinishHandshake(true);
+    }
+    Bytes data = Bytes.wrap(new byte[8192]);
+    ArgumentCaptor<ByteBuf> received = ArgumentCaptor.forClass(ByteBuf.class);
+
+    // When
+    sender.send(data);
+    ByteBuf frame = out.readOutbound();
+    in.writeInbound(frame);
+
+    // Then
+    verify(channelManager).processMessage(eq(receiver), received.capture());
+    assertEquals(8192, received.getValue().capacity());
+    out.finishAndReleaseAll();
+    in.finishAndReleaseAll();
+  }
+
+  @Test
+  void testFinishHandshakeWithoutCompressionKeepsPipeline() {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel();
+    Channel peer = new Channel(p2pConfig, channelManager);
+    peer.init(embedded.pipeline(), "node", false);
+    peer.setCtx(embedded.pipeline().context("messageHandler"));
+    peer.setVersion(0);
+
+    // When
+    peer.setFinishHandshake(true);
+
+    // Then
+    assertNull(embedded.pipeline().get("compression"));
+    assertNull(peer.getCompressionHandler());
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testSendEncodedPassesCompressionStageUnchanged() {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+    channel.setCompressionHandler(new CompressionHandler(null, null));
+    ByteBuf frame = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+    ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+
+    // When
+    channel.sendEncoded(frame, (byte) 1, 3);
+
+    // Then
+    verify(ctx).writeAndFlush(captor.capture());
+    EncodedFrame encoded = assertInstanceOf(EncodedFrame.class, captor.getValue());
+    assertSame(frame, encoded.content());
+    assertNull(encoded.getPriority());
+    encoded.release();
+  }
+
+  @Test
+  void testSendEncodedWritesSharedFrame() {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+    ByteBuf frame = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+
+    // When
+    channel.sendEncoded(frame, (byte) 1, 3);
+
+    // Then
+    verify(ctx).writeAndFlush(frame);
+    frame.release();
+  }
+
+  @Test
+  void testSendEncodedChargesTheUncompressedSize() {
+    // Given a channel with a shaping stage
+    channel.setChannelHandlerContext(ctx);
+    channel.setShapingHandler(new ShapingHandler(channel, new BandwidthPolicy()));
+    ByteBuf frame = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+    ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+
+    // When a compressed frame of a 64 KB message is sent
+    channel.sendEncoded(frame, (byte) 1, 64 * 1024);
+
+    // Then the message size is charged, not the size of the frame
+    verify(ctx).writeAndFlush(captor.capture());
+    ShapingHandler.Frame shaped = assertInstanceOf(ShapingHandler.Frame.class, captor.getValue());
+    assertEquals(64 * 1024, shaped.bytes());
+    assertSame(frame, shaped.frame());
+    frame.release();
+  }
+
+  @Test
+  void testSendEncodedReleasesFrameWhenDisconnected() {
+    // Given
+    channel.setChannelHandlerContext(ctx);
+    channel.setDisconnect(true);
+    ByteBuf frame = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+
+    // When
+    channel.sendEncoded(frame, (byte) 1, 3);
+
+    // Then
+    verify(ctx, never()).writeAndFlush(any());
+    assertEquals(0, frame.refCnt());
+  }
+
   @Test
   void testSendMessageWithLogging() {
     // Given
@@ -580,4 +980,74 @@ class ChannelTest {
     // Test that startTime is set in constructor
     assertTrue(channel.getStartTime() > 0);
   }
+
+  @Test
+  void testPauseReadingResumesAfterTheWait() throws Exception {
+    // Given a channel on an embedded netty channel
+    EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    channel.setCtx(embeddedChannel.pipeline().firstContext());
+
+    // When reading is paused for 10 ms, twice
+    channel.pauseReading(10_000_000);
+    channel.pauseReading(1_000_000_000);
+
+    // Then reading resumes once the first pause is over
+    assertFalse(embeddedChannel.config().isAutoRead());
+    Thread.sleep(20);
+    embeddedChannel.runPendingTasks();
+    assertTrue(embeddedChannel.config().isAutoRead());
+    assertFalse(channel.isReadPaused());
+    embeddedChannel.finishAndReleaseAll();
+  }
+
+  @Test
+  void testHoldReadingOutlastsAPause() throws Exception {
+    // Given a channel on an embedded netty channel with two holds and a pause
+    EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    channel.setCtx(embeddedChannel.pipeline().firstContext());
+    channel.holdReading();
+    channel.holdReading();
+    channel.pauseReading(1_000_000);
+
+    // When the pause is over and one hold is released
+    Thread.sleep(5);
+    embeddedChannel.runPendingTasks();
+    channel.releaseReading();
+
+    // Then reading stays paused until the last hold is released
+    assertFalse(embeddedChannel.config().isAutoRead());
+    channel.releaseReading();
+    assertTrue(embeddedChannel.config().isAutoRead());
+    embeddedChannel.finishAndReleaseAll();
+  }
+
+  @Test
+  void testFlushReadBatchDeliversOneCallPerHandler() {
+    // Given messages held for two batch delivery handlers
+    List<String> calls = new ArrayList<>();
+    P2pEventHandler first =
+        new P2pEventHandler() {
+          @Override
+          public void onMessages(Channel ch, List<Bytes> messages) {
+            calls.add("first " + messages);
+          }
+        };
+    P2pEventHandler second =
+        new P2pEventHandler() {
+          @Override
+          public void onMessages(Channel ch, List<Bytes> messages) {
+            calls.add("second " + messages);
+          }
+        };
+    channel.addToReadBatch(first, Bytes.of(1));
+    channel.addToReadBatch(second, Bytes.of(2));
+    channel.addToReadBatch(first, Bytes.of(3));
+
+    // When the read completes, twice
+    channel.flushReadBatch();
+    channel.flushReadBatch();
+
+    // Then each handler gets its messages in order, once
+    assertEquals(List.of("first [0x01, 0x03]", "second [0x02]"), calls);
+  }
 }
@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ResourceLeakDetector;
+import io.xdag.p2p.P2pException;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
+import io.xdag.p2p.config.CompressionPolicy;
+import io.xdag.p2p.proto.Connect.CompressMessage;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import io.xdag.p2p.utils.ProtoUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CompressionHandlerTest {
+
+  private final CompressionCodec lz4 = CompressionCodecs.get(CompressType.lz4.getNumber());
+
+  private ResourceLeakDetector.Level level;
+
+  @BeforeEach
+  void setUp() {
+    level = ResourceLeakDetector.getLevel();
+    ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+  }
+
+  @AfterEach
+  void tearDown() {
+    ResourceLeakDetector.setLevel(level);
+  }
+
+  @Test
+  void testOutboundFramesAreCompressedWithTheCodec() throws Exception {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new CompressionHandler(lz4, null));
+    ByteBuf raw = PooledByteBufAllocator.DEFAULT.directBuffer().writeBytes(new byte[4096]);
+
+    // When
+    embedded.writeOutbound(raw);
+
+    // Then
+    ByteBuf frame = embedded.readOutbound();
+    CompressMessage message = CompressMessage.parseFrom(ByteBufUtil.getBytes(frame));
+    assertEquals(CompressType.lz4, message.getType());
+    assertEquals(Bytes.wrap(new byte[4096]), ProtoUtils.uncompressMessageBytes(message));
+    assertEquals(0, raw.refCnt(), "raw frame should be released");
+    frame.release();
+    assertFalse(embedded.finishAndReleaseAll());
+  }
+
+  @Test
+  void testPriorityFramesKeepTheirLane() throws Exception {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new CompressionHandler(lz4, null));
+    PriorityFrame raw =
+        new PriorityFrame(Unpooled.wrappedBuffer(new byte[2048]), MessagePriority.LOW);
+
+    // When
+    embedded.writeOutbound(raw);
+
+    // Then
+    PriorityFrame frame = assertInstanceOf(PriorityFrame.class, embedded.readOutbound());
+    assertEquals(MessagePriority.LOW, frame.getPriority());
+    assertTrue(frame.content().readableBytes() < 2048, "frame should be compressed");
+    assertEquals(0, raw.refCnt());
+    frame.release();
+  }
+
+  @Test
+  void testEncodedFramesPassUnchanged() {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new CompressionHandler(lz4, null));
+    ByteBuf shared = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+
+    // When
+    embedded.writeOutbound(new EncodedFrame(shared.retainedDuplicate(), null));
+    embedded.writeOutbound(new EncodedFrame(shared.retainedDuplicate(), MessagePriority.HIGH));
+
+    // Then
+    ByteBuf plain = embedded.readOutbound();
+    PriorityFrame prioritized = assertInstanceOf(PriorityFrame.class, embedded.readOutbound());
+    assertSame(shared, plain.unwrap());
+    assertEquals(MessagePriority.HIGH, prioritized.getPriority());
+    assertSame(shared, prioritized.content().unwrap());
+    plain.release();
+    prioritized.release();
+    shared.release();
+    assertEquals(0, shared.refCnt());
+  }
+
+  @Test
+  void testPolicySkipsSmallFrames() throws Exception {
+    // Given
+    CompressionPolicy policy = new CompressionPolicy();
+    policy.setMinSize(64);
+    EmbeddedChannel embedded = new EmbeddedChannel(new CompressionHandler(lz4, policy));
+
+    // When
+    embedded.writeOutbound(Unpooled.wrappedBuffer(new byte[32]));
+
+    // Then
+    ByteBuf frame = embedded.readOutbound();
+    CompressMessage message = CompressMessage.parseFrom(ByteBufUtil.getBytes(frame));
+    assertEquals(CompressType.uncompress, message.getType());
+    assertEquals(32, message.getData().size());
+    frame.release();
+  }
+
+  @Test
+  void testInboundFramesAreUncompressed() throws Exception {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new CompressionHandler(lz4, null));
+    Bytes payload = Bytes.wrap(new byte[3000]);
+    ByteBuf frame = ProtoUtils.compressMessage(PooledByteBufAllocator.DEFAULT, payload, lz4);
+
+    // When
+    embedded.writeInbound(frame);
+
+    // Then
+    ByteBuf data = embedded.readInbound();
+    assertEquals(payload, Bytes.wrap(ByteBufUtil.getBytes(data)));
+    assertEquals(0, frame.refCnt(), "compressed frame should be released");
+    data.release();
+  }
+
+  @Test
+  void testMalformedInboundFrameIsReported() {
+    // Given
+    EmbeddedChannel embedded = new EmbeddedChannel(new CompressionHandler(lz4, null));
+    ByteBuf frame = Unpooled.directBuffer().writeBytes(new byte[] {0x12, 0x7F});
+
+    // When & Then
+    assertThrows(P2pException.class, () -> embedded.writeInbound(frame));
+    assertEquals(0, frame.refCnt());
+    assertFalse(embedded.finishAndReleaseAll());
+  }
+
+  @Test
+  void testFailedCompressionFailsThePromise() {
+    // Given - a codec that cannot compress
+    CompressionCodec broken =
+        new CompressionCodec() {
+          @Override
+          public CompressType getType() {
+            return CompressType.lz4;
+          }
+
+          @Override
+          public int maxCompressedLength(int length) {
+            return length;
+          }
+
+          @Override
+          public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            throw new IOException("broken");
+          }
+
+          @Override
+          public int uncompressedLength(ByteBuffer src) {
+            return 0;
+          }
+
+          @Override
+          public int uncompress(ByteBuffer src, ByteBuffer dst) {
+            return 0;
+          }
+        };
+    EmbeddedChannel embedded = new EmbeddedChannel(new CompressionHandler(broken, null));
+    ByteBuf raw = Unpooled.wrappedBuffer(new byte[128]);
+
+    // When
+    ChannelFuture future = embedded.writeAndFlush(raw);
+
+    // Then
+    assertFalse(future.isSuccess());
+    assertEquals(0, raw.refCnt());
+    embedded.finishAndReleaseAll();
+  }
+}
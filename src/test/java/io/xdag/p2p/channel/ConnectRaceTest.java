@@ -0,0 +1,263 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.SocketChannelConfig;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.xdag.p2p.channel.AddressFamilyStats.AddressFamily;
+import io.xdag.p2p.config.P2pConfig;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+/**
+ * Unit tests for ConnectRace. Each dial is an unregistered EmbeddedChannel with a connect promise
+ * the test completes; registering the channel stands in for the socket becoming active.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ConnectRaceTest {
+
+  private static final long DELAY = 250;
+
+  @Mock private EventExecutor executor;
+
+  @Mock private ScheduledFuture<Object> timer;
+
+  private final InetSocketAddress v4 = new InetSocketAddress("127.0.0.1", 16783);
+  private final InetSocketAddress v6 = new InetSocketAddress("::1", 16783);
+  private final AddressFamilyStats stats = new AddressFamilyStats();
+  private final List<Dial> dials = new ArrayList<>();
+  private final List<Runnable> timers = new ArrayList<>();
+
+  /** Handlers added behind the gate of the dials to an address */
+  private final Map<InetSocketAddress, ChannelHandler> extraHandlers = new HashMap<>();
+
+  @BeforeEach
+  void setUp() {
+    when(executor.inEventLoop()).thenReturn(true);
+    when(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+        .thenAnswer(
+            invocation -> {
+              assertEquals(DELAY, (long) invocation.getArgument(1));
+              timers.add(invocation.getArgument(0));
+              return timer;
+            });
+  }
+
+  @Test
+  void testPreferredAddressWinsWithoutDialingTheOther() throws Exception {
+    // Given
+    ChannelFuture race = newRace(v4, v6).start();
+
+    // When
+    dials.get(0).connect();
+
+    // Then
+    assertTrue(race.isSuccess());
+    assertSame(dials.get(0).channel, race.channel());
+    assertEquals(1, dials.size());
+    assertEquals(1, dials.get(0).actives.size());
+    verify(timer).cancel(false);
+    assertEquals(1, stats.getSuccesses(AddressFamily.IPV4));
+    assertEquals(0, stats.getAttempts(AddressFamily.IPV6));
+  }
+
+  @Test
+  void testOtherFamilyStartsAfterTheDelayAndWins() throws Exception {
+    // Given - the preferred address does not answer
+    ChannelFuture race = newRace(v4, v6).start();
+    assertEquals(1, dials.size());
+
+    // When
+    timers.get(0).run();
+    dials.get(1).connect();
+
+    // Then
+    assertTrue(race.isSuccess());
+    assertSame(dials.get(1).channel, race.channel());
+    assertTrue(dials.get(0).promise.isCancelled());
+    assertEquals(1, dials.get(1).actives.size());
+    assertEquals(1, stats.getSuccesses(AddressFamily.IPV6));
+    assertEquals(0, stats.getSuccesses(AddressFamily.IPV4));
+    assertEquals(0, stats.getFailures(AddressFamily.IPV4));
+  }
+
+  @Test
+  void testFailedAttemptDialsTheNextAddressAtOnce() {
+    // Given
+    ChannelFuture race = newRace(v6, v4).start();
+
+    // When
+    dials.get(0).promise.setFailure(new ConnectException("refused"));
+
+    // Then
+    assertEquals(2, dials.size());
+    verify(timer).cancel(false);
+
+    // When
+    dials.get(1).promise.setFailure(new ConnectException("unreachable"));
+
+    // Then
+    assertTrue(race.isDone());
+    assertFalse(race.isSuccess());
+    assertEquals("unreachable", race.cause().getMessage());
+    assertEquals(1, stats.getFailures(AddressFamily.IPV4));
+    assertEquals(1, stats.getFailures(AddressFamily.IPV6));
+  }
+
+  @Test
+  void testLoserThatConnectsLateIsClosedBeforeChannelActive() throws Exception {
+    // Given - both attempts are in flight
+    ChannelFuture race = newRace(v4, v6).start();
+    timers.get(0).run();
+
+    // When - the preferred socket becomes active first, then the other one
+    dials.get(0).connect();
+    dials.get(1).channel.register();
+
+    // Then
+    assertSame(dials.get(0).channel, race.channel());
+    assertFalse(dials.get(1).channel.isOpen());
+    assertTrue(dials.get(1).actives.isEmpty());
+  }
+
+  @Test
+  void testLoserIsNotReportedAsDisconnected() throws Exception {
+    // Given - the other attempt is initialized as a peer channel behind the gate
+    ChannelManager channelManager = mock(ChannelManager.class);
+    P2pChannelInitializer initializer =
+        new P2pChannelInitializer(new P2pConfig(), channelManager, "", false, true);
+    extraHandlers.put(
+        v6,
+        new ChannelInitializer<EmbeddedChannel>() {
+          @Override
+          protected void initChannel(EmbeddedChannel ch) {
+            SocketChannel socket = mock(SocketChannel.class);
+            when(socket.pipeline()).thenReturn(ch.pipeline());
+            when(socket.config()).thenReturn(mock(SocketChannelConfig.class));
+            when(socket.closeFuture()).thenReturn(ch.closeFuture());
+            initializer.initChannel(socket);
+          }
+        });
+    ChannelFuture race = newRace(v4, v6).start();
+    timers.get(0).run();
+
+    // When - it becomes active after the preferred socket won and is closed by the gate
+    dials.get(0).connect();
+    dials.get(1).channel.register();
+
+    // Then - a socket that never passed the gate has no disconnect to report
+    assertSame(dials.get(0).channel, race.channel());
+    assertFalse(dials.get(1).channel.isOpen());
+    verify(channelManager, never()).notifyDisconnect(any());
+    verify(channelManager, never()).triggerConnect(any());
+  }
+
+  @Test
+  void testNoFutureWhenNoAttemptCanStart() {
+    // Given
+    ConnectRace race =
+        new ConnectRace(
+            new InetSocketAddress[] {v4, v6}, (address, gate) -> null, stats, executor, DELAY);
+
+    // When & Then
+    assertNull(race.start());
+    assertEquals(1, stats.getFailures(AddressFamily.IPV4));
+    assertEquals(1, stats.getFailures(AddressFamily.IPV6));
+  }
+
+  private ConnectRace newRace(InetSocketAddress... addresses) {
+    return new ConnectRace(
+        addresses,
+        (address, gate) -> {
+          Dial dial = new Dial();
+          List<ChannelHandler> handlers = new ArrayList<>(List.of(gate, dial.recorder));
+          if (extraHandlers.containsKey(address)) {
+            handlers.add(extraHandlers.get(address));
+          }
+          dial.channel = new EmbeddedChannel(false, false, handlers.toArray(new ChannelHandler[0]));
+          dial.promise = new DefaultChannelPromise(dial.channel, ImmediateEventExecutor.INSTANCE);
+          dials.add(dial);
+          return dial.promise;
+        },
+        stats,
+        executor,
+        DELAY);
+  }
+
+  /** One connection attempt and the channelActive events that passed the gate */
+  private static class Dial {
+    private EmbeddedChannel channel;
+    private ChannelPromise promise;
+    private final List<Object> actives = new ArrayList<>();
+    private final ChannelInboundHandlerAdapter recorder =
+        new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelActive(ChannelHandlerContext ctx) {
+            actives.add(ctx);
+          }
+        };
+
+    /** The connect promise completes before channelActive, as it does for a socket channel */
+    private void connect() throws Exception {
+      promise.setSuccess();
+      channel.register();
+    }
+  }
+}
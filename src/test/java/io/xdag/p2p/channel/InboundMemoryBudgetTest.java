@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for InboundMemoryBudget. Tests pausing and resuming reads around the cap. */
+class InboundMemoryBudgetTest {
+
+  private InboundMemoryBudget budget;
+  private EmbeddedChannel heavy;
+  private EmbeddedChannel light;
+  private InboundMemoryBudget.Usage heavyUsage;
+  private InboundMemoryBudget.Usage lightUsage;
+
+  @BeforeEach
+  void setUp() {
+    budget = new InboundMemoryBudget(1000);
+    heavy = new EmbeddedChannel();
+    light = new EmbeddedChannel();
+    heavyUsage = budget.register(heavy);
+    lightUsage = budget.register(light);
+  }
+
+  @Test
+  void testTracksTotalBytes() {
+    // When
+    heavyUsage.update(300);
+    lightUsage.update(200);
+    heavyUsage.update(100);
+
+    // Then
+    assertEquals(300, budget.getTotalBytes());
+    assertEquals(0, budget.getPausedCount());
+  }
+
+  @Test
+  void testPausesHeaviestChannelOverCap() {
+    // Given
+    lightUsage.update(200);
+
+    // When
+    heavyUsage.update(900);
+
+    // Then
+    assertFalse(heavy.config().isAutoRead());
+    assertTrue(light.config().isAutoRead());
+    assertEquals(1, budget.getPausedCount());
+  }
+
+  @Test
+  void testResumesBelowLowWaterMark() {
+    // Given
+    lightUsage.update(200);
+    heavyUsage.update(900);
+
+    // When - light drains and heavy is still paused at 900, above 750
+    lightUsage.update(0);
+
+    // Then - nothing else can drain so heavy resumes to finish its frame
+    assertTrue(heavy.config().isAutoRead());
+
+    // When
+    heavyUsage.update(500);
+
+    // Then
+    assertEquals(0, budget.getPausedCount());
+  }
+
+  @Test
+  void testSingleChannelIsNeverPaused() {
+    // When
+    heavyUsage.update(5000);
+
+    // Then
+    assertTrue(heavy.config().isAutoRead());
+  }
+
+  @Test
+  void testReleaseResumesPausedChannels() {
+    // Given
+    lightUsage.update(300);
+    heavyUsage.update(900);
+    assertFalse(heavy.config().isAutoRead());
+
+    // When
+    lightUsage.release();
+
+    // Then
+    assertEquals(900, budget.getTotalBytes());
+    assertTrue(heavy.config().isAutoRead());
+  }
+
+  @Test
+  void testResumeKeepsReadingHeldByTheChannel() {
+    // Given a paused heavy channel whose owner also holds reading
+    AtomicBoolean held = new AtomicBoolean(true);
+    EmbeddedChannel owned = new EmbeddedChannel();
+    InboundMemoryBudget.Usage ownedUsage = budget.register(owned, held::get);
+    lightUsage.update(200);
+    ownedUsage.update(900);
+    assertTrue(ownedUsage.isPaused());
+
+    // When the budget drains below the low water mark
+    lightUsage.update(0);
+    ownedUsage.update(100);
+
+    // Then the budget lets the channel go but reading stays held by its owner
+    assertFalse(ownedUsage.isPaused());
+    assertFalse(owned.config().isAutoRead());
+    assertEquals(0, budget.getPausedCount());
+  }
+
+  @Test
+  void testDisabledBudgetIgnoresUpdates() {
+    // Given
+    InboundMemoryBudget disabled = new InboundMemoryBudget(0);
+
+    // When
+    disabled.register(light).update(200);
+    disabled.register(heavy).update(5000);
+
+    // Then
+    assertFalse(disabled.isEnabled());
+    assertEquals(0, disabled.getTotalBytes());
+    assertTrue(heavy.config().isAutoRead());
+  }
+}
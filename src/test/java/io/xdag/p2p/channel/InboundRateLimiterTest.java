@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.xdag.p2p.config.RateLimitPolicy;
+import io.xdag.p2p.config.RateLimitPolicy.Action;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class InboundRateLimiterTest {
+
+  private static final byte TYPE = 0x01;
+
+  @Mock private Channel channel;
+
+  private RateLimitPolicy policy;
+  private InboundRateLimiter limiter;
+
+  @BeforeEach
+  void setUp() {
+    policy = new RateLimitPolicy();
+    policy.setBanTime(30_000);
+    limiter = new InboundRateLimiter(channel, policy);
+  }
+
+  @Test
+  void testUnlimitedTypeIsAdmitted() {
+    // Given no limits
+    // When many messages arrive
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(limiter.admit(TYPE));
+    }
+
+    // Then none is counted
+    assertEquals(0, policy.getDropped(TYPE));
+  }
+
+  @Test
+  void testDropOverLimit() {
+    // Given a burst of 2 messages
+    policy.setLimit(TYPE, 1, 2, Action.DROP);
+
+    // When 3 messages arrive at once
+    assertTrue(limiter.admit(TYPE));
+    assertTrue(limiter.admit(TYPE));
+    assertFalse(limiter.admit(TYPE));
+
+    // Then the third is dropped and other types are not affected
+    assertTrue(limiter.admit((byte) 0x02));
+    assertEquals(1, policy.getDropped(TYPE));
+    verify(channel, never()).penalize(anyLong());
+  }
+
+  @Test
+  void testDelayOverLimitPausesReading() {
+    // Given a burst of 1 message with the delay action
+    policy.setLimit(TYPE, 10, 1, Action.DELAY);
+
+    // When 2 messages arrive at once
+    assertTrue(limiter.admit(TYPE));
+    assertTrue(limiter.admit(TYPE));
+
+    // Then both are dispatched and reading pauses until the bucket refills
+    verify(channel).pauseReading(longThat(nanos -> nanos > 0));
+    assertEquals(1, policy.getDelayed(TYPE));
+  }
+
+  @Test
+  void testDisconnectOverLimitBansPeer() {
+    // Given a burst of 1 message with the disconnect action
+    policy.setLimit(TYPE, 1, 1, Action.DISCONNECT);
+
+    // When 2 messages arrive at once
+    assertTrue(limiter.admit(TYPE));
+    assertFalse(limiter.admit(TYPE));
+
+    // Then the peer is closed and banned for the configured time
+    verify(channel).penalize(30_000);
+    assertEquals(1, policy.getDisconnected(TYPE));
+  }
+
+  @Test
+  void testChangedLimitApplies() {
+    // Given an exhausted bucket
+    policy.setLimit(TYPE, 1, 1, Action.DROP);
+    assertTrue(limiter.admit(TYPE));
+    assertFalse(limiter.admit(TYPE));
+
+    // When the limit is raised
+    policy.setLimit(TYPE, 1, 5, Action.DROP);
+
+    // Then the peer gets a new bucket
+    assertTrue(limiter.admit(TYPE));
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.MultithreadEventExecutorGroup;
+import io.xdag.p2p.config.P2pConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for IoResourceManager. Tests event loop sharing, sizing and shutdown. */
+class IoResourceManagerTest {
+
+  private P2pConfig p2pConfig;
+  private IoResourceManager ioResourceManager;
+
+  @BeforeEach
+  void setUp() {
+    p2pConfig = new P2pConfig();
+    p2pConfig.setTransportMode(TransportMode.NIO);
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (ioResourceManager != null) {
+      ioResourceManager.close();
+    }
+  }
+
+  @Test
+  void testGroupsAreCreatedOnceAndShared() {
+    // Given
+    ioResourceManager = new IoResourceManager(p2pConfig);
+
+    // When
+    EventLoopGroup worker = ioResourceManager.getWorkerGroup();
+
+    // Then
+    assertSame(worker, ioResourceManager.getWorkerGroup());
+    assertNotSame(worker, ioResourceManager.getBossGroup());
+    assertNotSame(worker, ioResourceManager.getUdpGroup());
+    assertEquals(TransportMode.NIO, ioResourceManager.getTransport());
+  }
+
+  @Test
+  void testThreadCountsFromConfig() {
+    // Given
+    p2pConfig.setTcpIoThreads(3);
+    p2pConfig.setUdpIoThreads(2);
+    ioResourceManager = new IoResourceManager(p2pConfig);
+
+    // Then
+    assertEquals(1, executorCount(ioResourceManager.getBossGroup()));
+    assertEquals(3, executorCount(ioResourceManager.getWorkerGroup()));
+    assertEquals(2, executorCount(ioResourceManager.getUdpGroup()));
+  }
+
+  @Test
+  void testUdpThreadsAtLeastOne() {
+    // Given
+    p2pConfig.setUdpIoThreads(0);
+    ioResourceManager = new IoResourceManager(p2pConfig);
+
+    // Then
+    assertEquals(1, executorCount(ioResourceManager.getUdpGroup()));
+  }
+
+  @Test
+  void testSingleEventLoopSharesOneThread() {
+    // Given
+    p2pConfig.setSingleEventLoop(true);
+    ioResourceManager = new IoResourceManager(p2pConfig);
+
+    // When
+    EventLoopGroup worker = ioResourceManager.getWorkerGroup();
+
+    // Then
+    assertSame(worker, ioResourceManager.getBossGroup());
+    assertSame(worker, ioResourceManager.getUdpGroup());
+    assertEquals(1, executorCount(worker));
+  }
+
+  @Test
+  void testCloseShutsDownAllGroups() {
+    // Given
+    ioResourceManager = new IoResourceManager(p2pConfig);
+    EventLoopGroup boss = ioResourceManager.getBossGroup();
+    EventLoopGroup worker = ioResourceManager.getWorkerGroup();
+    EventLoopGroup udp = ioResourceManager.getUdpGroup();
+
+    // When
+    ioResourceManager.close();
+
+    // Then
+    assertTrue(boss.isTerminated());
+    assertTrue(worker.isTerminated());
+    assertTrue(udp.isTerminated());
+  }
+
+  @Test
+  void testCompressionGroupOnlyWhenConfigured() {
+    // Given
+    ioResourceManager = new IoResourceManager(p2pConfig);
+
+    // Then - compression runs on the event loops by default
+    assertNull(ioResourceManager.getCompressionGroup());
+
+    // When
+    p2pConfig.setCompressionThreads(2);
+    EventExecutorGroup group = ioResourceManager.getCompressionGroup();
+
+    // Then
+    assertSame(group, ioResourceManager.getCompressionGroup());
+    assertEquals(2, ((MultithreadEventExecutorGroup) group).executorCount());
+    ioResourceManager.close();
+    assertTrue(group.isTerminated());
+  }
+
+  private static int executorCount(EventLoopGroup group) {
+    return ((MultiThreadIoEventLoopGroup) group).executorCount();
+  }
+}
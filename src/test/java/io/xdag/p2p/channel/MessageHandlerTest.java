@@ -23,17 +23,31 @@
  */
 package io.xdag.p2p.channel;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ResourceLeakDetector;
+import io.xdag.p2p.P2pException;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.handler.node.HandshakeHandler;
 import io.xdag.p2p.message.node.Message;
+import io.xdag.p2p.message.node.P2pDisconnectMessage;
 import io.xdag.p2p.message.node.StatusMessage;
+import io.xdag.p2p.utils.ProtoUtils;
 import java.net.InetSocketAddress;
+import org.apache.tuweni.bytes.Bytes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -83,6 +97,95 @@ class MessageHandlerTest {
     when(p2pConfig.getNetworkId()).thenReturn(1);
   }
 
+  @Test
+  void testChannelWritabilityChangedNotifiesChannelManager() throws Exception {
+    // Given
+    when(nettyChannel.isWritable()).thenReturn(false);
+
+    // When
+    messageHandler.channelWritabilityChanged(ctx);
+
+    // Then
+    verify(channelManager).notifyWritabilityChanged(channel, false);
+    verify(ctx).fireChannelWritabilityChanged();
+  }
+
+  @Test
+  void testChannelReadCompleteFlushesReadBatch() {
+    // When
+    messageHandler.channelReadComplete(ctx);
+
+    // Then
+    verify(channel).flushReadBatch();
+    verify(ctx).fireChannelReadComplete();
+  }
+
+  @Test
+  void testDecodeHandsUncompressedFrameAndReleasesBuffers() throws Exception {
+    // Given - paranoid leak detection tracks every pooled buffer
+    ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+    ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+    try {
+      when(channel.isFinishHandshake()).thenReturn(true);
+      when(channel.getVersion()).thenReturn(1);
+      Bytes payload = Bytes.wrap(new byte[4096]);
+      ByteBuf frame = ProtoUtils.compressMessage(PooledByteBufAllocator.DEFAULT, payload);
+      ByteBuf[] received = new ByteBuf[1];
+      doAnswer(
+              invocation -> {
+                ByteBuf data = invocation.getArgument(1);
+                assertEquals(payload, Bytes.wrap(ByteBufUtil.getBytes(data)));
+                received[0] = data;
+                return null;
+              })
+          .when(channelManager)
+          .processMessage(eq(channel), any(ByteBuf.class));
+      EmbeddedChannel embedded = new EmbeddedChannel(messageHandler);
+
+      // When
+      embedded.writeInbound(frame);
+
+      // Then
+      assertNotNull(received[0]);
+      assertEquals(0, received[0].refCnt(), "decoded frame should be released");
+      assertEquals(0, frame.refCnt(), "received frame should be released");
+      embedded.finishAndReleaseAll();
+    } finally {
+      ResourceLeakDetector.setLevel(level);
+    }
+  }
+
+  @Test
+  void testDecodeReleasesFrameOnBadMessage() throws Exception {
+    // Given - a frame that is not a valid compress message
+    when(channel.isFinishHandshake()).thenReturn(true);
+    when(channel.getVersion()).thenReturn(1);
+    ByteBuf frame = Unpooled.directBuffer().writeBytes(new byte[] {0x12, 0x7F});
+    EmbeddedChannel embedded = new EmbeddedChannel(messageHandler);
+
+    // When
+    embedded.writeInbound(frame);
+
+    // Then
+    verify(channel).send(any(P2pDisconnectMessage.class));
+    verify(channelManager, never()).processMessage(eq(channel), any(ByteBuf.class));
+    assertEquals(0, frame.refCnt());
+    embedded.finishAndReleaseAll();
+  }
+
+  @Test
+  void testChannelReadPassesOtherMessagesOn() throws Exception {
+    // Given
+    Object msg = new Object();
+
+    // When
+    messageHandler.channelRead(ctx, msg);
+
+    // Then
+    verify(ctx).fireChannelRead(msg);
+    verify(channelManager, never()).processMessage(eq(channel), any(ByteBuf.class));
+  }
+
   @Test
   void testChannelActiveWithDiscoveryMode() {
     // Given
@@ -156,4 +259,18 @@ class MessageHandlerTest {
     // Then
     verify(channel).processException(exception);
   }
+
+  @Test
+  void testExceptionCaughtFromCompressionStageDisconnects() {
+    // Given
+    P2pException exception =
+        new P2pException(P2pException.TypeEnum.PARSE_MESSAGE_FAILED, "truncated varint");
+
+    // When
+    messageHandler.exceptionCaught(ctx, exception);
+
+    // Then
+    verify(channel).send(any(P2pDisconnectMessage.class));
+    verify(channel).processException(exception);
+  }
 }
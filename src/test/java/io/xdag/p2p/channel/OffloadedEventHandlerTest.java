@@ -0,0 +1,280 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.xdag.p2p.P2pEventHandler;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OffloadedEventHandlerTest {
+
+  @Mock private Channel channel;
+  @Mock private Channel otherChannel;
+
+  private final Queue<Runnable> pending = new ArrayDeque<>();
+  private RecordingHandler delegate;
+  private OffloadedEventHandler offloaded;
+
+  @BeforeEach
+  void setUp() {
+    delegate = new RecordingHandler();
+    offloaded = new OffloadedEventHandler(delegate, pending::add, 2);
+  }
+
+  private void runPending() {
+    Runnable task;
+    while ((task = pending.poll()) != null) {
+      task.run();
+    }
+  }
+
+  private static ByteBuf message(int value) {
+    return Unpooled.wrappedBuffer(new byte[] {0x01, (byte) value});
+  }
+
+  @Test
+  void testCallbacksRunInOrderOnTheExecutor() {
+    // Given a connected channel
+    offloaded.onConnect(channel);
+    ByteBuf first = message(1);
+    ByteBuf second = message(2);
+
+    // When messages arrive and the caller releases its references
+    offloaded.onMessage(channel, first);
+    offloaded.onMessage(channel, second);
+    first.release();
+    second.release();
+    offloaded.onDisconnect(channel);
+
+    // Then nothing runs on the calling thread
+    assertTrue(delegate.events.isEmpty());
+    assertEquals(2, offloaded.getMailboxDepth(channel));
+
+    // And the executor delivers the callbacks in order and releases the buffers
+    runPending();
+    assertEquals(List.of("connect", "message 1", "message 2", "disconnect"), delegate.events);
+    assertEquals(0, first.refCnt());
+    assertEquals(0, second.refCnt());
+    assertEquals(0, offloaded.getQueuedMessages());
+    assertEquals(2, offloaded.getDispatchedMessages());
+    assertEquals(2, offloaded.getMaxMailboxDepth());
+  }
+
+  @Test
+  void testResumeRunsOnTheExecutor() {
+    // When a channel resumes its session
+    offloaded.onResume(channel);
+
+    // Then the delegate is told of the resumption on the executor
+    assertTrue(delegate.events.isEmpty());
+    runPending();
+    assertEquals(List.of("resume"), delegate.events);
+  }
+
+  @Test
+  void testOneTaskPerMailbox() {
+    // Given messages of two channels
+    offloaded.onMessage(channel, message(1));
+    offloaded.onMessage(channel, message(2));
+    offloaded.onMessage(otherChannel, message(3));
+
+    // Then each mailbox is scheduled once
+    assertEquals(2, pending.size());
+  }
+
+  @Test
+  void testFullMailboxHoldsReadingUntilDrained() {
+    // Given a mailbox of 2 messages
+    // When 5 messages arrive before the executor runs
+    for (int i = 0; i < 5; i++) {
+      offloaded.onMessage(channel, message(i));
+    }
+
+    // Then reading is held once the mailbox is full and no message is dropped
+    verify(channel, times(1)).holdReading();
+    verify(channel, never()).releaseReading();
+    assertEquals(5, offloaded.getMailboxDepth(channel));
+    assertEquals(0, offloaded.getDroppedMessages());
+
+    // And the drain task releases the hold once the mailbox is back at half its size
+    runPending();
+    assertEquals(5, delegate.events.size());
+    verify(channel, times(1)).releaseReading();
+  }
+
+  @Test
+  void testDropLimitIsOptIn() {
+    // Given a mailbox of 2 messages that drops at 3
+    offloaded = new OffloadedEventHandler(delegate, pending::add, 2, 3);
+
+    // When 5 messages arrive before the executor runs
+    for (int i = 0; i < 5; i++) {
+      offloaded.onMessage(channel, message(i));
+    }
+
+    // Then the messages past the drop limit are dropped
+    assertEquals(3, offloaded.getMailboxDepth(channel));
+    assertEquals(2, offloaded.getDroppedMessages());
+    runPending();
+    assertEquals(3, delegate.events.size());
+  }
+
+  @Test
+  void testMessagesAfterDisconnectAreDropped() {
+    // Given a channel whose disconnect is queued
+    offloaded.onDisconnect(channel);
+    ByteBuf late = message(1);
+
+    // When a message still arrives
+    offloaded.onMessage(channel, late);
+    late.release();
+
+    // Then it is dropped and released
+    assertEquals(0, late.refCnt());
+    assertEquals(1, offloaded.getDroppedMessages());
+    runPending();
+    assertEquals(List.of("disconnect"), delegate.events);
+    verify(channel, never()).holdReading();
+  }
+
+  @Test
+  void testRejectedExecutorReleasesMessages() {
+    // Given an executor that is shut down
+    offloaded =
+        new OffloadedEventHandler(
+            delegate,
+            r -> {
+              throw new RejectedExecutionException();
+            },
+            2);
+    ByteBuf data = message(1);
+
+    // When a message arrives
+    offloaded.onMessage(channel, data);
+    data.release();
+
+    // Then it is dropped without leaking the buffer
+    assertEquals(0, data.refCnt());
+    assertEquals(1, offloaded.getDroppedMessages());
+    assertEquals(0, offloaded.getQueuedMessages());
+  }
+
+  @Test
+  void testVirtualThreadsKeepOrderPerChannel() throws InterruptedException {
+    // Given handlers running on virtual threads
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    List<String> first = Collections.synchronizedList(new ArrayList<>());
+    List<String> second = Collections.synchronizedList(new ArrayList<>());
+    P2pEventHandler handler =
+        new P2pEventHandler() {
+          @Override
+          public void onMessage(Channel ch, ByteBuf data) {
+            (ch == channel ? first : second).add(String.valueOf(data.getByte(1)));
+          }
+        };
+    offloaded = new OffloadedEventHandler(handler, executor, 1000);
+
+    // When both channels receive messages
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      offloaded.onMessage(channel, message(i));
+      offloaded.onMessage(otherChannel, message(i));
+      expected.add(String.valueOf((byte) i));
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    // Then each channel sees its messages in order
+    assertEquals(expected, first);
+    assertEquals(expected, second);
+    assertTrue(offloaded.getMaxDispatchLatency() > 0);
+    assertTrue(offloaded.getAverageDispatchLatency() <= offloaded.getMaxDispatchLatency());
+  }
+
+  @Test
+  void testTypesAndPrioritiesOfTheDelegate() {
+    // Then the wrapper registers the types and priorities of its delegate
+    assertEquals(Set.of((byte) 0x01), offloaded.getMessageTypes());
+    assertEquals(MessagePriority.LOW, offloaded.getMessagePriority((byte) 0x01));
+  }
+
+  private static class RecordingHandler extends P2pEventHandler {
+
+    private final List<String> events = new ArrayList<>();
+
+    RecordingHandler() {
+      this.messageTypes = Set.of((byte) 0x01);
+    }
+
+    @Override
+    public void onConnect(Channel channel) {
+      events.add("connect");
+    }
+
+    @Override
+    public void onResume(Channel channel) {
+      events.add("resume");
+    }
+
+    @Override
+    public void onDisconnect(Channel channel) {
+      events.add("disconnect");
+    }
+
+    @Override
+    public void onMessage(Channel channel, ByteBuf data) {
+      events.add("message " + data.getByte(1));
+    }
+
+    @Override
+    public MessagePriority getMessagePriority(byte type) {
+      return MessagePriority.LOW;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.channels.ClosedChannelException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for OutboundScheduler. Tests that control frames bypass queued application frames
+ * and that application lanes are drained in priority order.
+ */
+class OutboundSchedulerTest {
+
+  @Test
+  void testControlFrameBypassesQueuedApplicationFrames() {
+    // Given - one byte of application data may be in flight
+    EmbeddedChannel channel = new EmbeddedChannel(new OutboundScheduler(1));
+    channel.write(frame(1, MessagePriority.LOW));
+    channel.write(frame(2, MessagePriority.LOW));
+    channel.write(frame(3, MessagePriority.NORMAL));
+    channel.write(frame(4, MessagePriority.HIGH));
+
+    // When
+    channel.write(frame(5, MessagePriority.CONTROL));
+    channel.flush();
+
+    // Then - the control frame only waits behind the frame already in flight
+    assertEquals(1, readMarker(channel));
+    assertEquals(5, readMarker(channel));
+    assertEquals(4, readMarker(channel));
+    assertEquals(3, readMarker(channel));
+    assertEquals(2, readMarker(channel));
+    assertNull(channel.readOutbound());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void testApplicationFramesKeepOrderWithinLane() {
+    // Given
+    EmbeddedChannel channel = new EmbeddedChannel(new OutboundScheduler(1));
+
+    // When
+    for (int i = 1; i <= 5; i++) {
+      channel.write(frame(i, MessagePriority.NORMAL));
+    }
+    channel.flush();
+
+    // Then
+    for (int i = 1; i <= 5; i++) {
+      assertEquals(i, readMarker(channel));
+    }
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void testFramesBelowInFlightLimitAreNotHeldBack() {
+    // Given
+    OutboundScheduler scheduler = new OutboundScheduler(1024);
+    EmbeddedChannel channel = new EmbeddedChannel(scheduler);
+
+    // When
+    channel.write(frame(1, MessagePriority.LOW));
+    channel.write(frame(2, MessagePriority.NORMAL));
+
+    // Then - both frames are released in write order without waiting for a flush
+    assertEquals(0, scheduler.getQueuedBytes());
+    channel.flush();
+    assertEquals(1, readMarker(channel));
+    assertEquals(2, readMarker(channel));
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void testQueuedFramesFailAndReleaseOnClose() {
+    // Given
+    OutboundScheduler scheduler = new OutboundScheduler(1);
+    EmbeddedChannel channel = new EmbeddedChannel(scheduler);
+    channel.write(frame(1, MessagePriority.NORMAL));
+    ByteBuf queued = Unpooled.buffer().writeByte(2);
+    ChannelFuture future = channel.write(new PriorityFrame(queued, MessagePriority.NORMAL));
+    assertTrue(scheduler.getQueuedBytes() > 0);
+
+    // When
+    channel.close();
+
+    // Then
+    assertTrue(future.isDone());
+    assertFalse(future.isSuccess());
+    assertInstanceOf(ClosedChannelException.class, future.cause());
+    assertEquals(0, queued.refCnt());
+    assertEquals(0, scheduler.getQueuedBytes());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void testPlainBuffersPassThrough() {
+    // Given
+    EmbeddedChannel channel = new EmbeddedChannel(new OutboundScheduler(1));
+
+    // When
+    channel.writeOutbound(Unpooled.buffer().writeByte(7));
+
+    // Then
+    assertEquals(7, readMarker(channel));
+    channel.finishAndReleaseAll();
+  }
+
+  private static PriorityFrame frame(int marker, MessagePriority priority) {
+    return new PriorityFrame(Unpooled.buffer().writeByte(marker), priority);
+  }
+
+  private static int readMarker(EmbeddedChannel channel) {
+    ByteBuf buf = channel.readOutbound();
+    try {
+      return buf.readByte();
+    } finally {
+      buf.release();
+    }
+  }
+}
@@ -26,10 +26,13 @@ package io.xdag.p2p.channel;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannelConfig;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -71,6 +74,8 @@ class P2pChannelInitializerTest {
     when(nioSocketChannel.config()).thenReturn(channelConfig);
     when(nioSocketChannel.closeFuture()).thenReturn(channelFuture);
     when(channelManager.getNodeDetectHandler()).thenReturn(nodeDetectHandler);
+    when(p2pConfig.getSocketRecvBufferSize()).thenReturn(4 * 1024 * 1024);
+    when(p2pConfig.getSocketSendBufferSize()).thenReturn(4 * 1024 * 1024);
 
     // Create the initializer
     channelInitializer =
@@ -120,15 +125,31 @@ class P2pChannelInitializerTest {
     // When
     discoveryInitializer.initChannel(nioSocketChannel);
 
-    // Then
+    // Then - detection probes keep the os default socket buffers
     verify(nioSocketChannel).pipeline();
     verify(nioSocketChannel, atLeastOnce()).config();
     verify(nioSocketChannel).closeFuture();
     verify(channelConfig, atLeastOnce()).setRecvByteBufAllocator(any());
-    verify(channelConfig, atLeastOnce()).setOption(any(), any());
+    verify(channelConfig, never()).setOption(any(), any());
     verify(channelFuture).addListener(any());
   }
 
+  @Test
+  void testInitChannelUsesAdaptiveAllocatorFromConfig() {
+    // Given
+    when(p2pConfig.getRecvBufMinSize()).thenReturn(64);
+    when(p2pConfig.getRecvBufInitialSize()).thenReturn(1024);
+    when(p2pConfig.getRecvBufMaxSize()).thenReturn(65536);
+
+    // When
+    channelInitializer.initChannel(nioSocketChannel);
+
+    // Then
+    verify(channelConfig).setRecvByteBufAllocator(any(AdaptiveRecvByteBufAllocator.class));
+    verify(channelConfig).setOption(ChannelOption.SO_RCVBUF, 4 * 1024 * 1024);
+    verify(channelConfig).setOption(ChannelOption.SO_SNDBUF, 4 * 1024 * 1024);
+  }
+
   @Test
   void testInitChannelWithEmptyRemoteId() {
     // Given
@@ -30,7 +30,9 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -189,7 +191,7 @@ class P2pProtobufVarint32FrameDecoderTest {
 
     // Then
     verify(channel).send(any(Message.class)); // Should send disconnect message
-    verify(channel).close(); // Should close channel
+    verify(channel).penalize(P2pConstant.DEFAULT_BAN_TIME); // Should close channel
 
     ByteBuf output = embeddedChannel.readInbound();
     assertNull(output); // No output due to max length exceeded
@@ -303,6 +305,112 @@ class P2pProtobufVarint32FrameDecoderTest {
     assertFalse(embeddedChannel.finish());
   }
 
+  @Test
+  void testBufferedBytesReportedToInboundMemoryBudget() {
+    // Given
+    InboundMemoryBudget budget = new InboundMemoryBudget(1024 * 1024);
+    ChannelManager channelManager = mock(ChannelManager.class);
+    when(channelManager.getInboundMemoryBudget()).thenReturn(budget);
+    when(channel.getChannelManager()).thenReturn(channelManager);
+    EmbeddedChannel budgeted =
+        new EmbeddedChannel(new P2pProtobufVarint32FrameDecoder(p2pConfig, channel));
+    ByteBuf fragment1 = Unpooled.buffer();
+    fragment1.writeByte(5);
+    fragment1.writeBytes("he".getBytes());
+
+    // When
+    assertFalse(budgeted.writeInbound(fragment1));
+
+    // Then - the incomplete frame is held by the decoder
+    assertEquals(3, budget.getTotalBytes());
+
+    // When
+    assertTrue(budgeted.writeInbound(Unpooled.wrappedBuffer("llo".getBytes())));
+
+    // Then
+    assertEquals(0, budget.getTotalBytes());
+    ByteBuf output = budgeted.readInbound();
+    output.release();
+
+    // When - a closed channel gives its bytes back
+    budgeted.writeInbound(Unpooled.wrappedBuffer(new byte[] {5, 1}));
+    assertEquals(2, budget.getTotalBytes());
+    budgeted.close();
+
+    // Then
+    assertEquals(0, budget.getTotalBytes());
+  }
+
+  @Test
+  void testPeekRawVarint32DoesNotMoveReaderIndex() {
+    // Given - 300 as a two byte prefix, and a non-canonical three byte encoding of 1
+    ByteBuf canonical = Unpooled.buffer();
+    writeVarint32(canonical, 300);
+    ByteBuf padded = Unpooled.wrappedBuffer(new byte[] {(byte) 0x81, (byte) 0x80, 0x00});
+    ByteBuf partial = Unpooled.wrappedBuffer(new byte[] {(byte) 0xAC});
+
+    // When
+    long prefix = P2pProtobufVarint32FrameDecoder.peekRawVarint32(canonical);
+    long paddedPrefix = P2pProtobufVarint32FrameDecoder.peekRawVarint32(padded);
+
+    // Then
+    assertEquals(300, (int) prefix);
+    assertEquals(2, (int) (prefix >>> 32));
+    assertEquals(0, canonical.readerIndex());
+    assertEquals(1, (int) paddedPrefix);
+    assertEquals(3, (int) (paddedPrefix >>> 32));
+    assertEquals(
+        P2pProtobufVarint32FrameDecoder.INCOMPLETE,
+        P2pProtobufVarint32FrameDecoder.peekRawVarint32(partial));
+    assertEquals(0, partial.readerIndex());
+  }
+
+  @Test
+  void testDecodePrefixSplitAcrossReads() {
+    // Given - the two byte prefix of a 300 byte frame arrives one byte at a time
+    ByteBuf prefix = Unpooled.buffer();
+    writeVarint32(prefix, 300);
+
+    // When
+    assertFalse(embeddedChannel.writeInbound(prefix.readRetainedSlice(1)));
+    assertFalse(embeddedChannel.writeInbound(prefix.readRetainedSlice(1)));
+    prefix.release();
+    assertTrue(embeddedChannel.writeInbound(Unpooled.wrappedBuffer(new byte[300])));
+
+    // Then
+    ByteBuf output = embeddedChannel.readInbound();
+    assertEquals(300, output.readableBytes());
+    output.release();
+    assertFalse(embeddedChannel.finish());
+  }
+
+  @Test
+  void testDecodeFramesSpanningReadsKeepOrder() {
+    // Given - three frames written back to back and cut at arbitrary points
+    ByteBuf stream = Unpooled.buffer();
+    for (int i = 1; i <= 3; i++) {
+      writeVarint32(stream, 200 * i);
+      stream.writeBytes(new byte[200 * i]);
+    }
+    int[] cuts = {1, 150, 203, 205, 700, stream.readableBytes()};
+
+    // When
+    int from = 0;
+    for (int cut : cuts) {
+      embeddedChannel.writeInbound(stream.retainedSlice(from, cut - from));
+      from = cut;
+    }
+    stream.release();
+
+    // Then
+    for (int i = 1; i <= 3; i++) {
+      ByteBuf output = embeddedChannel.readInbound();
+      assertEquals(200 * i, output.readableBytes());
+      output.release();
+    }
+    assertFalse(embeddedChannel.finish());
+  }
+
   /** Helper method to write varint32 to ByteBuf */
   private void writeVarint32(ByteBuf buffer, int value) {
     while ((value & 0xFFFFFF80) != 0) {
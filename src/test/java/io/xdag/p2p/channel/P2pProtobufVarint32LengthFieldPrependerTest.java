@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for P2pProtobufVarint32LengthFieldPrepender. Tests that frames match the netty
+ * prepender output without copying the payload.
+ */
+class P2pProtobufVarint32LengthFieldPrependerTest {
+
+  @Test
+  void testFramesMatchNettyPrepender() {
+    for (int size : new int[] {0, 1, 127, 128, 16384, 300_000}) {
+      // Given
+      byte[] payload = new byte[size];
+      for (int i = 0; i < size; i++) {
+        payload[i] = (byte) i;
+      }
+      EmbeddedChannel expectedChannel =
+          new EmbeddedChannel(new ProtobufVarint32LengthFieldPrepender());
+      EmbeddedChannel actualChannel =
+          new EmbeddedChannel(new P2pProtobufVarint32LengthFieldPrepender());
+
+      // When
+      expectedChannel.writeOutbound(Unpooled.wrappedBuffer(payload));
+      actualChannel.writeOutbound(Unpooled.wrappedBuffer(payload));
+
+      // Then
+      ByteBuf expected = expectedChannel.readOutbound();
+      ByteBuf actual = actualChannel.readOutbound();
+      assertTrue(ByteBufUtil.equals(expected, actual), "frame of size " + size);
+      expected.release();
+      actual.release();
+      assertNull(actualChannel.readOutbound());
+    }
+  }
+
+  @Test
+  void testPayloadIsNotCopied() {
+    // Given
+    ByteBuf payload = Unpooled.directBuffer(256).writeZero(256);
+    EmbeddedChannel channel = new EmbeddedChannel(new P2pProtobufVarint32LengthFieldPrepender());
+
+    // When
+    channel.writeOutbound(payload);
+
+    // Then - the frame holds the only reference to the original payload
+    ByteBuf frame = channel.readOutbound();
+    assertEquals(258, frame.readableBytes());
+    assertEquals(1, payload.refCnt());
+    frame.release();
+    assertEquals(0, payload.refCnt());
+  }
+}
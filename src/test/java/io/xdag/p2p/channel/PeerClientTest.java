@@ -24,17 +24,23 @@
 package io.xdag.p2p.channel;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.xdag.p2p.channel.AddressFamilyStats.AddressFamily;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.discover.Node;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
 import org.apache.tuweni.bytes.Bytes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -256,12 +262,55 @@ class PeerClientTest {
   }
 
   @Test
-  void testCloseWithoutInitShouldThrowNullPointer() {
-    // Given - PeerClient not initialized (workerGroup is null)
+  void testDualStackNodeFallsBackToTheFamilyThatAnswers() throws Exception {
+    // Given - only the ipv4 loopback listens, the node prefers its ipv6 address
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+      int port = server.getLocalPort();
+      InetSocketAddress v4 = new InetSocketAddress("127.0.0.1", port);
+      InetSocketAddress v6 = new InetSocketAddress("::1", port);
+      when(p2pConfig.getConnectionAttemptDelay()).thenReturn(250);
+      when(node.getPreferInetSocketAddress()).thenReturn(v6);
+      when(node.getInetSocketAddressV4()).thenReturn(v4);
+      when(node.getInetSocketAddressV6()).thenReturn(v6);
+      when(node.getPort()).thenReturn(port);
+      peerClient.init();
+
+      // When
+      ChannelFuture future = peerClient.connect(node, null);
+
+      // Then
+      assertTrue(future.await(5, TimeUnit.SECONDS));
+      assertTrue(future.isSuccess());
+      assertEquals(v4, future.channel().remoteAddress());
+      AddressFamilyStats stats = peerClient.getAddressFamilyStats();
+      assertEquals(1, stats.getSuccesses(AddressFamily.IPV4));
+      assertEquals(0, stats.getSuccesses(AddressFamily.IPV6));
+      future.channel().close().sync();
+      peerClient.close();
+    }
+  }
+
+  @Test
+  void testCloseWithoutInitShouldNotThrow() {
+    // Given - PeerClient not initialized, no event loop has been created yet
 
     // When & Then
-    // The current implementation doesn't handle null workerGroup gracefully
-    // This test documents the current behavior - it throws NullPointerException
-    assertThrows(NullPointerException.class, () -> peerClient.close());
+    assertDoesNotThrow(() -> peerClient.close());
+  }
+
+  @Test
+  void testSharedEventLoopIsNotClosedByClient() {
+    // Given
+    P2pConfig config = new P2pConfig();
+    IoResourceManager ioResourceManager = new IoResourceManager(config);
+    PeerClient client = new PeerClient(config, channelManager, ioResourceManager);
+    client.init();
+
+    // When
+    client.close();
+
+    // Then
+    assertFalse(ioResourceManager.getWorkerGroup().isShuttingDown());
+    ioResourceManager.close();
   }
 }
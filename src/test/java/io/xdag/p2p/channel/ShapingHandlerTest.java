@@ -0,0 +1,182 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xdag.p2p.config.BandwidthPolicy;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ShapingHandlerTest {
+
+  private static final byte BULK = 0x01;
+  private static final byte GOSSIP = 0x02;
+
+  @Mock private Channel channel;
+
+  private BandwidthPolicy policy;
+  private ShapingHandler handler;
+  private EmbeddedChannel embeddedChannel;
+
+  @BeforeEach
+  void setUp() {
+    when(channel.isTrustPeer()).thenReturn(false);
+    policy = new BandwidthPolicy();
+    handler = new ShapingHandler(channel, policy);
+    embeddedChannel = new EmbeddedChannel(handler);
+  }
+
+  @AfterEach
+  void tearDown() {
+    embeddedChannel.finishAndReleaseAll();
+  }
+
+  @Test
+  void testPassesThroughWhenUnlimited() {
+    // Given no limits
+    ByteBuf frame = Unpooled.buffer(8).writeZero(8);
+
+    // When a frame is written
+    embeddedChannel.writeAndFlush(new ShapingHandler.Frame(frame, BULK, 8));
+
+    // Then it is passed on unwrapped
+    assertSame(frame, embeddedChannel.readOutbound());
+  }
+
+  @Test
+  void testOverLimitTypeWaitsWhileOtherTypesFlow() throws Exception {
+    // Given a bulk type limited to 100 KB/s
+    policy.setTypeWriteLimit(BULK, 100_000);
+
+    // When bulk writes exceed the burst and gossip is written after them
+    embeddedChannel.writeAndFlush(frame(BULK, 100_000));
+    ChannelFuture delayed = embeddedChannel.writeAndFlush(frame(BULK, 1_000));
+    embeddedChannel.writeAndFlush(frame(GOSSIP, 10));
+
+    // Then gossip overtakes the waiting bulk frame
+    assertEquals(100_000, readBytes());
+    assertEquals(10, readBytes());
+    assertNull(embeddedChannel.readOutbound());
+    assertEquals(1, handler.getQueuedFrames());
+
+    // And the bulk frame is written once its bytes are paid for
+    Thread.sleep(30);
+    embeddedChannel.runPendingTasks();
+    assertEquals(1_000, readBytes());
+    assertTrue(delayed.isSuccess());
+    assertEquals(0, handler.getQueuedFrames());
+  }
+
+  @Test
+  void testWaitingFramesFailOnClose() {
+    // Given a frame waiting for bandwidth
+    policy.setPeerWriteLimit(1_000);
+    embeddedChannel.writeAndFlush(frame(BULK, 1_000));
+    ChannelFuture delayed = embeddedChannel.writeAndFlush(frame(BULK, 1_000));
+    embeddedChannel.readOutbound();
+
+    // When the channel closes
+    embeddedChannel.close();
+
+    // Then the waiting write fails
+    assertFalse(delayed.isSuccess());
+    assertEquals(0, handler.getQueuedFrames());
+  }
+
+  @Test
+  void testWaitingBatchEntriesMakeChannelUnwritable() throws Exception {
+    // Given batching, which hands entries the size estimator cannot measure to the shaping handler
+    embeddedChannel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1_024, 2_048));
+    policy.setPeerWriteLimit(100_000);
+    embeddedChannel.writeAndFlush(entry(BULK, 100_000));
+    assertTrue(embeddedChannel.isWritable());
+
+    // When an entry over the watermark waits for bandwidth
+    embeddedChannel.writeAndFlush(entry(BULK, 4_000));
+
+    // Then the channel is unwritable until the entry is written
+    assertEquals(1, handler.getQueuedFrames());
+    assertFalse(embeddedChannel.isWritable());
+    Thread.sleep(60);
+    embeddedChannel.runPendingTasks();
+    assertEquals(0, handler.getQueuedFrames());
+    assertTrue(embeddedChannel.isWritable());
+  }
+
+  @Test
+  void testReadOverLimitPausesReading() {
+    // Given a read limit of 100 KB/s per peer
+    policy.setPeerReadLimit(100_000);
+
+    // When more than the burst is read
+    handler.onRead(BULK, 100_000);
+    verify(channel, never()).pauseReading(anyLong());
+    handler.onRead(BULK, 50_000);
+
+    // Then reading from the peer pauses until the bytes are paid for
+    verify(channel).pauseReading(longThat(nanos -> nanos > 0));
+  }
+
+  private ShapingHandler.Frame frame(byte type, int size) {
+    return new ShapingHandler.Frame(Unpooled.buffer(size).writeZero(size), type, size);
+  }
+
+  private ShapingHandler.Frame entry(byte type, int size) {
+    return new ShapingHandler.Frame(
+        new BatchEncoder.Entry(Bytes.wrap(new byte[size]), MessagePriority.NORMAL), type, size);
+  }
+
+  private int readBytes() {
+    ByteBuf buf = embeddedChannel.readOutbound();
+    try {
+      return buf.readableBytes();
+    } finally {
+      buf.release();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.channel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.xdag.p2p.config.P2pConfig;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for TransportMode. Tests transport resolution and NIO fallback. */
+class TransportModeTest {
+
+  @Test
+  void testResolveNeverReturnsAuto() {
+    for (TransportMode mode : TransportMode.values()) {
+      TransportMode resolved = TransportMode.resolve(mode);
+      assertNotEquals(TransportMode.AUTO, resolved);
+      assertTrue(resolved.isAvailable());
+    }
+  }
+
+  @Test
+  void testResolveNullAsAuto() {
+    assertEquals(TransportMode.resolve(TransportMode.AUTO), TransportMode.resolve(null));
+  }
+
+  @Test
+  void testAutoPrefersEpoll() {
+    TransportMode expected = Epoll.isAvailable() ? TransportMode.EPOLL : TransportMode.NIO;
+    assertEquals(expected, TransportMode.resolve(TransportMode.AUTO));
+  }
+
+  @Test
+  void testNioChannelClasses() {
+    TransportMode nio = TransportMode.NIO;
+    assertEquals(NioSocketChannel.class, nio.socketChannelClass());
+    assertEquals(NioServerSocketChannel.class, nio.serverSocketChannelClass());
+    assertEquals(NioDatagramChannel.class, nio.datagramChannelClass());
+    assertNotNull(nio.newIoHandlerFactory());
+  }
+
+  @Test
+  void testUnavailableModeFallsBackToNio() {
+    for (TransportMode mode : TransportMode.values()) {
+      if (!mode.isAvailable()) {
+        assertEquals(TransportMode.NIO, TransportMode.resolve(mode));
+        assertEquals(NioSocketChannel.class, mode.socketChannelClass());
+      }
+    }
+  }
+
+  @Test
+  void testApplyOptionsWithNativeOptionsEnabled() {
+    P2pConfig config = new P2pConfig();
+    config.setTcpFastOpen(true);
+    config.setReusePort(true);
+    for (TransportMode mode : TransportMode.values()) {
+      TransportMode resolved = TransportMode.resolve(mode);
+      ServerBootstrap server = new ServerBootstrap();
+      Bootstrap client = new Bootstrap();
+      Bootstrap udp = new Bootstrap();
+      resolved.applyServerOptions(server, config);
+      resolved.applyClientOptions(client, config);
+      resolved.applyDatagramOptions(udp, config);
+      if (!resolved.isNative()) {
+        assertTrue(server.config().options().isEmpty());
+        assertTrue(client.config().options().isEmpty());
+        assertTrue(udp.config().options().isEmpty());
+      } else {
+        assertEquals(2, server.config().options().size());
+      }
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class CompressionCodecsTest {
+
+  @Test
+  public void testCodecsRoundTrip() throws Exception {
+    byte[] data = new byte[10_000];
+    new Random(3).nextBytes(data);
+    // half random, half zeros
+    Arrays.fill(data, 5_000, data.length, (byte) 0);
+
+    for (CompressType type : CompressionCodecs.DEFAULT_PREFERENCE) {
+      // Given
+      CompressionCodec codec = CompressionCodecs.get(type.getNumber());
+      ByteBuffer src = ByteBuffer.allocateDirect(data.length).put(data).flip();
+      ByteBuffer compressed = ByteBuffer.allocateDirect(codec.maxCompressedLength(data.length));
+
+      // When
+      int compressedLength = codec.compress(src, compressed);
+      compressed.position(0).limit(compressedLength);
+      int length = codec.uncompressedLength(compressed);
+      ByteBuffer out = ByteBuffer.allocateDirect(length);
+      int written = codec.uncompress(compressed, out);
+
+      // Then
+      assertEquals(type, codec.getType());
+      assertTrue(compressedLength < data.length, type + " should shrink the zeros");
+      assertEquals(data.length, length);
+      assertEquals(data.length, written);
+      byte[] result = new byte[written];
+      out.position(0).get(result);
+      assertArrayEquals(data, result, type + " round trip");
+    }
+  }
+
+  @Test
+  public void testMalformedInputIsRejected() {
+    ByteBuffer garbage = ByteBuffer.allocateDirect(16);
+    garbage.put(new byte[] {0, 0, 0, 8, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}).flip();
+
+    for (CompressType type : List.of(CompressType.lz4, CompressType.zstd)) {
+      CompressionCodec codec = CompressionCodecs.get(type.getNumber());
+      assertThrows(
+          IOException.class,
+          () -> {
+            int length = codec.uncompressedLength(garbage.duplicate());
+            codec.uncompress(garbage.duplicate(), ByteBuffer.allocateDirect(length));
+          },
+          type + " should reject garbage");
+    }
+  }
+
+  @Test
+  public void testGetUnknownType() {
+    assertNull(CompressionCodecs.get(CompressType.uncompress.getNumber()));
+    assertNull(CompressionCodecs.get(7));
+    assertNull(CompressionCodecs.get(-1));
+    assertSame(CompressionCodecs.SNAPPY, CompressionCodecs.get(CompressType.snappy.getNumber()));
+  }
+
+  @Test
+  public void testSupportedKeepsPreferenceOrder() {
+    assertEquals(
+        List.of(CompressType.lz4, CompressType.snappy),
+        CompressionCodecs.supported(
+            List.of(CompressType.lz4, CompressType.uncompress, CompressType.snappy)));
+    assertEquals(CompressionCodecs.DEFAULT_PREFERENCE, CompressionCodecs.supported(null));
+  }
+
+  @Test
+  public void testNegotiatePicksFirstCommonCodec() {
+    List<CompressType> preference = List.of(CompressType.zstd, CompressType.lz4);
+
+    // peer without zstd
+    assertEquals(
+        CompressType.lz4,
+        CompressionCodecs.negotiate(preference, List.of(CompressType.snappy, CompressType.lz4))
+            .getType());
+    // peer before codec negotiation
+    assertSame(CompressionCodecs.SNAPPY, CompressionCodecs.negotiate(preference, List.of()));
+    // nothing in common
+    assertSame(
+        CompressionCodecs.SNAPPY,
+        CompressionCodecs.negotiate(preference, List.of(CompressType.UNRECOGNIZED)));
+    // default preference
+    assertEquals(
+        CompressType.zstd,
+        CompressionCodecs.negotiate(null, CompressionCodecs.DEFAULT_PREFERENCE).getType());
+  }
+}
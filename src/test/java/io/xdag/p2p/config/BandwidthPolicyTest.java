@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.xdag.p2p.utils.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for BandwidthPolicy. Tests the global, per peer and per type limits and the share
+ * reserved for trusted nodes.
+ */
+public class BandwidthPolicyTest {
+
+  private static final byte TYPE = 0x01;
+
+  @Test
+  public void testUnlimitedByDefault() {
+    BandwidthPolicy policy = new BandwidthPolicy();
+
+    assertFalse(policy.isReadLimited());
+    assertFalse(policy.isWriteLimited());
+    assertEquals(0, policy.reserveWrite(policy.newPeerBucket(), false, TYPE, 1 << 30));
+  }
+
+  @Test
+  public void testPeerLimitIsPerPeer() {
+    BandwidthPolicy policy = new BandwidthPolicy();
+    policy.setPeerWriteLimit(1000);
+    TokenBucket first = policy.newPeerBucket();
+    TokenBucket second = policy.newPeerBucket();
+
+    assertEquals(0, policy.reserveWrite(first, false, TYPE, 1000));
+    assertTrue(policy.reserveWrite(first, false, TYPE, 500) > 0);
+    assertEquals(0, policy.reserveWrite(second, false, TYPE, 1000));
+    assertFalse(policy.isReadLimited());
+  }
+
+  @Test
+  public void testTypeLimitIsShared() {
+    BandwidthPolicy policy = new BandwidthPolicy();
+    policy.setTypeReadLimit(TYPE, 1000);
+
+    assertEquals(0, policy.reserveRead(policy.newPeerBucket(), false, TYPE, 1000));
+    assertTrue(policy.reserveRead(policy.newPeerBucket(), false, TYPE, 500) > 0);
+    assertEquals(0, policy.reserveRead(policy.newPeerBucket(), false, (byte) 0x02, 1000));
+
+    policy.setTypeReadLimit(TYPE, 0);
+    assertFalse(policy.isReadLimited());
+    assertEquals(0, policy.reserveRead(policy.newPeerBucket(), false, TYPE, 1000));
+  }
+
+  @Test
+  public void testTrustedShareIsReserved() {
+    BandwidthPolicy policy = new BandwidthPolicy();
+    policy.setTrustedShare(50);
+    policy.setGlobalWriteLimit(2000);
+    TokenBucket peer = policy.newPeerBucket();
+
+    // other peers use up their half
+    assertEquals(0, policy.reserveWrite(peer, false, TYPE, 1000));
+    assertTrue(policy.reserveWrite(peer, false, TYPE, 1000) > 0);
+
+    // the trusted reserve is still there
+    assertEquals(0, policy.reserveWrite(peer, true, TYPE, 1000));
+  }
+
+  @Test
+  public void testLimitsChangeAtRuntime() {
+    BandwidthPolicy policy = new BandwidthPolicy();
+    policy.setTrustedShare(0);
+    policy.setGlobalWriteLimit(1000);
+    TokenBucket peer = policy.newPeerBucket();
+    assertEquals(0, policy.reserveWrite(peer, false, TYPE, 1000));
+    assertTrue(policy.reserveWrite(peer, false, TYPE, 1000) > 0);
+
+    policy.setGlobalWriteLimit(0);
+
+    assertFalse(policy.isWriteLimited());
+    assertEquals(0, policy.reserveWrite(peer, false, TYPE, 1 << 20));
+  }
+}
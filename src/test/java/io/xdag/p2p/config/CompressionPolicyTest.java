@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for CompressionPolicy. Tests size thresholds, incompressible types and the running
+ * compression ratio estimate.
+ */
+public class CompressionPolicyTest {
+
+  @Test
+  public void testSkipsSmallMessages() {
+    CompressionPolicy policy = new CompressionPolicy();
+    policy.setMinSize(64);
+
+    assertFalse(policy.shouldCompress((byte) 0x01, 63));
+    assertTrue(policy.shouldCompress((byte) 0x01, 64));
+  }
+
+  @Test
+  public void testPerTypeMinSize() {
+    CompressionPolicy policy = new CompressionPolicy();
+    policy.setMinSize((byte) 0x02, 4096);
+
+    assertFalse(policy.shouldCompress((byte) 0x02, 1024));
+    assertTrue(policy.shouldCompress((byte) 0x01, 1024));
+
+    policy.setMinSize((byte) 0x02, -1);
+    assertTrue(policy.shouldCompress((byte) 0x02, 1024));
+  }
+
+  @Test
+  public void testIncompressibleType() {
+    CompressionPolicy policy = new CompressionPolicy();
+    policy.setIncompressible((byte) 0x03, true);
+
+    assertFalse(policy.shouldCompress((byte) 0x03, 1024 * 1024));
+    assertTrue(policy.shouldCompress((byte) 0xFF, 1024 * 1024));
+  }
+
+  @Test
+  public void testStopsTryingTypesThatNeverCompress() {
+    CompressionPolicy policy = new CompressionPolicy();
+    policy.setMinSamples(4);
+    policy.setProbeInterval(10);
+    byte type = 0x04;
+
+    // Given - the type never shrinks
+    for (int i = 0; i < 4; i++) {
+      assertTrue(policy.shouldCompress(type, 1000));
+      policy.record(type, 1000, 1005);
+    }
+
+    // Then - only every tenth message is still probed
+    int attempts = 0;
+    for (int i = 0; i < 100; i++) {
+      if (policy.shouldCompress(type, 1000)) {
+        attempts++;
+      }
+    }
+    assertEquals(10, attempts);
+    assertTrue(policy.getRatio(type) > 1);
+  }
+
+  @Test
+  public void testRecoversWhenTypeStartsCompressing() {
+    CompressionPolicy policy = new CompressionPolicy();
+    policy.setMinSamples(1);
+    byte type = 0x05;
+    policy.record(type, 1000, 1000);
+    assertFalse(policy.shouldCompress(type, 1000));
+
+    // When - probes start to compress well
+    for (int i = 0; i < 20; i++) {
+      policy.record(type, 1000, 100);
+    }
+
+    // Then
+    assertTrue(policy.getRatio(type) < policy.getMaxRatio());
+    assertTrue(policy.shouldCompress(type, 1000));
+  }
+
+  @Test
+  public void testRatioDefaultsToOne() {
+    CompressionPolicy policy = new CompressionPolicy();
+
+    assertEquals(1.0, policy.getRatio((byte) 0x06));
+    policy.record((byte) 0x06, 1000, 250);
+    assertEquals(0.25, policy.getRatio((byte) 0x06), 1e-9);
+  }
+}
@@ -27,6 +27,9 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import io.xdag.p2p.P2pEventHandler;
 import io.xdag.p2p.P2pException;
+import io.xdag.p2p.channel.MessagePriority;
+import io.xdag.p2p.channel.OffloadedEventHandler;
+import io.xdag.p2p.channel.TransportMode;
 import io.xdag.p2p.discover.dns.update.PublishConfig;
 import io.xdag.p2p.proto.Discover;
 import java.net.InetAddress;
@@ -81,6 +84,17 @@ public class P2pConfigTest {
         "Disconnection policy should be disabled by default");
     assertFalse(p2pConfig.isNodeDetectEnable(), "Node detection should be disabled by default");
 
+    // Test default transport and event loop settings
+    assertEquals(TransportMode.AUTO, p2pConfig.getTransportMode(), "Transport should be auto");
+    assertFalse(p2pConfig.isTcpFastOpen(), "TCP fast open should be disabled by default");
+    assertFalse(p2pConfig.isReusePort(), "SO_REUSEPORT should be disabled by default");
+    assertEquals(0, p2pConfig.getTcpIoThreads(), "TCP I/O threads should default to cores * 2");
+    assertEquals(1, p2pConfig.getUdpIoThreads(), "UDP I/O threads should default to 1");
+    assertFalse(p2pConfig.isSingleEventLoop(), "Single event loop should be disabled by default");
+    assertTrue(p2pConfig.isPriorityScheduling(), "Priority scheduling should be enabled by default");
+    assertEquals(64 * 1024, p2pConfig.getMaxInFlightAppBytes(), "Default in-flight app bytes");
+    assertNotNull(p2pConfig.getCompressionPolicy(), "Compression policy should be set by default");
+
     // Test default collections
     assertNotNull(p2pConfig.getSeedNodes(), "Seed nodes list should not be null");
     assertNotNull(p2pConfig.getActiveNodes(), "Active nodes list should not be null");
@@ -321,6 +335,81 @@ public class P2pConfigTest {
     assertEquals(0, p2pConfig.getHandlerMap().size(), "Should have 0 handlers in map (no types)");
   }
 
+  /** Test message priorities declared at registration. */
+  @Test
+  void testMessagePriorityRegistration() throws P2pException {
+    TestEventHandler normal = new TestEventHandler("normal", (byte) 0x01);
+    TestEventHandler low = new TestEventHandler("low", (byte) 0x02, MessagePriority.LOW);
+    TestEventHandler control =
+        new TestEventHandler("control", (byte) 0x03, MessagePriority.CONTROL);
+
+    p2pConfig.addP2pEventHandle(normal);
+    p2pConfig.addP2pEventHandle(low);
+    p2pConfig.addP2pEventHandle(control);
+
+    assertEquals(MessagePriority.NORMAL, p2pConfig.getMessagePriority((byte) 0x01));
+    assertEquals(MessagePriority.LOW, p2pConfig.getMessagePriority((byte) 0x02));
+    assertEquals(
+        MessagePriority.HIGH,
+        p2pConfig.getMessagePriority((byte) 0x03),
+        "Application types must not use the control lane");
+    assertEquals(
+        MessagePriority.NORMAL,
+        p2pConfig.getMessagePriority((byte) 0x10),
+        "Unregistered types should default to normal");
+    assertEquals(
+        MessagePriority.CONTROL,
+        p2pConfig.getMessagePriority((byte) 0xFF),
+        "Node message types should use the control lane");
+  }
+
+  /** Test unregistering a handler and registering its types again. */
+  @Test
+  void testRemoveHandler() throws P2pException {
+    TestEventHandler first = new TestEventHandler("first", (byte) 0x01, MessagePriority.LOW);
+    TestEventHandler second = new TestEventHandler("second", (byte) 0x01);
+    p2pConfig.addP2pEventHandle(first);
+    List<P2pEventHandler> listeners = p2pConfig.getHandlerList();
+
+    assertTrue(p2pConfig.removeP2pEventHandle(first));
+    assertFalse(p2pConfig.removeP2pEventHandle(first), "A removed handler is not registered");
+
+    assertNull(p2pConfig.getHandler((byte) 0x01));
+    assertEquals(MessagePriority.NORMAL, p2pConfig.getMessagePriority((byte) 0x01));
+    assertTrue(p2pConfig.getHandlerList().isEmpty());
+    assertSame(listeners, p2pConfig.getHandlerList(), "Listeners are updated in place");
+
+    p2pConfig.addP2pEventHandle(second);
+    assertSame(second, p2pConfig.getHandler((byte) 0x01));
+  }
+
+  /** Test lookups of types above 0x7F, which are negative bytes. */
+  @Test
+  void testHandlerLookupByUnsignedType() throws P2pException {
+    TestEventHandler handler = new TestEventHandler("high", (byte) 0x90);
+
+    p2pConfig.addP2pEventHandle(handler);
+
+    assertSame(handler, p2pConfig.getHandler((byte) 0x90));
+    assertNull(p2pConfig.getHandler((byte) 0x10));
+    assertSame(handler, p2pConfig.getHandlerMap().get((byte) 0x90));
+  }
+
+  /** Test registration of a handler that runs on an executor. */
+  @Test
+  void testOffloadedHandlerRegistration() throws P2pException {
+    TestEventHandler handler = new TestEventHandler("offloaded", (byte) 0x01, MessagePriority.LOW);
+    p2pConfig.setDispatchMailboxSize(16);
+
+    OffloadedEventHandler offloaded = p2pConfig.addP2pEventHandle(handler, Runnable::run);
+
+    assertSame(handler, offloaded.getDelegate());
+    assertEquals(16, offloaded.getMailboxSize());
+    assertSame(offloaded, p2pConfig.getHandlerMap().get((byte) 0x01));
+    assertTrue(p2pConfig.getHandlerList().contains(offloaded));
+    assertEquals(MessagePriority.LOW, p2pConfig.getMessagePriority((byte) 0x01));
+  }
+
   /** Test home node endpoint generation. */
   @Test
   void testHomeNodeGeneration() {
@@ -364,9 +453,15 @@ public class P2pConfigTest {
   /** Simple test event handler for testing registration. */
   private static class TestEventHandler extends P2pEventHandler {
     private final String name;
+    private final MessagePriority priority;
 
     public TestEventHandler(String name, Byte messageType) {
+      this(name, messageType, MessagePriority.NORMAL);
+    }
+
+    public TestEventHandler(String name, Byte messageType, MessagePriority priority) {
       this.name = name;
+      this.priority = priority;
       if (messageType != null) {
         this.messageTypes = new HashSet<>();
         this.messageTypes.add(messageType);
@@ -375,6 +470,11 @@ public class P2pConfigTest {
       }
     }
 
+    @Override
+    public MessagePriority getMessagePriority(byte type) {
+      return priority;
+    }
+
     @Override
     public String toString() {
       return "TestEventHandler{name='" + name + "'}";
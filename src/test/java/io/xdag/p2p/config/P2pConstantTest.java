@@ -89,8 +89,9 @@ public class P2pConstantTest {
 
   @Test
   public void testVersionValue() {
-    assertEquals(1, P2pConstant.version);
+    assertEquals(2, P2pConstant.version);
     assertTrue(P2pConstant.version > 0);
+    assertTrue(P2pConstant.version >= P2pConstant.BATCH_VERSION);
   }
 
   @Test
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.xdag.p2p.config.RateLimitPolicy.Action;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for RateLimitPolicy. Tests per type and default limits and the counters. */
+public class RateLimitPolicyTest {
+
+  @Test
+  public void testTypeLimitOverridesDefault() {
+    RateLimitPolicy policy = new RateLimitPolicy();
+    assertNull(policy.getLimit((byte) 0x01));
+
+    policy.setDefaultLimit(100, 200, Action.DELAY);
+    policy.setLimit((byte) 0x01, 10, 0, Action.DISCONNECT);
+
+    assertEquals(new RateLimitPolicy.Limit(10, 1, Action.DISCONNECT), policy.getLimit((byte) 1));
+    assertEquals(Action.DELAY, policy.getLimit((byte) 0x02).action());
+
+    policy.setLimit((byte) 0x01, 0, 0, Action.DROP);
+    assertEquals(Action.DELAY, policy.getLimit((byte) 0x01).action());
+  }
+
+  @Test
+  public void testCountersPerTypeAndAction() {
+    RateLimitPolicy policy = new RateLimitPolicy();
+
+    policy.record((byte) 0x01, Action.DROP);
+    policy.record((byte) 0x01, Action.DROP);
+    policy.record((byte) 0x7F, Action.DELAY);
+    policy.record((byte) 0x01, Action.DISCONNECT);
+
+    assertEquals(2, policy.getDropped((byte) 0x01));
+    assertEquals(0, policy.getDropped((byte) 0x7F));
+    assertEquals(1, policy.getDelayed((byte) 0x7F));
+    assertEquals(1, policy.getDisconnected((byte) 0x01));
+  }
+}
@@ -24,9 +24,15 @@
 package io.xdag.p2p.config;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.xdag.p2p.P2pException;
 import java.io.IOException;
 import org.apache.tuweni.bytes.Bytes;
@@ -155,4 +161,103 @@ public class UpgradeControllerTest {
     Bytes encoded2 = UpgradeController.codeSendData(2, testData);
     assertNotNull(encoded2);
   }
+
+  @Test
+  public void testEncodeSendDataRoundTrip() throws P2pException, IOException {
+    Bytes testData = Bytes.wrap(new byte[4096]);
+
+    // Version 0 wraps the data as is
+    ByteBuf plain = UpgradeController.encodeSendData(PooledByteBufAllocator.DEFAULT, 0, testData);
+    assertEquals(testData, Bytes.wrapByteBuf(plain));
+    plain.release();
+
+    // Version 1 produces a compress message in a direct buffer
+    ByteBuf encoded =
+        UpgradeController.encodeSendData(PooledByteBufAllocator.DEFAULT, 1, testData);
+    assertTrue(encoded.isDirect());
+    byte[] bytes = new byte[encoded.readableBytes()];
+    encoded.readBytes(bytes);
+    encoded.release();
+    assertEquals(UpgradeController.codeSendData(1, testData), Bytes.wrap(bytes));
+    assertEquals(testData, UpgradeController.decodeReceiveData(1, Bytes.wrap(bytes)));
+  }
+
+  @Test
+  public void testDecodeReceiveDataFromBuffer() throws P2pException, IOException {
+    Bytes testData = Bytes.wrap(new byte[4096]);
+
+    // Version 0 returns a retained slice of the frame
+    ByteBuf frame = Unpooled.wrappedBuffer(testData.toArray());
+    ByteBuf plain = UpgradeController.decodeReceiveData(PooledByteBufAllocator.DEFAULT, 0, frame);
+    assertEquals(testData, Bytes.wrap(ByteBufUtil.getBytes(plain)));
+    plain.release();
+    frame.release();
+    assertEquals(0, frame.refCnt());
+
+    // Version 1 uncompresses the compress message
+    ByteBuf encoded =
+        UpgradeController.encodeSendData(PooledByteBufAllocator.DEFAULT, 1, testData);
+    ByteBuf decoded =
+        UpgradeController.decodeReceiveData(PooledByteBufAllocator.DEFAULT, 1, encoded);
+    assertEquals(testData, Bytes.wrap(ByteBufUtil.getBytes(decoded)));
+    decoded.release();
+    encoded.release();
+  }
+
+  @Test
+  public void testSupportBatch() {
+    assertFalse(UpgradeController.supportBatch(1), "Version 1 peers do not understand batches");
+    assertTrue(UpgradeController.supportBatch(P2pConstant.BATCH_VERSION));
+  }
+
+  @Test
+  public void testEncodeSendDataSkipsCompressionPerPolicy() throws P2pException, IOException {
+    CompressionPolicy policy = new CompressionPolicy();
+    policy.setIncompressible((byte) 0x02, true);
+    Bytes small = Bytes.wrap(new byte[16]);
+    byte[] marked = new byte[4096];
+    marked[0] = 0x02;
+    Bytes incompressible = Bytes.wrap(marked);
+    Bytes large = Bytes.wrap(new byte[4096]);
+
+    for (Bytes data : new Bytes[] {small, incompressible}) {
+      ByteBuf encoded =
+          UpgradeController.encodeSendData(PooledByteBufAllocator.DEFAULT, 1, data, policy);
+      // uncompressed envelope adds only the field header
+      assertTrue(encoded.readableBytes() > data.size());
+      assertEquals(
+          data, UpgradeController.decodeReceiveData(1, Bytes.wrap(ByteBufUtil.getBytes(encoded))));
+      encoded.release();
+    }
+
+    ByteBuf compressed =
+        UpgradeController.encodeSendData(PooledByteBufAllocator.DEFAULT, 1, large, policy);
+    assertTrue(compressed.readableBytes() < large.size());
+    assertTrue(policy.getRatio((byte) 0x00) < 1);
+    compressed.release();
+  }
+
+  @Test
+  public void testCompressSendDataFromBuffer() throws P2pException, IOException {
+    CompressionPolicy policy = new CompressionPolicy();
+    ByteBuf small = Unpooled.wrappedBuffer(new byte[16]);
+    ByteBuf large = PooledByteBufAllocator.DEFAULT.directBuffer().writeBytes(new byte[4096]);
+
+    ByteBuf wrapped =
+        UpgradeController.compressSendData(PooledByteBufAllocator.DEFAULT, small, policy, null);
+    ByteBuf compressed =
+        UpgradeController.compressSendData(PooledByteBufAllocator.DEFAULT, large, policy, null);
+
+    assertTrue(wrapped.readableBytes() > 16);
+    assertTrue(compressed.readableBytes() < 4096);
+    assertEquals(
+        Bytes.wrap(new byte[4096]),
+        UpgradeController.decodeReceiveData(1, Bytes.wrap(ByteBufUtil.getBytes(compressed))));
+    assertEquals(0, small.readerIndex(), "data should not be consumed");
+    wrapped.release();
+    compressed.release();
+    assertEquals(1, small.refCnt());
+    small.release();
+    large.release();
+  }
 }
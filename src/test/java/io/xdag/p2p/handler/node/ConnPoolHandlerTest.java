@@ -8,6 +8,7 @@ import static org.mockito.Mockito.when;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import io.xdag.p2p.channel.Channel;
 import io.xdag.p2p.channel.ChannelManager;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.discover.Node;
@@ -145,4 +146,13 @@ public class ConnPoolHandlerTest {
         connPoolHandler.getNodes(new HashSet<>(), new HashSet<>(), connectableNodes, 3);
     assertEquals(3, nodes.size());
   }
+
+  @Test
+  public void testKeepDialedPeerKeepsPeersNotDialedByThePool() {
+    // Given - a peer whose pipeline is not set up yet
+    Channel peer = new Channel(p2pConfig, channelManager);
+
+    // When & Then
+    assertTrue(connPoolHandler.keepDialedPeer(peer));
+  }
 }
@@ -0,0 +1,182 @@
+package io.xdag.p2p.handler.node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.discover.Node;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+/**
+ * Unit tests for DialScheduler. Dials return connect promises the test completes, time comes from
+ * a manual clock.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DialSchedulerTest {
+
+  @Mock private P2pConfig p2pConfig;
+
+  private final List<Node> dialed = new ArrayList<>();
+  private final List<ChannelPromise> promises = new ArrayList<>();
+  private long now = 1_000_000;
+  private DialScheduler scheduler;
+
+  @BeforeEach
+  void setUp() {
+    when(p2pConfig.getMaxPendingDials()).thenReturn(2);
+    when(p2pConfig.getDialBackoffBase()).thenReturn(1000);
+    when(p2pConfig.getDialBackoffMax()).thenReturn(4000);
+    scheduler =
+        new DialScheduler(
+            p2pConfig,
+            node -> {
+              ChannelPromise promise =
+                  new DefaultChannelPromise(new EmbeddedChannel(), ImmediateEventExecutor.INSTANCE);
+              dialed.add(node);
+              promises.add(promise);
+              return promise;
+            },
+            () -> now);
+  }
+
+  @Test
+  void testPendingDialsAreBounded() {
+    // Given
+    List<Node> nodes = nodes(4);
+
+    // When
+    scheduler.submit(nodes, 4);
+
+    // Then
+    assertEquals(List.of(nodes.get(0), nodes.get(1)), dialed);
+    assertEquals(2, scheduler.getPendingCount());
+    assertEquals(2, scheduler.getQueuedCount());
+
+    // When - a failed dial frees its slot at once
+    promises.get(0).setFailure(new ConnectException("refused"));
+
+    // Then
+    assertEquals(nodes.get(2), dialed.get(2));
+    assertEquals(2, scheduler.getPendingCount());
+    assertEquals(1, scheduler.getQueuedCount());
+  }
+
+  @Test
+  void testFailedAddressBacksOffExponentially() {
+    // Given
+    Node node = nodes(1).getFirst();
+    scheduler.submit(List.of(node), 1);
+    assertTrue(scheduler.isBlocked(address(node)), "a pending dial blocks its address");
+
+    // When
+    promises.get(0).setFailure(new ConnectException("refused"));
+
+    // Then - blocked for the base backoff
+    now += 999;
+    assertTrue(scheduler.isBlocked(address(node)));
+    now += 1;
+    assertFalse(scheduler.isBlocked(address(node)));
+
+    // When - the second failure doubles it
+    scheduler.submit(List.of(node), 1);
+    promises.get(1).setFailure(new ConnectException("refused"));
+
+    // Then
+    now += 1999;
+    assertTrue(scheduler.isBlocked(address(node)));
+    now += 1;
+    assertFalse(scheduler.isBlocked(address(node)));
+
+    // When - a handshake clears the backoff
+    scheduler.submit(List.of(node), 1);
+    promises.get(2).setSuccess();
+    assertTrue(scheduler.claim(promises.get(2).channel()));
+    scheduler.submit(List.of(node), 1);
+    promises.get(3).setFailure(new ConnectException("refused"));
+
+    // Then
+    now += 1000;
+    assertFalse(scheduler.isBlocked(address(node)));
+  }
+
+  @Test
+  void testSurplusDialsBeyondTheNeedAreNotKept() {
+    // Given - a round dials two nodes but needs one
+    scheduler.submit(nodes(2), 1);
+    promises.forEach(ChannelPromise::setSuccess);
+
+    // When & Then - the first to finish the handshake is kept
+    assertTrue(scheduler.claim(promises.get(1).channel()));
+    assertFalse(scheduler.claim(promises.get(0).channel()));
+    assertTrue(scheduler.claim(new EmbeddedChannel()), "peers not dialed here are kept");
+    assertEquals(0, scheduler.getPendingCount());
+  }
+
+  @Test
+  void testChannelClosedBeforeHandshakeCountsAsFailure() {
+    // Given
+    Node node = nodes(1).getFirst();
+    scheduler.submit(List.of(node), 1);
+    promises.get(0).setSuccess();
+
+    // When
+    promises.get(0).channel().close();
+
+    // Then
+    assertEquals(0, scheduler.getPendingCount());
+    assertTrue(scheduler.isBlocked(address(node)));
+  }
+
+  @Test
+  void testSubmitReplacesQueuedDials() {
+    // Given
+    scheduler.submit(nodes(4), 4);
+    Node next = node(100);
+
+    // When
+    scheduler.submit(List.of(next), 1);
+    promises.get(0).setFailure(new ConnectException("refused"));
+
+    // Then
+    assertEquals(next, dialed.get(2));
+    assertEquals(0, scheduler.getQueuedCount());
+  }
+
+  private static List<Node> nodes(int count) {
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      nodes.add(node(i + 1));
+    }
+    return nodes;
+  }
+
+  private static Node node(int host) {
+    Node node = mock(Node.class);
+    when(node.getPreferInetSocketAddress())
+        .thenReturn(new InetSocketAddress("10.0.0." + host, 16783));
+    return node;
+  }
+
+  private static InetAddress address(Node node) {
+    return node.getPreferInetSocketAddress().getAddress();
+  }
+}
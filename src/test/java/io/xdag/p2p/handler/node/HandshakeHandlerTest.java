@@ -1,13 +1,21 @@
 package io.xdag.p2p.handler.node;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.xdag.p2p.P2pEventHandler;
 import io.xdag.p2p.channel.Channel;
 import io.xdag.p2p.channel.ChannelManager;
 import io.xdag.p2p.config.P2pConfig;
@@ -16,10 +24,17 @@ import io.xdag.p2p.message.node.DisconnectCode;
 import io.xdag.p2p.message.node.HelloMessage;
 import io.xdag.p2p.message.node.P2pDisconnectMessage;
 import io.xdag.p2p.proto.Connect.DisconnectReason;
+import io.xdag.p2p.utils.BytesUtils;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.tuweni.bytes.Bytes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -295,6 +310,164 @@ class HandshakeHandlerTest {
   }
 
   /** Helper method to setup a normal handshake scenario */
+  @Test
+  void testStartHandshakePresentsHeldTicket() {
+    // Given a ticket held for the dialed node
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+    Bytes ticket = Bytes.fromHexString("0x0102");
+    when(channelManager.getSessionTickets()).thenReturn(tickets);
+    when(channel.getNodeId()).thenReturn(testNodeId);
+    when(channel.getSessionTicket()).thenReturn(ticket);
+    when(channel.isActive()).thenReturn(true);
+    when(channel.isFinishHandshake()).thenReturn(true);
+    tickets.onDisconnect(channel);
+
+    // When the node is dialed again
+    handshakeHandler.startHandshake(channel);
+
+    // Then the HELLO presents the ticket
+    ArgumentCaptor<HelloMessage> hello = ArgumentCaptor.forClass(HelloMessage.class);
+    verify(channel).send(hello.capture());
+    assertEquals(ticket, hello.getValue().getTicket());
+    verify(channel).setSessionTicket(ticket);
+    ArgumentCaptor<SessionTickets.Session> session =
+        ArgumentCaptor.forClass(SessionTickets.Session.class);
+    verify(channel).setSession(session.capture());
+    assertEquals(ticket, session.getValue().ticket());
+  }
+
+  @Test
+  void testOnMessageResumesSessionWithValidTicket() throws Exception {
+    // Given an inbound peer presenting the ticket it was issued
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+    Bytes ticket = tickets.issue();
+    InetAddress address = InetAddress.getByName("10.0.0.1");
+    Channel previous = mock(Channel.class);
+    when(previous.getSessionTicket()).thenReturn(ticket);
+    when(previous.isFinishHandshake()).thenReturn(true);
+    when(previous.getNodeId()).thenReturn(testNodeId);
+    when(previous.getInetAddress()).thenReturn(address);
+    tickets.onDisconnect(previous);
+    when(channelManager.getSessionTickets()).thenReturn(tickets);
+    setupNormalHandshakeScenario();
+    when(channel.isActive()).thenReturn(false);
+    when(channel.isResumed()).thenReturn(true);
+    when(channel.getInetAddress()).thenReturn(address);
+    when(helloMessage.getTicket()).thenReturn(ticket);
+    P2pEventHandler eventHandler = mock(P2pEventHandler.class);
+    p2pConfig.handlerList.add(eventHandler);
+
+    // When its HELLO arrives
+    handshakeHandler.onMessage(channel, helloMessage);
+
+    // Then the session resumes without a new duplicate check and handlers see a resumption
+    verify(channel).setResumed(true);
+    verify(channel).setSession(any(SessionTickets.Session.class));
+    verify(channelManager, never()).updateNodeId(any(Channel.class), anyString());
+    verify(eventHandler).onResume(channel);
+    verify(eventHandler, never()).onConnect(channel);
+
+    // And the reply carries a new ticket
+    ArgumentCaptor<HelloMessage> reply = ArgumentCaptor.forClass(HelloMessage.class);
+    verify(channel).send(reply.capture());
+    assertTrue(reply.getValue().isResumed());
+    assertEquals(16, reply.getValue().getTicket().size());
+    verify(channel).setSessionTicket(reply.getValue().getTicket());
+  }
+
+  @Test
+  void testOnMessageResumesSessionOfHalfOpenChannel() throws Exception {
+    // Given an inbound channel that still looks open although the peer lost it
+    ChannelManager manager = new ChannelManager(p2pConfig, null, null);
+    HandshakeHandler handler = new HandshakeHandler(p2pConfig, manager);
+    Bytes ticket = manager.getSessionTickets().issue();
+    P2pConfig peerConfig = new P2pConfig();
+    peerConfig.setIp("10.0.0.1");
+    String peerId = BytesUtils.toHexString(peerConfig.getNodeID());
+    InetAddress address = InetAddress.getByName("10.0.0.1");
+    Channel stale = mock(Channel.class);
+    InetSocketAddress staleAddress = new InetSocketAddress(address, 40001);
+    when(stale.getInetSocketAddress()).thenReturn(staleAddress);
+    when(stale.getInetAddress()).thenReturn(address);
+    when(stale.getNodeId()).thenReturn(peerId);
+    when(stale.getSessionTicket()).thenReturn(ticket);
+    when(stale.isFinishHandshake()).thenReturn(true);
+    when(stale.getStartTime()).thenReturn(testTimestamp - 60_000);
+    manager.getChannels().put(staleAddress, stale);
+    manager.getSessionTickets().onEstablished(stale);
+
+    // And the peer reconnecting with the ticket of that channel
+    AtomicBoolean resumed = new AtomicBoolean();
+    doAnswer(invocation -> {
+          resumed.set(invocation.getArgument(0));
+          return null;
+        })
+        .when(channel)
+        .setResumed(anyBoolean());
+    when(channel.isResumed()).thenAnswer(invocation -> resumed.get());
+    AtomicReference<SessionTickets.Session> session = new AtomicReference<>();
+    doAnswer(invocation -> {
+          session.set(invocation.getArgument(0));
+          return null;
+        })
+        .when(channel)
+        .setSession(any());
+    when(channel.getSession()).thenAnswer(invocation -> session.get());
+    InetSocketAddress newAddress = new InetSocketAddress(address, 40002);
+    when(channel.getInetSocketAddress()).thenReturn(newAddress);
+    when(channel.getInetAddress()).thenReturn(address);
+    when(channel.getNodeId()).thenReturn(peerId);
+    when(channel.getStartTime()).thenReturn(testTimestamp);
+    HelloMessage hello =
+        new HelloMessage(peerConfig, DisconnectCode.NORMAL, testTimestamp, ticket, false);
+
+    // When its HELLO arrives
+    handler.onMessage(channel, hello);
+
+    // Then the session resumes and the stale channel is replaced
+    assertTrue(resumed.get());
+    verify(stale).setSessionTicket(null);
+    verify(stale).close();
+    verify(channel).setFinishHandshake(true);
+    assertSame(channel, manager.getChannels().get(newAddress));
+    assertEquals(1, manager.getChannels().size());
+    ArgumentCaptor<HelloMessage> reply = ArgumentCaptor.forClass(HelloMessage.class);
+    verify(channel).send(reply.capture());
+    assertEquals(DisconnectCode.NORMAL.getValue(), reply.getValue().getCode());
+    assertTrue(reply.getValue().isResumed());
+  }
+
+  @Test
+  void testStartHandshakePipelinesHandlerMessages() {
+    // Given pipelined handshakes and a handler sending its status request early
+    p2pConfig.setPipelinedHandshake(true);
+    P2pEventHandler handler = mock(P2pEventHandler.class);
+    p2pConfig.getHandlerList().add(handler);
+
+    // When the handshake starts
+    handshakeHandler.startHandshake(channel);
+
+    // Then the handler writes right behind the HELLO, in pipelining mode
+    InOrder inOrder = inOrder(channel, handler);
+    inOrder.verify(channel).send(any(HelloMessage.class));
+    inOrder.verify(channel).setPipelining(true);
+    inOrder.verify(handler).onHandshakeStarted(channel);
+    inOrder.verify(channel).setPipelining(false);
+  }
+
+  @Test
+  void testStartHandshakeWithoutPipelining() {
+    // Given the default config
+    P2pEventHandler handler = mock(P2pEventHandler.class);
+    p2pConfig.getHandlerList().add(handler);
+
+    // When the handshake starts
+    handshakeHandler.startHandshake(channel);
+
+    // Then handlers wait for onConnect
+    verify(handler, never()).onHandshakeStarted(any());
+  }
+
   private void setupNormalHandshakeScenario() {
     when(channel.isFinishHandshake()).thenReturn(false);
     when(helloMessage.getTimestamp()).thenReturn(testTimestamp);
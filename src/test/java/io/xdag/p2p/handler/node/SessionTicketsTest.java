@@ -0,0 +1,156 @@
+package io.xdag.p2p.handler.node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.xdag.p2p.channel.Channel;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
+import io.xdag.p2p.config.P2pConfig;
+import java.net.InetAddress;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SessionTicketsTest {
+
+  private static final String NODE_ID = "aa01";
+
+  @Mock private Channel channel;
+
+  private P2pConfig p2pConfig;
+  private InetAddress address;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    p2pConfig = new P2pConfig();
+    address = InetAddress.getByName("10.0.0.1");
+    when(channel.isFinishHandshake()).thenReturn(true);
+    when(channel.getNodeId()).thenReturn(NODE_ID);
+    when(channel.getInetAddress()).thenReturn(address);
+  }
+
+  @Test
+  void testIssuedTicketIsRedeemedOnce() throws Exception {
+    // Given a ticket issued to an inbound peer that disconnected
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+    Bytes ticket = tickets.issue();
+    assertNotNull(ticket);
+    assertNotEquals(ticket, tickets.issue());
+    when(channel.getSessionTicket()).thenReturn(ticket);
+    when(channel.isActive()).thenReturn(false);
+    tickets.onDisconnect(channel);
+
+    // When the peer presents it from another node id, then from its own
+    assertTrue(tickets.isResumable(address));
+    assertNull(tickets.redeem(ticket, NODE_ID, InetAddress.getByName("10.0.0.2")));
+
+    // Then a failed attempt burns the ticket
+    assertNull(tickets.redeem(ticket, NODE_ID, address));
+  }
+
+  @Test
+  void testRedeemMatchingPeer() {
+    // Given a ticket issued to an inbound peer that disconnected
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+    Bytes ticket = tickets.issue();
+    CompressionCodec codec = CompressionCodecs.SNAPPY;
+    when(channel.getSessionTicket()).thenReturn(ticket);
+    when(channel.getCodec()).thenReturn(codec);
+    tickets.onDisconnect(channel);
+
+    // Then the same node at the same address resumes exactly once, with the codec of its session
+    assertNull(tickets.redeem(tickets.issue(), NODE_ID, address));
+    SessionTickets.Session session = tickets.redeem(ticket, NODE_ID, address);
+    assertNotNull(session);
+    assertSame(codec, session.codec());
+    assertNull(session.channel());
+    assertNull(tickets.redeem(ticket, NODE_ID, address));
+  }
+
+  @Test
+  void testHeldTicketIsTakenOnce() {
+    // Given a ticket received from a dialed node that disconnected
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+    Bytes ticket = Bytes.fromHexString("0x0102");
+    when(channel.getSessionTicket()).thenReturn(ticket);
+    when(channel.isActive()).thenReturn(true);
+    tickets.onDisconnect(channel);
+
+    // Then it is presented on the next dial only
+    assertFalse(tickets.isResumable(address));
+    assertNull(tickets.take("bb02"));
+    assertEquals(ticket, tickets.take(NODE_ID).ticket());
+    assertNull(tickets.take(NODE_ID));
+  }
+
+  @Test
+  void testRedeemTicketOfOpenChannel() {
+    // Given an inbound channel that still looks open with its ticket
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+    Bytes ticket = tickets.issue();
+    when(channel.getSessionTicket()).thenReturn(ticket);
+    tickets.onEstablished(channel);
+
+    // When the peer reconnects with it
+    SessionTickets.Session session = tickets.redeem(ticket, NODE_ID, address);
+
+    // Then the session resumes and names the stale channel, which loses the ticket
+    assertNotNull(session);
+    assertSame(channel, session.channel());
+    verify(channel).setSessionTicket(null);
+    assertNull(tickets.redeem(ticket, NODE_ID, address));
+  }
+
+  @Test
+  void testPenalizedChannelRevokesTickets() {
+    // Given a ticket issued to a peer that disconnected cleanly
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+    Bytes earlier = tickets.issue();
+    when(channel.getSessionTicket()).thenReturn(earlier);
+    tickets.onDisconnect(channel);
+
+    // When another channel of the peer is closed for misbehaving
+    Channel penalized = mock(Channel.class);
+    when(penalized.isPenalized()).thenReturn(true);
+    when(penalized.isFinishHandshake()).thenReturn(true);
+    when(penalized.getNodeId()).thenReturn(NODE_ID);
+    when(penalized.getInetAddress()).thenReturn(address);
+    when(penalized.getSessionTicket()).thenReturn(tickets.issue());
+    tickets.onDisconnect(penalized);
+
+    // Then no ticket of the peer is left
+    assertFalse(tickets.isResumable(address));
+    assertNull(tickets.redeem(earlier, NODE_ID, address));
+    assertNull(tickets.redeem(penalized.getSessionTicket(), NODE_ID, address));
+  }
+
+  @Test
+  void testDisabled() {
+    // Given resumption disabled
+    p2pConfig.setSessionTicketTtl(0);
+    SessionTickets tickets = new SessionTickets(p2pConfig);
+
+    // Then no tickets are issued or kept
+    assertNull(tickets.issue());
+    when(channel.getSessionTicket()).thenReturn(Bytes.fromHexString("0x0102"));
+    tickets.onDisconnect(channel);
+    assertFalse(tickets.isResumable(address));
+    assertNull(tickets.redeem(Bytes.fromHexString("0x0102"), NODE_ID, address));
+  }
+}
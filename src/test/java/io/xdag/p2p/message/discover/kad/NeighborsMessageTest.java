@@ -26,10 +26,13 @@ package io.xdag.p2p.message.discover.kad;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.discover.Node;
+import io.xdag.p2p.discover.kad.table.KademliaOptions;
 import io.xdag.p2p.message.discover.MessageType;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -110,4 +113,26 @@ class NeighborsMessageTest {
     // Let's create a node that is clearly invalid by having a bad ID length.
     assertFalse(invalidFromMessage.valid());
   }
+
+  @Test
+  void testParsedNodesAreDecodedOnce() throws Exception {
+    NeighborsMessage parsedMessage =
+        new NeighborsMessage(
+            p2pConfig, new NeighborsMessage(p2pConfig, from, neighbors, sequence).getData());
+
+    assertTrue(parsedMessage.valid());
+    assertSame(parsedMessage.getFrom(), parsedMessage.getFrom());
+    assertSame(parsedMessage.getNodes(), parsedMessage.getNodes());
+    assertThrows(UnsupportedOperationException.class, () -> parsedMessage.getNodes().clear());
+  }
+
+  @Test
+  void testTooManyNeighboursIsInvalid() {
+    List<Node> tooMany = new ArrayList<>();
+    for (int i = 0; i <= KademliaOptions.BUCKET_SIZE; i++) {
+      tooMany.add(new Node(p2pConfig, Bytes.random(64), "127.0.0.1", null, 30400 + i, 30400 + i));
+    }
+
+    assertFalse(new NeighborsMessage(p2pConfig, from, tooMany, sequence).valid());
+  }
 }
@@ -25,11 +25,15 @@ package io.xdag.p2p.message.discover.kad;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.google.protobuf.ByteString;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.discover.Node;
 import io.xdag.p2p.message.discover.MessageType;
+import io.xdag.p2p.proto.Discover;
+import java.net.InetSocketAddress;
 import org.apache.tuweni.bytes.Bytes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -81,4 +85,24 @@ class PingMessageTest {
     assertNotNull(str);
     assertTrue(str.contains("pingMessage"));
   }
+
+  @Test
+  void testSourceAddressReplacesMissingHost() throws Exception {
+    Discover.PingMessage ping =
+        Discover.PingMessage.newBuilder()
+            .setFrom(
+                Discover.Endpoint.newBuilder()
+                    .setNodeId(ByteString.copyFrom(from.getId().toArray()))
+                    .setPort(30303))
+            .setTimestamp(System.currentTimeMillis())
+            .build();
+    PingMessage parsedPingMessage = new PingMessage(p2pConfig, Bytes.wrap(ping.toByteArray()));
+    Node withoutHost = parsedPingMessage.getFrom();
+    assertSame(withoutHost, parsedPingMessage.getFrom());
+
+    parsedPingMessage.setSourceAddress(new InetSocketAddress("10.0.0.1", 30303));
+
+    assertEquals("10.0.0.1", parsedPingMessage.getFrom().getHostV4());
+    assertSame(parsedPingMessage.getFrom(), parsedPingMessage.getFrom());
+  }
 }
@@ -0,0 +1,57 @@
+package io.xdag.p2p.message.node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.xdag.p2p.P2pException;
+import io.xdag.p2p.config.P2pConfig;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+class BatchMessageTest {
+
+  private final P2pConfig p2pConfig = new P2pConfig();
+
+  @Test
+  void testPackAndUnpack() throws Exception {
+    List<Bytes> messages =
+        List.of(Bytes.of(0x01, 0x02), Bytes.wrap(new byte[300]), Bytes.of(0x03));
+
+    BatchMessage batch = new BatchMessage(p2pConfig, messages);
+    ByteBuf frame = Unpooled.wrappedBuffer(batch.getSendData().toArrayUnsafe());
+    List<ByteBuf> unpacked = BatchMessage.unpack(frame);
+
+    assertEquals(MessageType.BATCH, batch.getType(), "Message type should be BATCH");
+    assertTrue(batch.valid(), "A batch with messages should be valid");
+    assertEquals(messages.size(), unpacked.size(), "All messages should be unpacked");
+    for (int i = 0; i < messages.size(); i++) {
+      assertEquals(messages.get(i), Bytes.wrap(ByteBufUtil.getBytes(unpacked.get(i))));
+    }
+    assertEquals(0, frame.readerIndex(), "Unpacking should not move the reader index");
+  }
+
+  @Test
+  void testUnpackRejectsNodeMessages() {
+    BatchMessage batch = new BatchMessage(p2pConfig, List.of(Bytes.of(0x01), Bytes.of(0xFF)));
+    ByteBuf frame = Unpooled.wrappedBuffer(batch.getSendData().toArrayUnsafe());
+
+    assertThrows(P2pException.class, () -> BatchMessage.unpack(frame));
+  }
+
+  @Test
+  void testUnpackRejectsMalformedBatch() {
+    byte type = MessageType.BATCH.getType();
+    ByteBuf truncated = Unpooled.wrappedBuffer(new byte[] {type, 0x05, 0x01});
+    ByteBuf empty = Unpooled.wrappedBuffer(new byte[] {type});
+    ByteBuf zeroLength = Unpooled.wrappedBuffer(new byte[] {type, 0x00});
+
+    assertThrows(P2pException.class, () -> BatchMessage.unpack(truncated));
+    assertThrows(P2pException.class, () -> BatchMessage.unpack(empty));
+    assertThrows(P2pException.class, () -> BatchMessage.unpack(zeroLength));
+  }
+}
@@ -1,8 +1,12 @@
 package io.xdag.p2p.message.node;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 public class HelloMessageTest {
@@ -25,5 +29,18 @@ public class HelloMessageTest {
     assertEquals(p2pConfig.getIp(), m2.getFrom().getHostV4());
     assertEquals(p2pConfig.getNetworkId(), m2.getNetworkId());
     assertEquals(MessageType.HANDSHAKE_HELLO, m2.getType());
+    assertEquals(CompressionCodecs.DEFAULT_PREFERENCE, m2.getCodecs());
+    assertSame(m2.getFrom(), m2.getFrom(), "the sender should be decoded once");
+  }
+
+  @Test
+  public void testHelloMessageAdvertisesConfiguredCodecs() throws Exception {
+    P2pConfig p2pConfig = new P2pConfig();
+    p2pConfig.setCompressionCodecs(List.of(CompressType.lz4, CompressType.snappy));
+
+    HelloMessage m1 = new HelloMessage(p2pConfig, DisconnectCode.NORMAL, 0);
+    HelloMessage m2 = new HelloMessage(p2pConfig, m1.getData());
+
+    assertEquals(List.of(CompressType.lz4, CompressType.snappy), m2.getCodecs());
   }
 }
@@ -47,6 +47,7 @@ public class MessageTypeTest {
         (byte) 0xFD, MessageType.HANDSHAKE_HELLO.getType(), "HANDSHAKE_HELLO type should be 0xFD");
     assertEquals((byte) 0xFC, MessageType.STATUS.getType(), "STATUS type should be 0xFC");
     assertEquals((byte) 0xFB, MessageType.DISCONNECT.getType(), "DISCONNECT type should be 0xFB");
+    assertEquals((byte) 0xFA, MessageType.BATCH.getType(), "BATCH type should be 0xFA");
     assertEquals((byte) 0x80, MessageType.UNKNOWN.getType(), "UNKNOWN type should be 0x80");
   }
 
@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.performance;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.discover.Node;
+import io.xdag.p2p.example.message.TestMessage;
+import io.xdag.p2p.message.discover.kad.NeighborsMessage;
+import io.xdag.p2p.message.node.BatchMessage;
+import io.xdag.p2p.message.node.DisconnectCode;
+import io.xdag.p2p.message.node.HelloMessage;
+import io.xdag.p2p.proto.Connect.CompressMessage.CompressType;
+import io.xdag.p2p.utils.ProtoUtils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the compression codecs on the messages this library actually sends: the handshake
+ * hello, a Kademlia neighbours reply, a batch of small application messages, a block sync payload
+ * and already compressed data. The compression ratio of each codec and corpus is logged at setup.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.xdag.p2p.performance.CompressionCodecBenchmark}.
+ */
+@Slf4j
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionCodecBenchmark {
+
+  private static final ByteBufAllocator ALLOC = PooledByteBufAllocator.DEFAULT;
+
+  @Param({"hello", "neighbors", "batch", "blocks", "random"})
+  public String corpus;
+
+  @Param({"snappy", "lz4", "zstd"})
+  public String codec;
+
+  private CompressionCodec compressionCodec;
+
+  private Bytes data;
+
+  private ByteBuf encoded;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    compressionCodec = CompressionCodecs.get(CompressType.valueOf(codec).getNumber());
+    data = corpus(corpus, new P2pConfig(), new Random(42));
+    encoded = ProtoUtils.compressMessage(ALLOC, data, compressionCodec);
+    log.info(
+        "{} {}: {} -> {} bytes, ratio {}",
+        corpus,
+        codec,
+        data.size(),
+        encoded.readableBytes(),
+        String.format("%.3f", (double) encoded.readableBytes() / data.size()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    encoded.release();
+  }
+
+  @Benchmark
+  public int compress() throws Exception {
+    ByteBuf buf = ProtoUtils.compressMessage(ALLOC, data, compressionCodec);
+    int length = buf.readableBytes();
+    buf.release();
+    return length;
+  }
+
+  @Benchmark
+  public int uncompress() throws Exception {
+    ByteBuf buf = ProtoUtils.uncompressMessage(ALLOC, encoded);
+    int length = buf.readableBytes();
+    buf.release();
+    return length;
+  }
+
+  static Bytes corpus(String name, P2pConfig p2pConfig, Random random) {
+    return switch (name) {
+      case "hello" -> new HelloMessage(p2pConfig, DisconnectCode.NORMAL, 1_700_000_000_000L)
+          .getSendData();
+      case "neighbors" -> neighbors(p2pConfig, random);
+      case "batch" -> batch(p2pConfig);
+      case "blocks" -> blocks(random);
+      case "random" -> {
+        byte[] bytes = new byte[16 * 1024];
+        random.nextBytes(bytes);
+        yield Bytes.wrap(bytes);
+      }
+      default -> throw new IllegalArgumentException("unknown corpus " + name);
+    };
+  }
+
+  private static Bytes neighbors(P2pConfig p2pConfig, Random random) {
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      byte[] id = new byte[64];
+      random.nextBytes(id);
+      String ip = "10.0." + random.nextInt(256) + "." + random.nextInt(256);
+      nodes.add(new Node(p2pConfig, Bytes.wrap(id), ip, null, 16783 + i));
+    }
+    Node from = new Node(p2pConfig, p2pConfig.getNodeID(), "10.0.0.1", null, 16783);
+    return new NeighborsMessage(p2pConfig, from, nodes, 1).getSendData();
+  }
+
+  private static Bytes batch(P2pConfig p2pConfig) {
+    List<Bytes> messages = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      TestMessage message =
+          new TestMessage(
+              "msg-" + i, "node-7f3a9c", 1_700_000_000_000L + i, 1, 5, "latency", "payload-" + i);
+      messages.add(Bytes.concatenate(Bytes.of(0x01), Bytes.wrap(message.getData())));
+    }
+    return new BatchMessage(p2pConfig, messages).getSendData();
+  }
+
+  /** Block sync payload: 64 blocks of hashes, timestamps, amounts and zero padded fields */
+  private static Bytes blocks(Random random) {
+    ByteBuffer buf = ByteBuffer.allocate(64 * 512);
+    long time = 1_700_000_000_000L;
+    for (int i = 0; i < 64; i++) {
+      int start = buf.position();
+      buf.putLong(0x0000_0000_0000_0081L).putLong(time += 64_000).putLong(0);
+      for (int link = 0; link < 4; link++) {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        buf.put(new byte[8]).put(hash, 8, 24).putLong(random.nextInt(1_000_000) * 1_000_000_000L);
+      }
+      byte[] signature = new byte[64];
+      random.nextBytes(signature);
+      buf.put(signature);
+      buf.position(start + 512);
+    }
+    return Bytes.wrap(buf.array());
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(CompressionCodecBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.performance;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.xdag.p2p.channel.TransportMode;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Throughput of chatty small-message traffic and single-message latency with and without write
+ * coalescing, over a loopback connection.
+ */
+@Slf4j
+public class FlushPerformanceTest {
+
+  private static final int MESSAGE_SIZE = 64;
+  private static final int BATCH_SIZE = 100;
+  private static final int BATCH_COUNT = 2_000;
+  private static final int ROUND_TRIPS = 2_000;
+
+  private final TransportMode transport = TransportMode.NIO;
+  private EventLoopGroup group;
+
+  private enum Mode {
+    FLUSH_EACH,
+    CONSOLIDATED,
+    WRITE_THEN_FLUSH
+  }
+
+  @BeforeEach
+  void setUp() {
+    group = new MultiThreadIoEventLoopGroup(2, transport.newIoHandlerFactory());
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+  }
+
+  @Test
+  @DisplayName("Chatty small message throughput")
+  void testChattyThroughput() throws Exception {
+    log.info("=== 📨 CHATTY TRAFFIC THROUGHPUT ===");
+    for (Mode mode : Mode.values()) {
+      double rate = measureThroughput(mode);
+      log.info("🚀 {}: {} msg/s", mode, String.format("%.0f", rate));
+      assertTrue(rate > 0);
+    }
+  }
+
+  @Test
+  @DisplayName("Single message round trip latency")
+  void testSingleMessageLatency() throws Exception {
+    log.info("=== ⏱️ SINGLE MESSAGE LATENCY ===");
+    for (Mode mode : new Mode[] {Mode.FLUSH_EACH, Mode.CONSOLIDATED}) {
+      double micros = measureLatency(mode);
+      log.info("⏱️ {}: {} us per round trip", mode, String.format("%.1f", micros));
+      assertTrue(micros > 0);
+    }
+  }
+
+  private double measureThroughput(Mode mode) throws Exception {
+    long total = (long) MESSAGE_SIZE * BATCH_SIZE * BATCH_COUNT;
+    AtomicLong received = new AtomicLong();
+    CountDownLatch done = new CountDownLatch(1);
+    Channel server =
+        bind(
+            new ChannelInboundHandlerAdapter() {
+              @Override
+              public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                int size = ((ByteBuf) msg).readableBytes();
+                ReferenceCountUtil.release(msg);
+                if (received.addAndGet(size) >= total) {
+                  done.countDown();
+                }
+              }
+
+              @Override
+              public boolean isSharable() {
+                return true;
+              }
+            });
+    Channel client = connect(server, mode, new ChannelInboundHandlerAdapter());
+    ByteBuf message = Unpooled.directBuffer(MESSAGE_SIZE).writeZero(MESSAGE_SIZE);
+
+    long start = System.nanoTime();
+    for (int batch = 0; batch < BATCH_COUNT; batch++) {
+      client
+          .eventLoop()
+          .execute(
+              () -> {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                  if (mode == Mode.WRITE_THEN_FLUSH) {
+                    client.write(message.retainedDuplicate());
+                  } else {
+                    client.writeAndFlush(message.retainedDuplicate());
+                  }
+                }
+                if (mode == Mode.WRITE_THEN_FLUSH) {
+                  client.flush();
+                }
+              });
+    }
+    assertTrue(done.await(60, TimeUnit.SECONDS), "transfer did not complete");
+    long elapsed = System.nanoTime() - start;
+
+    message.release();
+    client.close().sync();
+    server.close().sync();
+    return (double) BATCH_SIZE * BATCH_COUNT / (elapsed / 1_000_000_000.0);
+  }
+
+  private double measureLatency(Mode mode) throws Exception {
+    Channel server =
+        bind(
+            new ChannelInboundHandlerAdapter() {
+              @Override
+              public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ctx.writeAndFlush(msg);
+              }
+
+              @Override
+              public boolean isSharable() {
+                return true;
+              }
+            });
+    AtomicReference<CountDownLatch> reply = new AtomicReference<>();
+    Channel client =
+        connect(
+            server,
+            mode,
+            new ChannelInboundHandlerAdapter() {
+              @Override
+              public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ReferenceCountUtil.release(msg);
+                reply.get().countDown();
+              }
+            });
+
+    long elapsed = 0;
+    for (int i = 0; i < ROUND_TRIPS; i++) {
+      CountDownLatch latch = new CountDownLatch(1);
+      reply.set(latch);
+      long start = System.nanoTime();
+      client.writeAndFlush(Unpooled.buffer(1).writeByte(i));
+      assertTrue(latch.await(10, TimeUnit.SECONDS), "no reply");
+      elapsed += System.nanoTime() - start;
+    }
+
+    client.close().sync();
+    server.close().sync();
+    return elapsed / 1000.0 / ROUND_TRIPS;
+  }
+
+  private Channel bind(ChannelInboundHandlerAdapter handler) throws Exception {
+    return new ServerBootstrap()
+        .group(group)
+        .channel(transport.serverSocketChannelClass())
+        .childHandler(
+            new ChannelInitializer<SocketChannel>() {
+              @Override
+              protected void initChannel(SocketChannel ch) {
+                ch.pipeline().addLast(handler);
+              }
+            })
+        .bind(new InetSocketAddress("127.0.0.1", 0))
+        .sync()
+        .channel();
+  }
+
+  private Channel connect(Channel server, Mode mode, ChannelInboundHandlerAdapter handler)
+      throws Exception {
+    return new Bootstrap()
+        .group(group)
+        .channel(transport.socketChannelClass())
+        .handler(
+            new ChannelInitializer<SocketChannel>() {
+              @Override
+              protected void initChannel(SocketChannel ch) {
+                if (mode == Mode.CONSOLIDATED) {
+                  ch.pipeline().addLast(new FlushConsolidationHandler(256, true));
+                }
+                ch.pipeline().addLast(handler);
+              }
+            })
+        .connect(server.localAddress())
+        .sync()
+        .channel();
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.performance;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.xdag.p2p.channel.Channel;
+import io.xdag.p2p.channel.P2pProtobufVarint32FrameDecoder;
+import io.xdag.p2p.config.P2pConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures inbound framing on the read patterns TCP actually produces: {@code coalesced} delivers
+ * many frames per 64 KiB read, {@code fragmented} cuts the stream at MSS sized reads so large
+ * frames span several reads. The {@code single} pipeline is the frame decoder feeding a
+ * non-cumulating dispatcher; {@code twoStage} puts a second cumulating decoder above it, which is
+ * how frames used to reach the message handler.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.xdag.p2p.performance.FrameDecoderBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameDecoderBenchmark {
+
+  private static final int FRAMES = 64;
+
+  @Param({"coalesced", "fragmented"})
+  public String pattern;
+
+  @Param({"64", "1024", "16384"})
+  public int frameSize;
+
+  @Param({"single", "twoStage"})
+  public String pipeline;
+
+  private final List<ByteBuf> reads = new ArrayList<>();
+
+  private ByteBuf stream;
+
+  private EmbeddedChannel embedded;
+
+  private FrameCounter counter;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    stream = PooledByteBufAllocator.DEFAULT.directBuffer();
+    for (int i = 0; i < FRAMES; i++) {
+      writeVarint32(stream, frameSize);
+      stream.writeZero(frameSize);
+    }
+    int readSize =
+        switch (pattern) {
+          case "coalesced" -> 64 * 1024;
+          case "fragmented" -> 1460;
+          default -> throw new IllegalArgumentException("unknown pattern " + pattern);
+        };
+    for (int from = 0; from < stream.writerIndex(); from += readSize) {
+      reads.add(stream.slice(from, Math.min(readSize, stream.writerIndex() - from)));
+    }
+
+    counter = new FrameCounter();
+    embedded =
+        new EmbeddedChannel(
+            new P2pProtobufVarint32FrameDecoder(
+                new P2pConfig(), new Channel(new P2pConfig(), null)));
+    ChannelPipeline p = embedded.pipeline();
+    if ("twoStage".equals(pipeline)) {
+      p.addLast(new CumulatingStage(counter));
+    } else {
+      p.addLast(counter);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    embedded.finishAndReleaseAll();
+    stream.release();
+  }
+
+  @Benchmark
+  public int decode() {
+    ChannelPipeline p = embedded.pipeline();
+    for (ByteBuf read : reads) {
+      p.fireChannelRead(read.retainedDuplicate());
+    }
+    p.fireChannelReadComplete();
+    int frames = counter.frames;
+    counter.frames = 0;
+    return frames;
+  }
+
+  private static void writeVarint32(ByteBuf buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer.writeByte(value);
+  }
+
+  /** Counts and releases frames, as the message handler does after dispatching them */
+  private static final class FrameCounter extends ChannelInboundHandlerAdapter {
+
+    int frames;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      frames++;
+      ((ByteBuf) msg).release();
+    }
+  }
+
+  /** A second cumulating decoder consuming whole frames, as the message handler used to be */
+  private static final class CumulatingStage extends ByteToMessageDecoder {
+
+    private final FrameCounter counter;
+
+    CumulatingStage(FrameCounter counter) {
+      this.counter = counter;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+      counter.frames++;
+      in.skipBytes(in.readableBytes());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder().include(FrameDecoderBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.performance;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.xdag.p2p.P2pEventHandler;
+import io.xdag.p2p.P2pException;
+import io.xdag.p2p.channel.Channel;
+import io.xdag.p2p.channel.ChannelManager;
+import io.xdag.p2p.config.P2pConfig;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the inbound dispatch path of application messages. {@code boxedMapLookup} is the
+ * {@code HashMap<Byte, P2pEventHandler>} lookup handlers used to be found with, {@code
+ * arrayLookup} the type indexed table of {@link P2pConfig}, and {@code processMessage} the whole
+ * path from a decoded frame to the handler callback.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.xdag.p2p.performance.HandlerDispatchBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandlerDispatchBenchmark {
+
+  private static final int TYPES = 16;
+
+  private final Map<Byte, P2pEventHandler> handlerMap = new HashMap<>();
+
+  private final ByteBuf[] frames = new ByteBuf[TYPES];
+
+  private P2pConfig config;
+
+  private ChannelManager channelManager;
+
+  private Channel channel;
+
+  private CountingHandler[] handlers;
+
+  @Setup(Level.Trial)
+  public void setup() throws P2pException {
+    config = new P2pConfig();
+    handlers = new CountingHandler[TYPES];
+    for (int i = 0; i < TYPES; i++) {
+      byte type = (byte) i;
+      handlers[i] = new CountingHandler(type);
+      config.addP2pEventHandle(handlers[i]);
+      handlerMap.put(type, handlers[i]);
+      frames[i] = Unpooled.directBuffer().writeByte(type).writeZero(63);
+    }
+    channelManager = new ChannelManager(config, null, null);
+    channel = new Channel(config, channelManager);
+    channel.setFinishHandshake(true);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    for (ByteBuf frame : frames) {
+      frame.release();
+    }
+  }
+
+  @Benchmark
+  public int boxedMapLookup() {
+    int found = 0;
+    for (int i = 0; i < TYPES; i++) {
+      if (handlerMap.get((byte) i) != null) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public int arrayLookup() {
+    int found = 0;
+    for (int i = 0; i < TYPES; i++) {
+      if (config.getHandler((byte) i) != null) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public long processMessage() throws P2pException {
+    for (ByteBuf frame : frames) {
+      channelManager.processMessage(channel, frame);
+    }
+    return handlers[0].messages;
+  }
+
+  /** Counts messages without copying them, as a handler parsing in place does */
+  private static final class CountingHandler extends P2pEventHandler {
+
+    long messages;
+
+    CountingHandler(byte type) {
+      this.messageTypes = Set.of(type);
+    }
+
+    @Override
+    public void onMessage(Channel channel, ByteBuf data) {
+      messages++;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder().include(HandlerDispatchBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.performance;
+
+import io.xdag.p2p.channel.ChannelManager;
+import io.xdag.p2p.config.P2pConfig;
+import io.xdag.p2p.discover.Node;
+import io.xdag.p2p.discover.kad.table.KademliaOptions;
+import io.xdag.p2p.message.discover.kad.FindNodeMessage;
+import io.xdag.p2p.message.discover.kad.KadMessage;
+import io.xdag.p2p.message.discover.kad.NeighborsMessage;
+import io.xdag.p2p.message.discover.kad.PingMessage;
+import io.xdag.p2p.message.discover.kad.PongMessage;
+import io.xdag.p2p.message.node.DisconnectCode;
+import io.xdag.p2p.message.node.HelloMessage;
+import io.xdag.p2p.message.node.StatusMessage;
+import io.xdag.p2p.utils.NetUtils;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@code Message.parse} of each discovery and node message type followed by the accessor
+ * calls its handler makes: {@code KadService} and {@code NodeHandler} read the sender and the
+ * neighbours, the handshake reads the sender of a HELLO three times. Debug logging of the {@code
+ * net} topic is turned off so that node validation is measured rather than console output.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.xdag.p2p.performance.MessageParseBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.log.net=info")
+@State(Scope.Thread)
+public class MessageParseBenchmark {
+
+  @Param({"kadPing", "kadPong", "kadFindNode", "kadNeighbors", "hello", "status"})
+  public String type;
+
+  private P2pConfig config;
+
+  private Bytes encoded;
+
+  private final InetSocketAddress sender = new InetSocketAddress("127.0.0.1", 16783);
+
+  @Setup(Level.Trial)
+  public void setup() {
+    config = new P2pConfig();
+    config.setIp("127.0.0.1");
+    Node from = new Node(config, NetUtils.getNodeId(), "127.0.0.1", null, 16783, 16783);
+    Node to = new Node(config, NetUtils.getNodeId(), "127.0.0.2", null, 16783, 16783);
+    List<Node> neighbours = new ArrayList<>();
+    for (int i = 0; i < KademliaOptions.BUCKET_SIZE; i++) {
+      neighbours.add(
+          new Node(config, NetUtils.getNodeId(), "10.0.0." + (i + 1), null, 16783, 16783));
+    }
+    encoded =
+        switch (type) {
+          case "kadPing" -> new PingMessage(config, from, to).getSendData();
+          case "kadPong" -> new PongMessage(config, from).getSendData();
+          case "kadFindNode" ->
+              new FindNodeMessage(config, from, NetUtils.getNodeId()).getSendData();
+          case "kadNeighbors" ->
+              new NeighborsMessage(config, from, neighbours, System.currentTimeMillis())
+                  .getSendData();
+          case "hello" ->
+              new HelloMessage(config, DisconnectCode.NORMAL, System.currentTimeMillis())
+                  .getSendData();
+          case "status" ->
+              new StatusMessage(config, new ChannelManager(config, null, null)).getSendData();
+          default -> throw new IllegalArgumentException("unknown type " + type);
+        };
+  }
+
+  @Benchmark
+  public int parseAndHandle() throws Exception {
+    return switch (type) {
+      case "hello" -> {
+        HelloMessage hello =
+            (HelloMessage) io.xdag.p2p.message.node.Message.parse(config, encoded);
+        // channel node, node id update and ticket redemption
+        yield hello.getFrom().getPort()
+            + hello.getFrom().getHexId().length()
+            + hello.getFrom().getHexId().length();
+      }
+      case "status" -> {
+        StatusMessage status =
+            (StatusMessage) io.xdag.p2p.message.node.Message.parse(config, encoded);
+        yield status.getFrom().getPort() + status.getRemainConnections();
+      }
+      default -> {
+        io.xdag.p2p.message.discover.Message message =
+            io.xdag.p2p.message.discover.Message.parse(config, encoded);
+        if (message instanceof PingMessage ping) {
+          ping.setSourceAddress(sender);
+          yield ping.getFrom().getPort() + ping.getTo().getPort();
+        }
+        int result = ((KadMessage) message).getFrom().getPort();
+        if (message instanceof NeighborsMessage neighbours) {
+          for (Node node : neighbours.getNodes()) {
+            result += node.getHexId().length();
+          }
+        }
+        yield result;
+      }
+    };
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder().include(MessageParseBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.performance;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+import io.xdag.p2p.channel.P2pProtobufVarint32LengthFieldPrepender;
+import io.xdag.p2p.config.UpgradeController;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Heap allocation per sent message on the outbound encoding path.
+ *
+ * <p>Compares the former byte array based path (Snappy into a byte[], protobuf ByteString, copy
+ * into a heap buffer, copy again by the length prepender) with the pooled direct buffer path used
+ * by Channel.send.
+ */
+@Slf4j
+public class SendAllocationPerformanceTest {
+
+  private static final int WARMUP = 5_000;
+  private static final int ITERATIONS = 20_000;
+
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  @Test
+  @DisplayName("Bytes allocated per sent message")
+  void testSendAllocation() throws Exception {
+    log.info("=== 📦 OUTBOUND ALLOCATION PER MESSAGE ===");
+    byte[] random = new byte[4096];
+    new Random(7).nextBytes(random);
+    Bytes[] samples = {Bytes.wrap(new byte[4096]), Bytes.wrap(random)};
+    String[] names = {"compressible 4KB", "random 4KB"};
+
+    for (int i = 0; i < samples.length; i++) {
+      Bytes data = samples[i];
+      long before =
+          measure(new EmbeddedChannel(new ProtobufVarint32LengthFieldPrepender()), data, false);
+      long after =
+          measure(new EmbeddedChannel(new P2pProtobufVarint32LengthFieldPrepender()), data, true);
+      log.info("📊 {}: byte[] path {} B/msg, pooled path {} B/msg", names[i], before, after);
+      assertTrue(after < before, "pooled path should allocate less than the byte[] path");
+    }
+  }
+
+  private long measure(EmbeddedChannel channel, Bytes data, boolean pooled) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      send(channel, data, pooled);
+    }
+    long threadId = Thread.currentThread().threadId();
+    long start = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < ITERATIONS; i++) {
+      send(channel, data, pooled);
+    }
+    long allocated = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - start;
+    channel.finishAndReleaseAll();
+    return allocated / ITERATIONS;
+  }
+
+  private void send(EmbeddedChannel channel, Bytes data, boolean pooled) throws Exception {
+    ByteBuf byteBuf =
+        pooled
+            ? UpgradeController.encodeSendData(channel.alloc(), 1, data)
+            : Unpooled.wrappedBuffer(UpgradeController.codeSendData(1, data).toArray());
+    channel.writeOutbound(byteBuf);
+    ByteBuf frame = channel.readOutbound();
+    frame.release();
+  }
+}
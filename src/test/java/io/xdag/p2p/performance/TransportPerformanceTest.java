@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.performance;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.xdag.p2p.channel.TransportMode;
+import io.xdag.p2p.config.P2pConfig;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Loopback throughput comparison of the available network transports.
+ *
+ * <p>Each available {@link TransportMode} pushes the same amount of data through a client and a
+ * server bootstrapped exactly like PeerClient and PeerServer, and reports MB/s.
+ */
+@Slf4j
+public class TransportPerformanceTest {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int CHUNK_COUNT = 1024;
+  private static final long TOTAL_BYTES = (long) CHUNK_SIZE * CHUNK_COUNT;
+
+  @Test
+  @DisplayName("Loopback throughput per transport")
+  void testLoopbackThroughput() throws Exception {
+    log.info("=== 🚚 TRANSPORT LOOPBACK THROUGHPUT ===");
+    P2pConfig config = new P2pConfig();
+    for (TransportMode mode : TransportMode.values()) {
+      if (mode == TransportMode.AUTO) {
+        continue;
+      }
+      if (!mode.isAvailable()) {
+        log.info("🚫 {} not available on this platform", mode);
+        continue;
+      }
+      double mbps = measureThroughput(mode, config);
+      log.info("🚀 {}: {} MB/s", mode, String.format("%.1f", mbps));
+      assertTrue(mbps > 0);
+    }
+  }
+
+  private double measureThroughput(TransportMode mode, P2pConfig config) throws Exception {
+    EventLoopGroup bossGroup = new MultiThreadIoEventLoopGroup(1, mode.newIoHandlerFactory());
+    EventLoopGroup workerGroup = new MultiThreadIoEventLoopGroup(2, mode.newIoHandlerFactory());
+    AtomicLong received = new AtomicLong();
+    CountDownLatch done = new CountDownLatch(1);
+    try {
+      ServerBootstrap server = new ServerBootstrap();
+      server
+          .group(bossGroup, workerGroup)
+          .channel(mode.serverSocketChannelClass())
+          .childHandler(
+              new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                  ch.pipeline()
+                      .addLast(
+                          new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                              int size = ((ByteBuf) msg).readableBytes();
+                              ReferenceCountUtil.release(msg);
+                              if (received.addAndGet(size) >= TOTAL_BYTES) {
+                                done.countDown();
+                              }
+                            }
+                          });
+                }
+              });
+      mode.applyServerOptions(server, config);
+      io.netty.channel.Channel listener =
+          server.bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+      Bootstrap client = new Bootstrap();
+      client
+          .group(workerGroup)
+          .channel(mode.socketChannelClass())
+          .handler(new ChannelInboundHandlerAdapter());
+      mode.applyClientOptions(client, config);
+      io.netty.channel.Channel channel = client.connect(listener.localAddress()).sync().channel();
+
+      ByteBuf chunk = Unpooled.directBuffer(CHUNK_SIZE).writeZero(CHUNK_SIZE);
+      long start = System.nanoTime();
+      ChannelFuture last = null;
+      for (int i = 0; i < CHUNK_COUNT; i++) {
+        last = channel.write(chunk.retainedDuplicate());
+        if (!channel.isWritable()) {
+          channel.flush();
+        }
+      }
+      channel.flush();
+      chunk.release();
+      last.sync();
+      assertTrue(done.await(60, TimeUnit.SECONDS), "transfer did not complete");
+      long elapsed = System.nanoTime() - start;
+      assertEquals(TOTAL_BYTES, received.get());
+
+      channel.close().sync();
+      listener.close().sync();
+      return TOTAL_BYTES / (1024.0 * 1024.0) / (elapsed / 1_000_000_000.0);
+    } finally {
+      bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+      workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+  }
+}
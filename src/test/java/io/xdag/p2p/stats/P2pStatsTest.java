@@ -24,7 +24,12 @@
 package io.xdag.p2p.stats;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import io.xdag.p2p.channel.Channel;
+import java.net.InetSocketAddress;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -136,6 +141,28 @@ public class P2pStatsTest {
     assertTrue(stats.getUdpInPackets() >= 0, "UDP in packets should be non-negative");
   }
 
+  /** Test P2pStatsManager collects outbound queue metrics per peer. */
+  @Test
+  void testP2pStatsManagerQueuedBytes() {
+    Channel c1 = mock(Channel.class);
+    Channel c2 = mock(Channel.class);
+    InetSocketAddress a1 = new InetSocketAddress("10.0.0.1", 16783);
+    InetSocketAddress a2 = new InetSocketAddress("10.0.0.2", 16783);
+    when(c1.getInetSocketAddress()).thenReturn(a1);
+    when(c1.getQueuedBytes()).thenReturn(100L);
+    when(c1.isWritable()).thenReturn(true);
+    when(c2.getInetSocketAddress()).thenReturn(a2);
+    when(c2.getQueuedBytes()).thenReturn(5000L);
+    when(c2.isWritable()).thenReturn(false);
+
+    P2pStats stats = p2pStatsManager.getP2pStats(List.of(c1, c2));
+
+    assertEquals(5100L, stats.getTcpQueuedBytes(), "Queued bytes should be summed");
+    assertEquals(1, stats.getUnwritableChannels(), "One channel should be unwritable");
+    assertEquals(100L, stats.getQueuedBytesPerPeer().get(a1));
+    assertEquals(5000L, stats.getQueuedBytesPerPeer().get(a2));
+  }
+
   /** Test P2pStatsManager returns fresh stats each time. */
   @Test
   void testP2pStatsManagerFreshStats() {
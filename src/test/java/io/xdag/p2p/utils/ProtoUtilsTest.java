@@ -23,11 +23,23 @@
  */
 package io.xdag.p2p.utils;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.xdag.p2p.P2pException;
+import io.xdag.p2p.codec.CompressionCodec;
+import io.xdag.p2p.codec.CompressionCodecs;
 import io.xdag.p2p.config.P2pConfig;
 import io.xdag.p2p.message.node.PingMessage;
 import io.xdag.p2p.proto.Connect;
+import java.util.Random;
 import org.apache.tuweni.bytes.Bytes;
 import org.junit.jupiter.api.Test;
 
@@ -53,4 +65,166 @@ public class ProtoUtilsTest {
     assertEquals(1000, d2.size());
     assertEquals(0, d2.get(0));
   }
+
+  @Test
+  public void testCompressMessageIntoBufferMatchesProtobuf() throws Exception {
+    Random random = new Random(1);
+    byte[] incompressible = new byte[3000];
+    random.nextBytes(incompressible);
+    Bytes[] samples = {
+      Bytes.of(1),
+      Bytes.wrap(new byte[1000]),
+      Bytes.wrap(incompressible),
+      Bytes.wrap(new byte[200_000])
+    };
+    for (Bytes data : samples) {
+      ByteBuf buf = ProtoUtils.compressMessage(PooledByteBufAllocator.DEFAULT, data);
+      byte[] encoded = new byte[buf.readableBytes()];
+      buf.readBytes(encoded);
+      buf.release();
+
+      assertArrayEquals(ProtoUtils.compressMessageBytes(data).toByteArray(), encoded);
+      assertEquals(
+          data, ProtoUtils.uncompressMessageBytes(Connect.CompressMessage.parseFrom(encoded)));
+    }
+  }
+
+  @Test
+  public void testUncompressMessageFromBuffer() throws Exception {
+    Random random = new Random(2);
+    byte[] incompressible = new byte[3000];
+    random.nextBytes(incompressible);
+    Bytes[] samples = {Bytes.of(1), Bytes.wrap(new byte[1000]), Bytes.wrap(incompressible)};
+    for (Bytes data : samples) {
+      byte[] encoded = ProtoUtils.compressMessageBytes(data).toByteArray();
+      ByteBuf heap = Unpooled.wrappedBuffer(encoded);
+      ByteBuf direct = Unpooled.directBuffer().writeBytes(encoded);
+      for (ByteBuf in : new ByteBuf[] {heap, direct}) {
+        ByteBuf out = ProtoUtils.uncompressMessage(PooledByteBufAllocator.DEFAULT, in);
+
+        assertEquals(data, Bytes.wrap(ByteBufUtil.getBytes(out)));
+        assertEquals(0, in.readerIndex());
+        out.release();
+        assertEquals(1, in.refCnt());
+        in.release();
+      }
+    }
+  }
+
+  @Test
+  public void testUncompressMessageSlicesUncompressedData() throws Exception {
+    byte[] encoded = ProtoUtils.compressMessageBytes(Bytes.of(1, 2, 3)).toByteArray();
+    ByteBuf in = Unpooled.directBuffer().writeBytes(encoded);
+
+    ByteBuf out = ProtoUtils.uncompressMessage(PooledByteBufAllocator.DEFAULT, in);
+
+    assertSame(in, out.unwrap(), "uncompressed data should not be copied");
+    assertEquals(2, in.refCnt());
+    out.release();
+    in.release();
+  }
+
+  @Test
+  public void testUncompressMessageRejectsMalformedEnvelope() {
+    ByteBuf truncated = Unpooled.wrappedBuffer(new byte[] {0x12, 0x7F, 0x01});
+    ByteBuf badWireType = Unpooled.wrappedBuffer(new byte[] {0x0D, 0x01, 0x02, 0x03, 0x04});
+
+    assertThrows(
+        P2pException.class,
+        () -> ProtoUtils.uncompressMessage(PooledByteBufAllocator.DEFAULT, truncated));
+    assertThrows(
+        P2pException.class,
+        () -> ProtoUtils.uncompressMessage(PooledByteBufAllocator.DEFAULT, badWireType));
+    assertEquals(1, truncated.refCnt());
+  }
+
+  @Test
+  public void testCompressMessageWithEachCodec() throws Exception {
+    Bytes data = Bytes.wrap(new byte[5000]);
+    for (Connect.CompressMessage.CompressType type : CompressionCodecs.DEFAULT_PREFERENCE) {
+      // Given
+      CompressionCodec codec = CompressionCodecs.get(type.getNumber());
+
+      // When
+      ByteBuf buf = ProtoUtils.compressMessage(PooledByteBufAllocator.DEFAULT, data, codec);
+      byte[] encoded = ByteBufUtil.getBytes(buf);
+      ByteBuf heap = Unpooled.wrappedBuffer(encoded);
+
+      // Then
+      assertEquals(type, Connect.CompressMessage.parseFrom(encoded).getType());
+      for (ByteBuf in : new ByteBuf[] {buf, heap}) {
+        ByteBuf out = ProtoUtils.uncompressMessage(PooledByteBufAllocator.DEFAULT, in);
+        assertEquals(data, Bytes.wrap(ByteBufUtil.getBytes(out)));
+        out.release();
+        in.release();
+      }
+      assertEquals(
+          data, ProtoUtils.uncompressMessageBytes(Connect.CompressMessage.parseFrom(encoded)));
+    }
+  }
+
+  @Test
+  public void testCompressMessageFromBuffer() throws Exception {
+    byte[] incompressible = new byte[3000];
+    new Random(4).nextBytes(incompressible);
+    for (byte[] data : new byte[][] {new byte[5000], incompressible}) {
+      ByteBuf heap = Unpooled.wrappedBuffer(data);
+      ByteBuf direct = Unpooled.directBuffer().writeBytes(data);
+      for (ByteBuf in : new ByteBuf[] {heap, direct}) {
+        ByteBuf buf =
+            ProtoUtils.compressMessage(PooledByteBufAllocator.DEFAULT, in, CompressionCodecs.SNAPPY);
+
+        assertArrayEquals(
+            ProtoUtils.compressMessageBytes(Bytes.wrap(data)).toByteArray(),
+            ByteBufUtil.getBytes(buf));
+        assertEquals(0, in.readerIndex());
+        buf.release();
+        assertEquals(1, in.refCnt());
+        in.release();
+      }
+    }
+  }
+
+  @Test
+  public void testUncompressMessageRejectsUnsupportedType() {
+    Connect.CompressMessage message =
+        Connect.CompressMessage.newBuilder()
+            .setTypeValue(7)
+            .setData(ByteString.copyFrom(new byte[] {1, 2, 3}))
+            .build();
+    ByteBuf in = Unpooled.wrappedBuffer(message.toByteArray());
+
+    assertThrows(
+        P2pException.class,
+        () -> ProtoUtils.uncompressMessage(PooledByteBufAllocator.DEFAULT, in));
+    assertThrows(P2pException.class, () -> ProtoUtils.uncompressMessageBytes(message));
+    assertEquals(1, in.refCnt());
+  }
+
+  @Test
+  public void testWrapMessageMatchesUncompressedProtobuf() throws Exception {
+    for (Bytes data : new Bytes[] {Bytes.of(1), Bytes.wrap(new byte[1000])}) {
+      ByteBuf buf = ProtoUtils.wrapMessage(PooledByteBufAllocator.DEFAULT, data);
+      byte[] encoded = ByteBufUtil.getBytes(buf);
+      buf.release();
+
+      Connect.CompressMessage expected =
+          Connect.CompressMessage.newBuilder()
+              .setType(Connect.CompressMessage.CompressType.uncompress)
+              .setData(ProtoUtils.bytesToByteString(data))
+              .build();
+      assertArrayEquals(expected.toByteArray(), encoded);
+    }
+  }
+
+  @Test
+  public void testComputeVarint32Size() {
+    assertEquals(1, ProtoUtils.computeVarint32Size(0));
+    assertEquals(1, ProtoUtils.computeVarint32Size(127));
+    assertEquals(2, ProtoUtils.computeVarint32Size(128));
+    assertEquals(3, ProtoUtils.computeVarint32Size(16384));
+    assertEquals(4, ProtoUtils.computeVarint32Size(2097152));
+    assertEquals(5, ProtoUtils.computeVarint32Size(268435456));
+    assertEquals(5, ProtoUtils.computeVarint32Size(-1));
+  }
 }
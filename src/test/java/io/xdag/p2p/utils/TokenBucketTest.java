@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2022-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.p2p.utils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  void testBurstThenRefill() {
+    // Given a bucket of 2 tokens refilling 10 per second
+    TokenBucket bucket = new TokenBucket(10, 2, now::get);
+
+    // When the burst is used up
+    assertTrue(bucket.tryAcquire(1));
+    assertTrue(bucket.tryAcquire(1));
+
+    // Then further permits wait for the refill
+    assertFalse(bucket.tryAcquire(1));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    assertTrue(bucket.tryAcquire(1));
+    assertFalse(bucket.tryAcquire(1));
+  }
+
+  @Test
+  void testRefillIsCappedAtCapacity() {
+    // Given an empty bucket
+    TokenBucket bucket = new TokenBucket(100, 3, now::get);
+    assertTrue(bucket.tryAcquire(3));
+
+    // When a long time passes
+    now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+    // Then only the capacity is available
+    assertTrue(bucket.tryAcquire(3));
+    assertFalse(bucket.tryAcquire(1));
+  }
+
+  @Test
+  void testZeroRateNeverLimits() {
+    // Given a disabled bucket
+    TokenBucket bucket = new TokenBucket(0, 1, now::get);
+
+    // Then any number of permits are granted
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bucket.tryAcquire(1));
+    }
+  }
+
+  @Test
+  void testSetRateShrinksCapacity() {
+    // Given a full bucket of 10 tokens
+    TokenBucket bucket = new TokenBucket(10, 10, now::get);
+
+    // When the capacity is lowered to 2
+    bucket.setRate(10, 2);
+
+    // Then only 2 tokens remain
+    assertTrue(bucket.tryAcquire(2));
+    assertFalse(bucket.tryAcquire(1));
+  }
+}